@@ -0,0 +1,97 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Serialization of rows with RowMeta.writeData/readData, as used by the socket and serialization code paths.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RowMetaBenchmark {
+
+  private static final int NR_ROWS = 10000;
+
+  private RowMetaInterface rowMeta;
+  private List<Object[]> rows;
+  private byte[] serializedRows;
+
+  @Setup
+  public void setUp() throws Exception {
+    rowMeta = BenchmarkRows.createRowMeta();
+    rows = BenchmarkRows.createRows( NR_ROWS );
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+    for ( Object[] row : rows ) {
+      rowMeta.writeData( dataOutputStream, row );
+    }
+    dataOutputStream.close();
+    serializedRows = outputStream.toByteArray();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int writeData() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream( serializedRows.length );
+    DataOutputStream dataOutputStream = new DataOutputStream( outputStream );
+    for ( Object[] row : rows ) {
+      rowMeta.writeData( dataOutputStream, row );
+    }
+    return outputStream.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void readData( Blackhole blackhole ) throws Exception {
+    DataInputStream dataInputStream = new DataInputStream( new ByteArrayInputStream( serializedRows ) );
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      blackhole.consume( rowMeta.readData( dataInputStream ) );
+    }
+  }
+}
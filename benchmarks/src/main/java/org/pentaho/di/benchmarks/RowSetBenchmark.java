@@ -0,0 +1,116 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.RingBufferRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * The throughput of a hop: one thread puts rows in a row set while another thread takes them out, just like two
+ * steps do. The put and get timeouts are short so that neither thread hangs when the other one stops at the end of
+ * an iteration. An operation of the batch group moves 100 rows at once.
+ */
+@State( Scope.Group )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RowSetBenchmark {
+
+  private static final int BATCH_SIZE = 100;
+
+  @Param( { "blocking", "ringbuffer" } )
+  public String type;
+
+  @Param( { "10000" } )
+  public int rowSetSize;
+
+  private RowSet rowSet;
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private List<Object[]> batch;
+
+  @Setup( Level.Iteration )
+  public void setUp() {
+    rowSet = "ringbuffer".equals( type ) ? new RingBufferRowSet( rowSetSize ) : new BlockingRowSet( rowSetSize );
+    rowMeta = BenchmarkRows.createRowMeta();
+    batch = BenchmarkRows.createRows( BATCH_SIZE );
+    row = batch.get( 0 );
+  }
+
+  @TearDown( Level.Iteration )
+  public void tearDown() {
+    rowSet.clear();
+  }
+
+  @Benchmark
+  @Group( "row" )
+  @GroupThreads( 1 )
+  public boolean put() {
+    return rowSet.putRowWait( rowMeta, row, 10, TimeUnit.MILLISECONDS );
+  }
+
+  @Benchmark
+  @Group( "row" )
+  @GroupThreads( 1 )
+  public Object[] get() {
+    return rowSet.getRowWait( 10, TimeUnit.MILLISECONDS );
+  }
+
+  @Benchmark
+  @Group( "batch" )
+  @GroupThreads( 1 )
+  public int putRows() {
+    return rowSet.putRows( rowMeta, batch );
+  }
+
+  @Benchmark
+  @Group( "batch" )
+  @GroupThreads( 1 )
+  public void getRows( Blackhole blackhole ) {
+    blackhole.consume( rowSet.getRows( BATCH_SIZE ) );
+  }
+}
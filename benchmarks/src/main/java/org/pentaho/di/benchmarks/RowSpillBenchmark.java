@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
+
+/**
+ * Writing and reading rows in the spill file format that Sort Rows, Group By and Join Rows use for their temp files.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RowSpillBenchmark {
+
+  private static final int NR_ROWS = 10000;
+
+  @Param( { "NONE", "LZ4", "DEFLATE" } )
+  public String compression;
+
+  private RowMetaInterface rowMeta;
+  private List<Object[]> rows;
+  private byte[] spilledRows;
+  private RowSpillCompression spillCompression;
+
+  @Setup
+  public void setUp() throws Exception {
+    rowMeta = BenchmarkRows.createRowMeta();
+    rows = BenchmarkRows.createRows( NR_ROWS );
+    spillCompression = RowSpillCompression.valueOf( compression );
+
+    spilledRows = spill();
+  }
+
+  private byte[] spill() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RowSpillWriter writer = new RowSpillWriter( outputStream, rowMeta, spillCompression );
+    for ( Object[] row : rows ) {
+      writer.writeRow( row );
+    }
+    writer.close();
+    return outputStream.toByteArray();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int write() throws Exception {
+    return spill().length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void read( Blackhole blackhole ) throws Exception {
+    RowSpillReader reader = new RowSpillReader( new ByteArrayInputStream( spilledRows ), rowMeta );
+    for ( Object[] row = reader.readRow(); row != null; row = reader.readRow() ) {
+      blackhole.consume( row );
+    }
+  }
+}
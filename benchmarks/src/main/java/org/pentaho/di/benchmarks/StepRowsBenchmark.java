@@ -0,0 +1,138 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTrans;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransData;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+/**
+ * The overhead of BaseStep.getRow/putRow (and their batch versions) on a single thread: the rows are put in the input
+ * row set of a Dummy step, read and written by the step and taken out of its output row set again.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StepRowsBenchmark {
+
+  private static final int NR_ROWS = 1000;
+
+  private Trans trans;
+  private DummyTrans step;
+  private RowSet inputRowSet;
+  private RowSet outputRowSet;
+  private RowMetaInterface rowMeta;
+  private List<Object[]> rows;
+
+  @Setup
+  public void setUp() throws Exception {
+    KettleEnvironment.init( false );
+
+    DummyTransMeta meta = new DummyTransMeta();
+    DummyTransData data = new DummyTransData();
+    StepMeta stepMeta = new StepMeta( "dummy", meta );
+    TransMeta transMeta = new TransMeta();
+    transMeta.addStep( stepMeta );
+
+    trans = new Trans( transMeta );
+    trans.setRunning( true );
+    step = new DummyTrans( stepMeta, data, 0, transMeta, trans );
+    step.init( meta, data );
+
+    // Room for all the rows so nothing ever waits
+    //
+    inputRowSet = new BlockingRowSet( NR_ROWS );
+    outputRowSet = new BlockingRowSet( NR_ROWS );
+    List<RowSet> inputRowSets = new ArrayList<RowSet>();
+    inputRowSets.add( inputRowSet );
+    List<RowSet> outputRowSets = new ArrayList<RowSet>();
+    outputRowSets.add( outputRowSet );
+    step.setInputRowSets( inputRowSets );
+    step.setOutputRowSets( outputRowSets );
+
+    rowMeta = BenchmarkRows.createRowMeta();
+    rows = BenchmarkRows.createRows( NR_ROWS );
+  }
+
+  @TearDown
+  public void tearDown() {
+    step.dispose( step.getStepMeta().getStepMetaInterface(), step.getStepDataInterface() );
+    trans.setRunning( false );
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int getRowPutRow() throws Exception {
+    for ( Object[] row : rows ) {
+      inputRowSet.putRow( rowMeta, row );
+    }
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      step.putRow( rowMeta, step.getRow() );
+    }
+    int count = 0;
+    while ( outputRowSet.getRowImmediate() != null ) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int getRowsPutRows() throws Exception {
+    inputRowSet.putRows( rowMeta, rows );
+    int count = 0;
+    while ( count < NR_ROWS ) {
+      List<Object[]> batch = step.getRows( NR_ROWS - count );
+      step.putRows( rowMeta, batch );
+      count += batch.size();
+    }
+    return outputRowSet.getRows( NR_ROWS ).size();
+  }
+}
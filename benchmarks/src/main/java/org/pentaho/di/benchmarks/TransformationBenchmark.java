@@ -0,0 +1,147 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.groupby.GroupByMeta;
+import org.pentaho.di.trans.steps.randomvalue.RandomValueMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+import org.pentaho.di.trans.steps.sort.SortRowsMeta;
+
+/**
+ * Runs a small transformation end to end: Generate Rows, Generate random value, Calculator, Sort Rows, Group By and
+ * Dummy. The random value only gives the sort and the aggregation something to do, there are about 1000 groups.<br>
+ * <br>
+ * Kettle variables that change the engine behavior can be passed as system properties, for example
+ * <code>-jvmArgsAppend -DKETTLE_SORT_NORMALIZED_KEYS=Y</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TransformationBenchmark {
+
+  @Param( { "100000", "1000000" } )
+  public int nrRows;
+
+  private TransMeta transMeta;
+
+  @Setup
+  public void setUp() throws Exception {
+    KettleEnvironment.init( false );
+
+    transMeta = new TransMeta();
+    transMeta.setName( "benchmark" );
+
+    RowGeneratorMeta generator = new RowGeneratorMeta();
+    generator.setDefault();
+    generator.allocate( 2 );
+    generator.setFieldName( new String[] { "groups", "amount" } );
+    generator.setFieldType( new String[] { "Integer", "Number" } );
+    generator.setValue( new String[] { "1000", "1.5" } );
+    generator.setFieldLength( new int[] { -1, -1 } );
+    generator.setFieldPrecision( new int[] { -1, -1 } );
+    generator.setRowLimit( Integer.toString( nrRows ) );
+
+    RandomValueMeta random = new RandomValueMeta();
+    random.allocate( 1 );
+    random.setFieldName( new String[] { "random" } );
+    random.setFieldType( new int[] { RandomValueMeta.TYPE_RANDOM_INTEGER } );
+
+    CalculatorMeta calculator = new CalculatorMeta();
+    calculator.setCalculation( new CalculatorMetaFunction[] {
+      new CalculatorMetaFunction( "key", CalculatorMetaFunction.CALC_REMAINDER, "random", "groups", null,
+        ValueMetaInterface.TYPE_INTEGER, -1, -1, false, null, null, null, null ),
+      new CalculatorMetaFunction( "total", CalculatorMetaFunction.CALC_MULTIPLY, "amount", "random", null,
+        ValueMetaInterface.TYPE_NUMBER, -1, -1, false, null, null, null, null ) } );
+
+    SortRowsMeta sort = new SortRowsMeta();
+    sort.setDefault();
+    sort.allocate( 1 );
+    sort.setFieldName( new String[] { "key" } );
+    sort.setAscending( new boolean[] { true } );
+    sort.setCaseSensitive( new boolean[] { true } );
+    sort.setCollatorEnabled( new boolean[] { false } );
+    sort.setCollatorStrength( new int[] { 0 } );
+    sort.setPreSortedField( new boolean[] { false } );
+    sort.setSortSize( Integer.toString( nrRows ) );
+
+    GroupByMeta groupBy = new GroupByMeta();
+    groupBy.setDefault();
+    groupBy.allocate( 1, 2 );
+    groupBy.setGroupField( new String[] { "key" } );
+    groupBy.setAggregateField( new String[] { "count", "sum" } );
+    groupBy.setSubjectField( new String[] { "key", "total" } );
+    groupBy.setAggregateType( new int[] { GroupByMeta.TYPE_GROUP_COUNT_ALL, GroupByMeta.TYPE_GROUP_SUM } );
+    groupBy.setValueField( new String[] { null, null } );
+
+    StepMeta previous = null;
+    StepMetaInterface[] metas = { generator, random, calculator, sort, groupBy, new DummyTransMeta() };
+    String[] names = { "Generate Rows", "Generate random value", "Calculator", "Sort rows", "Group by", "Dummy" };
+    for ( int i = 0; i < metas.length; i++ ) {
+      StepMeta stepMeta = new StepMeta( names[ i ], metas[ i ] );
+      transMeta.addStep( stepMeta );
+      if ( previous != null ) {
+        transMeta.addTransHop( new TransHopMeta( previous, stepMeta ) );
+      }
+      previous = stepMeta;
+    }
+  }
+
+  @Benchmark
+  public long run() throws KettleException {
+    Trans trans = new Trans( transMeta );
+    trans.execute( null );
+    trans.waitUntilFinished();
+    if ( trans.getErrors() > 0 ) {
+      throw new KettleException( "The benchmark transformation failed" );
+    }
+    return trans.getStepInterface( "Dummy", 0 ).getLinesWritten();
+  }
+}
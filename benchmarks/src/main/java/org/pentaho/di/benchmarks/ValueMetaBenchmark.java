@@ -0,0 +1,164 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Comparing and converting values with ValueMetaBase: the work horses of sorting, grouping, lookups and type
+ * conversions in just about every step.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ValueMetaBenchmark {
+
+  private static final int NR_ROWS = 10000;
+
+  private RowMetaInterface rowMeta;
+  private List<Object[]> rows;
+  private int[] keyFields;
+
+  private ValueMetaInterface stringMeta;
+  private ValueMetaInterface integerMeta;
+  private ValueMetaInterface numberMeta;
+  private String[] integerStrings;
+  private String[] numberStrings;
+
+  @Setup
+  public void setUp() throws Exception {
+    rowMeta = BenchmarkRows.createRowMeta();
+    rows = BenchmarkRows.createRows( NR_ROWS );
+    keyFields = new int[] { 1, 0 };
+
+    stringMeta = new ValueMetaString( "string" );
+    integerMeta = new ValueMetaInteger( "integer" );
+    numberMeta = new ValueMetaNumber( "number" );
+    integerStrings = new String[ NR_ROWS ];
+    numberStrings = new String[ NR_ROWS ];
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      Object[] row = rows.get( i );
+      integerStrings[ i ] = integerMeta.getString( row[ 0 ] );
+      numberStrings[ i ] = numberMeta.getString( row[ 2 ] );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int compareIntegers() throws Exception {
+    ValueMetaInterface valueMeta = rowMeta.getValueMeta( 0 );
+    int result = 0;
+    for ( int i = 1; i < NR_ROWS; i++ ) {
+      result += valueMeta.compare( rows.get( i - 1 )[ 0 ], rows.get( i )[ 0 ] );
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int compareStrings() throws Exception {
+    ValueMetaInterface valueMeta = rowMeta.getValueMeta( 1 );
+    int result = 0;
+    for ( int i = 1; i < NR_ROWS; i++ ) {
+      result += valueMeta.compare( rows.get( i - 1 )[ 1 ], rows.get( i )[ 1 ] );
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int compareDates() throws Exception {
+    ValueMetaInterface valueMeta = rowMeta.getValueMeta( 3 );
+    int result = 0;
+    for ( int i = 1; i < NR_ROWS; i++ ) {
+      result += valueMeta.compare( rows.get( i - 1 )[ 3 ], rows.get( i )[ 3 ] );
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public int compareRows() throws Exception {
+    int result = 0;
+    for ( int i = 1; i < NR_ROWS; i++ ) {
+      result += rowMeta.compare( rows.get( i - 1 ), rows.get( i ), keyFields );
+    }
+    return result;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void convertStringToInteger( Blackhole blackhole ) throws Exception {
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      blackhole.consume( integerMeta.convertData( stringMeta, integerStrings[ i ] ) );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void convertStringToNumber( Blackhole blackhole ) throws Exception {
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      blackhole.consume( numberMeta.convertData( stringMeta, numberStrings[ i ] ) );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void convertIntegerToString( Blackhole blackhole ) throws Exception {
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      blackhole.consume( stringMeta.convertData( integerMeta, rows.get( i )[ 0 ] ) );
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation( NR_ROWS )
+  public void convertDateToString( Blackhole blackhole ) throws Exception {
+    ValueMetaInterface dateMeta = rowMeta.getValueMeta( 3 );
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      blackhole.consume( stringMeta.convertData( dateMeta, rows.get( i )[ 3 ] ) );
+    }
+  }
+}
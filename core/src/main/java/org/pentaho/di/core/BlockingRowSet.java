@@ -22,6 +22,8 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -125,6 +127,26 @@ public class BlockingRowSet extends BaseRowSet implements Comparable<RowSet>, Ro
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.pentaho.di.core.RowSetInterface#getRows(int)
+   */
+  @Override
+  public List<Object[]> getRows( int max ) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = getRow();
+    if ( row != null ) {
+      rows.add( row );
+      if ( max > 1 ) {
+        // Take whatever else is available while grabbing the queue lock only once
+        //
+        queArray.drainTo( rows, max - 1 );
+      }
+    }
+    return rows;
+  }
+
   @Override
   public int size() {
     return queArray.size();
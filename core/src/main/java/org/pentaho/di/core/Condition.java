@@ -32,6 +32,7 @@ import java.util.regex.Pattern;
 
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -569,6 +570,199 @@ public class Condition implements Cloneable, XMLInterface {
     return retval;
   }
 
+  /**
+   * Checks if this condition can be evaluated for a whole batch of rows at once with {@link #evaluate(RowBatch)}. This
+   * is the case for comparisons and null checks on Integer and Number fields (normal storage) with a constant or another
+   * field of the same type, and for composite conditions made of those.
+   *
+   * @param rowMeta
+   *          the row metadata
+   * @return true if the condition can be evaluated on a batch.
+   */
+  public boolean isBatchEvaluable( RowMetaInterface rowMeta ) {
+    if ( isComposite() ) {
+      for ( Condition condition : list ) {
+        if ( !condition.isBatchEvaluable( rowMeta ) ) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if ( function == FUNC_TRUE ) {
+      return true;
+    }
+    int leftIndex = Utils.isEmpty( leftValuename ) ? -1 : rowMeta.indexOfValue( leftValuename );
+    if ( leftIndex < 0 ) {
+      return false;
+    }
+    ValueMetaInterface leftMeta = rowMeta.getValueMeta( leftIndex );
+    if ( !RowBatch.isPrimitive( leftMeta ) || leftMeta.isSortedDescending() ) {
+      return false;
+    }
+    switch ( function ) {
+      case FUNC_NULL:
+      case FUNC_NOT_NULL:
+        return true;
+      case FUNC_EQUAL:
+      case FUNC_NOT_EQUAL:
+      case FUNC_SMALLER:
+      case FUNC_SMALLER_EQUAL:
+      case FUNC_LARGER:
+      case FUNC_LARGER_EQUAL:
+        ValueMetaInterface rightMeta;
+        if ( rightExact != null && rightExact.getValueData() != null ) {
+          rightMeta = rightExact.getValueMeta();
+        } else {
+          int rightIndex = Utils.isEmpty( rightValuename ) ? -1 : rowMeta.indexOfValue( rightValuename );
+          if ( rightIndex < 0 ) {
+            return false;
+          }
+          rightMeta = rowMeta.getValueMeta( rightIndex );
+        }
+        return rightMeta != null && rightMeta.getType() == leftMeta.getType() && RowBatch.isPrimitive( rightMeta );
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Evaluate the condition for all the rows in a batch. The result is the same as calling
+   * {@link #evaluate(RowMetaInterface, Object[])} for every row but the values are compared straight from the primitive
+   * columns of the batch. Only use this if {@link #isBatchEvaluable(RowMetaInterface)} returns true.
+   *
+   * @param batch
+   *          the batch of rows
+   * @return for every row in the batch: true if the condition evaluates to true.
+   */
+  public boolean[] evaluate( RowBatch batch ) {
+    try {
+      boolean[] result;
+      if ( isAtomic() ) {
+        result = evaluateAtomic( batch );
+      } else {
+        result = list.get( 0 ).evaluate( batch );
+        for ( int i = 1; i < list.size(); i++ ) {
+          Condition cb = list.get( i );
+          boolean[] other = cb.evaluate( batch );
+          for ( int r = 0; r < result.length; r++ ) {
+            switch ( cb.getOperator() ) {
+              case Condition.OPERATOR_OR:
+                result[ r ] = result[ r ] || other[ r ];
+                break;
+              case Condition.OPERATOR_AND:
+                result[ r ] = result[ r ] && other[ r ];
+                break;
+              case Condition.OPERATOR_OR_NOT:
+                result[ r ] = result[ r ] || !other[ r ];
+                break;
+              case Condition.OPERATOR_AND_NOT:
+                result[ r ] = result[ r ] && !other[ r ];
+                break;
+              case Condition.OPERATOR_XOR:
+                result[ r ] = result[ r ] ^ other[ r ];
+                break;
+              default:
+                break;
+            }
+          }
+        }
+      }
+
+      if ( isNegated() ) {
+        for ( int r = 0; r < result.length; r++ ) {
+          result[ r ] = !result[ r ];
+        }
+      }
+      return result;
+    } catch ( Exception e ) {
+      throw new RuntimeException( "Unexpected error evaluation condition [" + toString() + "]", e );
+    }
+  }
+
+  private boolean[] evaluateAtomic( RowBatch batch ) throws KettleValueException {
+    int size = batch.size();
+    boolean[] result = new boolean[ size ];
+    if ( function == FUNC_TRUE ) {
+      Arrays.fill( result, true );
+      return result;
+    }
+
+    RowMetaInterface rowMeta = batch.getRowMeta();
+    int leftIndex = rowMeta.indexOfValue( leftValuename );
+    RowBatch.Column left = batch.getColumn( leftIndex );
+
+    if ( function == FUNC_NULL || function == FUNC_NOT_NULL ) {
+      boolean wanted = function == FUNC_NULL;
+      for ( int r = 0; r < size; r++ ) {
+        result[ r ] = left.isNull( r ) == wanted;
+      }
+      return result;
+    }
+
+    // The right hand side is either a constant or a column of the same type
+    //
+    RowBatch.Column right = null;
+    long rightLong = 0L;
+    double rightDouble = 0.0;
+    if ( rightExact != null && rightExact.getValueData() != null ) {
+      ValueMetaInterface exactMeta = rightExact.getValueMeta();
+      if ( left instanceof RowBatch.LongColumn ) {
+        rightLong = exactMeta.getInteger( rightExact.getValueData() );
+      } else {
+        rightDouble = exactMeta.getNumber( rightExact.getValueData() );
+      }
+    } else {
+      right = batch.getColumn( rowMeta.indexOfValue( rightValuename ) );
+    }
+
+    long[] leftLongs = left instanceof RowBatch.LongColumn ? ( (RowBatch.LongColumn) left ).getValues() : null;
+    double[] leftDoubles = left instanceof RowBatch.DoubleColumn ? ( (RowBatch.DoubleColumn) left ).getValues() : null;
+    long[] rightLongs = right instanceof RowBatch.LongColumn ? ( (RowBatch.LongColumn) right ).getValues() : null;
+    double[] rightDoubles =
+      right instanceof RowBatch.DoubleColumn ? ( (RowBatch.DoubleColumn) right ).getValues() : null;
+
+    for ( int r = 0; r < size; r++ ) {
+      boolean leftNull = left.isNull( r );
+      boolean rightNull = right != null && right.isNull( r );
+
+      // Same ordering as ValueMetaInterface.compare(): null is the smallest value
+      //
+      int cmp;
+      if ( leftNull || rightNull ) {
+        cmp = leftNull ? ( rightNull ? 0 : -1 ) : 1;
+      } else if ( leftLongs != null ) {
+        cmp = Long.compare( leftLongs[ r ], rightLongs != null ? rightLongs[ r ] : rightLong );
+      } else {
+        cmp = Double.compare( leftDoubles[ r ], rightDoubles != null ? rightDoubles[ r ] : rightDouble );
+      }
+
+      switch ( function ) {
+        case FUNC_EQUAL:
+          result[ r ] = cmp == 0;
+          break;
+        case FUNC_NOT_EQUAL:
+          result[ r ] = cmp != 0;
+          break;
+        case FUNC_SMALLER:
+          // BACKLOG-18831
+          result[ r ] = !leftNull && cmp < 0;
+          break;
+        case FUNC_SMALLER_EQUAL:
+          result[ r ] = !leftNull && cmp <= 0;
+          break;
+        case FUNC_LARGER:
+          result[ r ] = cmp > 0;
+          break;
+        case FUNC_LARGER_EQUAL:
+          result[ r ] = cmp >= 0;
+          break;
+        default:
+          break;
+      }
+    }
+    return result;
+  }
+
   public void addCondition( Condition cb ) {
     if ( isAtomic() && getLeftValuename() != null ) {
       /*
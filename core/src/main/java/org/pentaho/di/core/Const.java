@@ -136,6 +136,11 @@ public class Const {
    */
   public static final int ROWS_UPDATE = 50000;
 
+  /**
+   * Maximum number of rows handed over at once by steps processing rows in batches (the default)
+   */
+  public static final int ROWS_IN_BATCH = 512;
+
   /**
    * Size of rowset: bigger = faster for large amounts of data
    */
@@ -819,6 +824,103 @@ public class Const {
   public static final String KETTLE_COMPATIBILITY_MEMORY_GROUP_BY_SUM_AVERAGE_RETURN_NUMBER_TYPE =
     "KETTLE_COMPATIBILITY_MEMORY_GROUP_BY_SUM_AVERAGE_RETURN_NUMBER_TYPE";
 
+  /**
+   * The maximum amount of memory (in MB) the Memory Group By step can use for an off-heap hash table. If set, groups
+   * with only sums, averages, minimums and maximums of numeric fields and counts are kept off the Java heap and are
+   * spilled to disk when the table grows beyond this size. Not set (default): the groups are kept on the heap.
+   */
+  public static final String KETTLE_MEMORY_GROUP_BY_MAX_MEMORY = "KETTLE_MEMORY_GROUP_BY_MAX_MEMORY";
+
+  /**
+   * The maximum estimated amount of memory (in MB) the Stream Lookup step can use for the lookup rows. If set, the
+   * lookup rows that don't fit are spilled to disk together with the rows that need them, those rows are passed on at
+   * the end. This only applies when "preserve memory" is off. Not set (default): all the lookup rows are kept in
+   * memory.
+   */
+  public static final String KETTLE_STREAM_LOOKUP_MAX_MEMORY = "KETTLE_STREAM_LOOKUP_MAX_MEMORY";
+
+  /**
+   * The maximum number of temporary files the Sort Rows step merges at once. If the step wrote more files, groups of
+   * files are first merged into larger files until no more than this number are left. Not set (default): all the
+   * files are merged at once.
+   */
+  public static final String KETTLE_SORT_ROWS_MAX_MERGE_FILES = "KETTLE_SORT_ROWS_MAX_MERGE_FILES";
+
+  /**
+   * Set this variable to Y to let the Sort Rows and Sorted Merge steps compare binary sort keys instead of comparing
+   * the key fields one by one. Only keys made of Strings (without collator), Integers, Numbers, Dates and Booleans are
+   * supported. Default: N
+   */
+  public static final String KETTLE_SORT_NORMALIZED_KEYS = "KETTLE_SORT_NORMALIZED_KEYS";
+
+  /**
+   * The compression of the temporary files with rows that steps like Sort Rows, Group By and Join Rows spill to disk:
+   * NONE, LZ4 (fast) or DEFLATE (smaller files). Not set (default): the Sort Rows step uses DEFLATE if the step is set
+   * to compress its temporary files, all the other files are not compressed.
+   */
+  public static final String KETTLE_SPILL_COMPRESSION = "KETTLE_SPILL_COMPRESSION";
+
+  /**
+   * The directory of the temporary files of the Stream Lookup and Memory Group By steps when they spill to disk. Not
+   * set (default): the temporary directory of the system (java.io.tmpdir).
+   */
+  public static final String KETTLE_SPILL_DIRECTORY = "KETTLE_SPILL_DIRECTORY";
+
+  /**
+   * The maximum estimated amount of memory (in MB) the cache of a Database Lookup or Database Join step can use, on
+   * top of the maximum number of rows set in the step. Not set (default): the cache is only limited by the number of
+   * rows.
+   */
+  public static final String KETTLE_DB_LOOKUP_CACHE_MAX_MEMORY = "KETTLE_DB_LOOKUP_CACHE_MAX_MEMORY";
+
+  /**
+   * The number of seconds after which a value cached by a Database Lookup or Database Join step is looked up in the
+   * database again. Not set (default) or 0: cached values never expire.
+   */
+  public static final String KETTLE_DB_LOOKUP_CACHE_TTL = "KETTLE_DB_LOOKUP_CACHE_TTL";
+
+  /**
+   * The maximum number of rows a Table Output step inserts with one INSERT INTO ... VALUES ( ... ), ( ... ) statement
+   * when the step's multi-row insert option is enabled and the database supports it. 0 or 1 disables multi-row
+   * inserts. Insert/Update uses the same maximum for the rows it merges with one statement.
+   */
+  public static final String KETTLE_MULTI_ROW_INSERT_SIZE = "KETTLE_MULTI_ROW_INSERT_SIZE";
+
+  /**
+   * The default maximum number of rows in one multi-row insert statement, see {@link #KETTLE_MULTI_ROW_INSERT_SIZE}.
+   */
+  public static final int MULTI_ROW_INSERT_SIZE = 1000;
+
+  /**
+   * The number of multi-row insert statements or batches a Table Output step copy keeps executing and committing in
+   * the background while it collects the next rows. 0 executes them on the step thread.
+   */
+  public static final String KETTLE_TABLE_OUTPUT_PIPELINE = "KETTLE_TABLE_OUTPUT_PIPELINE";
+
+  /**
+   * The default number of Table Output inserts in flight, see {@link #KETTLE_TABLE_OUTPUT_PIPELINE}.
+   */
+  public static final int TABLE_OUTPUT_PIPELINE = 0;
+
+  /**
+   * The ID of the connection pool provider plugin that creates the pools of database connections. The default is DBCP,
+   * the Apache Commons DBCP based provider.
+   */
+  public static final String KETTLE_CONNECTION_POOL_PROVIDER = "KETTLE_CONNECTION_POOL_PROVIDER";
+
+  /**
+   * Set this variable to Y to take the database connections that don't enable connection pooling from a pool as well.
+   * These pools have no maximum size and are shared by all the steps and transformations using the same connection
+   * settings, so the connections stay open to be reused by the next transformation.
+   */
+  public static final String KETTLE_SHARED_CONNECTION_POOL = "KETTLE_SHARED_CONNECTION_POOL";
+
+  /**
+   * Set this variable to Y to pool the prepared statements of all the pooled database connections, unless the
+   * poolPreparedStatements pooling parameter of the connection says otherwise.
+   */
+  public static final String KETTLE_POOL_PREPARED_STATEMENTS = "KETTLE_POOL_PREPARED_STATEMENTS";
+
   /**
    * System wide flag to control behavior of the ExecuteTransformationStep and ExecuteJobStep when a file is specified.
    * This only is used when PDI is connected to repository
@@ -999,6 +1101,17 @@ public class Const {
   @SuppressWarnings( "squid:S2068" )
   public static final String KETTLE_TWO_WAY_PASSWORD_ENCODER_SEED = Encr.KETTLE_TWO_WAY_PASSWORD_ENCODER_SEED;
 
+  /**
+   * The XML file that contains the list of native Kettle connection pool provider plugins
+   */
+  public static final String XML_FILE_KETTLE_CONNECTION_POOL_PROVIDERS = "kettle-connection-pool-providers.xml";
+
+  /**
+   * The name of the environment variable that will contain the alternative location of the
+   * kettle-connection-pool-providers.xml file
+   */
+  public static final String KETTLE_CONNECTION_POOL_PROVIDERS_FILE = "KETTLE_CONNECTION_POOL_PROVIDERS_FILE";
+
   /**
    * The XML file that contains the list of native Kettle logging plugins
    */
@@ -1032,6 +1145,24 @@ public class Const {
    */
   public static final String KETTLE_BATCHING_ROWSET = "KETTLE_BATCHING_ROWSET";
 
+  /**
+   * Set this variable to N to use the blocking row set instead of the lock-free ring buffer row set on hops between
+   * exactly one source and one target step copy. (default = Y)
+   */
+  public static final String KETTLE_LOCK_FREE_ROWSET = "KETTLE_LOCK_FREE_ROWSET";
+
+  /**
+   * The name of the variable that optionally contains an alternative maximum number of rows that steps read and write
+   * in one batch. (default = 512)
+   */
+  public static final String KETTLE_ROW_BATCH_SIZE = "KETTLE_ROW_BATCH_SIZE";
+
+  /**
+   * The kind of threads the steps of a transformation run on: "platform" (default) or "virtual". Virtual threads need a
+   * Java 21 or later runtime.
+   */
+  public static final String KETTLE_STEP_THREAD_MODE = "KETTLE_STEP_THREAD_MODE";
+
   /**
    * Set this variable to limit max number of files the Text File Output step can have open at one time.
    */
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.core;
 
+import org.pentaho.di.core.database.ConnectionPoolProviderPluginType;
 import org.pentaho.di.core.encryption.Encr;
 import org.pentaho.di.core.encryption.TwoWayPasswordEncoderPluginType;
 import org.pentaho.di.core.exception.KettleException;
@@ -81,7 +82,8 @@ public class KettleClientEnvironment {
       ValueMetaPluginType.getInstance(),
       DatabasePluginType.getInstance(),
       ExtensionPointPluginType.getInstance(),
-      TwoWayPasswordEncoderPluginType.getInstance() ) );
+      TwoWayPasswordEncoderPluginType.getInstance(),
+      ConnectionPoolProviderPluginType.getInstance() ) );
   }
 
   public static synchronized void init( List<PluginTypeInterface> pluginsToLoad ) throws KettleException {
@@ -0,0 +1,378 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A lock-free buffer of rows for hops with exactly one writing and one reading thread (single producer, single
+ * consumer). The rows are kept in a ring of slots, the producer only moves the tail sequence and the consumer only
+ * moves the head sequence so no lock is ever taken. When the ring is full (or empty) the waiting side spins and yields
+ * briefly and then parks until the other side signals progress or the timeout expires.<br>
+ * <br>
+ * This row set must NOT be shared between multiple writing or multiple reading threads.
+ *
+ * @since 9.1
+ */
+public class RingBufferRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+
+  /**
+   * The number of times we busy-spin before yielding. Spinning is pointless on a single CPU.
+   */
+  private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+  /**
+   * The number of times we yield the CPU after spinning before parking the waiting thread.
+   */
+  private static final int YIELD_TRIES = 10;
+
+  private final Object[][] ring;
+  private final int mask;
+  private final int maxSize;
+
+  /**
+   * The sequence of the next row to read, only written by the consumer.
+   */
+  private final Sequence head = new Sequence();
+
+  /**
+   * The sequence of the next row to write, only written by the producer.
+   */
+  private final Sequence tail = new Sequence();
+
+  /**
+   * Cached copy of the head sequence as seen by the producer, avoids reading the volatile head for every row.
+   */
+  private long cachedHead;
+
+  /**
+   * Cached copy of the tail sequence as seen by the consumer, avoids reading the volatile tail for every row.
+   */
+  private long cachedTail;
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new lock-free row set with maxSize capacity.
+   *
+   * @param maxSize
+   *          the maximum number of rows in the buffer
+   */
+  public RingBufferRowSet( int maxSize ) {
+    super();
+
+    this.maxSize = Math.max( 1, maxSize );
+
+    // The ring is rounded up to a power of 2 so we can use a mask instead of a modulo.
+    // We never fill it beyond maxSize though.
+    //
+    int capacity = Integer.highestOneBit( this.maxSize );
+    if ( capacity < this.maxSize ) {
+      capacity <<= 1;
+    }
+    ring = new Object[ capacity ][];
+    mask = capacity - 1;
+
+    timeoutGet = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_GET_TIMEOUT ), Const.TIMEOUT_GET_MILLIS );
+    timeoutPut = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT ), Const.TIMEOUT_PUT_MILLIS );
+  }
+
+  @Override
+  public boolean putRow( RowMetaInterface rowMeta, Object[] rowData ) {
+    return putRowWait( rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu ) {
+    if ( rowData == null ) {
+      // Same behavior as the blocking row set: the queue doesn't accept null rows
+      //
+      return false;
+    }
+    this.rowMeta = rowMeta;
+
+    long currentTail = tail.get();
+    if ( currentTail - cachedHead >= maxSize ) {
+      cachedHead = head.get();
+      if ( currentTail - cachedHead >= maxSize && !waitForRoom( currentTail, tu.toNanos( time ) ) ) {
+        return false;
+      }
+    }
+
+    ring[ (int) currentTail & mask ] = rowData;
+    tail.set( currentTail + 1 );
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+    return true;
+  }
+
+  /**
+   * Adds as many rows as there is room for in one go and only publishes the new tail once per chunk.
+   */
+  @Override
+  public int putRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    this.rowMeta = rowMeta;
+
+    int nrRows = rows.size();
+    int count = 0;
+    while ( count < nrRows ) {
+      long currentTail = tail.get();
+      if ( currentTail - cachedHead >= maxSize ) {
+        cachedHead = head.get();
+        if ( currentTail - cachedHead >= maxSize
+          && !waitForRoom( currentTail, TimeUnit.MILLISECONDS.toNanos( timeoutPut ) ) ) {
+          return count;
+        }
+      }
+
+      int chunk = (int) Math.min( maxSize - ( currentTail - cachedHead ), nrRows - count );
+      int added = 0;
+      while ( added < chunk ) {
+        Object[] row = rows.get( count + added );
+        if ( row == null ) {
+          break;
+        }
+        ring[ (int) ( currentTail + added ) & mask ] = row;
+        added++;
+      }
+      tail.set( currentTail + added );
+      count += added;
+
+      Thread consumer = waitingConsumer;
+      if ( consumer != null ) {
+        LockSupport.unpark( consumer );
+      }
+      if ( added < chunk ) {
+        // Null rows are refused, just like in putRow()
+        //
+        return count;
+      }
+    }
+    return count;
+  }
+
+  private boolean waitForRoom( long currentTail, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int spins = 0;
+    while ( true ) {
+      cachedHead = head.get();
+      if ( currentTail - cachedHead < maxSize ) {
+        return true;
+      }
+      if ( spins < SPIN_TRIES ) {
+        spins++;
+        continue;
+      }
+      if ( spins < SPIN_TRIES + YIELD_TRIES ) {
+        spins++;
+        Thread.yield();
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if ( remaining <= 0 || Thread.interrupted() ) {
+        return false;
+      }
+      waitingProducer = Thread.currentThread();
+      try {
+        // Re-check after publishing ourselves as waiting to avoid missing a wake-up
+        //
+        cachedHead = head.get();
+        if ( currentTail - cachedHead < maxSize ) {
+          return true;
+        }
+        LockSupport.parkNanos( this, remaining );
+      } finally {
+        waitingProducer = null;
+      }
+    }
+  }
+
+  @Override
+  public Object[] getRow() {
+    return getRowWait( timeoutGet, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public Object[] getRowImmediate() {
+    long currentHead = head.get();
+    if ( currentHead >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( currentHead >= cachedTail ) {
+        return null;
+      }
+    }
+    return take( currentHead );
+  }
+
+  @Override
+  public Object[] getRowWait( long timeout, TimeUnit tu ) {
+    long currentHead = head.get();
+    if ( currentHead >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( currentHead >= cachedTail && !waitForRow( currentHead, tu.toNanos( timeout ) ) ) {
+        return null;
+      }
+    }
+    return take( currentHead );
+  }
+
+  /**
+   * Takes all the rows available (up to max) in one go and only publishes the new head once.
+   */
+  @Override
+  public List<Object[]> getRows( int max ) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    if ( max <= 0 ) {
+      return rows;
+    }
+    long currentHead = head.get();
+    if ( currentHead >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( currentHead >= cachedTail
+        && !waitForRow( currentHead, TimeUnit.MILLISECONDS.toNanos( timeoutGet ) ) ) {
+        return rows;
+      }
+    }
+
+    int nrRows = (int) Math.min( max, cachedTail - currentHead );
+    for ( int i = 0; i < nrRows; i++ ) {
+      int index = (int) ( currentHead + i ) & mask;
+      rows.add( ring[ index ] );
+      ring[ index ] = null; // prevent any hold-up to GC
+    }
+    head.set( currentHead + nrRows );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return rows;
+  }
+
+  private Object[] take( long currentHead ) {
+    int index = (int) currentHead & mask;
+    Object[] row = ring[ index ];
+    ring[ index ] = null; // prevent any hold-up to GC
+    head.set( currentHead + 1 );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return row;
+  }
+
+  private boolean waitForRow( long currentHead, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int spins = 0;
+    while ( true ) {
+      cachedTail = tail.get();
+      if ( currentHead < cachedTail ) {
+        return true;
+      }
+      if ( spins < SPIN_TRIES ) {
+        spins++;
+        continue;
+      }
+      if ( spins < SPIN_TRIES + YIELD_TRIES ) {
+        spins++;
+        Thread.yield();
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if ( remaining <= 0 || Thread.interrupted() ) {
+        return false;
+      }
+      waitingConsumer = Thread.currentThread();
+      try {
+        cachedTail = tail.get();
+        if ( currentHead < cachedTail ) {
+          return true;
+        }
+        // No need to wait for rows that will never arrive, the last row might have slipped in right before the
+        // done flag was raised though.
+        //
+        if ( isDone() ) {
+          cachedTail = tail.get();
+          return currentHead < cachedTail;
+        }
+        LockSupport.parkNanos( this, remaining );
+      } finally {
+        waitingConsumer = null;
+      }
+    }
+  }
+
+  @Override
+  public void setDone() {
+    super.setDone();
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+  }
+
+  @Override
+  public int size() {
+    // Read the head first, that way the result is never negative
+    //
+    long currentHead = head.get();
+    return (int) ( tail.get() - currentHead );
+  }
+
+  @Override
+  public void clear() {
+    for ( int i = 0; i < ring.length; i++ ) {
+      ring[ i ] = null;
+    }
+    head.set( 0L );
+    tail.set( 0L );
+    cachedHead = 0L;
+    cachedTail = 0L;
+    done.set( false );
+  }
+
+  /**
+   * A sequence padded on both sides to keep the head and the tail on separate cache lines. Without it the producer and
+   * the consumer keep invalidating each other's cache line (false sharing).
+   */
+  @SuppressWarnings( "unused" )
+  private static final class Sequence extends AtomicLong {
+    private static final long serialVersionUID = 1L;
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+  }
+}
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -56,6 +58,28 @@ public interface RowSet {
    */
   boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu );
 
+  /**
+   * Offer a batch of rows to this rowset providing for the description (metadata) of the rows. The rows are added in
+   * the order of the list. If the buffer is full, wait (block) for a small period of time.
+   *
+   * @param rowMeta
+   *          The description of the row data
+   * @param rows
+   *          the rows of data
+   * @return the number of rows from the start of the list that were added to the rowset. This is less than the size of
+   *         the list if this buffer was full.
+   */
+  default int putRows( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    int count = 0;
+    for ( Object[] row : rows ) {
+      if ( !putRow( rowMeta, row ) ) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
   /**
    * Get a row from the input buffer, it blocks for a short period until a new row becomes available. Otherwise, it
    * returns null.
@@ -78,6 +102,27 @@ public interface RowSet {
    */
   Object[] getRowWait( long timeout, TimeUnit tu );
 
+  /**
+   * Get a batch of rows from the input buffer. It blocks for a short period until a first row becomes available, the
+   * other rows are only taken if they are available immediately.
+   *
+   * @param max
+   *          the maximum number of rows to return
+   * @return the rows of data, an empty list if no row is available.
+   */
+  default List<Object[]> getRows( int max ) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = getRow();
+    while ( row != null ) {
+      rows.add( row );
+      if ( rows.size() >= max ) {
+        break;
+      }
+      row = getRowImmediate();
+    }
+    return rows;
+  }
+
   /**
    * @return Set indication that there is no more input
    */
@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -1954,6 +1954,27 @@ public abstract class BaseDatabaseMeta implements Cloneable, DatabaseInterfaceEx
     return true;
   }
 
+  /**
+   * @return a VALUES clause with a row of ? placeholders for each row: VALUES ( ?, ? ), ( ?, ? )
+   */
+  protected String getMultiRowValues( int nrColumns, int nrRows ) {
+    StringBuilder values = new StringBuilder( "VALUES " );
+    for ( int r = 0; r < nrRows; r++ ) {
+      if ( r > 0 ) {
+        values.append( ", " );
+      }
+      values.append( "(" );
+      for ( int i = 0; i < nrColumns; i++ ) {
+        if ( i > 0 ) {
+          values.append( ", " );
+        }
+        values.append( "?" );
+      }
+      values.append( ")" );
+    }
+    return values.toString();
+  }
+
   /**
    * @return true if the database is a MySQL variant, like MySQL 5.1, InfiniDB, InfoBright, and so on.
    */
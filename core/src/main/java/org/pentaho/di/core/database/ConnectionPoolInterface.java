@@ -0,0 +1,48 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import javax.sql.DataSource;
+
+/**
+ * A pool of database connections created by a {@link ConnectionPoolProviderInterface}.
+ *
+ * @since 9.1
+ */
+public interface ConnectionPoolInterface {
+
+  /**
+   * @return the data source handing out the connections of the pool
+   */
+  DataSource getDataSource();
+
+  /**
+   * @return the number of connections currently borrowed from the pool
+   */
+  int getNumActive();
+
+  /**
+   * @return the number of open connections waiting in the pool
+   */
+  int getNumIdle();
+}
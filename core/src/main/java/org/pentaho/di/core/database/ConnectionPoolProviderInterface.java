@@ -0,0 +1,52 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import org.pentaho.di.core.exception.KettleDatabaseException;
+
+/**
+ * Creates the connection pools that {@link ConnectionPoolUtil} shares between all the steps and transformations
+ * using the same database connection. The providers are plugins, see {@link ConnectionPoolProviderPlugin}. The
+ * default one is based on Apache Commons DBCP, another one is selected by its ID with the
+ * KETTLE_CONNECTION_POOL_PROVIDER variable.
+ *
+ * @since 9.1
+ */
+public interface ConnectionPoolProviderInterface {
+
+  /**
+   * Creates a new connection pool for the database connection. The URL, driver, credentials and the connection pooling
+   * parameters all come from the database connection, {@link ConnectionPoolUtil#getPoolingProperties(DatabaseMeta)}
+   * returns the pooling parameters with the variables resolved. The pool should not open any connection yet,
+   * {@link ConnectionPoolUtil} opens the initial connections right after the pool is created.
+   *
+   * @param databaseMeta the database connection, including its connection pooling properties
+   * @param partitionId  the partition ID or null
+   * @param initialSize  the number of connections to keep open when the pool is first used
+   * @param maximumSize  the maximum number of connections in the pool, zero or less for no limit
+   * @return the connection pool
+   * @throws KettleDatabaseException in case the pool can't be configured
+   */
+  ConnectionPoolInterface createPool( DatabaseMeta databaseMeta, String partitionId, int initialSize,
+    int maximumSize ) throws KettleDatabaseException;
+}
@@ -0,0 +1,54 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Classes annotated with "ConnectionPoolProviderPlugin" are automatically recognized and registered as a provider of
+ * database connection pools, see {@link ConnectionPoolProviderInterface}. The KETTLE_CONNECTION_POOL_PROVIDER variable
+ * selects the provider to use by its ID.
+ *
+ * @since 9.1
+ */
+@Documented
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.TYPE )
+public @interface ConnectionPoolProviderPlugin {
+  /**
+   * @return The ID of the connection pool provider plugin
+   */
+  String id();
+
+  String name() default "";
+
+  String description() default "";
+
+  boolean isSeparateClassLoaderNeeded() default false;
+
+  String classLoaderGroup() default "";
+}
@@ -0,0 +1,181 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettlePluginException;
+import org.pentaho.di.core.plugins.BasePluginType;
+import org.pentaho.di.core.plugins.PluginAnnotationType;
+import org.pentaho.di.core.plugins.PluginFolderInterface;
+import org.pentaho.di.core.plugins.PluginMainClassType;
+import org.pentaho.di.core.plugins.PluginTypeInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * This class represents the connection pool provider plugin type.
+ *
+ * @since 9.1
+ */
+@PluginMainClassType( ConnectionPoolProviderInterface.class )
+@PluginAnnotationType( ConnectionPoolProviderPlugin.class )
+public class ConnectionPoolProviderPluginType extends BasePluginType implements PluginTypeInterface {
+
+  private static ConnectionPoolProviderPluginType connectionPoolProviderPluginType;
+
+  private ConnectionPoolProviderPluginType() {
+    super( ConnectionPoolProviderPlugin.class, "CONNECTIONPOOLPROVIDER", "Connection Pool Provider" );
+    populateFolders( "connectionpool" );
+  }
+
+  public static ConnectionPoolProviderPluginType getInstance() {
+    if ( connectionPoolProviderPluginType == null ) {
+      connectionPoolProviderPluginType = new ConnectionPoolProviderPluginType();
+    }
+    return connectionPoolProviderPluginType;
+  }
+
+  @Override
+  protected String getXmlPluginFile() {
+    return Const.XML_FILE_KETTLE_CONNECTION_POOL_PROVIDERS;
+  }
+
+  @Override
+  protected String getAlternativePluginFile() {
+    return Const.KETTLE_CONNECTION_POOL_PROVIDERS_FILE;
+  }
+
+  @Override
+  protected String getMainTag() {
+    return "connection-pool-providers";
+  }
+
+  @Override
+  protected String getSubTag() {
+    return "connection-pool-provider";
+  }
+
+  @Override
+  protected boolean isReturn() {
+    return true;
+  }
+
+  @Override
+  protected void registerXmlPlugins() throws KettlePluginException {
+    for ( PluginFolderInterface folder : pluginFolders ) {
+
+      if ( folder.isPluginXmlFolder() ) {
+        List<FileObject> pluginXmlFiles = findPluginXmlFiles( folder.getFolder() );
+        for ( FileObject file : pluginXmlFiles ) {
+
+          try {
+            Document document = XMLHandler.loadXMLFile( file );
+            Node pluginNode = XMLHandler.getSubNode( document, "plugin" );
+            if ( pluginNode != null ) {
+              registerPluginFromXmlResource( pluginNode, KettleVFS.getFilename( file.getParent() ), this
+                .getClass(), false, file.getParent().getURL() );
+            }
+          } catch ( Exception e ) {
+            // We want to report this plugin.xml error, perhaps an XML typo or something like that...
+            //
+            log.logError( "Error found while reading connection pool provider plugin.xml file: "
+              + file.getName().toString(), e );
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  protected String extractCategory( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected String extractDesc( Annotation annotation ) {
+    return ( (ConnectionPoolProviderPlugin) annotation ).description();
+  }
+
+  @Override
+  protected String extractID( Annotation annotation ) {
+    return ( (ConnectionPoolProviderPlugin) annotation ).id();
+  }
+
+  @Override
+  protected String extractName( Annotation annotation ) {
+    String name = ( (ConnectionPoolProviderPlugin) annotation ).name();
+    return Utils.isEmpty( name ) ? extractID( annotation ) : name;
+  }
+
+  @Override
+  protected String extractImageFile( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected boolean extractSeparateClassLoader( Annotation annotation ) {
+    return ( (ConnectionPoolProviderPlugin) annotation ).isSeparateClassLoaderNeeded();
+  }
+
+  @Override
+  protected String extractI18nPackageName( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected void addExtraClasses( Map<Class<?>, String> classMap, Class<?> clazz, Annotation annotation ) {
+  }
+
+  @Override
+  protected String extractDocumentationUrl( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected String extractCasesUrl( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected String extractForumUrl( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected String extractSuggestion( Annotation annotation ) {
+    return null;
+  }
+
+  @Override
+  protected String extractClassLoaderGroup( Annotation annotation ) {
+    return ( (ConnectionPoolProviderPlugin) annotation ).classLoaderGroup();
+  }
+}
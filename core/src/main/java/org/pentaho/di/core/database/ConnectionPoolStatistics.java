@@ -0,0 +1,116 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage statistics of a connection pool registered in {@link ConnectionPoolUtil}: how many connections were borrowed,
+ * how long the callers had to wait for them and how many connections are currently active or idle.
+ *
+ * @since 9.1
+ */
+public class ConnectionPoolStatistics {
+
+  private final String poolName;
+  private final ConnectionPoolInterface pool;
+
+  private final LongAdder borrowCount = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  public ConnectionPoolStatistics( String poolName, ConnectionPoolInterface pool ) {
+    this.poolName = poolName;
+    this.pool = pool;
+  }
+
+  /**
+   * Registers a connection borrowed from the pool.
+   *
+   * @param waitNanos the time it took to get the connection, in nanoseconds
+   */
+  void connectionBorrowed( long waitNanos ) {
+    borrowCount.increment();
+    totalWaitNanos.add( waitNanos );
+    maxWaitNanos.accumulateAndGet( waitNanos, Math::max );
+  }
+
+  /**
+   * @return the name of the pool, without the credentials
+   */
+  public String getPoolName() {
+    return poolName;
+  }
+
+  /**
+   * @return the number of connections borrowed from the pool so far
+   */
+  public long getBorrowCount() {
+    return borrowCount.sum();
+  }
+
+  /**
+   * @return the total time spent waiting for a connection from the pool, in milliseconds
+   */
+  public long getTotalWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis( totalWaitNanos.sum() );
+  }
+
+  /**
+   * @return the average time spent waiting for a connection from the pool, in milliseconds
+   */
+  public double getAverageWaitMillis() {
+    long count = borrowCount.sum();
+    return count == 0 ? 0.0 : totalWaitNanos.sum() / 1000000.0 / count;
+  }
+
+  /**
+   * @return the longest time spent waiting for a connection from the pool, in milliseconds
+   */
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis( maxWaitNanos.get() );
+  }
+
+  /**
+   * @return the number of connections currently borrowed from the pool
+   */
+  public int getNumActive() {
+    return pool.getNumActive();
+  }
+
+  /**
+   * @return the number of open connections waiting in the pool
+   */
+  public int getNumIdle() {
+    return pool.getNumIdle();
+  }
+
+  @Override
+  public String toString() {
+    return poolName + " [borrowed=" + getBorrowCount() + ", active=" + getNumActive() + ", idle=" + getNumIdle()
+      + ", average wait=" + String.format( "%.3f", getAverageWaitMillis() ) + "ms, max wait=" + getMaxWaitMillis()
+      + "ms]";
+  }
+}
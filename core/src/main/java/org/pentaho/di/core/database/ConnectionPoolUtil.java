@@ -22,20 +22,25 @@
 
 package org.pentaho.di.core.database;
 
-import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.dbcp.BasicDataSource;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.util.DatabaseUtil;
 import org.pentaho.di.core.encryption.Encr;
 import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettlePluginException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.util.EnvUtil;
 import org.pentaho.di.i18n.BaseMessages;
 
 import javax.sql.DataSource;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -65,7 +70,17 @@ public class ConnectionPoolUtil {
   public static final String LOG_ABANDONED = "logAbandoned";
   private static Class<?> PKG = Database.class; // for i18n purposes, needed by Translator2!!
 
-  private static ConcurrentMap<String, BasicDataSource> dataSources = new ConcurrentHashMap<String, BasicDataSource>();
+  /**
+   * The ID of the connection pool provider plugin used when KETTLE_CONNECTION_POOL_PROVIDER is not set
+   */
+  public static final String DEFAULT_CONNECTION_POOL_PROVIDER = "DBCP";
+
+  private static ConcurrentMap<String, DataSource> dataSources = new ConcurrentHashMap<String, DataSource>();
+
+  private static ConcurrentMap<String, ConnectionPoolStatistics> poolStatistics =
+    new ConcurrentHashMap<String, ConnectionPoolStatistics>();
+
+  private static volatile ConnectionPoolProviderInterface connectionPoolProvider;
 
   // PDI-12947
   private static final ReentrantLock lock = new ReentrantLock();
@@ -91,16 +106,91 @@ public class ConnectionPoolUtil {
 
   public static Connection getConnection( LogChannelInterface log, DatabaseMeta dbMeta, String partitionId,
       int initialSize, int maximumSize ) throws Exception {
-    lock.lock();
-    try {
-      if ( !isDataSourceRegistered( dbMeta, partitionId ) ) {
-        addPoolableDataSource( log, dbMeta, partitionId, initialSize, maximumSize );
+    String name = getDataSourceName( dbMeta, partitionId );
+
+    // Only take the lock when the pool still needs to be created: once it exists all the step copies (and all the
+    // transformations) using this connection can get their connection at the same time.
+    //
+    if ( !dataSources.containsKey( name ) ) {
+      lock.lock();
+      try {
+        if ( !isDataSourceRegistered( dbMeta, partitionId ) ) {
+          addPoolableDataSource( log, dbMeta, partitionId, initialSize, maximumSize );
+        }
+      } finally {
+        lock.unlock();
       }
-    } finally {
-      lock.unlock();
     }
-    BasicDataSource ds = dataSources.get( getDataSourceName( dbMeta, partitionId ) );
-    return ds.getConnection();
+    DataSource ds = dataSources.get( name );
+    ConnectionPoolStatistics statistics = poolStatistics.get( name );
+
+    long start = System.nanoTime();
+    Connection connection = ds.getConnection();
+    statistics.connectionBorrowed( System.nanoTime() - start );
+
+    if ( log.isDebug() ) {
+      log.logDebug( BaseMessages.getString( PKG, "Database.BorrowedPooledConnection", statistics.toString() ) );
+    }
+    return connection;
+  }
+
+  /**
+   * @return the usage statistics of all the connection pools
+   */
+  public static List<ConnectionPoolStatistics> getPoolStatistics() {
+    return new ArrayList<ConnectionPoolStatistics>( poolStatistics.values() );
+  }
+
+  /**
+   * @param dbMeta      the database connection
+   * @param partitionId the partition ID or null
+   * @return the usage statistics of the connection pool or null if there is no pool for this connection (yet)
+   */
+  public static ConnectionPoolStatistics getPoolStatistics( DatabaseMeta dbMeta, String partitionId ) {
+    return poolStatistics.get( getDataSourceName( dbMeta, partitionId ) );
+  }
+
+  /**
+   * Returns the provider used to create new connection pools. Unless one was set explicitly, this is the connection
+   * pool provider plugin with the ID given in the KETTLE_CONNECTION_POOL_PROVIDER variable, DBCP by default.
+   *
+   * @return the connection pool provider
+   * @throws KettleDatabaseException in case the configured provider can't be found or loaded
+   */
+  public static ConnectionPoolProviderInterface getConnectionPoolProvider() throws KettleDatabaseException {
+    ConnectionPoolProviderInterface provider = connectionPoolProvider;
+    if ( provider == null ) {
+      String pluginId = Const.NVL( EnvUtil.getSystemProperty( Const.KETTLE_CONNECTION_POOL_PROVIDER ),
+        DEFAULT_CONNECTION_POOL_PROVIDER ).trim();
+      PluginRegistry registry = PluginRegistry.getInstance();
+      PluginInterface plugin = registry.findPluginWithId( ConnectionPoolProviderPluginType.class, pluginId );
+      if ( plugin != null ) {
+        try {
+          provider = registry.loadClass( plugin, ConnectionPoolProviderInterface.class );
+        } catch ( KettlePluginException e ) {
+          throw new KettleDatabaseException( BaseMessages.getString( PKG,
+              "Database.UnableToLoadConnectionPoolProvider.Exception", pluginId ), e );
+        }
+      } else if ( DEFAULT_CONNECTION_POOL_PROVIDER.equals( pluginId ) ) {
+        // The plugin types were not registered, e.g. when the client environment isn't initialized
+        //
+        provider = new DbcpConnectionPoolProvider();
+      } else {
+        throw new KettleDatabaseException( BaseMessages.getString( PKG,
+            "Database.UnableToFindConnectionPoolProvider.Exception", pluginId ) );
+      }
+      connectionPoolProvider = provider;
+    }
+    return provider;
+  }
+
+  /**
+   * Sets the provider used to create new connection pools, the existing pools are not affected.
+   *
+   * @param provider the connection pool provider or null to use the configured default again
+   */
+  public static void setConnectionPoolProvider( ConnectionPoolProviderInterface provider ) {
+    connectionPoolProvider = provider;
   }
 
   // BACKLOG-674
@@ -119,6 +209,18 @@ public class ConnectionPoolUtil {
     return name + username + password + preferredSchema + database + hostname + port + initialPoolSize + maximumPoolSize + Const.NVL( partitionId, "" );
   }
 
+  /**
+   * Returns the connection pooling parameters of a database connection with the variables resolved, for the connection
+   * pool providers.
+   *
+   * @param databaseMeta the database connection
+   * @return the connection pooling parameters, see the constants of this class for their names
+   */
+  public static Properties getPoolingProperties( DatabaseMeta databaseMeta ) {
+    Properties connectionPoolProperties = new Properties( databaseMeta.getConnectionPoolingProperties() );
+    return environmentSubstitute( connectionPoolProperties, databaseMeta );
+  }
+
   /**
    * Replace Kettle variables/parameters with its values
    *
@@ -136,13 +238,21 @@ public class ConnectionPoolUtil {
     return properties;
   }
 
-  @VisibleForTesting
-  static void configureDataSource( BasicDataSource ds, DatabaseMeta databaseMeta, String partitionId,
+  /**
+   * Configures an Apache Commons DBCP data source for the database connection: URL, driver, credentials and the
+   * connection pooling parameters.
+   *
+   * @param ds           the data source to configure
+   * @param databaseMeta the database connection
+   * @param partitionId  the partition ID or null
+   * @param initialSize  the initial number of connections in the pool
+   * @param maximumSize  the maximum number of connections in the pool, zero or less for no limit
+   * @throws KettleDatabaseException in case the credentials can't be decrypted
+   */
+  public static void configureDataSource( BasicDataSource ds, DatabaseMeta databaseMeta, String partitionId,
       int initialSize, int maximumSize ) throws KettleDatabaseException {
     // substitute variables and populate pool properties; add credentials
-    Properties connectionPoolProperties = new Properties( databaseMeta.getConnectionPoolingProperties() );
-    connectionPoolProperties = environmentSubstitute( connectionPoolProperties, databaseMeta );
-    setPoolProperties( ds, connectionPoolProperties, initialSize, maximumSize );
+    setPoolProperties( ds, getPoolingProperties( databaseMeta ), initialSize, maximumSize );
     setCredentials( ds, databaseMeta, partitionId );
 
     // add url/driver class
@@ -169,7 +279,20 @@ public class ConnectionPoolUtil {
   @SuppressWarnings( "deprecation" )
   private static void setPoolProperties( BasicDataSource ds, Properties properties, int initialSize, int maxSize ) {
     ds.setInitialSize( initialSize );
-    ds.setMaxActive( maxSize );
+    if ( maxSize > 0 ) {
+      ds.setMaxActive( maxSize );
+    } else {
+      // No limit: keep all the connections that were opened for reuse as well
+      //
+      ds.setMaxActive( -1 );
+      ds.setMaxIdle( -1 );
+    }
+
+    // The prepared statements can be pooled for all connections at once, the connection property still wins
+    //
+    if ( "Y".equalsIgnoreCase( System.getProperty( Const.KETTLE_POOL_PREPARED_STATEMENTS ) ) ) {
+      ds.setPoolPreparedStatements( true );
+    }
 
     String value = properties.getProperty( DEFAULT_AUTO_COMMIT );
     if ( !Utils.isEmpty( value ) ) {
@@ -274,25 +397,35 @@ public class ConnectionPoolUtil {
   }
 
   /**
-   * This method verifies that it's possible to get connection fron a datasource
+   * Opens the initial connections of a new pool by borrowing them all at the same time and handing them back, so the
+   * steps get connections that are already open. At least one connection is opened to verify the pool.
    *
-   * @param ds
-   * @throws KettleDatabaseException
+   * @param ds          the data source of the pool
+   * @param initialSize the number of connections to open
+   * @param maximumSize the maximum number of connections in the pool, zero or less for no limit
+   * @throws KettleDatabaseException in case a connection can't be opened
    */
-  private static void testDataSource( DataSource ds ) throws KettleDatabaseException {
-    Connection conn = null;
+  private static void openInitialConnections( DataSource ds, int initialSize, int maximumSize )
+    throws KettleDatabaseException {
+    int nrConnections = Math.max( 1, maximumSize > 0 ? Math.min( initialSize, maximumSize ) : initialSize );
+    List<Connection> connections = new ArrayList<Connection>( nrConnections );
     try {
-      conn = ds.getConnection();
+      while ( connections.size() < nrConnections ) {
+        connections.add( ds.getConnection() );
+      }
     } catch ( Throwable e ) {
       throw new KettleDatabaseException( BaseMessages.getString( PKG,
           "Database.UnableToPreLoadConnectionToConnectionPool.Exception" ), e );
     } finally {
-      DatabaseUtil.closeSilently( conn );
+      for ( Connection connection : connections ) {
+        DatabaseUtil.closeSilently( connection );
+      }
     }
   }
 
   /**
-   * This methods adds a new data source to cache
+   * This methods adds a new data source to cache. The initial connections of the pool are opened right away, before
+   * the steps start asking for them.
    *
    * @param log
    * @param databaseMeta
@@ -307,12 +440,14 @@ public class ConnectionPoolUtil {
       log.logBasic( BaseMessages.getString( PKG, "Database.CreatingConnectionPool", databaseMeta.getName() ) );
     }
 
-    BasicDataSource ds = new BasicDataSource();
-    configureDataSource( ds, databaseMeta, partitionId, initialSize, maximumSize );
-    // check if datasource is valid
-    testDataSource( ds );
+    ConnectionPoolProviderInterface provider = getConnectionPoolProvider();
+    ConnectionPoolInterface pool = provider.createPool( databaseMeta, partitionId, initialSize, maximumSize );
+    DataSource ds = pool.getDataSource();
+    openInitialConnections( ds, initialSize, maximumSize );
     // register data source
-    dataSources.put( getDataSourceName( databaseMeta, partitionId ), ds );
+    String name = getDataSourceName( databaseMeta, partitionId );
+    poolStatistics.put( name, new ConnectionPoolStatistics( buildPoolName( databaseMeta, partitionId ), pool ) );
+    dataSources.put( name, ds );
 
     if ( log.isBasic() ) {
       log.logBasic( BaseMessages.getString( PKG, "Database.CreatedConnectionPool", databaseMeta.getName() ) );
@@ -136,6 +136,9 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
   private static final String DATA_SERVICES_PLUGIN_ID = "KettleThin";
 
   private int rowlimit;
+  private int fetchSize;
+  private boolean streamingQuery;
+  private boolean restoreAutoCommit;
   private int commitsize;
 
   private Connection connection;
@@ -320,6 +323,43 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     rowlimit = rows;
   }
 
+  /**
+   * Set the number of rows to fetch at once when reading the results of a query. If it is not set (0) the default fetch
+   * size of the database type is used.
+   *
+   * @param fetchSize
+   *          the number of rows to fetch at once
+   */
+  public void setFetchSize( int fetchSize ) {
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * @return the number of rows to fetch at once, 0 if the default of the database type is used
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * Indicate that the next queries can return large results. The rows are then streamed from the database as they
+   * arrive instead of being read into memory by the JDBC driver first: the database type decides on the fetch size
+   * and, if the driver needs a transaction for that, auto-commit is turned off while a query opened with SQL is read.
+   *
+   * @param streamingQuery
+   *          true to stream the rows of the queries
+   */
+  public void setStreamingQuery( boolean streamingQuery ) {
+    this.streamingQuery = streamingQuery;
+  }
+
+  /**
+   * @return true if the rows of the queries are streamed, see {@link #setStreamingQuery(boolean)}
+   */
+  public boolean isStreamingQuery() {
+    return streamingQuery;
+  }
+
   /**
    * @return Returns the prepStatementInsert.
    */
@@ -476,6 +516,15 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
             log.logError( "Unable to find pooled datasource by its name: " + name, e );
             throw e;
           }
+        } else if ( isUsingSharedConnectionPool( partitionId ) ) {
+          // The connections are kept open in a pool without a maximum size, shared by all the steps and
+          // transformations using the same connection settings.
+          //
+          this.connection =
+            ConnectionPoolUtil.getConnection( log, databaseMeta, partitionId, databaseMeta.getInitialPoolSize(), 0 );
+          if ( getConnection().getAutoCommit() != isAutoCommit() ) {
+            setAutoCommit( isAutoCommit() );
+          }
         } else {
           // using non-jndi and non-pooled connection -- just a simple JDBC
           connectUsingClass( databaseMeta.getDriverClass(), partitionId );
@@ -498,6 +547,16 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     }
   }
 
+  /**
+   * @param partitionId the partition ID in the cluster to connect to.
+   * @return true if KETTLE_SHARED_CONNECTION_POOL asks to take this connection without connection pooling from a
+   * shared pool. Connections to a partition keep connecting on their own, they use the credentials of the partition.
+   */
+  private boolean isUsingSharedConnectionPool( String partitionId ) {
+    return "Y".equalsIgnoreCase( System.getProperty( Const.KETTLE_SHARED_CONNECTION_POOL ) )
+      && !( databaseMeta.isPartitioned() && !Utils.isEmpty( partitionId ) );
+  }
+
   /**
    * Connect using the correct classname
    *
@@ -1104,6 +1163,31 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     }
   }
 
+  /**
+   * Sets the values of several rows, one after the other, in a multi-row statement.
+   *
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param rows
+   *          the rows
+   * @param ps
+   *          the prepared statement with the parameters of all the rows
+   * @throws KettleDatabaseException
+   */
+  public void setValues( RowMetaInterface rowMeta, List<Object[]> rows, PreparedStatement ps )
+    throws KettleDatabaseException {
+    int pos = 1;
+    for ( Object[] data : rows ) {
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        try {
+          setValue( ps, rowMeta.getValueMeta( i ), data[ i ], pos++ );
+        } catch ( KettleDatabaseException e ) {
+          throw new KettleDatabaseException( "offending row : " + rowMeta, e );
+        }
+      }
+    }
+  }
+
   /**
    * Sets the values of the preparedStatement pstmt.
    *
@@ -1231,6 +1315,36 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     return ins.toString();
   }
 
+  /**
+   * Generates an INSERT INTO ... VALUES ( ... ), ( ... ) statement to insert several rows at once. Check that the
+   * database supports these with {@link DatabaseMeta#getMaxMultiRowInsertRows(int)}.
+   *
+   * @param schemaName
+   *          the schema of the table
+   * @param tableName
+   *          the table to insert into
+   * @param fields
+   *          the fields to insert
+   * @param nrRows
+   *          the number of rows to insert with the statement
+   * @return the insert statement
+   */
+  public String getMultiRowInsertStatement( String schemaName, String tableName, RowMetaInterface fields,
+    int nrRows ) {
+    StringBuilder ins = new StringBuilder( getInsertStatement( schemaName, tableName, fields ) );
+    for ( int r = 1; r < nrRows; r++ ) {
+      ins.append( ", (" );
+      for ( int i = 0; i < fields.size(); i++ ) {
+        if ( i > 0 ) {
+          ins.append( ", " );
+        }
+        ins.append( " ?" );
+      }
+      ins.append( ')' );
+    }
+    return ins.toString();
+  }
+
   public void insertRow() throws KettleDatabaseException {
     insertRow( prepStatementInsert );
   }
@@ -1713,6 +1827,12 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     // Create a Statement
     try {
       log.snap( Metrics.METRIC_DATABASE_OPEN_QUERY_START, databaseMeta.getName() );
+      if ( streamingQuery && databaseMeta.isFetchSizeRequiringTransaction() && connection.getAutoCommit() ) {
+        // Without a transaction the driver reads the whole result into memory, closeQuery() turns auto-commit back on
+        //
+        connection.setAutoCommit( false );
+        restoreAutoCommit = true;
+      }
       if ( params != null ) {
         log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_START, databaseMeta.getName() );
         pstmt =
@@ -1724,9 +1844,11 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         setValues( params, data ); // set the dates etc!
         log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_STOP, databaseMeta.getName() );
 
-        if ( canWeSetFetchSize( pstmt ) ) {
+        if ( isStreamingFetch() ) {
+          pstmt.setFetchSize( databaseMeta.getStreamingFetchSize() );
+        } else if ( canWeSetFetchSize( pstmt ) ) {
           int maxRows = pstmt.getMaxRows();
-          int fs = Const.FETCH_SIZE <= maxRows ? maxRows : Const.FETCH_SIZE;
+          int fs = getFetchSize( maxRows );
           if ( databaseMeta.isMySQLVariant() ) {
             setMysqlFetchSize( pstmt, fs, maxRows );
           } else {
@@ -1747,8 +1869,10 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         log.snap( Metrics.METRIC_DATABASE_CREATE_SQL_START, databaseMeta.getName() );
         selStmt = connection.createStatement();
         log.snap( Metrics.METRIC_DATABASE_CREATE_SQL_STOP, databaseMeta.getName() );
-        if ( canWeSetFetchSize( selStmt ) ) {
-          int fs = Const.FETCH_SIZE <= selStmt.getMaxRows() ? selStmt.getMaxRows() : Const.FETCH_SIZE;
+        if ( isStreamingFetch() ) {
+          selStmt.setFetchSize( databaseMeta.getStreamingFetchSize() );
+        } else if ( canWeSetFetchSize( selStmt ) ) {
+          int fs = getFetchSize( selStmt.getMaxRows() );
           if ( databaseMeta.getDatabaseInterface().isMySQLVariant()
             && databaseMeta.isStreamingResults() ) {
             selStmt.setFetchSize( Integer.MIN_VALUE );
@@ -1773,8 +1897,10 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
       //
       rowMeta = getRowInfo( res.getMetaData(), databaseMeta.isMySQLVariant(), lazyConversion );
     } catch ( SQLException ex ) {
+      rollbackStreamingQuery();
       throw new KettleDatabaseException( "An error occurred executing SQL: " + Const.CR + sql, ex );
     } catch ( Exception e ) {
+      rollbackStreamingQuery();
       throw new KettleDatabaseException( "An error occurred executing SQL:" + Const.CR + sql, e );
     } finally {
       log.snap( Metrics.METRIC_DATABASE_OPEN_QUERY_STOP, databaseMeta.getName() );
@@ -1783,9 +1909,34 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     return res;
   }
 
+  /**
+   * Turns auto-commit back on when opening a streaming query failed after it was turned off, there will be no
+   * closeQuery() to do it. The transaction only contains the failed query so it is rolled back first.
+   */
+  private void rollbackStreamingQuery() {
+    if ( restoreAutoCommit ) {
+      restoreAutoCommit = false;
+      try {
+        connection.rollback();
+        connection.setAutoCommit( true );
+      } catch ( SQLException e ) {
+        log.logError( "Unable to turn auto-commit back on after the query failed", e );
+      }
+    }
+  }
+
+  /**
+   * @return true if the rows of the query are streamed using the special fetch size of the database type
+   */
+  private boolean isStreamingFetch() {
+    return streamingQuery && databaseMeta.isFetchSizeSupported() && databaseMeta.getStreamingFetchSize() != 0;
+  }
+
   private boolean canWeSetFetchSize( Statement statement ) throws SQLException {
     return databaseMeta.isFetchSizeSupported()
       && ( statement.getMaxRows() > 0
+      || fetchSize > 0
+      || databaseMeta.getDefaultFetchSize() > 0
       || databaseMeta.getDatabaseInterface() instanceof PostgreSQLDatabaseMeta
       || ( databaseMeta.isMySQLVariant() && databaseMeta.isStreamingResults() ) );
   }
@@ -1802,9 +1953,11 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
       setValues( params, data, ps ); // set the parameters!
       log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_STOP, databaseMeta.getName() );
 
-      if ( canWeSetFetchSize( ps ) ) {
+      if ( isStreamingFetch() ) {
+        ps.setFetchSize( databaseMeta.getStreamingFetchSize() );
+      } else if ( canWeSetFetchSize( ps ) ) {
         int maxRows = ps.getMaxRows();
-        int fs = Const.FETCH_SIZE <= maxRows ? maxRows : Const.FETCH_SIZE;
+        int fs = getFetchSize( maxRows );
         // mysql have some restriction on fetch size assignment
         if ( databaseMeta.isMySQLVariant() ) {
           setMysqlFetchSize( ps, fs, maxRows );
@@ -1843,6 +1996,18 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
     return res;
   }
 
+  /**
+   * @return the configured fetch size, the default of the database type or Const.FETCH_SIZE, whichever is set first.
+   *         Just like before, the maximum number of rows is used if it is larger.
+   */
+  private int getFetchSize( int maxRows ) {
+    int fs = fetchSize > 0 ? fetchSize : databaseMeta.getDefaultFetchSize();
+    if ( fs <= 0 ) {
+      fs = Const.FETCH_SIZE;
+    }
+    return fs <= maxRows ? maxRows : fs;
+  }
+
   void setMysqlFetchSize( PreparedStatement ps, int fs, int getMaxRows ) throws SQLException, KettleDatabaseException {
     if ( databaseMeta.isStreamingResults() && getDatabaseMetaData().getDriverMajorVersion() == 3 ) {
       ps.setFetchSize( Integer.MIN_VALUE );
@@ -2590,6 +2755,10 @@ public class Database implements VariableSpace, LoggingObjectInterface, Closeabl
         pstmt.close();
         pstmt = null;
       }
+      if ( restoreAutoCommit ) {
+        restoreAutoCommit = false;
+        connection.setAutoCommit( true );
+      }
     } catch ( SQLException ex ) {
       throw new KettleDatabaseException( "Couldn't close query: resultset or prepared statements", ex );
     }
@@ -374,6 +374,81 @@ public interface DatabaseInterface extends Cloneable {
    */
   boolean isFetchSizeSupported();
 
+  /**
+   * @return the number of rows the JDBC driver should fetch at once when reading query results or 0 to leave the
+   *         driver default alone.
+   */
+  default int getDefaultFetchSize() {
+    return 0;
+  }
+
+  /**
+   * @return the fetch size that makes the JDBC driver stream the rows of a large query result as they arrive instead of
+   *         reading the whole result into memory first, or 0 if the normal fetch size already does that.
+   */
+  default int getStreamingFetchSize() {
+    return 0;
+  }
+
+  /**
+   * @return true if the JDBC driver only honors the fetch size (with a cursor) when auto-commit is turned off.
+   *         Otherwise it reads the whole query result into memory.
+   */
+  default boolean isFetchSizeRequiringTransaction() {
+    return false;
+  }
+
+  /**
+   * @param nrColumns
+   *          the number of columns to insert
+   * @return the maximum number of rows in one INSERT INTO ... VALUES ( ... ), ( ... ) statement or 0 if the database
+   *         doesn't support inserting multiple rows with one statement.
+   */
+  default int getMaxMultiRowInsertRows( int nrColumns ) {
+    return 0;
+  }
+
+  /**
+   * Generates a statement that merges a number of rows into a table: the rows with a key that isn't in the table yet
+   * are inserted, the others are updated. The statement has a ? placeholder per column per row, row after row.
+   *
+   * @param schemaTable
+   *          the quoted schema-table combination
+   * @param columns
+   *          the quoted columns to insert, including the key columns
+   * @param keyColumns
+   *          the quoted key columns. Most databases need a primary key or unique index on them.
+   * @param updateColumns
+   *          the quoted columns to update if the key exists, never one of the key columns
+   * @param nrRows
+   *          the number of rows to merge with the statement
+   * @return the merge statement or null if the database can't merge several rows with one statement
+   */
+  default String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    return null;
+  }
+
+  /**
+   * @param nrColumns
+   *          the number of columns to merge
+   * @return the maximum number of rows in one statement generated by
+   *         {@link #getMultiRowMergeStatement(String, String[], String[], String[], int)}
+   */
+  default int getMaxMultiRowMergeRows( int nrColumns ) {
+    return getMaxMultiRowInsertRows( nrColumns );
+  }
+
+  /**
+   * @param nrParameters
+   *          the number of parameters per row
+   * @return the maximum number of rows to look up with one query that repeats a condition with the given number of
+   *         parameters for every row. Most JDBC drivers accept up to 32767 parameters in one statement.
+   */
+  default int getMaxQueryBatchRows( int nrParameters ) {
+    return Short.MAX_VALUE / Math.max( 1, nrParameters );
+  }
+
   /**
    * @return true if the database supports transactions.
    */
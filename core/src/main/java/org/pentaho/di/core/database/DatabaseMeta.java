@@ -1546,6 +1546,62 @@ public class DatabaseMeta extends SharedObjectBase implements Cloneable, XMLInte
     return databaseInterface.isFetchSizeSupported();
   }
 
+  /**
+   * @return the number of rows to fetch at once when reading query results, 0 means the JDBC driver default
+   */
+  public int getDefaultFetchSize() {
+    return databaseInterface.getDefaultFetchSize();
+  }
+
+  /**
+   * @return the fetch size to stream the rows of a large query result, 0 if the normal fetch size does that already
+   */
+  public int getStreamingFetchSize() {
+    return databaseInterface.getStreamingFetchSize();
+  }
+
+  /**
+   * @return true if the JDBC driver only honors the fetch size when auto-commit is turned off
+   */
+  public boolean isFetchSizeRequiringTransaction() {
+    return databaseInterface.isFetchSizeRequiringTransaction();
+  }
+
+  /**
+   * @param nrColumns
+   *          the number of columns to insert
+   * @return the maximum number of rows in one multi-row insert statement, 0 if these are not supported
+   */
+  public int getMaxMultiRowInsertRows( int nrColumns ) {
+    return databaseInterface.getMaxMultiRowInsertRows( nrColumns );
+  }
+
+  /**
+   * @see DatabaseInterface#getMultiRowMergeStatement(String, String[], String[], String[], int)
+   */
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    return databaseInterface.getMultiRowMergeStatement( schemaTable, columns, keyColumns, updateColumns, nrRows );
+  }
+
+  /**
+   * @param nrColumns
+   *          the number of columns to merge
+   * @return the maximum number of rows in one multi-row merge statement or 0 if the database doesn't support these.
+   */
+  public int getMaxMultiRowMergeRows( int nrColumns ) {
+    return databaseInterface.getMaxMultiRowMergeRows( nrColumns );
+  }
+
+  /**
+   * @param nrParameters
+   *          the number of parameters per row
+   * @return the maximum number of rows to look up with one query that has the given number of parameters per row
+   */
+  public int getMaxQueryBatchRows( int nrParameters ) {
+    return databaseInterface.getMaxQueryBatchRows( nrParameters );
+  }
+
   /**
    * Indicates the need to insert a placeholder (0) for auto increment fields.
    *
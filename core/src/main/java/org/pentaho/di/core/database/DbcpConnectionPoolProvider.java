@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+
+/**
+ * The default connection pool provider, based on the Apache Commons DBCP {@link BasicDataSource}.
+ *
+ * @since 9.1
+ */
+@ConnectionPoolProviderPlugin( id = "DBCP", name = "Apache Commons DBCP",
+  description = "Connection pools based on Apache Commons DBCP" )
+public class DbcpConnectionPoolProvider implements ConnectionPoolProviderInterface {
+
+  @Override
+  public ConnectionPoolInterface createPool( DatabaseMeta databaseMeta, String partitionId, int initialSize,
+    int maximumSize ) throws KettleDatabaseException {
+    BasicDataSource ds = new BasicDataSource();
+    ConnectionPoolUtil.configureDataSource( ds, databaseMeta, partitionId, initialSize, maximumSize );
+    return new DbcpConnectionPool( ds );
+  }
+
+  private static class DbcpConnectionPool implements ConnectionPoolInterface {
+    private final BasicDataSource dataSource;
+
+    DbcpConnectionPool( BasicDataSource dataSource ) {
+      this.dataSource = dataSource;
+    }
+
+    @Override
+    public DataSource getDataSource() {
+      return dataSource;
+    }
+
+    @Override
+    public int getNumActive() {
+      return dataSource.getNumActive();
+    }
+
+    @Override
+    public int getNumIdle() {
+      return dataSource.getNumIdle();
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -111,6 +111,28 @@ public class H2DatabaseMeta extends BaseDatabaseMeta implements DatabaseInterfac
     return false;
   }
 
+  @Override
+  public int getMaxMultiRowInsertRows( int nrColumns ) {
+    return nrColumns > 0 ? Short.MAX_VALUE / nrColumns : 0;
+  }
+
+  /**
+   * MERGE ... KEY updates all the columns of an existing row, so it can only be used if all the columns besides the
+   * keys need to be updated.
+   */
+  @Override
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    if ( updateColumns.length != columns.length - keyColumns.length ) {
+      return null;
+    }
+    StringBuilder sql = new StringBuilder( "MERGE INTO " ).append( schemaTable );
+    sql.append( " (" ).append( String.join( ", ", columns ) ).append( ")" );
+    sql.append( " KEY (" ).append( String.join( ", ", keyColumns ) ).append( ") " );
+    sql.append( getMultiRowValues( columns.length, nrRows ) );
+    return sql.toString();
+  }
+
   @Override
   public boolean supportsAutoInc() {
     return true;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -100,6 +100,56 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
     return false;
   }
 
+  /**
+   * A VALUES clause can hold at most 1000 rows and a statement can have at most 2100 parameters.
+   */
+  @Override
+  public int getMaxMultiRowInsertRows( int nrColumns ) {
+    return nrColumns > 0 ? Math.min( 1000, 2099 / nrColumns ) : 0;
+  }
+
+  /**
+   * A statement can have at most 2100 parameters.
+   */
+  @Override
+  public int getMaxQueryBatchRows( int nrParameters ) {
+    return 2099 / Math.max( 1, nrParameters );
+  }
+
+  @Override
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    StringBuilder sql = new StringBuilder( "MERGE INTO " ).append( schemaTable ).append( " AS kettle_target USING (" );
+    sql.append( getMultiRowValues( columns.length, nrRows ) );
+    sql.append( ") AS kettle_source (" ).append( String.join( ", ", columns ) ).append( ") ON " );
+    for ( int i = 0; i < keyColumns.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( " AND " );
+      }
+      sql.append( "kettle_target." ).append( keyColumns[i] ).append( " = kettle_source." ).append( keyColumns[i] );
+    }
+    if ( updateColumns.length > 0 ) {
+      sql.append( " WHEN MATCHED THEN UPDATE SET " );
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateColumns[i] ).append( " = kettle_source." ).append( updateColumns[i] );
+      }
+    }
+    sql.append( " WHEN NOT MATCHED THEN INSERT (" ).append( String.join( ", ", columns ) ).append( ") VALUES (" );
+    for ( int i = 0; i < columns.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( "kettle_source." ).append( columns[i] );
+    }
+    // A MERGE statement needs to be terminated
+    //
+    sql.append( ");" );
+    return sql.toString();
+  }
+
   /**
    * @return true if the database supports synonyms
    */
@@ -176,6 +176,40 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
     return false;
   }
 
+  /**
+   * The protocol allows at most 65535 parameters per statement.
+   */
+  @Override
+  public int getMaxMultiRowInsertRows( int nrColumns ) {
+    return nrColumns > 0 ? 65535 / nrColumns : 0;
+  }
+
+  /**
+   * Uses INSERT ... ON DUPLICATE KEY UPDATE. MySQL matches the rows on any primary key or unique index, the key columns
+   * should have one.
+   */
+  @Override
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    StringBuilder sql = new StringBuilder( "INSERT INTO " ).append( schemaTable );
+    sql.append( " (" ).append( String.join( ", ", columns ) ).append( ") " );
+    sql.append( getMultiRowValues( columns.length, nrRows ) );
+    sql.append( " ON DUPLICATE KEY UPDATE " );
+    if ( updateColumns.length == 0 ) {
+      // Nothing to update, assigning a key to itself leaves the existing row alone
+      //
+      sql.append( keyColumns[0] ).append( " = " ).append( keyColumns[0] );
+    } else {
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateColumns[i] ).append( " = VALUES(" ).append( updateColumns[i] ).append( ")" );
+      }
+    }
+    return sql.toString();
+  }
+
   /**
    * @return true if the database supports views
    */
@@ -489,6 +523,15 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
     return false;
   }
 
+  /**
+   * The driver reads the complete result into memory unless the fetch size is Integer.MIN_VALUE, in which case the
+   * rows are streamed one by one. This is only done if result streaming is enabled on the connection.
+   */
+  @Override
+  public int getStreamingFetchSize() {
+    return isStreamingResults() ? Integer.MIN_VALUE : 0;
+  }
+
   /**
    * @return true if Kettle can create a repository on this type of database.
    */
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -633,6 +633,68 @@ public class OracleDatabaseMeta extends BaseDatabaseMeta implements DatabaseInte
     return false;
   }
 
+  /**
+   * The Oracle driver fetches 10 rows per round trip by default, which makes reading large tables very slow.
+   */
+  @Override
+  public int getDefaultFetchSize() {
+    return 1000;
+  }
+
+  /**
+   * The rows to merge are selected from dual, a statement can have at most 65535 parameters.
+   */
+  @Override
+  public int getMaxMultiRowMergeRows( int nrColumns ) {
+    return nrColumns > 0 ? Math.min( 1000, 65535 / nrColumns ) : 0;
+  }
+
+  @Override
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    StringBuilder sql = new StringBuilder( "MERGE INTO " ).append( schemaTable ).append( " kettle_target USING ( " );
+    for ( int r = 0; r < nrRows; r++ ) {
+      sql.append( r == 0 ? "SELECT " : " UNION ALL SELECT " );
+      for ( int i = 0; i < columns.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( "?" );
+        if ( r == 0 ) {
+          sql.append( " " ).append( columns[i] );
+        }
+      }
+      sql.append( " FROM dual" );
+    }
+    sql.append( " ) kettle_source ON ( " );
+    for ( int i = 0; i < keyColumns.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( " AND " );
+      }
+      sql.append( "kettle_target." ).append( keyColumns[i] ).append( " = kettle_source." ).append( keyColumns[i] );
+    }
+    sql.append( " )" );
+    if ( updateColumns.length > 0 ) {
+      sql.append( " WHEN MATCHED THEN UPDATE SET " );
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( "kettle_target." ).append( updateColumns[i] ).append( " = kettle_source." )
+          .append( updateColumns[i] );
+      }
+    }
+    sql.append( " WHEN NOT MATCHED THEN INSERT ( " ).append( String.join( ", ", columns ) ).append( " ) VALUES ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( "kettle_source." ).append( columns[i] );
+    }
+    sql.append( " )" );
+    return sql.toString();
+  }
+
   /**
    * @return true if Kettle can create a repository on this type of database.
    */
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -92,6 +92,14 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
     return true;
   }
 
+  /**
+   * The driver only reads the rows with a cursor, fetch size rows at a time, when auto-commit is off.
+   */
+  @Override
+  public boolean isFetchSizeRequiringTransaction() {
+    return true;
+  }
+
   /**
    * @return true if the database supports bitmap indexes
    */
@@ -100,6 +108,38 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
     return false;
   }
 
+  /**
+   * The protocol allows at most 32767 parameters per statement.
+   */
+  @Override
+  public int getMaxMultiRowInsertRows( int nrColumns ) {
+    return nrColumns > 0 ? Short.MAX_VALUE / nrColumns : 0;
+  }
+
+  /**
+   * Uses INSERT ... ON CONFLICT, available since PostgreSQL 9.5. The key columns need a unique index or constraint.
+   */
+  @Override
+  public String getMultiRowMergeStatement( String schemaTable, String[] columns, String[] keyColumns,
+    String[] updateColumns, int nrRows ) {
+    StringBuilder sql = new StringBuilder( "INSERT INTO " ).append( schemaTable );
+    sql.append( " (" ).append( String.join( ", ", columns ) ).append( ") " );
+    sql.append( getMultiRowValues( columns.length, nrRows ) );
+    sql.append( " ON CONFLICT (" ).append( String.join( ", ", keyColumns ) ).append( ") DO " );
+    if ( updateColumns.length == 0 ) {
+      sql.append( "NOTHING" );
+    } else {
+      sql.append( "UPDATE SET " );
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( updateColumns[i] ).append( " = EXCLUDED." ).append( updateColumns[i] );
+      }
+    }
+    return sql.toString();
+  }
+
   /**
    * @return true if the database supports synonyms
    */
@@ -245,4 +245,105 @@ public class SqlScriptParser {
 
     return result.toString();
   }
+
+  /**
+   * This method looks for the ORDER BY clause of one query: an ORDER BY outside of comments, string literals and
+   * parentheses.
+   *
+   * @param statement a string representing the query to parse
+   * @return the position of the ORDER BY clause or -1 if the query has none
+   */
+  public int indexOfOrderBy( String statement ) {
+    if ( statement == null ) {
+      return -1;
+    }
+    int result = -1;
+
+    MODE mode = MODE.SQL;
+
+    char currentStringChar = 0;
+    int depth = 0;
+
+    for ( int i = 0; i < statement.length(); i++ ) {
+      char ch = statement.charAt( i );
+      char nextCh = i < statement.length() - 1 ? statement.charAt( i + 1 ) : 0;
+      switch ( mode ) {
+        case SQL:
+          switch ( ch ) {
+            case '/':
+              if ( nextCh == '*' ) {
+                mode = MODE.BLOCK_COMMENT;
+                i++;
+              }
+              break;
+            case '-':
+              if ( nextCh == '-' ) {
+                mode = MODE.LINE_COMMENT;
+                i++;
+              }
+              break;
+            case '\'':
+            case '"':
+              mode = MODE.STRING;
+              currentStringChar = ch;
+              break;
+            case '(':
+              depth++;
+              break;
+            case ')':
+              depth--;
+              break;
+            default:
+              if ( depth == 0 && isOrderBy( statement, i ) ) {
+                result = i;
+              }
+              break;
+          }
+          break;
+        case BLOCK_COMMENT:
+          if ( ch == '*' ) {
+            if ( nextCh == '/' ) {
+              mode = MODE.SQL;
+              i++;
+            }
+          }
+          break;
+        case LINE_COMMENT:
+          if ( ch == '\n' || ch == '\r' ) {
+            mode = MODE.SQL;
+          }
+          break;
+        case STRING:
+          if ( ch == '\\'
+            && ( nextCh == '\\' || ( nextCh == currentStringChar && usingBackslashAsEscapeCharForQuotation ) ) ) {
+            // An escaped backslash or quote character
+            //
+            i++;
+          } else if ( ch == currentStringChar ) {
+            mode = MODE.SQL;
+          }
+          break;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isOrderBy( String statement, int i ) {
+    if ( i > 0 && isIdentifierPart( statement.charAt( i - 1 ) ) || !statement.regionMatches( true, i, "ORDER", 0, 5 ) ) {
+      return false;
+    }
+    int j = i + 5;
+    if ( j >= statement.length() || !Character.isWhitespace( statement.charAt( j ) ) ) {
+      return false;
+    }
+    while ( j < statement.length() && Character.isWhitespace( statement.charAt( j ) ) ) {
+      j++;
+    }
+    return statement.regionMatches( true, j, "BY", 0, 2 )
+      && ( j + 2 == statement.length() || !isIdentifierPart( statement.charAt( j + 2 ) ) );
+  }
+
+  private static boolean isIdentifierPart( char ch ) {
+    return Character.isLetterOrDigit( ch ) || ch == '_' || ch == '$' || ch == '#';
+  }
 }
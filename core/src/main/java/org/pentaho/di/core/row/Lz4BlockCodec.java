@@ -0,0 +1,223 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressor and decompressor for the LZ4 block format. The compressor is the simple greedy single-pass variant: it
+ * trades some compression ratio for speed, the output can be read by any LZ4 block decompressor.
+ */
+final class Lz4BlockCodec {
+
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 65535;
+
+  /**
+   * The last 5 bytes of a block are always literals.
+   */
+  private static final int LAST_LITERALS = 5;
+
+  /**
+   * The last match has to start at least 12 bytes before the end of the block.
+   */
+  private static final int MF_LIMIT = 12;
+
+  private static final int HASH_LOG = 16;
+
+  private final int[] hashTable = new int[ 1 << HASH_LOG ];
+
+  /**
+   * @return the maximum size of the compressed form of length bytes
+   */
+  static int maxCompressedLength( int length ) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compresses the first length bytes of src.
+   *
+   * @param dest
+   *          the buffer to compress to, at least maxCompressedLength(length) bytes long
+   * @return the length of the compressed data
+   */
+  int compress( byte[] src, int length, byte[] dest ) {
+    int anchor = 0;
+    int op = 0;
+
+    if ( length > MF_LIMIT ) {
+      Arrays.fill( hashTable, -1 );
+      int limit = length - MF_LIMIT;
+      int matchLimit = length - LAST_LITERALS;
+      int ip = 0;
+      while ( ip < limit ) {
+        int sequence = readInt( src, ip );
+        int hash = hash( sequence );
+        int ref = hashTable[ hash ];
+        hashTable[ hash ] = ip;
+        if ( ref < 0 || ip - ref > MAX_OFFSET || readInt( src, ref ) != sequence ) {
+          ip++;
+          continue;
+        }
+
+        // Extend the match backwards over the pending literals, then forwards
+        //
+        while ( ip > anchor && ref > 0 && src[ ip - 1 ] == src[ ref - 1 ] ) {
+          ip--;
+          ref--;
+        }
+        int matchLength = MIN_MATCH;
+        while ( ip + matchLength < matchLimit && src[ ref + matchLength ] == src[ ip + matchLength ] ) {
+          matchLength++;
+        }
+
+        op = writeSequence( src, anchor, ip - anchor, dest, op, ip - ref, matchLength );
+        ip += matchLength;
+        anchor = ip;
+      }
+    }
+
+    return writeSequence( src, anchor, length - anchor, dest, op, 0, 0 );
+  }
+
+  /**
+   * Writes the literals and, if matchLength > 0, the match of one sequence.
+   */
+  private static int writeSequence( byte[] src, int literalStart, int literalLength, byte[] dest, int op,
+    int offset, int matchLength ) {
+    int tokenIndex = op++;
+    int token = Math.min( literalLength, 15 ) << 4;
+    if ( literalLength >= 15 ) {
+      op = writeLength( dest, op, literalLength - 15 );
+    }
+    System.arraycopy( src, literalStart, dest, op, literalLength );
+    op += literalLength;
+
+    if ( matchLength > 0 ) {
+      dest[ op++ ] = (byte) offset;
+      dest[ op++ ] = (byte) ( offset >>> 8 );
+      int length = matchLength - MIN_MATCH;
+      token |= Math.min( length, 15 );
+      if ( length >= 15 ) {
+        op = writeLength( dest, op, length - 15 );
+      }
+    }
+    dest[ tokenIndex ] = (byte) token;
+    return op;
+  }
+
+  private static int writeLength( byte[] dest, int op, int length ) {
+    while ( length >= 255 ) {
+      dest[ op++ ] = (byte) 255;
+      length -= 255;
+    }
+    dest[ op++ ] = (byte) length;
+    return op;
+  }
+
+  /**
+   * Decompresses a block of compressed data.
+   *
+   * @param src
+   *          the compressed data
+   * @param length
+   *          the length of the compressed data
+   * @param dest
+   *          the buffer to decompress to
+   * @param destLength
+   *          the exact length of the decompressed data
+   * @throws IOException
+   *           in case the compressed data is corrupt
+   */
+  static void decompress( byte[] src, int length, byte[] dest, int destLength ) throws IOException {
+    try {
+      int ip = 0;
+      int op = 0;
+      while ( true ) {
+        int token = src[ ip++ ] & 0xFF;
+
+        int literalLength = token >>> 4;
+        if ( literalLength == 15 ) {
+          int b;
+          do {
+            b = src[ ip++ ] & 0xFF;
+            literalLength += b;
+          } while ( b == 255 );
+        }
+        if ( op + literalLength > destLength ) {
+          throw new IOException( "Corrupt LZ4 block: too many literals" );
+        }
+        System.arraycopy( src, ip, dest, op, literalLength );
+        ip += literalLength;
+        op += literalLength;
+
+        if ( ip >= length ) {
+          break; // the last sequence has no match
+        }
+
+        int offset = ( src[ ip ] & 0xFF ) | ( ( src[ ip + 1 ] & 0xFF ) << 8 );
+        ip += 2;
+        int matchLength = token & 0x0F;
+        if ( matchLength == 15 ) {
+          int b;
+          do {
+            b = src[ ip++ ] & 0xFF;
+            matchLength += b;
+          } while ( b == 255 );
+        }
+        matchLength += MIN_MATCH;
+
+        int ref = op - offset;
+        if ( offset == 0 || ref < 0 || op + matchLength > destLength ) {
+          throw new IOException( "Corrupt LZ4 block: invalid match" );
+        }
+        if ( offset >= matchLength ) {
+          System.arraycopy( dest, ref, dest, op, matchLength );
+          op += matchLength;
+        } else {
+          // Overlapping match: copy byte by byte to repeat the pattern
+          //
+          for ( int i = 0; i < matchLength; i++ ) {
+            dest[ op++ ] = dest[ ref++ ];
+          }
+        }
+      }
+      if ( op != destLength ) {
+        throw new IOException( "Corrupt LZ4 block: expected " + destLength + " bytes but got " + op );
+      }
+    } catch ( ArrayIndexOutOfBoundsException e ) {
+      throw new IOException( "Corrupt LZ4 block", e );
+    }
+  }
+
+  private static int readInt( byte[] buffer, int index ) {
+    return ( buffer[ index ] & 0xFF ) | ( ( buffer[ index + 1 ] & 0xFF ) << 8 ) | ( ( buffer[ index + 2 ] & 0xFF ) << 16 )
+      | ( ( buffer[ index + 3 ] & 0xFF ) << 24 );
+  }
+
+  private static int hash( int sequence ) {
+    return ( sequence * -1640531535 ) >>> ( 32 - HASH_LOG );
+  }
+}
@@ -0,0 +1,485 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * A batch of rows stored column by column. Integer and Number values (normal storage) are kept in primitive
+ * <code>long[]</code> and <code>double[]</code> arrays, Strings are dictionary encoded and all other values are kept as
+ * objects. Nulls are tracked in a bitmap per column.<br>
+ * <br>
+ * A batch is created on top of a list of rows (RowMetaInterface + Object[]), the columns are only extracted from the
+ * rows when they are asked for. Steps that can process a whole batch at once use this to avoid boxing and unboxing
+ * every single value. New (calculated) columns can be set on the batch and the rows can be rebuilt with
+ * {@link #toRows()}.
+ *
+ * @since 9.1
+ */
+public class RowBatch {
+
+  private final RowMetaInterface rowMeta;
+  private final List<Object[]> rows;
+  private final int size;
+  private final Column[] columns;
+
+  /**
+   * Create a batch on top of a list of rows. The rows are not copied, the columns are extracted on demand.
+   *
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param rows
+   *          the rows in the batch, these shouldn't be modified while the batch is in use
+   */
+  public RowBatch( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    this.rowMeta = rowMeta;
+    this.rows = rows;
+    this.size = rows.size();
+    this.columns = new Column[ rowMeta.size() ];
+  }
+
+  /**
+   * Create an empty batch with a fixed number of rows, all columns have to be set.
+   *
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param size
+   *          the number of rows in the batch
+   */
+  public RowBatch( RowMetaInterface rowMeta, int size ) {
+    this.rowMeta = rowMeta;
+    this.rows = null;
+    this.size = size;
+    this.columns = new Column[ rowMeta.size() ];
+  }
+
+  /**
+   * @return the metadata of the rows in this batch
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  /**
+   * @return the number of rows in this batch
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get a column of the batch, the values are extracted from the rows the first time a column is asked for.
+   *
+   * @param index
+   *          the index of the column in the row metadata
+   * @return the column
+   * @throws KettleValueException
+   *           in case a value can't be converted to the column type
+   */
+  public Column getColumn( int index ) throws KettleValueException {
+    Column column = columns[ index ];
+    if ( column == null ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( index );
+      column = newColumn( valueMeta, size );
+      if ( rows != null ) {
+        for ( int i = 0; i < size; i++ ) {
+          Object[] row = rows.get( i );
+          column.setValue( valueMeta, i, index < row.length ? row[ index ] : null );
+        }
+      }
+      columns[ index ] = column;
+    }
+    return column;
+  }
+
+  /**
+   * @param index
+   *          the index of an Integer column (normal storage)
+   * @return the column
+   * @throws KettleValueException
+   *           in case a value can't be converted to an Integer or the column isn't an Integer column
+   */
+  public LongColumn getLongColumn( int index ) throws KettleValueException {
+    return (LongColumn) checkColumn( getColumn( index ), LongColumn.class, index );
+  }
+
+  /**
+   * @param index
+   *          the index of a Number column (normal storage)
+   * @return the column
+   * @throws KettleValueException
+   *           in case a value can't be converted to a Number or the column isn't a Number column
+   */
+  public DoubleColumn getDoubleColumn( int index ) throws KettleValueException {
+    return (DoubleColumn) checkColumn( getColumn( index ), DoubleColumn.class, index );
+  }
+
+  /**
+   * @param index
+   *          the index of a String column (normal storage)
+   * @return the column
+   * @throws KettleValueException
+   *           in case a value can't be converted to a String or the column isn't a String column
+   */
+  public StringColumn getStringColumn( int index ) throws KettleValueException {
+    return (StringColumn) checkColumn( getColumn( index ), StringColumn.class, index );
+  }
+
+  private Column checkColumn( Column column, Class<? extends Column> columnClass, int index )
+    throws KettleValueException {
+    if ( !columnClass.isInstance( column ) ) {
+      throw new KettleValueException( "Column " + rowMeta.getValueMeta( index ).toStringMeta()
+        + " is not stored as a " + columnClass.getSimpleName() );
+    }
+    return column;
+  }
+
+  /**
+   * Replace a column in the batch, for example with calculated values.
+   *
+   * @param index
+   *          the index of the column in the row metadata
+   * @param column
+   *          the new column, it has to have the same size as the batch
+   */
+  public void setColumn( int index, Column column ) {
+    if ( column.size() != size ) {
+      throw new IllegalArgumentException( "The column has " + column.size() + " values, the batch " + size + " rows" );
+    }
+    columns[ index ] = column;
+  }
+
+  /**
+   * Build the rows of this batch. The values of the extracted or replaced columns are taken from the columns, the other
+   * values are copied from the original rows.
+   *
+   * @return a list of new rows
+   */
+  public List<Object[]> toRows() {
+    List<Object[]> result = new ArrayList<Object[]>( size );
+    int nrColumns = columns.length;
+    for ( int i = 0; i < size; i++ ) {
+      Object[] row = RowDataUtil.allocateRowData( nrColumns );
+      if ( rows != null ) {
+        Object[] source = rows.get( i );
+        System.arraycopy( source, 0, row, 0, Math.min( source.length, nrColumns ) );
+      }
+      result.add( row );
+    }
+    for ( int c = 0; c < nrColumns; c++ ) {
+      Column column = columns[ c ];
+      if ( column != null ) {
+        for ( int i = 0; i < size; i++ ) {
+          result.get( i )[ c ] = column.getObject( i );
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create a new empty column (all nulls) for the given value metadata.
+   *
+   * @param valueMeta
+   *          the value metadata
+   * @param size
+   *          the number of values in the column
+   * @return a LongColumn for Integers, a DoubleColumn for Numbers, a StringColumn for Strings (all with normal storage)
+   *         or an ObjectColumn for all other values
+   */
+  public static Column newColumn( ValueMetaInterface valueMeta, int size ) {
+    if ( valueMeta.getStorageType() == ValueMetaInterface.STORAGE_TYPE_NORMAL ) {
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          return new LongColumn( size );
+        case ValueMetaInterface.TYPE_NUMBER:
+          return new DoubleColumn( size );
+        case ValueMetaInterface.TYPE_STRING:
+          return new StringColumn( size );
+        default:
+          break;
+      }
+    }
+    return new ObjectColumn( size );
+  }
+
+  /**
+   * @param valueMeta
+   *          the value metadata
+   * @return true if the values are kept in a primitive array: Integers and Numbers with normal storage
+   */
+  public static boolean isPrimitive( ValueMetaInterface valueMeta ) {
+    return valueMeta.getStorageType() == ValueMetaInterface.STORAGE_TYPE_NORMAL
+      && ( valueMeta.getType() == ValueMetaInterface.TYPE_INTEGER
+      || valueMeta.getType() == ValueMetaInterface.TYPE_NUMBER );
+  }
+
+  /**
+   * The values of one field in a batch. A bitmap keeps track of the null values.
+   */
+  public abstract static class Column {
+    private final int size;
+    private final long[] nulls;
+
+    protected Column( int size ) {
+      this.size = size;
+      this.nulls = new long[ ( size + 63 ) >>> 6 ];
+      // All values are null until they are set
+      Arrays.fill( nulls, -1L );
+    }
+
+    /**
+     * @return the number of values in this column
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * @param row
+     *          the row number in the batch
+     * @return true if the value is null
+     */
+    public boolean isNull( int row ) {
+      return ( nulls[ row >>> 6 ] & ( 1L << row ) ) != 0;
+    }
+
+    /**
+     * Set a value to null
+     *
+     * @param row
+     *          the row number in the batch
+     */
+    public void setNull( int row ) {
+      nulls[ row >>> 6 ] |= 1L << row;
+    }
+
+    protected void setNotNull( int row ) {
+      nulls[ row >>> 6 ] &= ~( 1L << row );
+    }
+
+    /**
+     * @param row
+     *          the row number in the batch
+     * @return the value as it would be stored in a row
+     */
+    public abstract Object getObject( int row );
+
+    /**
+     * Set a value as it is stored in a row
+     *
+     * @param valueMeta
+     *          the metadata of the value
+     * @param row
+     *          the row number in the batch
+     * @param value
+     *          the value, null is allowed
+     * @throws KettleValueException
+     *           in case the value can't be converted to the type of the column
+     */
+    public abstract void setValue( ValueMetaInterface valueMeta, int row, Object value ) throws KettleValueException;
+  }
+
+  /**
+   * A column of Integer values
+   */
+  public static class LongColumn extends Column {
+    private final long[] values;
+
+    public LongColumn( int size ) {
+      super( size );
+      values = new long[ size ];
+    }
+
+    public long getLong( int row ) {
+      return values[ row ];
+    }
+
+    public void setLong( int row, long value ) {
+      values[ row ] = value;
+      setNotNull( row );
+    }
+
+    /**
+     * @return the values, the value of a null is undefined
+     */
+    public long[] getValues() {
+      return values;
+    }
+
+    @Override
+    public Object getObject( int row ) {
+      return isNull( row ) ? null : Long.valueOf( values[ row ] );
+    }
+
+    @Override
+    public void setValue( ValueMetaInterface valueMeta, int row, Object value ) throws KettleValueException {
+      if ( value == null ) {
+        setNull( row );
+      } else {
+        setLong( row, valueMeta.getInteger( value ).longValue() );
+      }
+    }
+  }
+
+  /**
+   * A column of Number values
+   */
+  public static class DoubleColumn extends Column {
+    private final double[] values;
+
+    public DoubleColumn( int size ) {
+      super( size );
+      values = new double[ size ];
+    }
+
+    public double getDouble( int row ) {
+      return values[ row ];
+    }
+
+    public void setDouble( int row, double value ) {
+      values[ row ] = value;
+      setNotNull( row );
+    }
+
+    /**
+     * @return the values, the value of a null is undefined
+     */
+    public double[] getValues() {
+      return values;
+    }
+
+    @Override
+    public Object getObject( int row ) {
+      return isNull( row ) ? null : Double.valueOf( values[ row ] );
+    }
+
+    @Override
+    public void setValue( ValueMetaInterface valueMeta, int row, Object value ) throws KettleValueException {
+      if ( value == null ) {
+        setNull( row );
+      } else {
+        setDouble( row, valueMeta.getNumber( value ).doubleValue() );
+      }
+    }
+  }
+
+  /**
+   * A column of dictionary encoded String values: every distinct String is stored only once and every row refers to it
+   * with an integer code.
+   */
+  public static class StringColumn extends Column {
+    private final int[] codes;
+    private final List<String> dictionary;
+    private final Map<String, Integer> lookup;
+
+    public StringColumn( int size ) {
+      super( size );
+      codes = new int[ size ];
+      dictionary = new ArrayList<String>();
+      lookup = new HashMap<String, Integer>();
+    }
+
+    /**
+     * @param row
+     *          the row number in the batch
+     * @return the code of the String in the dictionary, undefined for nulls
+     */
+    public int getCode( int row ) {
+      return codes[ row ];
+    }
+
+    /**
+     * @return the distinct Strings of this column, indexed by code
+     */
+    public List<String> getDictionary() {
+      return dictionary;
+    }
+
+    public String getString( int row ) {
+      return isNull( row ) ? null : dictionary.get( codes[ row ] );
+    }
+
+    public void setString( int row, String value ) {
+      if ( value == null ) {
+        setNull( row );
+        return;
+      }
+      Integer code = lookup.get( value );
+      if ( code == null ) {
+        code = dictionary.size();
+        dictionary.add( value );
+        lookup.put( value, code );
+      }
+      codes[ row ] = code;
+      setNotNull( row );
+    }
+
+    @Override
+    public Object getObject( int row ) {
+      return getString( row );
+    }
+
+    @Override
+    public void setValue( ValueMetaInterface valueMeta, int row, Object value ) throws KettleValueException {
+      setString( row, value == null ? null : valueMeta.getString( value ) );
+    }
+  }
+
+  /**
+   * A column of values of any other type, these are kept as they are stored in the rows.
+   */
+  public static class ObjectColumn extends Column {
+    private final Object[] values;
+
+    public ObjectColumn( int size ) {
+      super( size );
+      values = new Object[ size ];
+    }
+
+    @Override
+    public Object getObject( int row ) {
+      return values[ row ];
+    }
+
+    public void setObject( int row, Object value ) {
+      values[ row ] = value;
+      if ( value == null ) {
+        setNull( row );
+      } else {
+        setNotNull( row );
+      }
+    }
+
+    @Override
+    public void setValue( ValueMetaInterface valueMeta, int row, Object value ) {
+      setObject( row, value );
+    }
+  }
+}
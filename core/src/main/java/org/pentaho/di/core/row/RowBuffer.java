@@ -22,9 +22,13 @@
 
 package org.pentaho.di.core.row;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pentaho.di.core.exception.KettleFileException;
+
 /**
  * This class contains a list of data rows as well as the RowMetaInterface to describe it.
  *
@@ -80,4 +84,41 @@ public class RowBuffer {
   public void setBuffer( List<Object[]> buffer ) {
     this.buffer = buffer;
   }
+
+  /**
+   * Writes all the rows in the buffer to a stream in the spill file format and closes the stream.
+   *
+   * @param outputStream
+   *          the stream to write to
+   * @param compression
+   *          the compression of the blocks in the file
+   * @throws KettleFileException
+   *           in case the rows can't be written
+   */
+  public void writeRows( OutputStream outputStream, RowSpillCompression compression ) throws KettleFileException {
+    RowSpillWriter writer = new RowSpillWriter( outputStream, rowMeta, compression );
+    for ( Object[] row : buffer ) {
+      writer.writeRow( row );
+    }
+    writer.close();
+  }
+
+  /**
+   * Reads all the rows from a stream in the spill file format, adds them to the buffer and closes the stream.
+   *
+   * @param inputStream
+   *          the stream to read from
+   * @throws KettleFileException
+   *           in case the rows can't be read
+   */
+  public void readRows( InputStream inputStream ) throws KettleFileException {
+    RowSpillReader reader = new RowSpillReader( inputStream, rowMeta );
+    try {
+      for ( Object[] row = reader.readRow(); row != null; row = reader.readRow() ) {
+        buffer.add( row );
+      }
+    } finally {
+      reader.close();
+    }
+  }
 }
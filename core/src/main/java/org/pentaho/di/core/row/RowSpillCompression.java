@@ -0,0 +1,92 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import org.pentaho.di.core.util.Utils;
+
+/**
+ * The compression of the blocks in a row spill file.
+ *
+ * @see RowSpillWriter
+ * @since 9.1
+ */
+public enum RowSpillCompression {
+
+  /**
+   * The blocks are stored as they are.
+   */
+  NONE( 0 ),
+
+  /**
+   * The blocks are compressed in the LZ4 block format: fast, with a moderate compression ratio.
+   */
+  LZ4( 1 ),
+
+  /**
+   * The blocks are deflated at the fastest level: slower than LZ4 but smaller files.
+   */
+  DEFLATE( 2 );
+
+  private final int id;
+
+  private RowSpillCompression( int id ) {
+    this.id = id;
+  }
+
+  /**
+   * @return the identifier of the compression in a spill file header
+   */
+  public int getId() {
+    return id;
+  }
+
+  public static RowSpillCompression getCompression( int id ) {
+    for ( RowSpillCompression compression : values() ) {
+      if ( compression.id == id ) {
+        return compression;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Looks up a compression by name, ignoring case.
+   *
+   * @param name
+   *          the name of the compression, e.g. the value of the KETTLE_SPILL_COMPRESSION variable
+   * @param defaultCompression
+   *          the compression to use if the name is empty or unknown
+   * @return the compression
+   */
+  public static RowSpillCompression getCompression( String name, RowSpillCompression defaultCompression ) {
+    if ( !Utils.isEmpty( name ) ) {
+      for ( RowSpillCompression compression : values() ) {
+        if ( compression.name().equalsIgnoreCase( name.trim() ) ) {
+          return compression;
+        }
+      }
+    }
+    return defaultCompression;
+  }
+}
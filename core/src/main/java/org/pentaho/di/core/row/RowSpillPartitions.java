@@ -0,0 +1,234 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+
+/**
+ * The temporary files of a hash partitioned structure that spills to disk one partition at a time (grace hash
+ * partitioning), like the hash table of the Stream Lookup step.<br>
+ * <br>
+ * Every level of partitioning uses the next {@link #PARTITION_BITS} bits of the hash, starting with the highest bits:
+ * a partition that still doesn't fit in memory when it's read back is partitioned again on the next bits. Every
+ * partition has at most one file per instance, written with a {@link RowSpillWriter} and read back with a
+ * {@link RowSpillReader}. A structure usually needs two instances, for example one for the rows of the build side and
+ * one for the rows of the probe side of a hash join.
+ *
+ * @since 9.1
+ */
+public class RowSpillPartitions {
+
+  public static final int PARTITION_BITS = 4;
+  public static final int NR_PARTITIONS = 1 << PARTITION_BITS;
+
+  /**
+   * Up to 32 files can be open at once on every level, keep the blocks small.
+   */
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final String prefix;
+  private final RowSpillCompression compression;
+
+  private final File[] files = new File[ NR_PARTITIONS ];
+  private final RowSpillWriter[] writers = new RowSpillWriter[ NR_PARTITIONS ];
+
+  /**
+   * @param directory
+   *          the directory of the temporary files or null for the default temporary directory
+   * @param prefix
+   *          the prefix of the names of the temporary files
+   * @param compression
+   *          the compression of the temporary files
+   */
+  public RowSpillPartitions( File directory, String prefix, RowSpillCompression compression ) {
+    this.directory = directory;
+    this.prefix = prefix;
+    this.compression = compression;
+  }
+
+  /**
+   * @param hashBits
+   *          the number of bits of the hash
+   * @return the deepest level of partitioning, the partitions on that level can't be spilled anymore
+   */
+  public static int getMaxLevel( int hashBits ) {
+    return hashBits / PARTITION_BITS - 1;
+  }
+
+  /**
+   * @return the partition of a 32 bit hash on a level of partitioning
+   */
+  public static int getPartition( int hash, int level ) {
+    return ( hash >>> ( 32 - PARTITION_BITS * ( level + 1 ) ) ) & ( NR_PARTITIONS - 1 );
+  }
+
+  /**
+   * @return the partition of a 64 bit hash on a level of partitioning
+   */
+  public static int getPartition( long hash, int level ) {
+    return (int) ( hash >>> ( 64 - PARTITION_BITS * ( level + 1 ) ) ) & ( NR_PARTITIONS - 1 );
+  }
+
+  /**
+   * @param sizes
+   *          the size in memory of every partition
+   * @return the largest partition that isn't spilled yet or -1 if there is nothing left in memory
+   */
+  public int getLargestPartition( long[] sizes ) {
+    int largest = -1;
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( files[ p ] == null && sizes[ p ] > 0 && ( largest < 0 || sizes[ p ] > sizes[ largest ] ) ) {
+        largest = p;
+      }
+    }
+    return largest;
+  }
+
+  /**
+   * @return true if the partition has a file
+   */
+  public boolean isSpilled( int p ) {
+    return files[ p ] != null;
+  }
+
+  /**
+   * @return the writer of the partition or null if the partition has no file or its file is closed
+   */
+  public RowSpillWriter getWriter( int p ) {
+    return writers[ p ];
+  }
+
+  /**
+   * Creates the file of a partition.
+   *
+   * @param p
+   *          the partition
+   * @param rowMeta
+   *          the metadata of the rows of the file
+   * @return the writer of the file
+   * @throws KettleException
+   *           in case the file can't be created
+   */
+  public RowSpillWriter createWriter( int p, RowMetaInterface rowMeta ) throws KettleException {
+    try {
+      files[ p ] = File.createTempFile( prefix, ".tmp", directory );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to create a temporary file in directory "
+        + ( directory == null ? System.getProperty( "java.io.tmpdir" ) : directory ), e );
+    }
+    try {
+      writers[ p ] = new RowSpillWriter( new FileOutputStream( files[ p ] ), rowMeta, compression, BLOCK_SIZE );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to open temporary file " + files[ p ], e );
+    }
+    return writers[ p ];
+  }
+
+  /**
+   * Flushes and closes all the files, that way the buffers of the writers are released before the partitions are read
+   * back.
+   *
+   * @throws KettleFileException
+   *           in case a file can't be written
+   */
+  public void closeWriters() throws KettleFileException {
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( writers[ p ] != null ) {
+        RowSpillWriter writer = writers[ p ];
+        writers[ p ] = null;
+        writer.close();
+      }
+    }
+  }
+
+  /**
+   * Opens the closed file of a partition.
+   *
+   * @param p
+   *          the partition
+   * @param rowMeta
+   *          the metadata of the rows of the file
+   * @return the reader of the file
+   * @throws KettleException
+   *           in case the file can't be opened
+   */
+  public RowSpillReader createReader( int p, RowMetaInterface rowMeta ) throws KettleException {
+    try {
+      return new RowSpillReader( new BufferedInputStream( new FileInputStream( files[ p ] ), BLOCK_SIZE ), rowMeta );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read temporary file " + files[ p ], e );
+    }
+  }
+
+  /**
+   * Deletes the file of a partition.
+   */
+  public void delete( int p ) {
+    if ( writers[ p ] != null ) {
+      try {
+        writers[ p ].close();
+      } catch ( KettleFileException e ) {
+        // Ignore, the file is deleted anyway
+      }
+      writers[ p ] = null;
+    }
+    if ( files[ p ] != null ) {
+      files[ p ].delete();
+      files[ p ] = null;
+    }
+  }
+
+  /**
+   * Deletes the files of all the partitions.
+   */
+  public void clear() {
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      delete( p );
+    }
+  }
+
+  /**
+   * A rough estimate of the memory used by the values of a row, to decide when to spill.
+   */
+  public static long estimateSize( Object[] row ) {
+    long size = 16L + 8L * row.length;
+    for ( Object value : row ) {
+      if ( value instanceof String ) {
+        size += 40L + 2L * ( (String) value ).length();
+      } else if ( value instanceof byte[] ) {
+        size += 16L + ( (byte[]) value ).length;
+      } else if ( value != null ) {
+        size += 24L;
+      }
+    }
+    return size;
+  }
+}
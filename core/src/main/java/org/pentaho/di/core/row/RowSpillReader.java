@@ -0,0 +1,348 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.exception.KettleFileException;
+
+/**
+ * Reads the rows back from a spill file written by a {@link RowSpillWriter}.
+ *
+ * @since 9.1
+ */
+public class RowSpillReader {
+
+  private final InputStream inputStream;
+  private final RowMetaInterface rowMeta;
+  private final RowSpillCompression compression;
+
+  private final byte[] frame = new byte[ 12 ];
+  private final byte[] nulls;
+  private final BlockInputStream block = new BlockInputStream();
+  private final DataInputStream blockData = new DataInputStream( block );
+  private int blockRows;
+  private boolean endOfFile;
+
+  private byte[] stored;
+  private Inflater inflater;
+
+  /**
+   * Creates a reader and reads the header of the file.
+   *
+   * @param inputStream
+   *          the stream to read from, it's closed when the reader is closed
+   * @param rowMeta
+   *          the metadata of the rows, the same as the one used to write the file
+   * @throws KettleFileException
+   *           in case the header can't be read or doesn't match the row metadata
+   */
+  public RowSpillReader( InputStream inputStream, RowMetaInterface rowMeta ) throws KettleFileException {
+    this.inputStream = inputStream;
+    this.rowMeta = rowMeta;
+    nulls = new byte[ ( rowMeta.size() + 7 ) / 8 ];
+
+    try {
+      DataInputStream header = new DataInputStream( inputStream );
+      if ( header.readInt() != RowSpillWriter.MAGIC ) {
+        throw new KettleFileException( "This is not a spill file" );
+      }
+      int version = header.readByte();
+      if ( version != RowSpillWriter.VERSION ) {
+        throw new KettleFileException( "Unsupported spill file version " + version );
+      }
+      int id = header.readByte();
+      compression = RowSpillCompression.getCompression( id );
+      if ( compression == null ) {
+        throw new KettleFileException( "Unknown spill file compression " + id );
+      }
+      int nrFields = header.readInt();
+      if ( nrFields != rowMeta.size() ) {
+        throw new KettleFileException( "The spill file contains rows with " + nrFields + " fields instead of "
+          + rowMeta.size() );
+      }
+      for ( int i = 0; i < nrFields; i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+        int type = header.readInt();
+        int storageType = header.readInt();
+        if ( type != valueMeta.getType() || storageType != valueMeta.getStorageType() ) {
+          throw new KettleFileException( "The spill file doesn't match field " + valueMeta.toStringMeta() );
+        }
+      }
+    } catch ( EOFException e ) {
+      throw new KettleEOFException( "End of file while reading the header of the spill file", e );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read the header of the spill file", e );
+    }
+  }
+
+  /**
+   * Reads the bytes written with {@link RowSpillWriter#writeBytes(byte[])} before the next row.
+   *
+   * @return the bytes or null if there are no more rows
+   * @throws KettleFileException
+   *           in case the file can't be read
+   */
+  public byte[] readBytes() throws KettleFileException {
+    if ( !nextBlock() ) {
+      return null;
+    }
+    try {
+      return readByteArray();
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read from the spill file", e );
+    }
+  }
+
+  /**
+   * Reads the next row.
+   *
+   * @return the row or null if there are no more rows
+   * @throws KettleFileException
+   *           in case the file can't be read
+   */
+  public Object[] readRow() throws KettleFileException {
+    if ( !nextBlock() ) {
+      return null;
+    }
+    int nrFields = rowMeta.size();
+    Object[] row = new Object[ nrFields ];
+    try {
+      blockData.readFully( nulls );
+      for ( int i = 0; i < nrFields; i++ ) {
+        if ( ( nulls[ i >> 3 ] & ( 1 << ( i & 7 ) ) ) == 0 ) {
+          row[ i ] = readValue( rowMeta.getValueMeta( i ) );
+        }
+      }
+    } catch ( KettleFileException e ) {
+      throw e;
+    } catch ( Exception e ) {
+      throw new KettleFileException( "Unable to read a row from the spill file", e );
+    }
+    blockRows--;
+    return row;
+  }
+
+  private Object readValue( ValueMetaInterface valueMeta ) throws Exception {
+    switch ( valueMeta.getStorageType() ) {
+      case ValueMetaInterface.STORAGE_TYPE_NORMAL:
+        switch ( valueMeta.getType() ) {
+          case ValueMetaInterface.TYPE_STRING:
+            return new String( readByteArray(), StandardCharsets.UTF_8 );
+          case ValueMetaInterface.TYPE_INTEGER:
+            return blockData.readLong();
+          case ValueMetaInterface.TYPE_NUMBER:
+            return blockData.readDouble();
+          case ValueMetaInterface.TYPE_DATE:
+            return new Date( blockData.readLong() );
+          case ValueMetaInterface.TYPE_BOOLEAN:
+            return blockData.readBoolean();
+          case ValueMetaInterface.TYPE_BIGNUMBER:
+            return new BigDecimal( new String( readByteArray(), StandardCharsets.UTF_8 ) );
+          case ValueMetaInterface.TYPE_BINARY:
+            return readByteArray();
+          default:
+            break;
+        }
+        break;
+      case ValueMetaInterface.STORAGE_TYPE_BINARY_STRING:
+        return readByteArray();
+      case ValueMetaInterface.STORAGE_TYPE_INDEXED:
+        return blockData.readInt();
+      default:
+        break;
+    }
+    return valueMeta.readData( blockData );
+  }
+
+  private byte[] readByteArray() throws IOException {
+    byte[] bytes = new byte[ blockData.readInt() ];
+    blockData.readFully( bytes );
+    return bytes;
+  }
+
+  /**
+   * Makes sure there is a block with rows left to read.
+   *
+   * @return false if the end of the file is reached
+   */
+  private boolean nextBlock() throws KettleFileException {
+    if ( blockRows > 0 ) {
+      return true;
+    }
+    if ( endOfFile ) {
+      return false;
+    }
+    try {
+      readFully( frame, 0, 4 );
+      int nrRows = getInt( 0 );
+      if ( nrRows <= 0 ) {
+        endOfFile = true;
+        return false;
+      }
+      readFully( frame, 4, 8 );
+      int length = getInt( 4 );
+      int storedLength = getInt( 8 );
+
+      byte[] data = block.buffer;
+      if ( data == null || data.length < length ) {
+        data = new byte[ length ];
+      }
+      if ( storedLength == length ) {
+        readFully( data, 0, length );
+      } else {
+        if ( stored == null || stored.length < storedLength ) {
+          stored = new byte[ storedLength ];
+        }
+        readFully( stored, 0, storedLength );
+        decompress( storedLength, data, length );
+      }
+      block.reset( data, length );
+      blockRows = nrRows;
+      return true;
+    } catch ( EOFException e ) {
+      throw new KettleEOFException( "Unexpected end of the spill file", e );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read a block from the spill file", e );
+    }
+  }
+
+  private void decompress( int storedLength, byte[] data, int length ) throws IOException {
+    switch ( compression ) {
+      case LZ4:
+        Lz4BlockCodec.decompress( stored, storedLength, data, length );
+        break;
+      case DEFLATE:
+        if ( inflater == null ) {
+          inflater = new Inflater( true );
+        }
+        inflater.reset();
+        inflater.setInput( stored, 0, storedLength );
+        try {
+          int count = 0;
+          while ( count < length && !inflater.finished() ) {
+            int inflated = inflater.inflate( data, count, length - count );
+            if ( inflated == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) ) {
+              break;
+            }
+            count += inflated;
+          }
+          if ( count != length ) {
+            throw new IOException( "Corrupt block in the spill file: expected " + length + " bytes but got " + count );
+          }
+        } catch ( DataFormatException e ) {
+          throw new IOException( "Corrupt block in the spill file", e );
+        }
+        break;
+      default:
+        throw new IOException( "Compressed block in an uncompressed spill file" );
+    }
+  }
+
+  private void readFully( byte[] buffer, int offset, int length ) throws IOException {
+    while ( length > 0 ) {
+      int read = inputStream.read( buffer, offset, length );
+      if ( read < 0 ) {
+        throw new EOFException();
+      }
+      offset += read;
+      length -= read;
+    }
+  }
+
+  private int getInt( int index ) {
+    return ( ( frame[ index ] & 0xFF ) << 24 ) | ( ( frame[ index + 1 ] & 0xFF ) << 16 )
+      | ( ( frame[ index + 2 ] & 0xFF ) << 8 ) | ( frame[ index + 3 ] & 0xFF );
+  }
+
+  /**
+   * Closes the input stream.
+   *
+   * @throws KettleFileException
+   *           in case the stream can't be closed
+   */
+  public void close() throws KettleFileException {
+    try {
+      inputStream.close();
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to close the spill file", e );
+    } finally {
+      if ( inflater != null ) {
+        inflater.end();
+        inflater = null;
+      }
+    }
+  }
+
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  public RowSpillCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * An input stream over a block without the synchronization of ByteArrayInputStream.
+   */
+  private static final class BlockInputStream extends InputStream {
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    void reset( byte[] buffer, int limit ) {
+      this.buffer = buffer;
+      this.limit = limit;
+      position = 0;
+    }
+
+    @Override
+    public int read() {
+      return position < limit ? buffer[ position++ ] & 0xFF : -1;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) {
+      if ( len == 0 ) {
+        return 0;
+      }
+      if ( position >= limit ) {
+        return -1;
+      }
+      int count = Math.min( len, limit - position );
+      System.arraycopy( buffer, position, b, off, count );
+      position += count;
+      return count;
+    }
+  }
+}
@@ -0,0 +1,370 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.Deflater;
+
+import org.pentaho.di.core.exception.KettleFileException;
+
+/**
+ * Writes rows to a temporary (spill) file in a compact block-framed format.<br>
+ * <br>
+ * The file starts with a header with the compression and the data types of the fields: the row metadata is only
+ * written once. The rows are then gathered in large blocks which are compressed as a whole. Within a block a row is a
+ * bitmap of the null values followed by the values that are not null, without the per-value null flags that
+ * {@link RowMetaInterface#writeData(DataOutputStream, Object[])} writes. The file ends with an empty block.<br>
+ * <br>
+ * Use {@link RowSpillReader} with the same row metadata to read the rows back.
+ *
+ * @since 9.1
+ */
+public class RowSpillWriter {
+
+  static final int MAGIC = 0x4B53504C; // KSPL
+  static final int VERSION = 1;
+
+  /**
+   * The default size of the blocks: 256KB
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+  private final OutputStream outputStream;
+  private final RowMetaInterface rowMeta;
+  private final RowSpillCompression compression;
+  private final int blockSize;
+
+  private final BlockOutputStream block;
+  private final DataOutputStream blockData;
+  private final byte[] nulls;
+  private final byte[] frame = new byte[ 12 ];
+  private int blockRows;
+
+  private byte[] compressed;
+  private Lz4BlockCodec lz4;
+  private Deflater deflater;
+
+  private long rowsWritten;
+
+  public RowSpillWriter( OutputStream outputStream, RowMetaInterface rowMeta, RowSpillCompression compression )
+    throws KettleFileException {
+    this( outputStream, rowMeta, compression, DEFAULT_BLOCK_SIZE );
+  }
+
+  /**
+   * Creates a writer and writes the header of the file.
+   *
+   * @param outputStream
+   *          the stream to write to, it's closed when the writer is closed
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param compression
+   *          the compression of the blocks
+   * @param blockSize
+   *          the size of the uncompressed blocks
+   * @throws KettleFileException
+   *           in case the header can't be written
+   */
+  public RowSpillWriter( OutputStream outputStream, RowMetaInterface rowMeta, RowSpillCompression compression,
+    int blockSize ) throws KettleFileException {
+    this.outputStream = outputStream;
+    this.rowMeta = rowMeta;
+    this.compression = compression == null ? RowSpillCompression.NONE : compression;
+    this.blockSize = Math.max( 1024, blockSize );
+
+    // A bit of headroom: a block is flushed after the row that fills it
+    //
+    block = new BlockOutputStream( this.blockSize + this.blockSize / 4 );
+    blockData = new DataOutputStream( block );
+    nulls = new byte[ ( rowMeta.size() + 7 ) / 8 ];
+
+    try {
+      DataOutputStream header = new DataOutputStream( block );
+      header.writeInt( MAGIC );
+      header.writeByte( VERSION );
+      header.writeByte( this.compression.getId() );
+      header.writeInt( rowMeta.size() );
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+        header.writeInt( valueMeta.getType() );
+        header.writeInt( valueMeta.getStorageType() );
+      }
+      outputStream.write( block.buffer, 0, block.count );
+      block.count = 0;
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write the header of the spill file", e );
+    }
+  }
+
+  /**
+   * Writes a number of bytes that belong to the next row, for example a sort key. The reader has to read them back
+   * with {@link RowSpillReader#readBytes()} before reading the row.
+   */
+  public void writeBytes( byte[] bytes ) throws KettleFileException {
+    try {
+      blockData.writeInt( bytes.length );
+      blockData.write( bytes );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write to the spill file", e );
+    }
+  }
+
+  /**
+   * Writes a row.
+   *
+   * @param row
+   *          the row to write, it has to match the row metadata of the writer
+   * @throws KettleFileException
+   *           in case the row can't be written
+   */
+  public void writeRow( Object[] row ) throws KettleFileException {
+    int nrFields = rowMeta.size();
+    try {
+      for ( int i = 0; i < nulls.length; i++ ) {
+        nulls[ i ] = 0;
+      }
+      for ( int i = 0; i < nrFields; i++ ) {
+        if ( row[ i ] == null ) {
+          nulls[ i >> 3 ] |= 1 << ( i & 7 );
+        }
+      }
+      blockData.write( nulls );
+
+      for ( int i = 0; i < nrFields; i++ ) {
+        Object object = row[ i ];
+        if ( object != null ) {
+          writeValue( rowMeta.getValueMeta( i ), object );
+        }
+      }
+    } catch ( ClassCastException e ) {
+      throw new KettleFileException( "There was a data type error while writing a row to the spill file", e );
+    } catch ( Exception e ) {
+      throw new KettleFileException( "Unable to write a row to the spill file", e );
+    }
+
+    blockRows++;
+    rowsWritten++;
+    if ( block.count >= blockSize ) {
+      flushBlock();
+    }
+  }
+
+  private void writeValue( ValueMetaInterface valueMeta, Object object ) throws Exception {
+    switch ( valueMeta.getStorageType() ) {
+      case ValueMetaInterface.STORAGE_TYPE_NORMAL:
+        switch ( valueMeta.getType() ) {
+          case ValueMetaInterface.TYPE_STRING:
+            writeByteArray( ( (String) object ).getBytes( StandardCharsets.UTF_8 ) );
+            return;
+          case ValueMetaInterface.TYPE_INTEGER:
+            blockData.writeLong( (Long) object );
+            return;
+          case ValueMetaInterface.TYPE_NUMBER:
+            blockData.writeDouble( (Double) object );
+            return;
+          case ValueMetaInterface.TYPE_DATE:
+            blockData.writeLong( ( (Date) object ).getTime() );
+            return;
+          case ValueMetaInterface.TYPE_BOOLEAN:
+            blockData.writeBoolean( (Boolean) object );
+            return;
+          case ValueMetaInterface.TYPE_BIGNUMBER:
+            writeByteArray( ( (BigDecimal) object ).toString().getBytes( StandardCharsets.UTF_8 ) );
+            return;
+          case ValueMetaInterface.TYPE_BINARY:
+            writeByteArray( (byte[]) object );
+            return;
+          default:
+            break;
+        }
+        break;
+      case ValueMetaInterface.STORAGE_TYPE_BINARY_STRING:
+        writeByteArray( (byte[]) object );
+        return;
+      case ValueMetaInterface.STORAGE_TYPE_INDEXED:
+        blockData.writeInt( (Integer) object );
+        return;
+      default:
+        break;
+    }
+
+    // All the other data types (timestamps, internet addresses, ...) serialize themselves
+    //
+    valueMeta.writeData( blockData, object );
+  }
+
+  private void writeByteArray( byte[] bytes ) throws IOException {
+    blockData.writeInt( bytes.length );
+    blockData.write( bytes );
+  }
+
+  /**
+   * Compresses and writes the current block, if there is one.
+   */
+  private void flushBlock() throws KettleFileException {
+    if ( blockRows == 0 ) {
+      return;
+    }
+    try {
+      int length = block.count;
+      byte[] data = block.buffer;
+      int storedLength = length;
+
+      if ( compression != RowSpillCompression.NONE ) {
+        int compressedLength = compress( length );
+        // Blocks that don't compress are stored as they are
+        //
+        if ( compressedLength < length ) {
+          data = compressed;
+          storedLength = compressedLength;
+        }
+      }
+
+      writeFrame( blockRows, length, storedLength );
+      outputStream.write( data, 0, storedLength );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to write a block to the spill file", e );
+    }
+    block.count = 0;
+    blockRows = 0;
+  }
+
+  private int compress( int length ) {
+    int maxLength = Lz4BlockCodec.maxCompressedLength( length );
+    if ( compressed == null || compressed.length < maxLength ) {
+      compressed = new byte[ maxLength ];
+    }
+    switch ( compression ) {
+      case LZ4:
+        if ( lz4 == null ) {
+          lz4 = new Lz4BlockCodec();
+        }
+        return lz4.compress( block.buffer, length, compressed );
+      case DEFLATE:
+        if ( deflater == null ) {
+          deflater = new Deflater( Deflater.BEST_SPEED, true );
+        }
+        deflater.reset();
+        deflater.setInput( block.buffer, 0, length );
+        deflater.finish();
+        int compressedLength = 0;
+        while ( !deflater.finished() && compressedLength < compressed.length ) {
+          compressedLength += deflater.deflate( compressed, compressedLength, compressed.length - compressedLength );
+        }
+        // Didn't fit: store the block as it is
+        //
+        return deflater.finished() ? compressedLength : length;
+      default:
+        return length;
+    }
+  }
+
+  /**
+   * Writes the header of a block: the number of rows, the uncompressed and the stored length.
+   */
+  private void writeFrame( int nrRows, int length, int storedLength ) throws IOException {
+    int[] values = { nrRows, length, storedLength };
+    for ( int i = 0; i < values.length; i++ ) {
+      frame[ i * 4 ] = (byte) ( values[ i ] >>> 24 );
+      frame[ i * 4 + 1 ] = (byte) ( values[ i ] >>> 16 );
+      frame[ i * 4 + 2 ] = (byte) ( values[ i ] >>> 8 );
+      frame[ i * 4 + 3 ] = (byte) values[ i ];
+    }
+    outputStream.write( frame, 0, nrRows == 0 ? 4 : frame.length );
+  }
+
+  /**
+   * Writes the last block and the end marker and closes the output stream.
+   *
+   * @throws KettleFileException
+   *           in case the file can't be written or closed
+   */
+  public void close() throws KettleFileException {
+    try {
+      flushBlock();
+      writeFrame( 0, 0, 0 );
+      outputStream.close();
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to close the spill file", e );
+    } finally {
+      if ( deflater != null ) {
+        deflater.end();
+        deflater = null;
+      }
+    }
+  }
+
+  /**
+   * @return the number of rows written so far
+   */
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  public RowSpillCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * A growing byte buffer without the synchronization of ByteArrayOutputStream.
+   */
+  private static final class BlockOutputStream extends OutputStream {
+    private byte[] buffer;
+    private int count;
+
+    BlockOutputStream( int size ) {
+      buffer = new byte[ size ];
+    }
+
+    private void ensureCapacity( int extra ) {
+      if ( count + extra > buffer.length ) {
+        byte[] bigger = new byte[ Math.max( buffer.length * 2, count + extra ) ];
+        System.arraycopy( buffer, 0, bigger, 0, count );
+        buffer = bigger;
+      }
+    }
+
+    @Override
+    public void write( int b ) {
+      ensureCapacity( 1 );
+      buffer[ count++ ] = (byte) b;
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) {
+      ensureCapacity( len );
+      System.arraycopy( b, off, buffer, count, len );
+      count += len;
+    }
+  }
+}
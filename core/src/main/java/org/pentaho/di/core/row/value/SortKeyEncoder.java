@@ -0,0 +1,208 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.value;
+
+import java.util.Arrays;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Encodes the key fields of a row into a binary sort key. Comparing two keys byte by byte (unsigned) gives the same
+ * result as {@link RowMetaInterface#compare(Object[], Object[], int[])} on the rows, so sorting and merging can compare
+ * byte arrays instead of dispatching through the value metadata for every field of every comparison.<br>
+ * <br>
+ * Every field starts with a null marker (nulls sort first). Integers and dates are written as big-endian longs with the
+ * sign bit flipped, numbers as their IEEE bits transformed to follow {@link Double#compare(double, double)}, booleans
+ * as a single byte and strings as UTF-16 code units in which zero bytes are escaped, followed by a terminator. The
+ * bytes of descending fields are inverted.<br>
+ * <br>
+ * Only fields of which the encoding is known to match the comparison are supported, see
+ * {@link #isSupported(RowMetaInterface, int[])}.
+ *
+ * @since 9.1
+ */
+public class SortKeyEncoder {
+  private final ValueMetaInterface[] valueMetas;
+  private final int[] fieldnrs;
+
+  private byte[] buffer;
+  private int length;
+
+  /**
+   * @param rowMeta
+   *          the metadata of the rows to encode
+   * @param fieldnrs
+   *          the indexes of the key fields
+   */
+  public SortKeyEncoder( RowMetaInterface rowMeta, int[] fieldnrs ) {
+    this.fieldnrs = fieldnrs;
+    valueMetas = new ValueMetaInterface[ fieldnrs.length ];
+    for ( int i = 0; i < fieldnrs.length; i++ ) {
+      valueMetas[ i ] = rowMeta.getValueMeta( fieldnrs[ i ] );
+    }
+    buffer = new byte[ 64 ];
+  }
+
+  /**
+   * Checks if sort keys can be encoded for the key fields: Strings (without collator), Integers, Numbers, Dates and
+   * Booleans are supported.
+   *
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param fieldnrs
+   *          the indexes of the key fields
+   * @return true if the key fields can be encoded
+   */
+  public static boolean isSupported( RowMetaInterface rowMeta, int[] fieldnrs ) {
+    for ( int fieldnr : fieldnrs ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( fieldnr );
+
+      // Only the plain value metadata of the supported types, subclasses and plugins can compare in their own way
+      //
+      Class<?> clazz = valueMeta.getClass();
+      if ( clazz != ValueMetaString.class && clazz != ValueMetaInteger.class && clazz != ValueMetaNumber.class
+        && clazz != ValueMetaDate.class && clazz != ValueMetaBoolean.class ) {
+        return false;
+      }
+      if ( ( (ValueMetaBase) valueMeta ).comparator != null ) {
+        return false;
+      }
+      if ( valueMeta.isString() && !valueMeta.isCollatorDisabled() ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Encodes the key of a row.
+   *
+   * @param row
+   *          the row
+   * @return the sort key of the row
+   * @throws KettleValueException
+   *           in case a key value can't be converted
+   */
+  public byte[] encode( Object[] row ) throws KettleValueException {
+    length = 0;
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      ValueMetaInterface valueMeta = valueMetas[ i ];
+      Object value = row[ fieldnrs[ i ] ];
+      int start = length;
+
+      if ( valueMeta.isNull( value ) ) {
+        writeByte( 0 );
+      } else {
+        writeByte( 1 );
+        switch ( valueMeta.getType() ) {
+          case ValueMetaInterface.TYPE_STRING:
+            writeString( valueMeta, valueMeta.getString( value ) );
+            break;
+          case ValueMetaInterface.TYPE_INTEGER:
+            writeLong( valueMeta.getInteger( value ) ^ Long.MIN_VALUE );
+            break;
+          case ValueMetaInterface.TYPE_NUMBER:
+            long bits = Double.doubleToLongBits( valueMeta.getNumber( value ) );
+            writeLong( bits < 0 ? ~bits : bits ^ Long.MIN_VALUE );
+            break;
+          case ValueMetaInterface.TYPE_DATE:
+            writeLong( valueMeta.getDate( value ).getTime() ^ Long.MIN_VALUE );
+            break;
+          case ValueMetaInterface.TYPE_BOOLEAN:
+            writeByte( valueMeta.getBoolean( value ) ? 1 : 0 );
+            break;
+          default:
+            throw new KettleValueException( valueMeta.toStringMeta() + " : Unable to encode a sort key for data type : "
+              + valueMeta.getType() );
+        }
+      }
+
+      // Every field encoding is self-delimiting so inverting its bytes reverses the order
+      //
+      if ( valueMeta.isSortedDescending() ) {
+        for ( int b = start; b < length; b++ ) {
+          buffer[ b ] = (byte) ~buffer[ b ];
+        }
+      }
+    }
+    return Arrays.copyOf( buffer, length );
+  }
+
+  /**
+   * Compares two sort keys byte by byte, unsigned.
+   *
+   * @return a negative number, zero or a positive number if the first key is smaller, equal or larger
+   */
+  public static int compare( byte[] key1, byte[] key2 ) {
+    int length = Math.min( key1.length, key2.length );
+    for ( int i = 0; i < length; i++ ) {
+      int cmp = ( key1[ i ] & 0xff ) - ( key2[ i ] & 0xff );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return key1.length - key2.length;
+  }
+
+  private void writeString( ValueMetaInterface valueMeta, String string ) {
+    if ( valueMeta.isIgnoreWhitespace() ) {
+      string = string.trim();
+    }
+    boolean caseInsensitive = valueMeta.isCaseInsensitive();
+    for ( int i = 0; i < string.length(); i++ ) {
+      char c = string.charAt( i );
+      if ( caseInsensitive ) {
+        // Same folding as String.compareToIgnoreCase()
+        c = Character.toLowerCase( Character.toUpperCase( c ) );
+      }
+      writeStringByte( c >>> 8 );
+      writeStringByte( c & 0xff );
+    }
+    // The terminator sorts before any escaped or regular byte: shorter strings come first
+    writeByte( 0 );
+    writeByte( 0 );
+  }
+
+  private void writeStringByte( int b ) {
+    writeByte( b );
+    if ( b == 0 ) {
+      writeByte( 0xff );
+    }
+  }
+
+  private void writeLong( long value ) {
+    for ( int shift = 56; shift >= 0; shift -= 8 ) {
+      writeByte( (int) ( value >>> shift ) );
+    }
+  }
+
+  private void writeByte( int b ) {
+    if ( length == buffer.length ) {
+      buffer = Arrays.copyOf( buffer, length * 2 );
+    }
+    buffer[ length++ ] = (byte) b;
+  }
+}
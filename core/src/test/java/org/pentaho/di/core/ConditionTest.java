@@ -22,15 +22,21 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.junit.rules.RestorePDIEnvironment;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -82,4 +88,62 @@ public class ConditionTest {
     condition = new Condition( left, Condition.FUNC_SMALLER_EQUAL, null, right_exact );
     assertFalse( condition.evaluate( rowMeta1, new Object[] { null, "test" } ) );
   }
+
+  @Test
+  public void testBatchEvaluationGivesSameResultAsRows() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "int1" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "int2" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num1" ) );
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    rows.add( new Object[] { 1L, 1L, 1.5 } );
+    rows.add( new Object[] { null, 1L, null } );
+    rows.add( new Object[] { 5L, null, -2.0 } );
+    rows.add( new Object[] { null, null, 0.0 } );
+    rows.add( new Object[] { -3L, 7L, Double.NaN } );
+
+    ValueMetaAndData ten = new ValueMetaAndData( new ValueMetaInteger( "ten" ), 10L );
+    ValueMetaAndData zero = new ValueMetaAndData( new ValueMetaNumber( "zero" ), 0.0 );
+
+    List<Condition> conditions = new ArrayList<Condition>();
+    for ( int function = Condition.FUNC_EQUAL; function <= Condition.FUNC_LARGER_EQUAL; function++ ) {
+      conditions.add( new Condition( "int1", function, "int2", null ) );
+      conditions.add( new Condition( "int1", function, null, ten ) );
+      conditions.add( new Condition( true, "num1", function, null, zero ) );
+    }
+    conditions.add( new Condition( "int1", Condition.FUNC_NULL, null, null ) );
+    conditions.add( new Condition( "num1", Condition.FUNC_NOT_NULL, null, null ) );
+    conditions.add( new Condition( "int1", Condition.FUNC_TRUE, null, null ) );
+
+    Condition composite = new Condition();
+    composite.addCondition( new Condition( "int1", Condition.FUNC_SMALLER, null, ten ) );
+    composite.addCondition( new Condition( Condition.OPERATOR_OR_NOT, "num1", Condition.FUNC_LARGER, null, zero ) );
+    composite.addCondition( new Condition( Condition.OPERATOR_XOR, "int2", Condition.FUNC_NULL, null, null ) );
+    composite.negate();
+    conditions.add( composite );
+
+    RowBatch batch = new RowBatch( rowMeta, rows );
+    for ( Condition condition : conditions ) {
+      assertTrue( condition.toString(), condition.isBatchEvaluable( rowMeta ) );
+      boolean[] result = condition.evaluate( batch );
+      for ( int i = 0; i < rows.size(); i++ ) {
+        assertEquals( condition.toString() + " row " + i, condition.evaluate( rowMeta, rows.get( i ) ), result[i] );
+      }
+    }
+  }
+
+  @Test
+  public void testBatchEvaluationIsOnlyForNumericComparisons() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "int1" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num1" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "str1" ) );
+
+    assertFalse( new Condition( "str1", Condition.FUNC_NOT_NULL, null, null ).isBatchEvaluable( rowMeta ) );
+    assertFalse( new Condition( "int1", Condition.FUNC_EQUAL, "num1", null ).isBatchEvaluable( rowMeta ) );
+    assertFalse( new Condition( "int1", Condition.FUNC_IN_LIST, null,
+      new ValueMetaAndData( new ValueMetaString( "list" ), "1;2" ) ).isBatchEvaluable( rowMeta ) );
+    assertFalse( new Condition( "missing", Condition.FUNC_NULL, null, null ).isBatchEvaluable( rowMeta ) );
+  }
 }
@@ -0,0 +1,226 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the basic functionality of the lock-free ring buffer row set.
+ */
+public class RingBufferRowSetTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private RowMetaInterface createRowMetaInterface() {
+    RowMetaInterface rm = new RowMeta();
+    rm.addValueMeta( new ValueMetaInteger( "ROWNR" ) );
+    return rm;
+  }
+
+  @Test
+  public void testBasicCreation() {
+    RowSet set = new RingBufferRowSet( 10 );
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+  }
+
+  @Test
+  public void testCapacityIsNotRoundedUp() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    assertTrue( set.putRowWait( rm, new Object[] { 1L }, 1, TimeUnit.MILLISECONDS ) );
+    assertTrue( set.putRowWait( rm, new Object[] { 2L }, 1, TimeUnit.MILLISECONDS ) );
+    assertTrue( set.putRowWait( rm, new Object[] { 3L }, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 3, set.size() );
+
+    // The buffer is full, even though the ring itself has room for 4 rows
+    //
+    assertFalse( set.putRowWait( rm, new Object[] { 4L }, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 3, set.size() );
+  }
+
+  @Test
+  public void testFifoOrderWithWrapAround() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    long expected = 0L;
+    for ( long i = 0; i < 20; i++ ) {
+      assertTrue( set.putRow( rm, new Object[] { i } ) );
+      if ( set.size() == 3 ) {
+        assertEquals( expected++, set.getRow()[ 0 ] );
+      }
+    }
+    while ( set.size() > 0 ) {
+      assertEquals( expected++, set.getRowImmediate()[ 0 ] );
+    }
+    assertEquals( 20L, expected );
+    assertNull( set.getRowImmediate() );
+    assertEquals( rm, set.getRowMeta() );
+  }
+
+  @Test
+  public void testPutRowsAndGetRows() {
+    RowSet set = new RingBufferRowSet( 5 );
+    RowMetaInterface rm = createRowMetaInterface();
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( long i = 0; i < 8; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+
+    // Only 5 rows fit, the others are refused after the put timeout
+    //
+    assertEquals( 5, set.putRows( rm, rows ) );
+    assertEquals( 5, set.size() );
+    assertEquals( rm, set.getRowMeta() );
+
+    List<Object[]> batch = set.getRows( 3 );
+    assertEquals( 3, batch.size() );
+    assertEquals( 0L, batch.get( 0 )[ 0 ] );
+    assertEquals( 2L, batch.get( 2 )[ 0 ] );
+
+    // Wrap around the end of the ring
+    //
+    assertEquals( 3, set.putRows( rm, rows.subList( 5, 8 ) ) );
+    batch = set.getRows( 100 );
+    assertEquals( 5, batch.size() );
+    for ( int i = 0; i < 5; i++ ) {
+      assertEquals( (long) ( i + 3 ), batch.get( i )[ 0 ] );
+    }
+
+    assertTrue( set.getRows( 0 ).isEmpty() );
+    set.setDone();
+    assertTrue( set.getRows( 10 ).isEmpty() );
+  }
+
+  @Test
+  public void testNullRowIsRefused() {
+    RowSet set = new RingBufferRowSet( 3 );
+
+    assertFalse( set.putRow( createRowMetaInterface(), null ) );
+    assertEquals( 0, set.size() );
+  }
+
+  @Test
+  public void testGetRowReturnsImmediatelyWhenDone() {
+    RowSet set = new RingBufferRowSet( 3 );
+    set.setDone();
+
+    long start = System.currentTimeMillis();
+    assertNull( set.getRowWait( 10, TimeUnit.SECONDS ) );
+    assertTrue( System.currentTimeMillis() - start < 5000 );
+  }
+
+  @Test
+  public void testClear() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rm = createRowMetaInterface();
+    set.putRow( rm, new Object[] { 1L } );
+    set.putRow( rm, new Object[] { 2L } );
+    set.setDone();
+
+    set.clear();
+
+    assertEquals( 0, set.size() );
+    assertFalse( set.isDone() );
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test( timeout = 60000 )
+  public void testProducerConsumerHandOff() throws Exception {
+    final RowSet set = new RingBufferRowSet( 16 );
+    final RowMetaInterface rm = createRowMetaInterface();
+    final long nrRows = 200000L;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    Thread producer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for ( long i = 0; i < nrRows; i++ ) {
+            Object[] row = new Object[] { i };
+            while ( !set.putRow( rm, row ) ) {
+              // retry, just like BaseStep does
+            }
+          }
+          set.setDone();
+        } catch ( Throwable t ) {
+          failure.set( t );
+        }
+      }
+    } );
+    producer.start();
+
+    long expected = 0L;
+    while ( true ) {
+      Object[] row = set.getRow();
+      if ( row == null ) {
+        if ( set.isDone() ) {
+          row = set.getRowImmediate();
+          if ( row == null ) {
+            break;
+          }
+        } else {
+          continue;
+        }
+      }
+      assertNotNull( row );
+      assertEquals( expected++, row[ 0 ] );
+    }
+    producer.join();
+
+    assertNull( failure.get() );
+    assertEquals( nrRows, expected );
+  }
+
+  @Test
+  public void testNames() {
+    RowSet set = new RingBufferRowSet( 3 );
+
+    set.setThreadNameFromToCopy( "from", 2, "to", 3 );
+
+    assertEquals( "from", set.getOriginStepName() );
+    assertEquals( 2, set.getOriginStepCopy() );
+    assertEquals( "to", set.getDestinationStepName() );
+    assertEquals( 3, set.getDestinationStepCopy() );
+    assertEquals( "from.2 - to.3", set.getName() );
+  }
+}
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.core;
 
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -170,6 +172,35 @@ public class RowSetTest {
      **********************************************************************/
   }
 
+  /**
+   * Batch functionality test.
+   */
+  @Test
+  public void testPutRowsAndGetRows() {
+    RowSet set = new BlockingRowSet( 3 );
+
+    RowMetaInterface rm = createRowMetaInterface();
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( long i = 1; i <= 4; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+
+    // The 4th row doesn't fit
+    assertEquals( 3, set.putRows( rm, rows ) );
+    assertEquals( 3, set.size() );
+
+    List<Object[]> batch = set.getRows( 2 );
+    assertEquals( 2, batch.size() );
+    assertEquals( 1L, batch.get( 0 )[0] );
+    assertEquals( 2L, batch.get( 1 )[0] );
+    assertEquals( 1, set.size() );
+
+    batch = set.getRows( 10 );
+    assertEquals( 1, batch.size() );
+    assertEquals( 3L, batch.get( 0 )[0] );
+    assertEquals( 0, set.getRows( 10 ).size() );
+  }
+
   /**
    * Names test. Just for completeness.
    */
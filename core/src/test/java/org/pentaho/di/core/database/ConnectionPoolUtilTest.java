@@ -31,6 +31,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
@@ -46,8 +47,12 @@ import java.util.Properties;
 import java.util.UUID;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Matchers.eq;
@@ -57,6 +62,7 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 /**
  * User: Dzmitry Stsiapanau Date: 12/11/13 Time: 1:59 PM
@@ -128,6 +134,86 @@ public class ConnectionPoolUtilTest implements Driver {
     assertTrue( conn != null );
   }
 
+  @Test
+  public void testGetConnectionStatistics() throws Exception {
+    when( dbMeta.getName() ).thenReturn( "CP4" );
+    when( dbMeta.getPassword() ).thenReturn( PASSWORD );
+    ConnectionPoolUtil.getConnection( logChannelInterface, dbMeta, "", 1, 3 );
+    ConnectionPoolUtil.getConnection( logChannelInterface, dbMeta, "", 1, 3 );
+
+    ConnectionPoolStatistics statistics = ConnectionPoolUtil.getPoolStatistics( dbMeta, "" );
+    assertNotNull( statistics );
+    assertEquals( "CP4", statistics.getPoolName() );
+    assertEquals( 2, statistics.getBorrowCount() );
+    assertEquals( 2, statistics.getNumActive() );
+    assertTrue( statistics.getPoolName(), ConnectionPoolUtil.getPoolStatistics().contains( statistics ) );
+  }
+
+  @Test
+  public void testConnectionPoolProvider() throws Exception {
+    ConnectionPoolProviderInterface provider = mock( ConnectionPoolProviderInterface.class );
+    ConnectionPoolInterface pool = mock( ConnectionPoolInterface.class );
+    DataSource ds = mock( DataSource.class );
+    Connection connection = mock( Connection.class );
+    when( provider.createPool( dbMeta, "", 2, 3 ) ).thenReturn( pool );
+    when( pool.getDataSource() ).thenReturn( ds );
+    when( pool.getNumActive() ).thenReturn( 2 );
+    when( ds.getConnection() ).thenReturn( connection );
+    when( dbMeta.getName() ).thenReturn( "CP5" );
+
+    ConnectionPoolUtil.setConnectionPoolProvider( provider );
+    try {
+      assertSame( connection, ConnectionPoolUtil.getConnection( logChannelInterface, dbMeta, "", 2, 3 ) );
+      assertSame( connection, ConnectionPoolUtil.getConnection( logChannelInterface, dbMeta, "", 2, 3 ) );
+    } finally {
+      ConnectionPoolUtil.setConnectionPoolProvider( null );
+    }
+
+    // The pool is created once and shared, the 2 initial connections are opened and handed back right away
+    //
+    verify( provider ).createPool( dbMeta, "", 2, 3 );
+    verify( ds, times( 4 ) ).getConnection();
+    verify( connection, times( 2 ) ).close();
+    assertEquals( 2, ConnectionPoolUtil.getPoolStatistics( dbMeta, "" ).getBorrowCount() );
+    assertEquals( 2, ConnectionPoolUtil.getPoolStatistics( dbMeta, "" ).getNumActive() );
+  }
+
+  @Test
+  public void testDefaultConnectionPoolProvider() throws Exception {
+    ConnectionPoolUtil.setConnectionPoolProvider( null );
+    assertTrue( ConnectionPoolUtil.getConnectionPoolProvider() instanceof DbcpConnectionPoolProvider );
+  }
+
+  @Test( expected = KettleDatabaseException.class )
+  public void testUnknownConnectionPoolProvider() throws Exception {
+    ConnectionPoolUtil.setConnectionPoolProvider( null );
+    System.setProperty( Const.KETTLE_CONNECTION_POOL_PROVIDER, "Unknown" );
+    try {
+      ConnectionPoolUtil.getConnectionPoolProvider();
+    } finally {
+      System.clearProperty( Const.KETTLE_CONNECTION_POOL_PROVIDER );
+      ConnectionPoolUtil.setConnectionPoolProvider( null );
+    }
+  }
+
+  @Test
+  public void testConfigureDataSourceWithoutMaximumSize() throws KettleDatabaseException {
+    ConnectionPoolUtil.configureDataSource( dataSource, dbMeta, "partId", INITIAL_SIZE, 0 );
+    verify( dataSource ).setMaxActive( -1 );
+    verify( dataSource ).setMaxIdle( -1 );
+  }
+
+  @Test
+  public void testConfigureDataSourcePoolPreparedStatements() throws KettleDatabaseException {
+    System.setProperty( Const.KETTLE_POOL_PREPARED_STATEMENTS, "Y" );
+    try {
+      ConnectionPoolUtil.configureDataSource( dataSource, dbMeta, "partId", INITIAL_SIZE, MAX_SIZE );
+    } finally {
+      System.clearProperty( Const.KETTLE_POOL_PREPARED_STATEMENTS );
+    }
+    verify( dataSource ).setPoolPreparedStatements( true );
+  }
+
   @Test
   public void testGetConnectionName() throws Exception {
     when( dbMeta.getName() ).thenReturn( "CP2" );
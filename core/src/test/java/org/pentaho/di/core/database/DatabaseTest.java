@@ -31,12 +31,14 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -54,6 +56,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.List;
 import java.util.Properties;
@@ -70,6 +73,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.database.DataSourceProviderInterface.DatasourceType;
@@ -422,6 +426,78 @@ public class DatabaseTest {
     verify( ps ).executeUpdate();
   }
 
+  @Test
+  public void testOpenQueryStreaming() throws Exception {
+    Statement statement = mock( Statement.class );
+    when( conn.createStatement() ).thenReturn( statement );
+    when( statement.executeQuery( sql ) ).thenReturn( rs );
+    when( rs.getMetaData() ).thenReturn( rsMetaData );
+    when( meta.stripCR( sql ) ).thenReturn( sql );
+    when( meta.isFetchSizeSupported() ).thenReturn( true );
+    when( meta.getStreamingFetchSize() ).thenReturn( Integer.MIN_VALUE );
+
+    Database db = new Database( log, meta );
+    db.setConnection( conn );
+    db.openQuery( sql );
+    verify( statement, never() ).setFetchSize( anyInt() );
+
+    db.setStreamingQuery( true );
+    db.openQuery( sql );
+    verify( statement ).setFetchSize( Integer.MIN_VALUE );
+  }
+
+  @Test
+  public void testOpenQueryStreamingTurnsOffAutoCommit() throws Exception {
+    Statement statement = mock( Statement.class );
+    when( conn.createStatement() ).thenReturn( statement );
+    when( conn.getAutoCommit() ).thenReturn( true );
+    when( statement.executeQuery( sql ) ).thenReturn( rs );
+    when( rs.getMetaData() ).thenReturn( rsMetaData );
+    when( meta.stripCR( sql ) ).thenReturn( sql );
+    when( meta.isFetchSizeRequiringTransaction() ).thenReturn( true );
+
+    Database db = new Database( log, meta );
+    db.setConnection( conn );
+    db.setStreamingQuery( true );
+    ResultSet res = db.openQuery( sql );
+    verify( conn ).setAutoCommit( false );
+    verify( conn, never() ).setAutoCommit( true );
+
+    // Auto-commit is turned back on once the rows are read
+    //
+    db.closeQuery( res );
+    verify( conn ).setAutoCommit( true );
+  }
+
+  @Test
+  public void testOpenQueryStreamingRestoresAutoCommitOnError() throws Exception {
+    Statement statement = mock( Statement.class );
+    when( conn.createStatement() ).thenReturn( statement );
+    when( conn.getAutoCommit() ).thenReturn( true );
+    when( statement.executeQuery( sql ) ).thenThrow( new SQLException( "syntax error" ) );
+    when( meta.stripCR( sql ) ).thenReturn( sql );
+    when( meta.isFetchSizeRequiringTransaction() ).thenReturn( true );
+
+    Database db = new Database( log, meta );
+    db.setConnection( conn );
+    db.setStreamingQuery( true );
+    try {
+      db.openQuery( sql );
+      fail( "Should throw KettleDatabaseException" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    InOrder inOrder = inOrder( conn );
+    inOrder.verify( conn ).setAutoCommit( false );
+    inOrder.verify( conn ).rollback();
+    inOrder.verify( conn ).setAutoCommit( true );
+
+    // A later closeQuery() doesn't touch the auto-commit setting again
+    //
+    db.closeQuery( null );
+    verify( conn ).setAutoCommit( true );
+  }
+
   @Test
   public void testGetCreateSequenceStatement() throws Exception {
     when( meta.supportsSequences() ).thenReturn( true );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,6 +24,7 @@ package org.pentaho.di.core.database;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -189,4 +190,14 @@ public class H2DatabaseMetaTest {
     assertEquals( "insert into FOO(FOOKEY, FOOVERSION) values (0, 1)", nativeMeta.getSQLInsertAutoIncUnknownDimensionRow( "FOO", "FOOKEY", "FOOVERSION" ) );
   }
 
+  @Test
+  public void testGetMultiRowMergeStatement() {
+    assertEquals( "MERGE INTO FOO (ID, NAME) KEY (ID) VALUES (?, ?), (?, ?)",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[] { "NAME" }, 2 ) );
+
+    // H2 can only merge rows if all the other columns are updated
+    //
+    assertNull( nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[0], 2 ) );
+  }
+
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -276,4 +276,19 @@ public class MSSQLServerDatabaseMetaTest {
 
   }
 
+  @Test
+  public void testGetMultiRowMergeStatement() {
+    assertEquals( "MERGE INTO FOO AS kettle_target USING (VALUES (?, ?), (?, ?)) AS kettle_source (ID, NAME)"
+        + " ON kettle_target.ID = kettle_source.ID WHEN MATCHED THEN UPDATE SET NAME = kettle_source.NAME"
+        + " WHEN NOT MATCHED THEN INSERT (ID, NAME) VALUES (kettle_source.ID, kettle_source.NAME);",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[] { "NAME" }, 2 ) );
+    assertEquals( 1000, nativeMeta.getMaxMultiRowMergeRows( 2 ) );
+  }
+
+  @Test
+  public void testGetMaxQueryBatchRows() {
+    assertEquals( 2099, nativeMeta.getMaxQueryBatchRows( 1 ) );
+    assertEquals( 699, nativeMeta.getMaxQueryBatchRows( 3 ) );
+  }
+
 }
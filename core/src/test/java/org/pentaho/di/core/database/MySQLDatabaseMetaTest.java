@@ -119,6 +119,10 @@ public class MySQLDatabaseMetaTest {
     assertFalse( nativeMeta.releaseSavepoint() );
     assertTrue( nativeMeta.supportsErrorHandlingOnBatchUpdates() );
     assertFalse( nativeMeta.isRequiringTransactionsOnQueries() );
+    assertEquals( Integer.MIN_VALUE, nativeMeta.getStreamingFetchSize() );
+    nativeMeta.setStreamingResults( false );
+    assertEquals( 0, nativeMeta.getStreamingFetchSize() );
+    nativeMeta.setStreamingResults( true );
     assertTrue( nativeMeta.supportsRepository() );
   }
 
@@ -421,4 +425,13 @@ public class MySQLDatabaseMetaTest {
       assert( key.startsWith( "foobar." ) );
     }
   }
+
+  @Test
+  public void testGetMultiRowMergeStatement() {
+    assertEquals( "INSERT INTO FOO (ID, NAME) VALUES (?, ?), (?, ?) ON DUPLICATE KEY UPDATE NAME = VALUES(NAME)",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[] { "NAME" }, 2 ) );
+    assertEquals( "INSERT INTO FOO (ID, NAME) VALUES (?, ?) ON DUPLICATE KEY UPDATE ID = ID",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[0], 1 ) );
+  }
+
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -139,6 +139,7 @@ public class OracleDatabaseMetaTest {
     assertEquals( "TABLESPACE FOOVALUE", nativeMeta.getTablespaceDDL( v, dm, "${FOOVARIABLE}" ) );
     assertEquals( "", nativeMeta.getTablespaceDDL( v, dm, "" ) );
     assertFalse( nativeMeta.supportsErrorHandlingOnBatchUpdates() );
+    assertEquals( 1000, nativeMeta.getDefaultFetchSize() );
     assertTrue( nativeMeta.supportsRepository() );
     assertEquals( 2000, nativeMeta.getMaxVARCHARLength() );
     assertFalse( nativeMeta.supportsTimestampDataType() );
@@ -317,4 +318,15 @@ public class OracleDatabaseMetaTest {
       nativeMeta.getAddColumnStatement( "FOO", new ValueMetaTimestamp( "FOO" ), "", false, "", false ) );
   }
 
+  @Test
+  public void testGetMultiRowMergeStatement() {
+    assertEquals( "MERGE INTO FOO kettle_target USING ( SELECT ? ID, ? NAME FROM dual UNION ALL SELECT ?, ? FROM dual )"
+        + " kettle_source ON ( kettle_target.ID = kettle_source.ID )"
+        + " WHEN MATCHED THEN UPDATE SET kettle_target.NAME = kettle_source.NAME"
+        + " WHEN NOT MATCHED THEN INSERT ( ID, NAME ) VALUES ( kettle_source.ID, kettle_source.NAME )",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[] { "NAME" }, 2 ) );
+    assertEquals( 1000, nativeMeta.getMaxMultiRowMergeRows( 2 ) );
+    assertEquals( 327, nativeMeta.getMaxMultiRowMergeRows( 200 ) );
+  }
+
 }
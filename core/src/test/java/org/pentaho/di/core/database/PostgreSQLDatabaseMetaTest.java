@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -66,6 +66,8 @@ public class PostgreSQLDatabaseMetaTest {
     assertEquals( "jdbc:postgresql://FOO:BAR/WIBBLE", nativeMeta.getURL( "FOO", "BAR", "WIBBLE" ) );
 
     assertTrue( nativeMeta.isFetchSizeSupported() );
+    assertTrue( nativeMeta.isFetchSizeRequiringTransaction() );
+    assertEquals( 0, nativeMeta.getStreamingFetchSize() );
     assertFalse( nativeMeta.supportsBitmapIndex() );
     assertFalse( nativeMeta.supportsSynonyms() );
     assertTrue( nativeMeta.supportsSequences() );
@@ -258,4 +260,13 @@ public class PostgreSQLDatabaseMetaTest {
     assertNull( nativeMeta.getSQLUnlockTables(  new String[] { "FOO" } ) );
   }
 
+  @Test
+  public void testGetMultiRowMergeStatement() {
+    assertEquals( "INSERT INTO FOO (ID, NAME) VALUES (?, ?), (?, ?) ON CONFLICT (ID) DO UPDATE SET NAME = EXCLUDED.NAME",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[] { "NAME" }, 2 ) );
+    assertEquals( "INSERT INTO FOO (ID, NAME) VALUES (?, ?) ON CONFLICT (ID) DO NOTHING",
+      nativeMeta.getMultiRowMergeStatement( "FOO", new String[] { "ID", "NAME" }, new String[] { "ID" }, new String[0], 1 ) );
+    assertEquals( 16383, nativeMeta.getMaxMultiRowMergeRows( 2 ) );
+  }
+
 }
@@ -90,4 +90,19 @@ public class SqlScriptParserTest {
     assertEquals( "SELECT 1 from test where t='\\'||t=a", oracleSqlScriptParser.removeComments( "SELECT 1 from test where t='\\'/* comment */||t=a" ) );
   }
 
+  @Test
+  public void testIndexOfOrderBy() {
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( null ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test" ) );
+    assertEquals( 22, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test order by col1" ) );
+    assertEquals( 22, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test ORDER\n  BY col1" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT border_by FROM test" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test WHERE t = 'order by'" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test -- order by col1" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM test /* order by col1 */" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT ROW_NUMBER() OVER ( ORDER BY col1 ) FROM test" ) );
+    assertEquals( -1, sqlScriptParser.indexOfOrderBy( "SELECT * FROM ( SELECT col1 FROM test ORDER BY col1 ) t" ) );
+    assertEquals( 48, sqlScriptParser.indexOfOrderBy( "SELECT col1 FROM a UNION ALL SELECT col1 FROM b ORDER BY 1" ) );
+  }
+
 }
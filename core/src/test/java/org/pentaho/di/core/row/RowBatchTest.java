@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowBatchTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "int" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    return rowMeta;
+  }
+
+  private List<Object[]> createRows() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < 70; i++ ) {
+      rows.add( new Object[] {
+        i % 3 == 0 ? null : Long.valueOf( i ),
+        i % 5 == 0 ? null : Double.valueOf( i / 2.0 ),
+        i % 7 == 0 ? null : "S" + ( i % 4 ),
+        new Date( i ) } );
+    }
+    // A row shorter than the metadata, the missing values are null
+    //
+    rows.add( new Object[] { 1L } );
+    return rows;
+  }
+
+  @Test
+  public void testColumns() throws Exception {
+    List<Object[]> rows = createRows();
+    RowBatch batch = new RowBatch( createRowMeta(), rows );
+
+    assertEquals( 71, batch.size() );
+    assertTrue( batch.getColumn( 0 ) instanceof RowBatch.LongColumn );
+    assertTrue( batch.getColumn( 1 ) instanceof RowBatch.DoubleColumn );
+    assertTrue( batch.getColumn( 2 ) instanceof RowBatch.StringColumn );
+    assertTrue( batch.getColumn( 3 ) instanceof RowBatch.ObjectColumn );
+
+    RowBatch.LongColumn longs = batch.getLongColumn( 0 );
+    RowBatch.DoubleColumn doubles = batch.getDoubleColumn( 1 );
+    RowBatch.StringColumn strings = batch.getStringColumn( 2 );
+    for ( int i = 0; i < 70; i++ ) {
+      assertEquals( i % 3 == 0, longs.isNull( i ) );
+      if ( !longs.isNull( i ) ) {
+        assertEquals( i, longs.getLong( i ) );
+      }
+      assertEquals( i % 5 == 0, doubles.isNull( i ) );
+      if ( !doubles.isNull( i ) ) {
+        assertEquals( i / 2.0, doubles.getDouble( i ), 0.0 );
+      }
+      assertEquals( rows.get( i )[2], strings.getString( i ) );
+      assertEquals( rows.get( i )[3], batch.getColumn( 3 ).getObject( i ) );
+    }
+    assertEquals( 4, strings.getDictionary().size() );
+    assertFalse( longs.isNull( 70 ) );
+    assertTrue( doubles.isNull( 70 ) );
+    assertNull( strings.getString( 70 ) );
+  }
+
+  @Test( expected = KettleValueException.class )
+  public void testWrongColumnType() throws Exception {
+    new RowBatch( createRowMeta(), createRows() ).getDoubleColumn( 0 );
+  }
+
+  @Test
+  public void testToRows() throws Exception {
+    List<Object[]> rows = createRows();
+    RowMetaInterface rowMeta = createRowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "calc" ) );
+    RowBatch batch = new RowBatch( rowMeta, rows );
+
+    batch.getColumn( 0 );
+    batch.getColumn( 2 );
+    RowBatch.LongColumn calc = new RowBatch.LongColumn( batch.size() );
+    for ( int i = 0; i < batch.size(); i++ ) {
+      if ( i % 2 == 0 ) {
+        calc.setLong( i, i * 10L );
+      }
+    }
+    batch.setColumn( 4, calc );
+
+    List<Object[]> result = batch.toRows();
+    assertEquals( rows.size(), result.size() );
+    for ( int i = 0; i < rows.size(); i++ ) {
+      Object[] row = result.get( i );
+      assertNotSame( rows.get( i ), row );
+      assertTrue( row.length >= rowMeta.size() );
+      Object[] expected = new Object[] { null, null, null, null, i % 2 == 0 ? Long.valueOf( i * 10L ) : null };
+      System.arraycopy( rows.get( i ), 0, expected, 0, rows.get( i ).length );
+      for ( int c = 0; c < expected.length; c++ ) {
+        assertEquals( expected[c], row[c] );
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyBatch() throws Exception {
+    RowBatch batch = new RowBatch( createRowMeta(), 3 );
+    RowBatch.DoubleColumn doubles = new RowBatch.DoubleColumn( 3 );
+    doubles.setDouble( 1, 2.5 );
+    batch.setColumn( 1, doubles );
+
+    assertTrue( batch.getColumn( 0 ).isNull( 2 ) );
+    List<Object[]> rows = batch.toRows();
+    assertArrayEquals( new Object[] { null, 2.5, null, null },
+      new Object[] { rows.get( 1 )[0], rows.get( 1 )[1], rows.get( 1 )[2], rows.get( 1 )[3] } );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testColumnSizeMustMatch() {
+    new RowBatch( createRowMeta(), 3 ).setColumn( 0, new RowBatch.LongColumn( 4 ) );
+  }
+}
@@ -0,0 +1,129 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.io.File;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowSpillPartitionsTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testPartitionsUseTheNextBitsOnEveryLevel() {
+    assertEquals( 7, RowSpillPartitions.getMaxLevel( 32 ) );
+    assertEquals( 15, RowSpillPartitions.getMaxLevel( 64 ) );
+
+    int hash = 0x12345678;
+    for ( int level = 0; level <= RowSpillPartitions.getMaxLevel( 32 ); level++ ) {
+      assertEquals( level + 1, RowSpillPartitions.getPartition( hash, level ) );
+    }
+    long longHash = 0xFEDCBA9876543210L;
+    for ( int level = 0; level <= RowSpillPartitions.getMaxLevel( 64 ); level++ ) {
+      assertEquals( 15 - level, RowSpillPartitions.getPartition( longHash, level ) );
+    }
+  }
+
+  @Test
+  public void testLargestPartitionInMemory() throws KettleException {
+    RowSpillPartitions partitions =
+      new RowSpillPartitions( tempFolder.getRoot(), "test-", RowSpillCompression.NONE );
+    long[] sizes = new long[ RowSpillPartitions.NR_PARTITIONS ];
+    assertEquals( -1, partitions.getLargestPartition( sizes ) );
+
+    sizes[ 3 ] = 10L;
+    sizes[ 7 ] = 20L;
+    assertEquals( 7, partitions.getLargestPartition( sizes ) );
+
+    // A partition that is spilled already isn't in memory anymore
+    //
+    partitions.createWriter( 7, createRowMeta() );
+    assertEquals( 3, partitions.getLargestPartition( sizes ) );
+    partitions.clear();
+  }
+
+  @Test
+  public void testFilesAreWrittenToTheDirectory() throws KettleException {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowSpillPartitions partitions = new RowSpillPartitions( tempFolder.getRoot(), "test-", RowSpillCompression.LZ4 );
+    assertFalse( partitions.isSpilled( 5 ) );
+    assertNull( partitions.getWriter( 5 ) );
+
+    RowSpillWriter writer = partitions.createWriter( 5, rowMeta );
+    for ( long i = 0; i < 1000; i++ ) {
+      writer.writeRow( new Object[] { i } );
+    }
+    assertTrue( partitions.isSpilled( 5 ) );
+    File[] files = tempFolder.getRoot().listFiles();
+    assertEquals( 1, files.length );
+    assertTrue( files[ 0 ].getName().startsWith( "test-" ) );
+
+    partitions.closeWriters();
+    assertNull( partitions.getWriter( 5 ) );
+    RowSpillReader reader = partitions.createReader( 5, rowMeta );
+    long expected = 0;
+    for ( Object[] row = reader.readRow(); row != null; row = reader.readRow() ) {
+      assertEquals( expected++, row[ 0 ] );
+    }
+    reader.close();
+    assertEquals( 1000L, expected );
+
+    partitions.delete( 5 );
+    assertFalse( partitions.isSpilled( 5 ) );
+    assertEquals( 0, tempFolder.getRoot().list().length );
+  }
+
+  @Test( expected = KettleFileException.class )
+  public void testMissingDirectory() throws KettleException {
+    File directory = new File( tempFolder.getRoot(), "missing" );
+    new RowSpillPartitions( directory, "test-", RowSpillCompression.NONE ).createWriter( 0, createRowMeta() );
+  }
+
+  @Test
+  public void testEstimateSize() {
+    assertEquals( 16L + 8L * 3 + 40L + 2L * 4 + 16L + 2L + 24L,
+      RowSpillPartitions.estimateSize( new Object[] { "name", new byte[ 2 ], 1L } ) );
+    assertEquals( 16L + 8L, RowSpillPartitions.estimateSize( new Object[] { null } ) );
+  }
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+}
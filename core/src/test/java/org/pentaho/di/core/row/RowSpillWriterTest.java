@@ -0,0 +1,219 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.row.value.ValueMetaTimestamp;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowSpillWriterTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "int" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaBoolean( "bool" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+    rowMeta.addValueMeta( new ValueMetaBinary( "bin" ) );
+    rowMeta.addValueMeta( new ValueMetaTimestamp( "ts" ) );
+    ValueMetaInterface binaryString = new ValueMetaString( "binaryString" );
+    binaryString.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    binaryString.setStorageMetadata( new ValueMetaString( "binaryString" ) );
+    rowMeta.addValueMeta( binaryString );
+    return rowMeta;
+  }
+
+  private List<Object[]> createRows( int nrRows ) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      Object[] row = new Object[] {
+        "name " + ( i % 100 ) + " é中",
+        Long.valueOf( i ),
+        Double.valueOf( i / 4.0 ),
+        new Date( 1000L * i ),
+        Boolean.valueOf( i % 2 == 0 ),
+        new BigDecimal( "1234.5600" + i ),
+        new byte[] { 1, 2, (byte) i },
+        new Timestamp( i ),
+        ( "bytes " + i ).getBytes() };
+      // Every field is null in some of the rows
+      //
+      row[ i % row.length ] = null;
+      rows.add( row );
+    }
+    return rows;
+  }
+
+  private byte[] write( RowMetaInterface rowMeta, List<Object[]> rows, RowSpillCompression compression,
+    int blockSize ) throws KettleFileException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RowSpillWriter writer = new RowSpillWriter( outputStream, rowMeta, compression, blockSize );
+    for ( Object[] row : rows ) {
+      writer.writeBytes( new byte[] { (byte) row.length } );
+      writer.writeRow( row );
+    }
+    writer.close();
+    assertEquals( rows.size(), writer.getRowsWritten() );
+    return outputStream.toByteArray();
+  }
+
+  private void assertRowsEqual( RowMetaInterface rowMeta, List<Object[]> expected, RowSpillReader reader )
+    throws Exception {
+    for ( Object[] row : expected ) {
+      assertArrayEquals( new byte[] { (byte) row.length }, reader.readBytes() );
+      Object[] read = reader.readRow();
+      assertEquals( 0, rowMeta.compare( row, read ) );
+    }
+    assertNull( reader.readBytes() );
+    assertNull( reader.readRow() );
+    reader.close();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    List<Object[]> rows = createRows( 5000 );
+
+    for ( RowSpillCompression compression : RowSpillCompression.values() ) {
+      // Small blocks to get plenty of them
+      //
+      byte[] file = write( rowMeta, rows, compression, 1024 );
+      RowSpillReader reader = new RowSpillReader( new ByteArrayInputStream( file ), rowMeta );
+      assertEquals( compression, reader.getCompression() );
+      assertRowsEqual( rowMeta, rows, reader );
+    }
+  }
+
+  @Test
+  public void testCompressionMakesSmallerFiles() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    List<Object[]> rows = createRows( 5000 );
+
+    int none = write( rowMeta, rows, RowSpillCompression.NONE, RowSpillWriter.DEFAULT_BLOCK_SIZE ).length;
+    int lz4 = write( rowMeta, rows, RowSpillCompression.LZ4, RowSpillWriter.DEFAULT_BLOCK_SIZE ).length;
+    int deflate = write( rowMeta, rows, RowSpillCompression.DEFLATE, RowSpillWriter.DEFAULT_BLOCK_SIZE ).length;
+
+    assertTrue( lz4 < none );
+    assertTrue( deflate < lz4 );
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    byte[] file = write( rowMeta, new ArrayList<Object[]>(), RowSpillCompression.LZ4, 1024 );
+
+    RowSpillReader reader = new RowSpillReader( new ByteArrayInputStream( file ), rowMeta );
+    assertNull( reader.readRow() );
+  }
+
+  @Test( expected = KettleFileException.class )
+  public void testDifferentRowMetaIsRefused() throws Exception {
+    byte[] file = write( createRowMeta(), createRows( 10 ), RowSpillCompression.NONE, 1024 );
+
+    RowMetaInterface rowMeta = createRowMeta();
+    rowMeta.removeValueMeta( 0 );
+    new RowSpillReader( new ByteArrayInputStream( file ), rowMeta );
+  }
+
+  @Test
+  public void testRowBuffer() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta();
+    List<Object[]> rows = createRows( 100 );
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new RowBuffer( rowMeta, rows ).writeRows( outputStream, RowSpillCompression.DEFLATE );
+
+    RowBuffer rowBuffer = new RowBuffer( rowMeta );
+    rowBuffer.readRows( new ByteArrayInputStream( outputStream.toByteArray() ) );
+    assertEquals( rows.size(), rowBuffer.getBuffer().size() );
+    for ( int i = 0; i < rows.size(); i++ ) {
+      assertEquals( 0, rowMeta.compare( rows.get( i ), rowBuffer.getBuffer().get( i ) ) );
+    }
+  }
+
+  @Test
+  public void testLz4BlockCodec() throws Exception {
+    Random random = new Random( 42 );
+    Lz4BlockCodec codec = new Lz4BlockCodec();
+    for ( int test = 0; test < 200; test++ ) {
+      byte[] data = new byte[ random.nextInt( 100000 ) ];
+      for ( int i = 0; i < data.length; i++ ) {
+        // Alternate between random data, short runs and repeated patterns
+        //
+        switch ( test % 3 ) {
+          case 0:
+            data[ i ] = (byte) random.nextInt();
+            break;
+          case 1:
+            data[ i ] = (byte) random.nextInt( 3 );
+            break;
+          default:
+            data[ i ] = i > 20 && random.nextInt( 10 ) > 0 ? data[ i - 1 - random.nextInt( 20 ) ] : (byte) random
+              .nextInt();
+            break;
+        }
+      }
+      byte[] compressed = new byte[ Lz4BlockCodec.maxCompressedLength( data.length ) ];
+      int length = codec.compress( data, data.length, compressed );
+
+      byte[] decompressed = new byte[ data.length ];
+      Lz4BlockCodec.decompress( compressed, length, decompressed, data.length );
+      assertArrayEquals( data, decompressed );
+    }
+  }
+
+  @Test
+  public void testGetCompression() {
+    assertEquals( RowSpillCompression.LZ4, RowSpillCompression.getCompression( " lz4", RowSpillCompression.NONE ) );
+    assertEquals( RowSpillCompression.NONE, RowSpillCompression.getCompression( null, RowSpillCompression.NONE ) );
+    assertEquals( RowSpillCompression.DEFLATE, RowSpillCompression.getCompression( "zstd",
+      RowSpillCompression.DEFLATE ) );
+  }
+}
@@ -0,0 +1,131 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.row.value;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.junit.rules.RestorePDIEnvironment;
+
+public class SortKeyEncoderTest {
+  @ClassRule public static RestorePDIEnvironment env = new RestorePDIEnvironment();
+
+  private static final String[] STRINGS = new String[] {
+    null, "", "a", "A", "ab", "aB", "b", " a", "a ", "\u0000", "a\u0000", "a\u0000b", "é", "É", "z",
+    "Ā", "￿" };
+  private static final long[] LONGS = new long[] { Long.MIN_VALUE, -256L, -1L, 0L, 1L, 255L, 256L, Long.MAX_VALUE };
+  private static final double[] DOUBLES = new double[] {
+    Double.NaN, Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -0.0, 0.0, Double.MIN_VALUE, 1.5,
+    Double.POSITIVE_INFINITY };
+
+  @Test
+  public void testKeysCompareLikeRows() throws Exception {
+    Random random = new Random( 42 );
+    for ( int iteration = 0; iteration < 100; iteration++ ) {
+      RowMetaInterface rowMeta = new RowMeta();
+      ValueMetaInterface stringMeta = new ValueMetaString( "string" );
+      stringMeta.setCaseInsensitive( random.nextBoolean() );
+      stringMeta.setIgnoreWhitespace( random.nextBoolean() );
+      rowMeta.addValueMeta( stringMeta );
+      rowMeta.addValueMeta( new ValueMetaInteger( "integer" ) );
+      rowMeta.addValueMeta( new ValueMetaNumber( "number" ) );
+      rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+      rowMeta.addValueMeta( new ValueMetaBoolean( "boolean" ) );
+      for ( ValueMetaInterface valueMeta : rowMeta.getValueMetaList() ) {
+        valueMeta.setSortedDescending( random.nextBoolean() );
+      }
+      int[] fieldnrs = new int[] { random.nextInt( 5 ), random.nextInt( 5 ), random.nextInt( 5 ) };
+      assertTrue( SortKeyEncoder.isSupported( rowMeta, fieldnrs ) );
+      SortKeyEncoder encoder = new SortKeyEncoder( rowMeta, fieldnrs );
+
+      List<Object[]> rows = new ArrayList<Object[]>();
+      for ( int r = 0; r < 40; r++ ) {
+        rows.add( new Object[] {
+          STRINGS[random.nextInt( STRINGS.length )],
+          random.nextInt( 8 ) == 0 ? null : LONGS[random.nextInt( LONGS.length )],
+          random.nextInt( 8 ) == 0 ? null : DOUBLES[random.nextInt( DOUBLES.length )],
+          random.nextInt( 8 ) == 0 ? null : new Date( LONGS[random.nextInt( LONGS.length )] ),
+          random.nextInt( 3 ) == 0 ? null : random.nextBoolean() } );
+      }
+
+      for ( Object[] row1 : rows ) {
+        for ( Object[] row2 : rows ) {
+          int expected = Integer.signum( rowMeta.compare( row1, row2, fieldnrs ) );
+          int actual = Integer.signum( SortKeyEncoder.compare( encoder.encode( row1 ), encoder.encode( row2 ) ) );
+          assertEquals( rowMeta.getString( row1 ) + " vs " + rowMeta.getString( row2 ), expected, actual );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEncoding() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "integer" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    SortKeyEncoder encoder = new SortKeyEncoder( rowMeta, new int[] { 0, 1 } );
+
+    assertArrayEquals( new byte[] { 1, (byte) 0x80, 0, 0, 0, 0, 0, 0, 1, 1, 0, (byte) 0xff, 0x41, 0, 0 },
+      encoder.encode( new Object[] { 1L, "A" } ) );
+    assertArrayEquals( new byte[] { 0, 0 }, encoder.encode( new Object[] { null, null } ) );
+
+    rowMeta.getValueMeta( 0 ).setSortedDescending( true );
+    assertArrayEquals( new byte[] { (byte) 0xff, 0 }, encoder.encode( new Object[] { null, "" } ) );
+  }
+
+  @Test
+  public void testUnsupportedFields() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "bignumber" ) );
+    rowMeta.addValueMeta( new ValueMetaTimestamp( "timestamp" ) );
+
+    assertTrue( SortKeyEncoder.isSupported( rowMeta, new int[] { 0 } ) );
+    assertFalse( SortKeyEncoder.isSupported( rowMeta, new int[] { 0, 1 } ) );
+    assertFalse( SortKeyEncoder.isSupported( rowMeta, new int[] { 2 } ) );
+
+    // The collator has its own rules
+    rowMeta.getValueMeta( 0 ).setCollatorDisabled( false );
+    assertFalse( SortKeyEncoder.isSupported( rowMeta, new int[] { 0 } ) );
+  }
+
+  @Test
+  public void testCompare() {
+    assertTrue( SortKeyEncoder.compare( new byte[] { 1 }, new byte[] { (byte) 0xff } ) < 0 );
+    assertTrue( SortKeyEncoder.compare( new byte[] { 1 }, new byte[] { 1, 0 } ) < 0 );
+    assertEquals( 0, SortKeyEncoder.compare( new byte[] { 1, 2 }, new byte[] { 1, 2 } ) );
+  }
+}
@@ -69,6 +69,7 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RingBufferRowSet;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.SingleRowRowSet;
@@ -138,6 +139,7 @@ import org.pentaho.di.trans.step.StepListener;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.trans.step.StepThreadMode;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 import org.pentaho.di.www.PrepareExecutionTransServlet;
@@ -383,6 +385,11 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
    */
   private boolean safeModeEnabled;
 
+  /**
+   * The kind of threads to run the steps on, null means: use variable KETTLE_STEP_THREAD_MODE.
+   */
+  private StepThreadMode stepThreadMode;
+
   /**
    * The thread name.
    */
@@ -935,6 +942,11 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
                   ValueMetaString.convertStringToBoolean( System.getProperty( Const.KETTLE_BATCHING_ROWSET ) );
                 if ( batchingRowSet != null && batchingRowSet.booleanValue() ) {
                   rowSet = new BlockingBatchingRowSet( transMeta.getSizeRowset() );
+                } else if ( isLockFreeRowSetEnabled()
+                  && ( dispatchType == TYPE_DISP_1_1 || dispatchType == TYPE_DISP_N_N ) ) {
+                  // Exactly one step copy writes and one step copy reads: no need for a lock
+                  //
+                  rowSet = new RingBufferRowSet( transMeta.getSizeRowset() );
                 } else {
                   rowSet = new BlockingRowSet( transMeta.getSizeRowset() );
                 }
@@ -1187,6 +1199,13 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
       log.logDetailed( BaseMessages.getString( PKG, "Trans.Log.InitialisingSteps", String.valueOf( steps.size() ) ) );
     }
 
+    StepThreadMode threadMode = getStepThreadMode();
+    if ( threadMode == StepThreadMode.VIRTUAL && !StepThreadMode.isVirtualThreadSupported() ) {
+      log.logBasic( BaseMessages.getString( PKG, "Trans.Log.VirtualThreadsNotSupported" ) );
+    } else if ( log.isDetailed() ) {
+      log.logDetailed( BaseMessages.getString( PKG, "Trans.Log.StepThreadMode", threadMode.getCode() ) );
+    }
+
     StepInitThread[] initThreads = new StepInitThread[ steps.size() ];
     Thread[] threads = new Thread[ steps.size() ];
 
@@ -1203,7 +1222,7 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
       // Put it in a separate thread!
       //
-      threads[ i ] = new Thread( initThreads[ i ] );
+      threads[ i ] = threadMode.newThread( initThreads[ i ] );
       threads[ i ].setName( "init of " + sid.stepname + "." + sid.copy + " (" + threads[ i ].getName() + ")" );
 
       ExtensionPointHandler.callExtensionPoint( log, KettleExtensionPoint.StepBeforeInitialize.id, initThreads[ i ] );
@@ -1489,10 +1508,11 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
         // Now start all the threads...
         //
+        StepThreadMode threadMode = getStepThreadMode();
         for ( int i = 0; i < steps.size(); i++ ) {
           final StepMetaDataCombi combi = steps.get( i );
           RunThread runThread = new RunThread( combi );
-          Thread thread = new Thread( runThread );
+          Thread thread = threadMode.newThread( runThread );
           thread.setName( getName() + " - " + combi.stepname );
           ExtensionPointHandler.callExtensionPoint( log, KettleExtensionPoint.StepBeforeStart.id, combi );
           // Call an extension point at the end of the step
@@ -3379,6 +3399,42 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     return safeModeEnabled;
   }
 
+  /**
+   * Sets the kind of threads to initialize and run the steps on. Set it to null to use variable
+   * KETTLE_STEP_THREAD_MODE instead.
+   *
+   * @param stepThreadMode the kind of step threads
+   */
+  public void setStepThreadMode( StepThreadMode stepThreadMode ) {
+    this.stepThreadMode = stepThreadMode;
+  }
+
+  /**
+   * Gets the kind of threads the steps are initialized and run on. Unless it was set explicitly, this is determined by
+   * variable KETTLE_STEP_THREAD_MODE: "platform" (the default) or "virtual".
+   *
+   * @return the kind of step threads
+   */
+  public StepThreadMode getStepThreadMode() {
+    if ( stepThreadMode != null ) {
+      return stepThreadMode;
+    }
+    return StepThreadMode.getStepThreadModeByCode( getVariable( Const.KETTLE_STEP_THREAD_MODE ),
+      StepThreadMode.PLATFORM );
+  }
+
+  /**
+   * Checks whether hops between a single source and a single target step copy can use the lock-free row set. This is
+   * the default, set variable KETTLE_LOCK_FREE_ROWSET to N to fall back to the blocking row set.
+   *
+   * @return true if the lock-free row set can be used for copy-to-copy hops
+   */
+  protected boolean isLockFreeRowSetEnabled() {
+    Boolean lockFree =
+      ValueMetaString.convertStringToBoolean( System.getProperty( Const.KETTLE_LOCK_FREE_ROWSET, "Y" ) );
+    return lockFree == null || lockFree.booleanValue();
+  }
+
   /**
    * This adds a row producer to the transformation that just got set up. It is preferable to run this BEFORE execute()
    * but after prepareExecution()
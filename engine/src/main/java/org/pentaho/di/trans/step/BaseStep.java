@@ -39,6 +39,7 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -165,7 +166,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private Trans trans;
 
-  private final Object statusCountersLock = new Object();
+  /**
+   * The row and error counters of this step. The deprecated counter fields below are only copies of these, see
+   * {@link #copyCountersToFields()}: writing to them doesn't change the counters.
+   */
+  private final StepMetrics stepMetrics = new StepMetrics();
 
   /**
    * nr of lines read from previous step(s)
@@ -216,7 +221,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   public long linesSkipped;
 
   /**
-   * total sleep time in ns caused by an empty input buffer (previous step is slow)
+   * nr of lines rejected to an error handling step
    *
    * @deprecated use {@link #getLinesRejected()} or {@link #incrementLinesRejected()}
    */
@@ -229,8 +234,6 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private RowDistributionInterface rowDistribution;
 
-  private long errors;
-
   private StepMeta[] nextSteps;
 
   private StepMeta[] prevSteps;
@@ -447,6 +450,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   private RowHandler rowHandler;
 
+  /**
+   * The maximum number of rows read or written in one go by {@link #getRows(int)} callers, lazily initialized
+   */
+  private int rowBatchSize = -1;
+
   /**
    * This is the base step that forms that basis for all steps. You can derive from this class to implement your own
    * steps.
@@ -486,16 +494,6 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     init = false;
 
-    synchronized ( statusCountersLock ) {
-      linesRead = 0L; // new AtomicLong(0L); // Keep some statistics!
-      linesWritten = 0L; // new AtomicLong(0L);
-      linesUpdated = 0L; // new AtomicLong(0L);
-      linesSkipped = 0L; // new AtomicLong(0L);
-      linesRejected = 0L; // new AtomicLong(0L);
-      linesInput = 0L; // new AtomicLong(0L);
-      linesOutput = 0L; // new AtomicLong(0L);
-    }
-
     inputRowSets = null;
     outputRowSets = null;
     nextSteps = null;
@@ -894,7 +892,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getErrors() {
-    return errors;
+    return stepMetrics.getErrors();
   }
 
   /*
@@ -904,7 +902,33 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public void setErrors( long e ) {
-    errors = e;
+    stepMetrics.setErrors( e );
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.pentaho.di.trans.step.StepInterface#getStepMetrics()
+   */
+  @Override
+  public StepMetrics getStepMetrics() {
+    return stepMetrics;
+  }
+
+  /**
+   * Copies the counters to the deprecated counter fields, for steps that still read those. Only the thread running the
+   * step does this, after every call to processRows() and after the step is disposed, so the fields never change while
+   * the step is processing rows.
+   */
+  @SuppressWarnings( "deprecation" )
+  void copyCountersToFields() {
+    linesRead = stepMetrics.getLinesRead();
+    linesWritten = stepMetrics.getLinesWritten();
+    linesInput = stepMetrics.getLinesInput();
+    linesOutput = stepMetrics.getLinesOutput();
+    linesUpdated = stepMetrics.getLinesUpdated();
+    linesSkipped = stepMetrics.getLinesSkipped();
+    linesRejected = stepMetrics.getLinesRejected();
   }
 
   /**
@@ -912,9 +936,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesRead() {
-    synchronized ( statusCountersLock ) {
-      return linesRead;
-    }
+    return stepMetrics.getLinesRead();
   }
 
   /**
@@ -923,9 +945,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return Returns the new value
    */
   public long incrementLinesRead() {
-    synchronized ( statusCountersLock ) {
-      return ++linesRead;
-    }
+    return addLinesRead( 1L );
+  }
+
+  private long addLinesRead( long nrLines ) {
+    return stepMetrics.addLinesRead( nrLines );
   }
 
   /**
@@ -934,18 +958,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return Returns the new value
    */
   public long decrementLinesRead() {
-    synchronized ( statusCountersLock ) {
-      return --linesRead;
-    }
+    return addLinesRead( -1L );
   }
 
   /**
    * @param newLinesReadValue the new number of lines read from previous steps
    */
   public void setLinesRead( long newLinesReadValue ) {
-    synchronized ( statusCountersLock ) {
-      linesRead = newLinesReadValue;
-    }
+    stepMetrics.setLinesRead( newLinesReadValue );
   }
 
   /**
@@ -953,9 +973,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesInput() {
-    synchronized ( statusCountersLock ) {
-      return linesInput;
-    }
+    return stepMetrics.getLinesInput();
   }
 
   /**
@@ -964,18 +982,18 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return the new incremented value
    */
   public long incrementLinesInput() {
-    synchronized ( statusCountersLock ) {
-      return ++linesInput;
-    }
+    return addLinesInput( 1L );
+  }
+
+  private long addLinesInput( long nrLines ) {
+    return stepMetrics.addLinesInput( nrLines );
   }
 
   /**
    * @param newLinesInputValue the new number of lines read from an input source: database, file, socket, etc.
    */
   public void setLinesInput( long newLinesInputValue ) {
-    synchronized ( statusCountersLock ) {
-      linesInput = newLinesInputValue;
-    }
+    stepMetrics.setLinesInput( newLinesInputValue );
   }
 
   /**
@@ -983,9 +1001,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesOutput() {
-    synchronized ( statusCountersLock ) {
-      return linesOutput;
-    }
+    return stepMetrics.getLinesOutput();
   }
 
   /**
@@ -994,18 +1010,18 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return the new incremented value
    */
   public long incrementLinesOutput() {
-    synchronized ( statusCountersLock ) {
-      return ++linesOutput;
-    }
+    return addLinesOutput( 1L );
+  }
+
+  private long addLinesOutput( long nrLines ) {
+    return stepMetrics.addLinesOutput( nrLines );
   }
 
   /**
    * @param newLinesOutputValue the new number of lines written to an output target: database, file, socket, etc.
    */
   public void setLinesOutput( long newLinesOutputValue ) {
-    synchronized ( statusCountersLock ) {
-      linesOutput = newLinesOutputValue;
-    }
+    stepMetrics.setLinesOutput( newLinesOutputValue );
   }
 
   /**
@@ -1013,9 +1029,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesWritten() {
-    synchronized ( statusCountersLock ) {
-      return linesWritten;
-    }
+    return stepMetrics.getLinesWritten();
   }
 
   /**
@@ -1024,9 +1038,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return Returns the new value
    */
   public long incrementLinesWritten() {
-    synchronized ( statusCountersLock ) {
-      return ++linesWritten;
-    }
+    return addLinesWritten( 1L );
+  }
+
+  private long addLinesWritten( long nrLines ) {
+    return stepMetrics.addLinesWritten( nrLines );
   }
 
   /**
@@ -1035,18 +1051,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return Returns the new value
    */
   public long decrementLinesWritten() {
-    synchronized ( statusCountersLock ) {
-      return --linesWritten;
-    }
+    return addLinesWritten( -1L );
   }
 
   /**
    * @param newLinesWrittenValue the new number of lines written to next steps
    */
   public void setLinesWritten( long newLinesWrittenValue ) {
-    synchronized ( statusCountersLock ) {
-      linesWritten = newLinesWrittenValue;
-    }
+    stepMetrics.setLinesWritten( newLinesWrittenValue );
   }
 
   /**
@@ -1054,9 +1066,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesUpdated() {
-    synchronized ( statusCountersLock ) {
-      return linesUpdated;
-    }
+    return stepMetrics.getLinesUpdated();
   }
 
   /**
@@ -1065,18 +1075,18 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return the new incremented value
    */
   public long incrementLinesUpdated() {
-    synchronized ( statusCountersLock ) {
-      return ++linesUpdated;
-    }
+    return addLinesUpdated( 1L );
+  }
+
+  private long addLinesUpdated( long nrLines ) {
+    return stepMetrics.addLinesUpdated( nrLines );
   }
 
   /**
    * @param newLinesUpdatedValue the new number of lines updated in an output target: database, file, socket, etc.
    */
   public void setLinesUpdated( long newLinesUpdatedValue ) {
-    synchronized ( statusCountersLock ) {
-      linesUpdated = newLinesUpdatedValue;
-    }
+    stepMetrics.setLinesUpdated( newLinesUpdatedValue );
   }
 
   /**
@@ -1084,9 +1094,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public long getLinesRejected() {
-    synchronized ( statusCountersLock ) {
-      return linesRejected;
-    }
+    return stepMetrics.getLinesRejected();
   }
 
   /**
@@ -1095,9 +1103,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return the new incremented value
    */
   public long incrementLinesRejected() {
-    synchronized ( statusCountersLock ) {
-      return ++linesRejected;
-    }
+    return addLinesRejected( 1L );
+  }
+
+  private long addLinesRejected( long nrLines ) {
+    return stepMetrics.addLinesRejected( nrLines );
   }
 
   /**
@@ -1105,18 +1115,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public void setLinesRejected( long newLinesRejectedValue ) {
-    synchronized ( statusCountersLock ) {
-      linesRejected = newLinesRejectedValue;
-    }
+    stepMetrics.setLinesRejected( newLinesRejectedValue );
   }
 
   /**
    * @return the number of lines skipped
    */
   public long getLinesSkipped() {
-    synchronized ( statusCountersLock ) {
-      return linesSkipped;
-    }
+    return stepMetrics.getLinesSkipped();
   }
 
   /**
@@ -1125,18 +1131,18 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * @return the new incremented value
    */
   public long incrementLinesSkipped() {
-    synchronized ( statusCountersLock ) {
-      return ++linesSkipped;
-    }
+    return addLinesSkipped( 1L );
+  }
+
+  private long addLinesSkipped( long nrLines ) {
+    return stepMetrics.addLinesSkipped( nrLines );
   }
 
   /**
    * @param newLinesSkippedValue lines number of lines skipped
    */
   public void setLinesSkipped( long newLinesSkippedValue ) {
-    synchronized ( statusCountersLock ) {
-      linesSkipped = newLinesSkippedValue;
-    }
+    stepMetrics.setLinesSkipped( newLinesSkippedValue );
   }
 
   /*
@@ -1252,6 +1258,33 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public void putRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+    verifyFieldNamesAndTypes( rowMeta );
+    getRowHandler().putRow( rowMeta, row );
+  }
+
+  /**
+   * putRows is the batch equivalent of putRow: all the rows are sent to the destination rowset(s) in the order of the
+   * list. When the step writes to a single output rowset without partitioning, distribution plugins or row listeners
+   * the rows are handed over in bulk which avoids most of the per row overhead.
+   *
+   * @param rowMeta The row meta-data of all the rows in the batch
+   * @param rows    The rows to put to the destination rowset(s).
+   * @throws KettleStepException
+   */
+  @Override
+  public void putRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleStepException {
+    if ( rows.isEmpty() ) {
+      return;
+    }
+    if ( rows.size() == 1 ) {
+      putRow( rowMeta, rows.get( 0 ) );
+      return;
+    }
+    verifyFieldNamesAndTypes( rowMeta );
+    getRowHandler().putRows( rowMeta, rows );
+  }
+
+  private void verifyFieldNamesAndTypes( RowMetaInterface rowMeta ) throws KettleStepException {
     if ( rowMeta != null ) {
       if ( !allowEmptyFieldNamesAndTypes ) {
         // check row meta for empty field name (BACKLOG-18004)
@@ -1265,20 +1298,63 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         }
       }
     }
-    getRowHandler().putRow( rowMeta, row );
   }
 
-  private void handlePutRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
-    // Are we pausing the step? If so, stall forever...
+  private void handlePutRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleStepException {
+    // The first row takes care of pausing, stopping, waiting for the transformation to start, the metadata of the
+    // output rowset and so on.
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 1 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
+    handlePutRow( rowMeta, rows.get( 0 ) );
+    if ( rows.size() == 1 || ( isStopped() && !safeStopped.get() ) ) {
+      return;
+    }
+
+    RowSet rs = null;
+    outputRowSetsLock.readLock().lock();
+    try {
+      if ( outputRowSets.size() == 1
+        && repartitioning == StepPartitioningMeta.PARTITIONING_METHOD_NONE
+        && rowDistribution == null
+        && rowListeners.isEmpty()
+        && !( terminator && terminator_rows != null )
+        && !paused.get() ) {
+        rs = outputRowSets.get( 0 );
       }
+    } finally {
+      outputRowSetsLock.readLock().unlock();
     }
 
+    if ( rs == null ) {
+      // No shortcut possible, process the rows one by one
+      //
+      for ( int i = 1; i < rows.size() && !( isStopped() && !safeStopped.get() ); i++ ) {
+        handlePutRow( rowMeta, rows.get( i ) );
+      }
+      return;
+    }
+
+    RowMetaInterface toBeSent = rs.getRowMeta();
+    List<Object[]> remaining = rows.subList( 1, rows.size() );
+    while ( !remaining.isEmpty() ) {
+      if ( isStopped() && !safeStopped.get() ) {
+        if ( log.isDebug() ) {
+          logDebug( BaseMessages.getString( PKG, "BaseStep.Log.StopPuttingARow" ) );
+        }
+        return;
+      }
+      int nrPut = rs.putRows( toBeSent, remaining );
+      if ( nrPut > 0 ) {
+        addLinesWritten( nrPut );
+        remaining = remaining.subList( nrPut, remaining.size() );
+      }
+    }
+  }
+
+  private void handlePutRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+    // Are we pausing the step? If so, stall forever...
+    //
+    waitWhilePaused( 1L );
+
     // Right after the pause loop we have to check if this thread is stopped or
     // not.
     //
@@ -1294,16 +1370,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Are we running yet? If not, wait a bit until all threads have been
     // started.
     //
-    if ( this.checkTransRunning == false ) {
-      while ( !trans.isRunning() && !stopped.get() ) {
-        try {
-          Thread.sleep( 1 );
-        } catch ( InterruptedException e ) {
-          // Ignore
-        }
-      }
-      this.checkTransRunning = true;
-    }
+    waitUntilTransformationIsStarted();
 
     // call all row listeners...
     //
@@ -1525,11 +1592,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         // the buffer to grow to its full capacity.
         //
         if ( isUsingThreadPriorityManagment() && !rs.isDone() && rs.size() >= upperBufferBoundary && !isStopped() ) {
-          try {
-            Thread.sleep( 0, 1 );
-          } catch ( InterruptedException e ) {
-            // Ignore sleep interruption exception
-          }
+          park( 1L );
         }
 
         // Loop until we find room in the target rowset
@@ -1561,11 +1624,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         // the buffer to grow to its full capacity.
         //
         if ( isUsingThreadPriorityManagment() && !rs.isDone() && rs.size() >= upperBufferBoundary && !isStopped() ) {
-          try {
-            Thread.sleep( 0, 1 );
-          } catch ( InterruptedException e ) {
-            // Ignore sleep interruption exception
-          }
+          park( 1L );
         }
 
         try {
@@ -1620,13 +1679,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 1 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused( 1L );
 
     // call all row listeners...
     //
@@ -1805,16 +1858,37 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     //
     if ( this.checkTransRunning == false ) {
       while ( !trans.isRunning() && !stopped.get() ) {
-        try {
-          Thread.sleep( 1 );
-        } catch ( InterruptedException e ) {
-          // Ignore sleep interruption exception
-        }
+        park( 1L );
       }
       this.checkTransRunning = true;
     }
   }
 
+  /**
+   * Wait as long as the step is paused.
+   *
+   * @param millis the time to wait between checks
+   * @throws KettleStepException in case the thread got interrupted
+   */
+  private void waitWhilePaused( long millis ) throws KettleStepException {
+    while ( paused.get() && !stopped.get() ) {
+      if ( park( millis ) ) {
+        throw new KettleStepException( new InterruptedException() );
+      }
+    }
+  }
+
+  /**
+   * Parks the current thread instead of putting it to sleep. A parked virtual thread releases its carrier thread.
+   *
+   * @param millis the time to wait
+   * @return true if the thread was interrupted while waiting, the interrupted status is cleared.
+   */
+  private boolean park( long millis ) {
+    LockSupport.parkNanos( this, TimeUnit.MILLISECONDS.toNanos( millis ) );
+    return Thread.interrupted();
+  }
+
 
   /**
    * In case of getRow, we receive data from previous steps through the input rowset. In case we split the stream, we
@@ -1826,17 +1900,81 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   }
 
 
-  private Object[] handleGetRow() throws KettleException {
+  /**
+   * getRows is the batch equivalent of getRow. It waits for the first row just like getRow does, the other rows are
+   * only added to the batch if they are immediately available on the single input rowset of this step. With multiple
+   * input rowsets, row listeners or in safe mode a single row is returned.
+   *
+   * @param max the maximum number of rows to return
+   * @return the rows read from the source step(s), an empty list if no more rows are to be expected.
+   * @throws KettleException
+   */
+  @Override
+  public List<Object[]> getRows( int max ) throws KettleException {
+    return getRowHandler().getRows( max );
+  }
 
-    // Are we pausing the step? If so, stall forever...
-    //
-    while ( paused.get() && !stopped.get() ) {
+  private List<Object[]> handleGetRows( int max ) throws KettleException {
+    List<Object[]> rows = new ArrayList<Object[]>();
+
+    Object[] row = getRow();
+    if ( row == null ) {
+      return rows;
+    }
+    rows.add( row );
+
+    if ( max > 1 && rowListeners.isEmpty() && !trans.isSafeModeEnabled() && !paused.get() && !stopped.get() ) {
+      RowSet inputRowSet = null;
+      inputRowSetsLock.readLock().lock();
       try {
-        Thread.sleep( 100 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
+        if ( inputRowSets.size() == 1 ) {
+          inputRowSet = inputRowSets.get( 0 );
+        }
+      } finally {
+        inputRowSetsLock.readLock().unlock();
+      }
+
+      // Only take what is there: we don't want to wait for a full batch
+      //
+      if ( inputRowSet != null && inputRowSet.size() > 0 ) {
+        List<Object[]> more = inputRowSet.getRows( max - 1 );
+        rows.addAll( more );
+        addLinesRead( more.size() );
       }
     }
+    return rows;
+  }
+
+  /**
+   * @return the maximum number of rows to read or write in one batch, see {@link Const#KETTLE_ROW_BATCH_SIZE}
+   */
+  public int getRowBatchSize() {
+    if ( rowBatchSize < 0 ) {
+      rowBatchSize = Math.max( 1, Const.toInt( getVariable( Const.KETTLE_ROW_BATCH_SIZE ), Const.ROWS_IN_BATCH ) );
+    }
+    return rowBatchSize;
+  }
+
+  /**
+   * Checks if feedback (logging) is needed for any of the lines in a batch of rows.
+   *
+   * @param lines   the line count after processing the batch
+   * @param nrLines the number of lines in the batch
+   * @return true if the feedback size was reached while processing the batch
+   */
+  protected boolean checkFeedback( long lines, long nrLines ) {
+    if ( !getTransMeta().isFeedbackShown() || lines <= 0 || getTransMeta().getFeedbackSize() <= 0 ) {
+      return false;
+    }
+    int feedbackSize = getTransMeta().getFeedbackSize();
+    return nrLines > 0 && ( lines / feedbackSize ) != ( ( lines - nrLines ) / feedbackSize );
+  }
+
+  private Object[] handleGetRow() throws KettleException {
+
+    // Are we pausing the step? If so, stall forever...
+    //
+    waitWhilePaused( 100L );
 
     if ( stopped.get() ) {
       if ( log.isDebug() ) {
@@ -1892,11 +2030,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       //
       if ( isUsingThreadPriorityManagment()
         && !inputRowSet.isDone() && inputRowSet.size() <= lowerBufferBoundary && !isStopped() ) {
-        try {
-          Thread.sleep( 0, 1 );
-        } catch ( InterruptedException e ) {
-          // Ignore sleep interruption exception
-        }
+        park( 1L );
       }
 
       // See if this step is receiving partitioned data...
@@ -2006,6 +2140,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * RowHandler controls how getRow/putRow are handled.
    * The default RowHandler will simply call
    * {@link #handleGetRow()} and {@link #handlePutRow(RowMetaInterface, Object[])}
+   * (or their batch equivalents)
    */
   public void setRowHandler( RowHandler rowHandler ) {
     Preconditions.checkNotNull( rowHandler );
@@ -2216,27 +2351,12 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   public Object[] handleGetRowFrom( RowSet rowSet ) throws KettleStepException {
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 10 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused( 10L );
 
     // Have all threads started?
     // Are we running yet? If not, wait a bit until all threads have been
     // started.
-    if ( this.checkTransRunning == false ) {
-      while ( !trans.isRunning() && !stopped.get() ) {
-        try {
-          Thread.sleep( 1 );
-        } catch ( InterruptedException e ) {
-          // Ignore sleep interruption exception
-        }
-      }
-      this.checkTransRunning = true;
-    }
+    waitUntilTransformationIsStarted();
     Object[] rowData = null;
 
     // To reduce stress on the locking system we are going to allow
@@ -2245,11 +2365,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     //
     if ( isUsingThreadPriorityManagment()
       && !rowSet.isDone() && rowSet.size() <= lowerBufferBoundary && !isStopped() ) {
-      try {
-        Thread.sleep( 0, 1 );
-      } catch ( InterruptedException e ) {
-        // Ignore sleep interruption exception
-      }
+      park( 1L );
     }
 
     // Grab a row... If nothing received after a timeout, try again.
@@ -3384,22 +3500,21 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    * Log summary.
    */
   public void logSummary() {
-    synchronized ( statusCountersLock ) {
-      long li = getLinesInput();
-      long lo = getLinesOutput();
-      long lr = getLinesRead();
-      long lw = getLinesWritten();
-      long lu = getLinesUpdated();
-      long lj = getLinesRejected();
-      if ( li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0 ) {
-        logBasic( BaseMessages.getString( PKG, "BaseStep.Log.SummaryInfo", String.valueOf( li ), String
-          .valueOf( lo ), String.valueOf( lr ), String.valueOf( lw ), String.valueOf( lw ), String
-          .valueOf( errors + lj ) ) );
-      } else {
-        logDetailed( BaseMessages.getString( PKG, "BaseStep.Log.SummaryInfo", String.valueOf( li ), String
-          .valueOf( lo ), String.valueOf( lr ), String.valueOf( lw ), String.valueOf( lw ), String
-          .valueOf( errors + lj ) ) );
-      }
+    long li = getLinesInput();
+    long lo = getLinesOutput();
+    long lr = getLinesRead();
+    long lw = getLinesWritten();
+    long lu = getLinesUpdated();
+    long lj = getLinesRejected();
+    long errors = getErrors();
+    if ( li > 0 || lo > 0 || lr > 0 || lw > 0 || lu > 0 || lj > 0 || errors > 0 ) {
+      logBasic( BaseMessages.getString( PKG, "BaseStep.Log.SummaryInfo", String.valueOf( li ), String
+        .valueOf( lo ), String.valueOf( lr ), String.valueOf( lw ), String.valueOf( lw ), String
+        .valueOf( errors + lj ) ) );
+    } else {
+      logDetailed( BaseMessages.getString( PKG, "BaseStep.Log.SummaryInfo", String.valueOf( li ), String
+        .valueOf( lo ), String.valueOf( lr ), String.valueOf( lw ), String.valueOf( lw ), String
+        .valueOf( errors + lj ) ) );
     }
   }
 
@@ -3461,11 +3576,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     inputRowSetsLock.writeLock().lock();
     try {
       for ( int i = 0; i < inputRowSets.size(); i++ ) {
-        BlockingRowSet rs = (BlockingRowSet) inputRowSets.get( i );
+        RowSet rs = inputRowSets.get( i );
         if ( rs.getOriginStepName().equalsIgnoreCase( stepName ) ) {
           // swap this one and position 0...that means, the main stream is always stream 0 --> easy!
           //
-          BlockingRowSet zero = (BlockingRowSet) inputRowSets.get( 0 );
+          RowSet zero = inputRowSets.get( 0 );
           inputRowSets.set( 0, rs );
           inputRowSets.set( i, zero );
         }
@@ -4397,6 +4512,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       handlePutRow( rowMeta, row );
     }
 
+    @Override public List<Object[]> getRows( int max ) throws KettleException {
+      return handleGetRows( max );
+    }
+
+    @Override public void putRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleStepException {
+      handlePutRows( rowMeta, rows );
+    }
+
     @Override public void putError( RowMetaInterface rowMeta, Object[] row, long nrErrors, String errorDescriptions,
                                     String fieldNames, String errorCodes ) throws KettleStepException {
       handlePutError( rowMeta, row, nrErrors, errorDescriptions, fieldNames, errorCodes );
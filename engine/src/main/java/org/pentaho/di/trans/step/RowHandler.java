@@ -24,6 +24,9 @@
 
 package org.pentaho.di.trans.step;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -52,6 +55,31 @@ public interface RowHandler {
   void putError( RowMetaInterface rowMeta, Object[] row, long nrErrors, String errorDescriptions,
                  String fieldNames, String errorCodes ) throws KettleStepException;
 
+  /**
+   * Reads a batch of rows. The default implementation reads a single row with {@link #getRow()}.
+   *
+   * @param max the maximum number of rows to return
+   * @return the rows read, an empty list if no more rows are to be expected.
+   */
+  default List<Object[]> getRows( int max ) throws KettleException {
+    List<Object[]> rows = new ArrayList<>();
+    Object[] row = getRow();
+    if ( row != null ) {
+      rows.add( row );
+    }
+    return rows;
+  }
+
+  /**
+   * Writes a batch of rows. The default implementation writes the rows one by one with
+   * {@link #putRow(RowMetaInterface, Object[])}.
+   */
+  default void putRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleStepException {
+    for ( Object[] row : rows ) {
+      putRow( rowMeta, row );
+    }
+  }
+
   default void putRowTo( RowMetaInterface rowMeta, Object[] row, RowSet rowSet )
     throws KettleStepException {
     throw new UnsupportedOperationException(
@@ -41,9 +41,14 @@ public class RunThread implements Runnable {
   private StepMetaInterface meta;
   private StepDataInterface data;
   private LogChannelInterface log;
+  /** The step if it keeps the deprecated counter fields up to date, null otherwise */
+  private BaseStep baseStep;
 
   public RunThread( StepMetaDataCombi combi ) {
     this.step = combi.step;
+    if ( step instanceof BaseStep ) {
+      this.baseStep = (BaseStep) step;
+    }
     this.meta = combi.meta;
     this.data = combi.data;
     this.log = step.getLogChannel();
@@ -59,7 +64,10 @@ public class RunThread implements Runnable {
       }
 
       // Wait
-      while ( step.processRow( meta, data ) ) {
+      while ( step.processRows( meta, data ) ) {
+        if ( baseStep != null ) {
+          baseStep.copyCountersToFields();
+        }
         if ( step.isStopped() ) {
           break;
         }
@@ -95,6 +103,9 @@ public class RunThread implements Runnable {
       }
     } finally {
       step.dispose( meta, data );
+      if ( baseStep != null ) {
+        baseStep.copyCountersToFields();
+      }
       step.getLogChannel().snap( Metrics.METRIC_STEP_EXECUTION_STOP );
       try {
         long li = step.getLinesInput();
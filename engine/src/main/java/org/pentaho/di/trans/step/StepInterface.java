@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.step;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -69,6 +70,21 @@ public interface StepInterface extends VariableSpace, HasLogChannelInterface {
    */
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException;
 
+  /**
+   * Perform the equivalent of processing a batch of rows. Steps that can amortize their per row overhead typically read
+   * rows with getRows() and pass them on with putRows(). The default implementation processes a single row.
+   *
+   * @param smi
+   *          The steps metadata to work with
+   * @param sdi
+   *          The steps temporary working data to work with
+   * @return false if no more rows can be processed or an error occurred.
+   * @throws KettleException
+   */
+  default boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    return processRow( smi, sdi );
+  }
+
   /**
    * This method checks if the step is capable of processing at least one row.
    * <p>
@@ -212,6 +228,16 @@ public interface StepInterface extends VariableSpace, HasLogChannelInterface {
    */
   public void setErrors( long errors );
 
+  /**
+   * The row and error counters of this step. The counters can be read at any time without locking, the getters of the
+   * individual counters are views on this object. The default implementation returns a copy of the current counters.
+   *
+   * @return the metrics of this step
+   */
+  default StepMetrics getStepMetrics() {
+    return StepMetrics.copyOf( this );
+  }
+
   /**
    * @return Returns the linesInput.
    */
@@ -261,6 +287,35 @@ public interface StepInterface extends VariableSpace, HasLogChannelInterface {
    */
   public Object[] getRow() throws KettleException;
 
+  /**
+   * Put a batch of rows on the destination rowsets. The default implementation puts the rows one by one.
+   *
+   * @param rowMeta
+   *          The metadata of the rows
+   * @param rows
+   *          The rows to send to the destinations steps
+   */
+  default void putRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    for ( Object[] row : rows ) {
+      putRow( rowMeta, row );
+    }
+  }
+
+  /**
+   * @param max
+   *          the maximum number of rows to return
+   * @return a batch of rows from the source step(s), an empty list if no more rows are to be expected. The default
+   *         implementation returns a single row.
+   */
+  default List<Object[]> getRows( int max ) throws KettleException {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = getRow();
+    if ( row != null ) {
+      rows.add( row );
+    }
+    return rows;
+  }
+
   /**
    * Signal output done to destination steps
    */
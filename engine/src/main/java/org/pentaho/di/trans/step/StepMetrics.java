@@ -0,0 +1,357 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The row and error counters of a step. Every counter is an atomic long, so it's updated without a lock and the
+ * threads polling the status (Carte, Spoon, performance snapshots) never see it go back, apart from setting or
+ * resetting it. A step copy has its own counters: only the threads of that copy update them.<br>
+ * <br>
+ * Since the counters are independent, a reader can see the counters of the same step updated at slightly different
+ * moments.<br>
+ * <br>
+ * Steps with a lookup cache also count the hits, misses and evictions of that cache here, the other steps leave those
+ * counters at 0.
+ *
+ * @since 9.1
+ */
+public class StepMetrics {
+
+  private final AtomicLong linesRead = new AtomicLong();
+  private final AtomicLong linesWritten = new AtomicLong();
+  private final AtomicLong linesInput = new AtomicLong();
+  private final AtomicLong linesOutput = new AtomicLong();
+  private final AtomicLong linesUpdated = new AtomicLong();
+  private final AtomicLong linesSkipped = new AtomicLong();
+  private final AtomicLong linesRejected = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+  private final AtomicLong cacheEvictions = new AtomicLong();
+
+  /**
+   * Create a copy of the counters of a step. This is used for step implementations that don't keep their counters in
+   * a StepMetrics object.
+   *
+   * @param step
+   *          the step to copy the counters from
+   * @return a new metrics object with the current counters of the step
+   */
+  public static StepMetrics copyOf( StepInterface step ) {
+    StepMetrics metrics = new StepMetrics();
+    metrics.linesRead.set( step.getLinesRead() );
+    metrics.linesWritten.set( step.getLinesWritten() );
+    metrics.linesInput.set( step.getLinesInput() );
+    metrics.linesOutput.set( step.getLinesOutput() );
+    metrics.linesUpdated.set( step.getLinesUpdated() );
+    if ( step instanceof BaseStep ) {
+      metrics.linesSkipped.set( ( (BaseStep) step ).getLinesSkipped() );
+    }
+    metrics.linesRejected.set( step.getLinesRejected() );
+    metrics.errors.set( step.getErrors() );
+    return metrics;
+  }
+
+  /**
+   * Reset all counters to 0.
+   */
+  public void reset() {
+    linesRead.set( 0L );
+    linesWritten.set( 0L );
+    linesInput.set( 0L );
+    linesOutput.set( 0L );
+    linesUpdated.set( 0L );
+    linesSkipped.set( 0L );
+    linesRejected.set( 0L );
+    errors.set( 0L );
+    cacheHits.set( 0L );
+    cacheMisses.set( 0L );
+    cacheEvictions.set( 0L );
+  }
+
+  /**
+   * @return the number of lines read from previous steps
+   */
+  public long getLinesRead() {
+    return linesRead.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines read from previous steps to add
+   * @return the new number
+   */
+  public long addLinesRead( long nrLines ) {
+    return linesRead.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesReadValue
+   *          the new number of lines read from previous steps
+   */
+  public void setLinesRead( long newLinesReadValue ) {
+    linesRead.set( newLinesReadValue );
+  }
+
+  /**
+   * @return the number of lines written to next steps
+   */
+  public long getLinesWritten() {
+    return linesWritten.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines written to next steps to add
+   * @return the new number
+   */
+  public long addLinesWritten( long nrLines ) {
+    return linesWritten.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesWrittenValue
+   *          the new number of lines written to next steps
+   */
+  public void setLinesWritten( long newLinesWrittenValue ) {
+    linesWritten.set( newLinesWrittenValue );
+  }
+
+  /**
+   * @return the number of lines read from an input source: database, file, socket, etc.
+   */
+  public long getLinesInput() {
+    return linesInput.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines read from an input source to add
+   * @return the new number
+   */
+  public long addLinesInput( long nrLines ) {
+    return linesInput.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesInputValue
+   *          the new number of lines read from an input source: database, file, socket, etc.
+   */
+  public void setLinesInput( long newLinesInputValue ) {
+    linesInput.set( newLinesInputValue );
+  }
+
+  /**
+   * @return the number of lines written to an output target: database, file, socket, etc.
+   */
+  public long getLinesOutput() {
+    return linesOutput.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines written to an output target to add
+   * @return the new number
+   */
+  public long addLinesOutput( long nrLines ) {
+    return linesOutput.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesOutputValue
+   *          the new number of lines written to an output target: database, file, socket, etc.
+   */
+  public void setLinesOutput( long newLinesOutputValue ) {
+    linesOutput.set( newLinesOutputValue );
+  }
+
+  /**
+   * @return the number of lines updated in an output target: database, file, socket, etc.
+   */
+  public long getLinesUpdated() {
+    return linesUpdated.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines updated in an output target to add
+   * @return the new number
+   */
+  public long addLinesUpdated( long nrLines ) {
+    return linesUpdated.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesUpdatedValue
+   *          the new number of lines updated in an output target: database, file, socket, etc.
+   */
+  public void setLinesUpdated( long newLinesUpdatedValue ) {
+    linesUpdated.set( newLinesUpdatedValue );
+  }
+
+  /**
+   * @return the number of lines skipped
+   */
+  public long getLinesSkipped() {
+    return linesSkipped.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines skipped to add
+   * @return the new number
+   */
+  public long addLinesSkipped( long nrLines ) {
+    return linesSkipped.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesSkippedValue
+   *          the new number of lines skipped
+   */
+  public void setLinesSkipped( long newLinesSkippedValue ) {
+    linesSkipped.set( newLinesSkippedValue );
+  }
+
+  /**
+   * @return the number of lines rejected to an error handling step
+   */
+  public long getLinesRejected() {
+    return linesRejected.get();
+  }
+
+  /**
+   * @param nrLines
+   *          the number of lines rejected to an error handling step to add
+   * @return the new number
+   */
+  public long addLinesRejected( long nrLines ) {
+    return linesRejected.addAndGet( nrLines );
+  }
+
+  /**
+   * @param newLinesRejectedValue
+   *          the new number of lines rejected to an error handling step
+   */
+  public void setLinesRejected( long newLinesRejectedValue ) {
+    linesRejected.set( newLinesRejectedValue );
+  }
+
+  /**
+   * @return the number of errors
+   */
+  public long getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * @param nrErrors
+   *          the number of errors to add
+   * @return the new number
+   */
+  public long addErrors( long nrErrors ) {
+    return errors.addAndGet( nrErrors );
+  }
+
+  /**
+   * @param newErrorsValue
+   *          the new number of errors
+   */
+  public void setErrors( long newErrorsValue ) {
+    errors.set( newErrorsValue );
+  }
+
+  /**
+   * @return the number of keys found in the cache
+   */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * @param nrHits
+   *          the number of keys found in the cache to add
+   * @return the new number
+   */
+  public long addCacheHits( long nrHits ) {
+    return cacheHits.addAndGet( nrHits );
+  }
+
+  /**
+   * @param newCacheHitsValue
+   *          the new number of keys found in the cache
+   */
+  public void setCacheHits( long newCacheHitsValue ) {
+    cacheHits.set( newCacheHitsValue );
+  }
+
+  /**
+   * @return the number of keys not found in the cache
+   */
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  /**
+   * @param nrMisses
+   *          the number of keys not found in the cache to add
+   * @return the new number
+   */
+  public long addCacheMisses( long nrMisses ) {
+    return cacheMisses.addAndGet( nrMisses );
+  }
+
+  /**
+   * @param newCacheMissesValue
+   *          the new number of keys not found in the cache
+   */
+  public void setCacheMisses( long newCacheMissesValue ) {
+    cacheMisses.set( newCacheMissesValue );
+  }
+
+  /**
+   * @return the number of entries evicted from the cache
+   */
+  public long getCacheEvictions() {
+    return cacheEvictions.get();
+  }
+
+  /**
+   * @param nrEvictions
+   *          the number of entries evicted from the cache to add
+   * @return the new number
+   */
+  public long addCacheEvictions( long nrEvictions ) {
+    return cacheEvictions.addAndGet( nrEvictions );
+  }
+
+  /**
+   * @param newCacheEvictionsValue
+   *          the new number of entries evicted from the cache
+   */
+  public void setCacheEvictions( long newCacheEvictionsValue ) {
+    cacheEvictions.set( newCacheEvictionsValue );
+  }
+}
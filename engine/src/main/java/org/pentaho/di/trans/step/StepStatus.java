@@ -54,6 +54,9 @@ public class StepStatus {
   private long linesUpdated;
   private long linesRejected;
   private long errors;
+  private long cacheHits;
+  private long cacheMisses;
+  private long cacheEvictions;
   private String statusDescription;
   private double seconds;
   private String speed;
@@ -86,6 +89,10 @@ public class StepStatus {
     this.linesUpdated = linesUpdated + baseStep.getLinesUpdated();
     this.linesRejected = linesRejected + baseStep.getLinesRejected();
     this.errors = errors + baseStep.getErrors();
+    StepMetrics metrics = baseStep.getStepMetrics();
+    this.cacheHits = cacheHits + metrics.getCacheHits();
+    this.cacheMisses = cacheMisses + metrics.getCacheMisses();
+    this.cacheEvictions = cacheEvictions + metrics.getCacheEvictions();
     this.accumlatedRuntime = accumlatedRuntime + baseStep.getRuntime();
     this.statusDescription = baseStep.getStatus().getDescription();
 
@@ -135,6 +142,13 @@ public class StepStatus {
       xml.append( XMLHandler.addTagValue( "linesUpdated", linesUpdated, false ) );
       xml.append( XMLHandler.addTagValue( "linesRejected", linesRejected, false ) );
       xml.append( XMLHandler.addTagValue( "errors", errors, false ) );
+      // Only steps with a lookup cache have cache statistics
+      //
+      if ( cacheHits > 0 || cacheMisses > 0 || cacheEvictions > 0 ) {
+        xml.append( XMLHandler.addTagValue( "cacheHits", cacheHits, false ) );
+        xml.append( XMLHandler.addTagValue( "cacheMisses", cacheMisses, false ) );
+        xml.append( XMLHandler.addTagValue( "cacheEvictions", cacheEvictions, false ) );
+      }
       xml.append( XMLHandler.addTagValue( "statusDescription", statusDescription, false ) );
       xml.append( XMLHandler.addTagValue( "seconds", seconds, false ) );
       xml.append( XMLHandler.addTagValue( "speed", speed, false ) );
@@ -176,6 +190,9 @@ public class StepStatus {
     linesUpdated = Long.parseLong( XMLHandler.getTagValue( node, "linesUpdated" ) );
     linesRejected = Long.parseLong( XMLHandler.getTagValue( node, "linesRejected" ) );
     errors = Long.parseLong( XMLHandler.getTagValue( node, "errors" ) );
+    cacheHits = Const.toLong( XMLHandler.getTagValue( node, "cacheHits" ), 0L );
+    cacheMisses = Const.toLong( XMLHandler.getTagValue( node, "cacheMisses" ), 0L );
+    cacheEvictions = Const.toLong( XMLHandler.getTagValue( node, "cacheEvictions" ), 0L );
     statusDescription = XMLHandler.getTagValue( node, "statusDescription" );
     seconds = Double.parseDouble( XMLHandler.getTagValue( node, "seconds" ) );
     speed = XMLHandler.getTagValue( node, "speed" );
@@ -297,6 +314,51 @@ public class StepStatus {
     this.errors = errors;
   }
 
+  /**
+   * @return the number of keys found in the lookup cache of the step
+   */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * @param cacheHits
+   *          the number of keys found in the lookup cache of the step
+   */
+  public void setCacheHits( long cacheHits ) {
+    this.cacheHits = cacheHits;
+  }
+
+  /**
+   * @return the number of keys not found in the lookup cache of the step
+   */
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  /**
+   * @param cacheMisses
+   *          the number of keys not found in the lookup cache of the step
+   */
+  public void setCacheMisses( long cacheMisses ) {
+    this.cacheMisses = cacheMisses;
+  }
+
+  /**
+   * @return the number of entries evicted from the lookup cache of the step
+   */
+  public long getCacheEvictions() {
+    return cacheEvictions;
+  }
+
+  /**
+   * @param cacheEvictions
+   *          the number of entries evicted from the lookup cache of the step
+   */
+  public void setCacheEvictions( long cacheEvictions ) {
+    this.cacheEvictions = cacheEvictions;
+  }
+
   /**
    * @return the linesInput
    */
@@ -0,0 +1,126 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.lang.reflect.Method;
+
+/**
+ * The kind of threads the steps of a transformation are initialized and run on.<br>
+ * <br>
+ * PLATFORM starts one operating system thread per step copy, this is the default.<br>
+ * VIRTUAL starts one virtual thread per step copy. Virtual threads are scheduled on a small pool of carrier threads
+ * so a server can run a lot more (small) transformations at the same time. They require a Java 21 (or later) runtime,
+ * on older runtimes platform threads are used instead.
+ *
+ * @since 9.1
+ */
+public enum StepThreadMode {
+  PLATFORM( "platform" ),
+  VIRTUAL( "virtual" );
+
+  private static final Method OF_VIRTUAL;
+  private static final Method UNSTARTED;
+
+  static {
+    // The engine is compiled for Java 8 so we look up Thread.ofVirtual().unstarted() at runtime
+    //
+    Method ofVirtual = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod( "ofVirtual" );
+      unstarted = Class.forName( "java.lang.Thread$Builder" ).getMethod( "unstarted", Runnable.class );
+    } catch ( Exception e ) {
+      // Not available in this runtime
+      ofVirtual = null;
+      unstarted = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    UNSTARTED = unstarted;
+  }
+
+  private final String code;
+
+  StepThreadMode( String code ) {
+    this.code = code;
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  /**
+   * Create a new thread for a step, the thread is not started.
+   *
+   * @param runnable
+   *          the code to run, usually a RunThread or a StepInitThread
+   * @return the new (unstarted) thread
+   */
+  public Thread newThread( Runnable runnable ) {
+    if ( this == VIRTUAL ) {
+      Thread thread = newVirtualThread( runnable );
+      if ( thread != null ) {
+        return thread;
+      }
+    }
+    return new Thread( runnable );
+  }
+
+  /**
+   * @return true if the Java runtime can start virtual threads
+   */
+  public static boolean isVirtualThreadSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  private static Thread newVirtualThread( Runnable runnable ) {
+    if ( OF_VIRTUAL == null ) {
+      return null;
+    }
+    try {
+      return (Thread) UNSTARTED.invoke( OF_VIRTUAL.invoke( null ), runnable );
+    } catch ( Exception e ) {
+      // Virtual threads can be a disabled preview feature (Java 19 and 20)
+      return null;
+    }
+  }
+
+  /**
+   * Look up a thread mode by its code, the lookup is not case sensitive.
+   *
+   * @param code
+   *          the code to look for
+   * @param defaultMode
+   *          the mode to return if the code is empty or unknown
+   * @return the thread mode
+   */
+  public static StepThreadMode getStepThreadModeByCode( String code, StepThreadMode defaultMode ) {
+    if ( code != null ) {
+      for ( StepThreadMode mode : values() ) {
+        if ( mode.code.equalsIgnoreCase( code.trim() ) || mode.name().equalsIgnoreCase( code.trim() ) ) {
+          return mode;
+        }
+      }
+    }
+    return defaultMode;
+  }
+}
@@ -29,6 +29,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileNotFoundException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueDataUtil;
@@ -69,11 +70,16 @@ public class Calculator extends BaseStep implements StepInterface {
 
   @Override
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    return processRows( smi, sdi );
+  }
+
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (CalculatorMeta) smi;
     data = (CalculatorData) sdi;
 
-    Object[] r = getRow(); // get row, set busy!
-    if ( r == null ) { // no more input to be expected...
+    List<Object[]> rows = getRows( getRowBatchSize() ); // get a batch of rows, set busy!
+    if ( rows.isEmpty() ) { // no more input to be expected...
       setOutputDone();
       data.clearValuesMetaMapping();
       return false;
@@ -81,110 +87,262 @@ public class Calculator extends BaseStep implements StepInterface {
 
     if ( first ) {
       first = false;
-      data.setOutputRowMeta( getInputRowMeta().clone() );
-      meta.getFields( data.getOutputRowMeta(), getStepname(), null, null, this, repository, metaStore );
-
-      // get all metadata, including source rows and temporary fields.
-      data.setCalcRowMeta( meta.getAllFields( getInputRowMeta() ) );
-
-      data.setFieldIndexes( new FieldIndexes[meta.getCalculation().length] );
-      List<Integer> tempIndexes = new ArrayList<Integer>();
-
-      // Calculate the indexes of the values and arguments in the target data or temporary data
-      // We do this in advance to save time later on.
-      //
-      //CHECKSTYLE:Indentation:OFF
-      for ( int i = 0; i < meta.getCalculation().length; i++ ) {
-        CalculatorMetaFunction function = meta.getCalculation()[i];
-        data.getFieldIndexes()[i] = new FieldIndexes();
-
-        if ( !Utils.isEmpty( function.getFieldName() ) ) {
-          data.getFieldIndexes()[i].indexName = data.getCalcRowMeta().indexOfValue( function.getFieldName() );
-          if ( data.getFieldIndexes()[i].indexName < 0 ) {
-            // Nope: throw an exception
-            throw new KettleStepException( BaseMessages.getString(
-              PKG, "Calculator.Error.UnableFindField", function.getFieldName(), "" + ( i + 1 ) ) );
-          }
-        } else {
-          throw new KettleStepException( BaseMessages.getString( PKG, "Calculator.Error.NoNameField", ""
-            + ( i + 1 ) ) );
+      prepareCalculation();
+    }
+
+    if ( data.isBatchCalculation() ) {
+      try {
+        putRows( data.getOutputRowMeta(), calcBatch( getInputRowMeta(), rows ) );
+      } catch ( KettleException e ) {
+        logError( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" + " : " + e.getMessage() ) );
+        throw new KettleStepException( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" ), e );
+      }
+      if ( checkFeedback( getLinesRead(), rows.size() ) ) {
+        if ( log.isBasic() ) {
+          logBasic( BaseMessages.getString( PKG, "Calculator.Log.Linenr", "" + getLinesRead() ) );
         }
+      }
+      return true;
+    }
 
-        if ( !Utils.isEmpty( function.getFieldA() ) ) {
-          if ( function.getCalcType() != CalculatorMetaFunction.CALC_CONSTANT ) {
-            data.getFieldIndexes()[i].indexA = data.getCalcRowMeta().indexOfValue( function.getFieldA() );
-            if ( data.getFieldIndexes()[i].indexA < 0 ) {
-              // Nope: throw an exception
-              throw new KettleStepException( "Unable to find the first argument field '"
-                + function.getFieldName() + " for calculation #" + ( i + 1 ) );
-            }
-          } else {
-            data.getFieldIndexes()[i].indexA = -1;
+    List<Object[]> outputRows = new ArrayList<Object[]>( rows.size() );
+    try {
+      for ( Object[] r : rows ) {
+        if ( log.isRowLevel() ) {
+          logRowlevel( BaseMessages.getString( PKG, "Calculator.Log.ReadRow" )
+            + getLinesRead() + " : " + getInputRowMeta().getString( r ) );
+        }
+        try {
+          outputRows.add( calcFields( getInputRowMeta(), r ) );
+        } catch ( KettleFileNotFoundException e ) {
+          if ( meta.isFailIfNoFile() ) {
+            // Pass on what was calculated before the error, just like row by row processing would have done
+            //
+            putRows( data.getOutputRowMeta(), outputRows );
+            logError( BaseMessages.getString( PKG, "Calculator.Log.NoFile" ) + " : " + e.getFilepath() );
+            setErrors( getErrors() + 1 );
+            return false;
           }
-        } else {
-          throw new KettleStepException( "There is no first argument specified for calculated field #" + ( i + 1 ) );
         }
+      }
+      putRows( data.getOutputRowMeta(), outputRows ); // copy rows to possible alternate rowset(s).
 
-        if ( !Utils.isEmpty( function.getFieldB() ) ) {
-          data.getFieldIndexes()[i].indexB = data.getCalcRowMeta().indexOfValue( function.getFieldB() );
-          if ( data.getFieldIndexes()[i].indexB < 0 ) {
-            // Nope: throw an exception
-            throw new KettleStepException( "Unable to find the second argument field '"
-              + function.getFieldName() + " for calculation #" + ( i + 1 ) );
-          }
+      if ( checkFeedback( getLinesRead(), rows.size() ) ) {
+        if ( log.isBasic() ) {
+          logBasic( BaseMessages.getString( PKG, "Calculator.Log.Linenr", "" + getLinesRead() ) );
+        }
+      }
+    } catch ( KettleException e ) {
+      logError( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" + " : " + e.getMessage() ) );
+      throw new KettleStepException( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" ), e );
+    }
+    return true;
+  }
+
+  private void prepareCalculation() throws KettleStepException {
+    data.setOutputRowMeta( getInputRowMeta().clone() );
+    meta.getFields( data.getOutputRowMeta(), getStepname(), null, null, this, repository, metaStore );
+
+    // get all metadata, including source rows and temporary fields.
+    data.setCalcRowMeta( meta.getAllFields( getInputRowMeta() ) );
+
+    data.setFieldIndexes( new FieldIndexes[meta.getCalculation().length] );
+    List<Integer> tempIndexes = new ArrayList<Integer>();
+
+    // Calculate the indexes of the values and arguments in the target data or temporary data
+    // We do this in advance to save time later on.
+    //
+    //CHECKSTYLE:Indentation:OFF
+    for ( int i = 0; i < meta.getCalculation().length; i++ ) {
+      CalculatorMetaFunction function = meta.getCalculation()[i];
+      data.getFieldIndexes()[i] = new FieldIndexes();
+
+      if ( !Utils.isEmpty( function.getFieldName() ) ) {
+        data.getFieldIndexes()[i].indexName = data.getCalcRowMeta().indexOfValue( function.getFieldName() );
+        if ( data.getFieldIndexes()[i].indexName < 0 ) {
+          // Nope: throw an exception
+          throw new KettleStepException( BaseMessages.getString(
+            PKG, "Calculator.Error.UnableFindField", function.getFieldName(), "" + ( i + 1 ) ) );
         }
-        data.getFieldIndexes()[i].indexC = -1;
-        if ( !Utils.isEmpty( function.getFieldC() ) ) {
-          data.getFieldIndexes()[i].indexC = data.getCalcRowMeta().indexOfValue( function.getFieldC() );
-          if ( data.getFieldIndexes()[i].indexC < 0 ) {
+      } else {
+        throw new KettleStepException( BaseMessages.getString( PKG, "Calculator.Error.NoNameField", ""
+          + ( i + 1 ) ) );
+      }
+
+      if ( !Utils.isEmpty( function.getFieldA() ) ) {
+        if ( function.getCalcType() != CalculatorMetaFunction.CALC_CONSTANT ) {
+          data.getFieldIndexes()[i].indexA = data.getCalcRowMeta().indexOfValue( function.getFieldA() );
+          if ( data.getFieldIndexes()[i].indexA < 0 ) {
             // Nope: throw an exception
-            throw new KettleStepException( "Unable to find the third argument field '"
+            throw new KettleStepException( "Unable to find the first argument field '"
               + function.getFieldName() + " for calculation #" + ( i + 1 ) );
           }
+        } else {
+          data.getFieldIndexes()[i].indexA = -1;
         }
+      } else {
+        throw new KettleStepException( "There is no first argument specified for calculated field #" + ( i + 1 ) );
+      }
 
-        if ( function.isRemovedFromResult() ) {
-          tempIndexes.add( getInputRowMeta().size() + i );
+      if ( !Utils.isEmpty( function.getFieldB() ) ) {
+        data.getFieldIndexes()[i].indexB = data.getCalcRowMeta().indexOfValue( function.getFieldB() );
+        if ( data.getFieldIndexes()[i].indexB < 0 ) {
+          // Nope: throw an exception
+          throw new KettleStepException( "Unable to find the second argument field '"
+            + function.getFieldName() + " for calculation #" + ( i + 1 ) );
+        }
+      }
+      data.getFieldIndexes()[i].indexC = -1;
+      if ( !Utils.isEmpty( function.getFieldC() ) ) {
+        data.getFieldIndexes()[i].indexC = data.getCalcRowMeta().indexOfValue( function.getFieldC() );
+        if ( data.getFieldIndexes()[i].indexC < 0 ) {
+          // Nope: throw an exception
+          throw new KettleStepException( "Unable to find the third argument field '"
+            + function.getFieldName() + " for calculation #" + ( i + 1 ) );
         }
       }
 
-      // Convert temp indexes to int[]
-      data.setTempIndexes( new int[tempIndexes.size()] );
-      for ( int i = 0; i < data.getTempIndexes().length; i++ ) {
-        data.getTempIndexes()[i] = tempIndexes.get( i );
+      if ( function.isRemovedFromResult() ) {
+        tempIndexes.add( getInputRowMeta().size() + i );
       }
     }
 
-    if ( log.isRowLevel() ) {
-      logRowlevel( BaseMessages.getString( PKG, "Calculator.Log.ReadRow" )
-        + getLinesRead() + " : " + getInputRowMeta().getString( r ) );
+    // Convert temp indexes to int[]
+    data.setTempIndexes( new int[tempIndexes.size()] );
+    for ( int i = 0; i < data.getTempIndexes().length; i++ ) {
+      data.getTempIndexes()[i] = tempIndexes.get( i );
     }
 
-    try {
-      Object[] row = calcFields( getInputRowMeta(), r );
-      putRow( data.getOutputRowMeta(), row ); // copy row to possible alternate rowset(s).
+    data.setBatchCalculation( isBatchCalculation() );
+  }
 
-      if ( log.isRowLevel() ) {
-        logRowlevel( "Wrote row #" + getLinesWritten() + " : " + getInputRowMeta().getString( r ) );
+  /**
+   * The simple arithmetic on Integer and Number fields can be done column by column on a whole batch of rows, without
+   * boxing and unboxing every single value.
+   *
+   * @return true if all calculations are additions, subtractions or multiplications of Integer or Number fields (normal
+   *         storage) of the same type with a target field of that type as well.
+   */
+  private boolean isBatchCalculation() {
+    RowMetaInterface calcRowMeta = data.getCalcRowMeta();
+    for ( int i = 0; i < meta.getCalculation().length; i++ ) {
+      CalculatorMetaFunction fn = meta.getCalculation()[i];
+      switch ( fn.getCalcType() ) {
+        case CalculatorMetaFunction.CALC_ADD:
+        case CalculatorMetaFunction.CALC_SUBTRACT:
+        case CalculatorMetaFunction.CALC_MULTIPLY:
+          break;
+        default:
+          return false;
       }
-      if ( checkFeedback( getLinesRead() ) ) {
-        if ( log.isBasic() ) {
-          logBasic( BaseMessages.getString( PKG, "Calculator.Log.Linenr", "" + getLinesRead() ) );
-        }
+      if ( Utils.isEmpty( fn.getFieldB() ) ) {
+        return false;
       }
-    } catch ( KettleFileNotFoundException e ) {
-      if ( meta.isFailIfNoFile() ) {
-        logError( BaseMessages.getString( PKG, "Calculator.Log.NoFile" ) + " : " + e.getFilepath() );
-        setErrors( getErrors() + 1 );
+      ValueMetaInterface metaA = calcRowMeta.getValueMeta( data.getFieldIndexes()[i].indexA );
+      ValueMetaInterface metaB = calcRowMeta.getValueMeta( data.getFieldIndexes()[i].indexB );
+      ValueMetaInterface targetMeta = calcRowMeta.getValueMeta( getInputRowMeta().size() + i );
+      if ( !RowBatch.isPrimitive( metaA ) || metaB.getType() != metaA.getType() || !RowBatch.isPrimitive( metaB )
+        || targetMeta.getType() != metaA.getType() ) {
         return false;
       }
-    } catch ( KettleException e ) {
-      logError( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" + " : " + e.getMessage() ) );
-      throw new KettleStepException( BaseMessages.getString( PKG, "Calculator.ErrorInStepRunning" ), e );
     }
     return true;
   }
 
+  /**
+   * Calculates the new fields for a batch of rows at once, the result is the same as calling calcFields() for every
+   * row. Only used if all calculations qualify, see isBatchCalculation().
+   *
+   * @param inputRowMeta
+   *          the input row metadata
+   * @param rows
+   *          the input rows
+   * @return the rows including the calculations, excluding the temporary values
+   * @throws KettleValueException
+   *           in case a value can't be read
+   */
+  private List<Object[]> calcBatch( RowMetaInterface inputRowMeta, List<Object[]> rows ) throws KettleValueException {
+    if ( log.isRowLevel() ) {
+      for ( Object[] r : rows ) {
+        logRowlevel( BaseMessages.getString( PKG, "Calculator.Log.ReadRow" ) + " : " + inputRowMeta.getString( r ) );
+      }
+    }
+
+    RowMetaInterface calcRowMeta = data.getCalcRowMeta();
+    int size = rows.size();
+    int nrCalculations = meta.getCalculation().length;
+    int firstIndex = inputRowMeta.size();
+
+    // The calculated fields start out empty, a calculation can use the result of a previous one.
+    //
+    RowBatch batch = new RowBatch( calcRowMeta, rows );
+    for ( int i = 0; i < nrCalculations; i++ ) {
+      batch.setColumn( firstIndex + i, RowBatch.newColumn( calcRowMeta.getValueMeta( firstIndex + i ), size ) );
+    }
+
+    for ( int i = 0; i < nrCalculations; i++ ) {
+      int calcType = meta.getCalculation()[i].getCalcType();
+      int indexA = data.getFieldIndexes()[i].indexA;
+      int indexB = data.getFieldIndexes()[i].indexB;
+      RowBatch.Column columnA = batch.getColumn( indexA );
+      RowBatch.Column columnB = batch.getColumn( indexB );
+
+      if ( columnA instanceof RowBatch.LongColumn ) {
+        long[] a = ( (RowBatch.LongColumn) columnA ).getValues();
+        long[] b = ( (RowBatch.LongColumn) columnB ).getValues();
+        RowBatch.LongColumn result = new RowBatch.LongColumn( size );
+        for ( int r = 0; r < size; r++ ) {
+          if ( !columnA.isNull( r ) && !columnB.isNull( r ) ) {
+            switch ( calcType ) {
+              case CalculatorMetaFunction.CALC_ADD:
+                result.setLong( r, a[r] + b[r] );
+                break;
+              case CalculatorMetaFunction.CALC_SUBTRACT:
+                result.setLong( r, a[r] - b[r] );
+                break;
+              default:
+                result.setLong( r, a[r] * b[r] );
+                break;
+            }
+          }
+        }
+        batch.setColumn( firstIndex + i, result );
+      } else {
+        double[] a = ( (RowBatch.DoubleColumn) columnA ).getValues();
+        double[] b = ( (RowBatch.DoubleColumn) columnB ).getValues();
+        RowBatch.DoubleColumn result = new RowBatch.DoubleColumn( size );
+        for ( int r = 0; r < size; r++ ) {
+          if ( !columnA.isNull( r ) && !columnB.isNull( r ) ) {
+            switch ( calcType ) {
+              case CalculatorMetaFunction.CALC_ADD:
+                result.setDouble( r, a[r] + b[r] );
+                break;
+              case CalculatorMetaFunction.CALC_SUBTRACT:
+                result.setDouble( r, a[r] - b[r] );
+                break;
+              default:
+                result.setDouble( r, a[r] * b[r] );
+                break;
+            }
+          }
+        }
+        batch.setColumn( firstIndex + i, result );
+      }
+    }
+
+    // Add the calculated values to the input rows and drop the temporary fields, just like calcFields() does
+    //
+    List<Object[]> outputRows = new ArrayList<Object[]>( size );
+    for ( int r = 0; r < size; r++ ) {
+      Object[] calcData = RowDataUtil.resizeArray( rows.get( r ), calcRowMeta.size() );
+      for ( int i = 0; i < nrCalculations; i++ ) {
+        calcData[firstIndex + i] = batch.getColumn( firstIndex + i ).getObject( r );
+      }
+      outputRows.add( RowDataUtil.removeItems( calcData, data.getTempIndexes() ) );
+    }
+    return outputRows;
+  }
+
   /**
    * @param inputRowMeta
    *          the input row metadata
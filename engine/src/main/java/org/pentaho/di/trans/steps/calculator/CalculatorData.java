@@ -44,6 +44,8 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
 
   private int[] tempIndexes;
 
+  private boolean batchCalculation;
+
   private final Map<Integer, ValueMetaInterface> resultMetaMapping;
 
   public CalculatorData() {
@@ -83,6 +85,17 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
     this.tempIndexes = tempIndexes;
   }
 
+  /**
+   * @return true if all the calculations can be done column by column on a whole batch of rows
+   */
+  public boolean isBatchCalculation() {
+    return batchCalculation;
+  }
+
+  public void setBatchCalculation( boolean batchCalculation ) {
+    this.batchCalculation = batchCalculation;
+  }
+
   public ValueMetaInterface getValueMetaFor( int resultType, String name ) throws KettlePluginException {
     // don't need any synchronization as data instance belongs only to one step instance
     ValueMetaInterface meta = resultMetaMapping.get( resultType );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,14 +22,28 @@
 
 package org.pentaho.di.trans.steps.databasejoin;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -38,6 +52,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.databaselookup.SegmentedLruCache;
 
 /**
  * Use values from input streams to joins with values in a database. Freehand SQL can be used to do this.
@@ -48,6 +63,11 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class DatabaseJoin extends BaseStep implements StepInterface {
   private static Class<?> PKG = DatabaseJoinMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * The column added to the batched query to tell which parameter values a row was found for.
+   */
+  static final String BATCH_NR_FIELD = "KETTLE_BATCH_NR";
+
   private DatabaseJoinMeta meta;
   private DatabaseJoinData data;
 
@@ -56,39 +76,133 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
   }
 
-  private synchronized void lookupValues( RowMetaInterface rowMeta, Object[] rowData ) throws KettleException {
-    if ( first ) {
-      first = false;
+  private void initLookup( RowMetaInterface rowMeta, Object[] rowData ) throws KettleException {
+    data.outputRowMeta = rowMeta.clone();
+    meta.getFields(
+      data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this,
+      repository, metaStore );
+    data.nrJoinFields = data.outputRowMeta.size() - rowMeta.size();
 
-      data.outputRowMeta = rowMeta.clone();
-      meta.getFields(
-        data.outputRowMeta, getStepname(), new RowMetaInterface[] { meta.getTableFields(), }, null, this,
-        repository, metaStore );
+    data.lookupRowMeta = new RowMeta();
 
-      data.lookupRowMeta = new RowMeta();
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.CheckingRow" ) + rowMeta.getString( rowData ) );
+    }
 
-      if ( log.isDetailed() ) {
-        logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.CheckingRow" ) + rowMeta.getString( rowData ) );
+    data.keynrs = new int[meta.getParameterField().length];
+
+    for ( int i = 0; i < meta.getParameterField().length; i++ ) {
+      data.keynrs[i] = rowMeta.indexOfValue( meta.getParameterField()[i] );
+      if ( data.keynrs[i] < 0 ) {
+        throw new KettleStepException( BaseMessages.getString( PKG, "DatabaseJoin.Exception.FieldNotFound", meta
+          .getParameterField()[i] ) );
       }
 
-      data.keynrs = new int[meta.getParameterField().length];
+      data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta( data.keynrs[i] ).clone() );
+    }
+
+    if ( meta.isCached() ) {
+      long maxBytes = Const.toLong( environmentSubstitute( getVariable( Const.KETTLE_DB_LOOKUP_CACHE_MAX_MEMORY ) ), 0L );
+      long timeToLive = Const.toLong( environmentSubstitute( getVariable( Const.KETTLE_DB_LOOKUP_CACHE_TTL ) ), 0L );
+      data.cache = new SegmentedLruCache(
+        meta.getCacheSize(), maxBytes * 1024L * 1024L, timeToLive * 1000L, getStepMetrics() );
+    }
 
-      for ( int i = 0; i < meta.getParameterField().length; i++ ) {
-        data.keynrs[i] = rowMeta.indexOfValue( meta.getParameterField()[i] );
-        if ( data.keynrs[i] < 0 ) {
-          throw new KettleStepException( BaseMessages.getString( PKG, "DatabaseJoin.Exception.FieldNotFound", meta
-            .getParameterField()[i] ) );
-        }
+    initBatch();
+  }
 
-        data.lookupRowMeta.addValueMeta( rowMeta.getValueMeta( data.keynrs[i] ).clone() );
+  /**
+   * Switches to batched queries if a batch size was set. The query is repeated for every distinct set of parameter
+   * values of the batch with UNION ALL and each part is numbered so that the rows found can be matched with the
+   * parameter values again:<br>
+   * SELECT 0 AS KETTLE_BATCH_NR, j.* FROM ( query ) j UNION ALL SELECT 1 AS KETTLE_BATCH_NR, j.* FROM ( query ) j ...
+   * <br>
+   * A union keeps no order within the rows found for a set of parameter values and most databases refuse an ORDER BY
+   * in a sub-query, so queries with an ORDER BY clause are executed for every row.
+   */
+  private void initBatch() throws KettleException {
+    if ( meta.getBatchSize() <= 1 || data.keynrs.length == 0 ) {
+      return;
+    }
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    int batchSize = Math.min( meta.getBatchSize(), dbMeta.getMaxQueryBatchRows( data.keynrs.length ) );
+    if ( batchSize <= 1 ) {
+      return;
+    }
+    String sql = meta.isVariableReplace() ? environmentSubstitute( meta.getSql() ) : meta.getSql();
+    if ( dbMeta.getDatabaseInterface().createSqlScriptParser().indexOfOrderBy( sql ) >= 0 ) {
+      logBasic( BaseMessages.getString( PKG, "DatabaseJoin.Log.NoBatchWithOrderBy" ) );
+      return;
+    }
+
+    data.batchQuery = sql;
+    data.batchStatements = new HashMap<Integer, PreparedStatement>();
+    try {
+      // A query that can't be used as a sub-query is usually refused right away
+      //
+      getBatchStatement( batchSize );
+    } catch ( KettleDatabaseException e ) {
+      logBasic( BaseMessages.getString( PKG, "DatabaseJoin.Log.NoBatchSubQuery", e.getMessage() ) );
+      data.batchStatements = null;
+      return;
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.BatchedQuery", batchSize ) );
+    }
+    data.batchSize = batchSize;
+    data.batch = new ArrayList<Object[]>( batchSize );
+    data.batchResults = new HashMap<RowMetaAndData, List<Object[]>>();
+  }
+
+  /**
+   * @return the size of the batched statement to use for the given number of parameter value sets: the next power of
+   *         2, so only a few statements are prepared and the SQL doesn't grow with every possible size
+   */
+  private int getBatchStatementSize( int nrKeys ) {
+    int size = 1;
+    while ( size < nrKeys ) {
+      size <<= 1;
+    }
+    return Math.min( size, data.batchSize );
+  }
+
+  /**
+   * @return the batched statement for the number of parameter value sets, prepared once
+   */
+  private PreparedStatement getBatchStatement( int size ) throws KettleDatabaseException {
+    PreparedStatement statement = data.batchStatements.get( size );
+    if ( statement == null ) {
+      StringBuilder batchSql = new StringBuilder();
+      for ( int b = 0; b < size; b++ ) {
+        if ( b > 0 ) {
+          batchSql.append( Const.CR ).append( "UNION ALL" ).append( Const.CR );
+        }
+        batchSql.append( "SELECT " ).append( b ).append( " AS " ).append( BATCH_NR_FIELD )
+          .append( ", kettle_join.* FROM ( " ).append( data.batchQuery ).append( " ) kettle_join" );
       }
+      statement = data.db.prepareSQL( batchSql.toString() );
+      data.batchStatements.put( size, statement );
     }
+    return statement;
+  }
 
-    // Construct the parameters row...
+  private Object[] createLookupRow( Object[] rowData ) {
     Object[] lookupRowData = new Object[data.lookupRowMeta.size()];
     for ( int i = 0; i < data.keynrs.length; i++ ) {
       lookupRowData[i] = rowData[data.keynrs[i]];
     }
+    return lookupRowData;
+  }
+
+  private synchronized void lookupValues( RowMetaInterface rowMeta, Object[] rowData ) throws KettleException {
+    // Construct the parameters row...
+    Object[] lookupRowData = createLookupRow( rowData );
+
+    if ( data.cache != null || data.batchResults != null ) {
+      putJoinedRows( rowMeta, rowData, getJoinRows( lookupRowData ) );
+      return;
+    }
 
     // Set the values on the prepared statement (for faster exec.)
     ResultSet rs = data.db.openQuery( data.pstmt, data.lookupRowMeta, lookupRowData );
@@ -142,19 +256,231 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     data.db.closeQuery( rs );
   }
 
+  /**
+   * Gets the rows to join with from the results of the current batch, from the cache or from the database.
+   */
+  private List<Object[]> getJoinRows( Object[] lookupRowData ) throws KettleException {
+    if ( data.batchResults != null ) {
+      List<Object[]> rows = data.batchResults.get( new RowMetaAndData( data.lookupRowMeta, lookupRowData ) );
+      if ( rows != null ) {
+        return rows;
+      }
+    }
+    if ( data.cache != null ) {
+      Object[] cached = data.cache.getRowFromCache( data.lookupRowMeta, lookupRowData );
+      if ( cached != null ) {
+        return Arrays.asList( (Object[][]) cached );
+      }
+    }
+
+    ResultSet rs = data.db.openQuery( data.pstmt, data.lookupRowMeta, lookupRowData );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    try {
+      Object[] add = data.db.getRow( rs );
+      incrementLinesInput();
+      while ( add != null && ( meta.getRowLimit() == 0 || rows.size() < meta.getRowLimit() ) ) {
+        Object[] values = new Object[data.nrJoinFields];
+        System.arraycopy( add, 0, values, 0, data.nrJoinFields );
+        rows.add( values );
+
+        if ( meta.getRowLimit() == 0 || rows.size() < meta.getRowLimit() ) {
+          add = data.db.getRow( rs );
+          incrementLinesInput();
+        }
+      }
+    } finally {
+      data.db.closeQuery( rs );
+    }
+
+    storeInCache( lookupRowData, rows );
+    return rows;
+  }
+
+  private void storeInCache( Object[] lookupRowData, List<Object[]> rows ) {
+    if ( data.cache != null ) {
+      data.cache.storeRowInCache( null, data.lookupRowMeta, lookupRowData, rows.toArray( new Object[rows.size()][] ) );
+    }
+  }
+
+  private void putJoinedRows( RowMetaInterface rowMeta, Object[] rowData, List<Object[]> rows )
+    throws KettleStepException {
+    for ( Object[] add : rows ) {
+      Object[] newRow = RowDataUtil.resizeArray( rowData, data.outputRowMeta.size() );
+      System.arraycopy( add, 0, newRow, rowMeta.size(), data.nrJoinFields );
+
+      // we have to clone, the values found can be used for many rows
+      putRow( data.outputRowMeta, data.outputRowMeta.cloneRow( newRow ) );
+
+      if ( log.isRowLevel() ) {
+        logRowlevel( BaseMessages.getString( PKG, "DatabaseJoin.Log.PutoutRow" )
+          + data.outputRowMeta.getString( newRow ) );
+      }
+    }
+
+    // Nothing found? Perhaps we have to put something out after all?
+    if ( rows.isEmpty() && meta.isOuterJoin() ) {
+      Object[] newRow = RowDataUtil.resizeArray( rowData, data.outputRowMeta.size() );
+      Arrays.fill( newRow, rowMeta.size(), rowMeta.size() + data.nrJoinFields, null );
+      putRow( data.outputRowMeta, newRow );
+    }
+  }
+
+  /**
+   * Runs the query for the distinct parameter values of the buffered rows at once and then passes the rows on in their
+   * original order.
+   *
+   * @return false if the step has to stop because of an error
+   */
+  private boolean flushBatch() throws KettleException {
+    if ( data.batch.isEmpty() ) {
+      return true;
+    }
+    data.batchResults.clear();
+    try {
+      Set<RowMetaAndData> keys = new LinkedHashSet<RowMetaAndData>();
+      for ( Object[] row : data.batch ) {
+        Object[] lookupRow = createLookupRow( row );
+        if ( data.cache != null && data.cache.containsKey( data.lookupRowMeta, lookupRow ) ) {
+          continue;
+        }
+        keys.add( new RowMetaAndData( data.lookupRowMeta, lookupRow ) );
+      }
+      if ( !keys.isEmpty() ) {
+        queryBatch( keys );
+      }
+    } catch ( KettleException e ) {
+      // The batched query failed, there is no telling which row caused it
+      //
+      List<Object[]> rows = data.batch;
+      data.batch = new ArrayList<Object[]>( data.batchSize );
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        for ( Object[] row : rows ) {
+          putError( getInputRowMeta(), row, 1, e.toString(), null, "DBJOIN001" );
+        }
+        return true;
+      }
+      logError( BaseMessages.getString( PKG, "DatabaseJoin.Log.ErrorInStepRunning" ) + e.getMessage(), e );
+      setErrors( 1 );
+      stopAll();
+      setOutputDone(); // signal end to receiver(s)
+      return false;
+    }
+
+    try {
+      for ( Object[] row : data.batch ) {
+        if ( !processJoinRow( row ) ) {
+          return false;
+        }
+      }
+    } finally {
+      data.batch.clear();
+      data.batchResults.clear();
+    }
+    return true;
+  }
+
+  /**
+   * Runs the batched query for a set of parameter values and stores the rows found in {@code data.batchResults}.
+   */
+  private synchronized void queryBatch( Collection<RowMetaAndData> keys ) throws KettleException {
+    int nrParams = data.lookupRowMeta.size();
+    List<RowMetaAndData> batchKeys = new ArrayList<RowMetaAndData>( keys );
+    int size = getBatchStatementSize( batchKeys.size() );
+
+    // Unused parts of the statement repeat the last parameter values, the rows they find are skipped
+    //
+    RowMetaInterface paramsMeta = new RowMeta();
+    Object[] params = new Object[size * nrParams];
+    for ( int b = 0; b < size; b++ ) {
+      paramsMeta.addRowMeta( data.lookupRowMeta );
+      RowMetaAndData key = batchKeys.get( Math.min( b, batchKeys.size() - 1 ) );
+      System.arraycopy( key.getData(), 0, params, b * nrParams, nrParams );
+    }
+    for ( RowMetaAndData key : batchKeys ) {
+      data.batchResults.put( key, new ArrayList<Object[]>() );
+    }
+    PreparedStatement statement = getBatchStatement( size );
+
+    // The row limit applies to every set of parameter values, not to the batched query as a whole
+    //
+    data.db.setQueryLimit( 0 );
+    ResultSet rs;
+    try {
+      rs = data.db.openQuery( statement, paramsMeta, params );
+    } finally {
+      data.db.setQueryLimit( meta.getRowLimit() );
+    }
+    try {
+      ValueMetaInterface batchNrMeta = data.db.getReturnRowMeta().getValueMeta( 0 );
+      Object[] add = data.db.getRow( rs );
+      while ( add != null ) {
+        int batchNr = batchNrMeta.getInteger( add[0] ).intValue();
+        List<Object[]> rows = batchNr < batchKeys.size() ? data.batchResults.get( batchKeys.get( batchNr ) ) : null;
+        if ( rows != null && ( meta.getRowLimit() == 0 || rows.size() < meta.getRowLimit() ) ) {
+          // Just like row by row, only the rows joined count as read
+          //
+          incrementLinesInput();
+          Object[] values = new Object[data.nrJoinFields];
+          System.arraycopy( add, 1, values, 0, data.nrJoinFields );
+          rows.add( values );
+        }
+        add = data.db.getRow( rs );
+      }
+    } finally {
+      data.db.closeQuery( rs );
+    }
+
+    for ( RowMetaAndData key : batchKeys ) {
+      storeInCache( key.getData(), data.batchResults.get( key ) );
+    }
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (DatabaseJoinMeta) smi;
     data = (DatabaseJoinData) sdi;
 
-    boolean sendToErrorRow = false;
-    String errorMessage = null;
-
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      if ( data.batch != null && !flushBatch() ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
 
+    if ( first ) {
+      first = false;
+      try {
+        initLookup( getInputRowMeta(), r );
+      } catch ( KettleException e ) {
+        logError( BaseMessages.getString( PKG, "DatabaseJoin.Log.ErrorInStepRunning" ) + e.getMessage(), e );
+        setErrors( 1 );
+        stopAll();
+        setOutputDone(); // signal end to receiver(s)
+        return false;
+      }
+    }
+
+    if ( data.batch != null ) {
+      data.batch.add( r );
+      if ( data.batch.size() >= data.batchSize ) {
+        return flushBatch();
+      }
+      return true;
+    }
+
+    return processJoinRow( r );
+  }
+
+  /**
+   * Joins a single row with the results of the query and passes the result on.
+   *
+   * @return false if the step has to stop because of an error
+   */
+  private boolean processJoinRow( Object[] r ) throws KettleException {
+    boolean sendToErrorRow = false;
+    String errorMessage = null;
+
     try {
       lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
 
@@ -202,6 +528,11 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
 
     if ( data.db != null && data.db.getConnection() != null && !data.isCanceled ) {
       data.db.cancelStatement( data.pstmt );
+      if ( data.batchStatements != null ) {
+        for ( PreparedStatement statement : data.batchStatements.values() ) {
+          data.db.cancelStatement( statement );
+        }
+      }
       setStopped( true );
       data.isCanceled = true;
     }
@@ -242,6 +573,7 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
           logDebug( BaseMessages.getString( PKG, "DatabaseJoin.Log.SQLStatement", sql ) );
         }
         data.db.setQueryLimit( meta.getRowLimit() );
+        data.db.setStreamingQuery( true );
 
         return true;
       } catch ( KettleException e ) {
@@ -260,9 +592,34 @@ public class DatabaseJoin extends BaseStep implements StepInterface {
     data = (DatabaseJoinData) sdi;
 
     if ( data.db != null ) {
+      if ( data.batchStatements != null ) {
+        for ( PreparedStatement statement : data.batchStatements.values() ) {
+          try {
+            data.db.closePreparedStatement( statement );
+          } catch ( KettleDatabaseException e ) {
+            logError( "Unable to close the batched join statement", e );
+          }
+        }
+        data.batchStatements = null;
+      }
       data.db.disconnect();
     }
 
+    if ( data.cache != null ) {
+      SegmentedLruCache cache = data.cache;
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "DatabaseJoin.Log.CacheStatistics", cache.getHits(),
+          cache.getMisses(), cache.getEvictions(), cache.size(), cache.getEstimatedSize() / 1024L ) );
+      }
+      log.snap( Metrics.METRIC_STEP_CACHE_HITS, getStepname(), cache.getHits() );
+      log.snap( Metrics.METRIC_STEP_CACHE_MISSES, getStepname(), cache.getMisses() );
+      log.snap( Metrics.METRIC_STEP_CACHE_EVICTIONS, getStepname(), cache.getEvictions() );
+
+      // Recover memory immediately, allow in-memory data to be garbage collected
+      //
+      data.cache = null;
+    }
+
     super.dispose( smi, sdi );
   }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -23,11 +23,15 @@
 package org.pentaho.di.trans.steps.databasejoin;
 
 import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
 
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.steps.databaselookup.SegmentedLruCache;
 
 /**
  * @author Matt
@@ -44,6 +48,15 @@ public class DatabaseJoinData extends BaseStepData implements StepDataInterface
   public Object[] notfound; // Values in case nothing is found...
   public boolean isCanceled;
 
+  int nrJoinFields; // the number of fields added by the query
+  SegmentedLruCache cache; // parameter values --> the rows found (Object[][])
+
+  public int batchSize; // > 1 when the parameters of several rows are used in one query
+  public List<Object[]> batch; // Input rows waiting for the batched query
+  public Map<RowMetaAndData, List<Object[]>> batchResults; // Parameter values --> the rows found
+  String batchQuery; // The query used in the batched statements
+  Map<Integer, PreparedStatement> batchStatements; // Number of parameter value sets --> the batched statement
+
   public DatabaseJoinData() {
     super();
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -83,6 +83,15 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
    */
   private boolean replacevars;
 
+  /** Cache the rows found for the parameter values */
+  private boolean cached;
+
+  /** The maximum number of parameter values to cache the rows of (0=no limit) */
+  private int cacheSize;
+
+  /** The number of input rows to join with one query (0 or 1=one query per row) */
+  private int batchSize;
+
   public DatabaseJoinMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -177,6 +186,56 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
     this.rowLimit = rowLimit;
   }
 
+  /**
+   * @return true if the rows found for the parameter values are cached
+   */
+  public boolean isCached() {
+    return cached;
+  }
+
+  /**
+   * Only cache the results if the query returns the same rows for the same parameter values during the whole run.
+   *
+   * @param cached
+   *          true to cache the rows found for the parameter values
+   */
+  public void setCached( boolean cached ) {
+    this.cached = cached;
+  }
+
+  /**
+   * @return the maximum number of parameter values to cache the rows of, 0 means no limit
+   */
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * @param cacheSize
+   *          the maximum number of parameter values to cache the rows of, 0 means no limit
+   */
+  public void setCacheSize( int cacheSize ) {
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * @return the number of input rows to join with one query, 0 or 1 means one query per row
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * The input rows are buffered and the query is executed once for all the distinct parameter values of the batch,
+   * combined with UNION ALL. The rows are passed on in their original order.
+   *
+   * @param batchSize
+   *          the number of input rows to join with one query, 0 or 1 means one query per row
+   */
+  public void setBatchSize( int batchSize ) {
+    this.batchSize = batchSize;
+  }
+
   /**
    * @return Returns the sql.
    */
@@ -198,6 +257,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
     parameterType = null;
     outerJoin = false;
     replacevars = false;
+    cached = false;
+    cacheSize = 0;
+    batchSize = 0;
     readData( stepnode, databases );
   }
 
@@ -228,6 +290,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
       outerJoin = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "outer_join" ) );
       replacevars = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "replace_vars" ) );
       rowLimit = Const.toInt( XMLHandler.getTagValue( stepnode, "rowlimit" ), 0 );
+      cached = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "cache" ) );
+      cacheSize = Const.toInt( XMLHandler.getTagValue( stepnode, "cache_size" ), 0 );
+      batchSize = Const.toInt( XMLHandler.getTagValue( stepnode, "batch_size" ), 0 );
 
       Node param = XMLHandler.getSubNode( stepnode, "parameter" );
       int nrparam = XMLHandler.countNodes( param, "field" );
@@ -256,6 +321,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
     parameterType = null;
     outerJoin = false;
     replacevars = false;
+    cached = false;
+    cacheSize = 0;
+    batchSize = 0;
 
     int nrparam = 0;
 
@@ -345,6 +413,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append( XMLHandler.addTagValue( "sql", sql ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "outer_join", outerJoin ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "replace_vars", replacevars ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache", cached ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache_size", cacheSize ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "batch_size", batchSize ) );
     retval.append( "    <parameter>" ).append( Const.CR );
     for ( int i = 0; i < parameterField.length; i++ ) {
       retval.append( "      <field>" ).append( Const.CR );
@@ -366,6 +437,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
       sql = rep.getStepAttributeString( id_step, "sql" );
       outerJoin = rep.getStepAttributeBoolean( id_step, "outer_join" );
       replacevars = rep.getStepAttributeBoolean( id_step, "replace_vars" );
+      cached = rep.getStepAttributeBoolean( id_step, "cache" );
+      cacheSize = (int) rep.getStepAttributeInteger( id_step, "cache_size" );
+      batchSize = (int) rep.getStepAttributeInteger( id_step, "batch_size" );
 
       int nrparam = rep.countNrStepAttributes( id_step, "parameter_field" );
 
@@ -390,6 +464,9 @@ public class DatabaseJoinMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "sql", sql );
       rep.saveStepAttribute( id_transformation, id_step, "outer_join", outerJoin );
       rep.saveStepAttribute( id_transformation, id_step, "replace_vars", replacevars );
+      rep.saveStepAttribute( id_transformation, id_step, "cache", cached );
+      rep.saveStepAttribute( id_transformation, id_step, "cache_size", cacheSize );
+      rep.saveStepAttribute( id_transformation, id_step, "batch_size", batchSize );
 
       for ( int i = 0; i < parameterField.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "parameter_field", parameterField[i] );
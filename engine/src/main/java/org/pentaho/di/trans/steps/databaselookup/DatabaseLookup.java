@@ -22,11 +22,19 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
@@ -34,6 +42,7 @@ import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -61,6 +70,16 @@ import com.google.common.annotations.VisibleForTesting;
 public class DatabaseLookup extends BaseStep implements StepInterface {
   private static Class<?> PKG = DatabaseLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * Marks a key for which the batched lookup found more than one row while failing on multiple results.
+   */
+  private static final Object[] MULTIPLE_RESULTS = new Object[ 0 ];
+
+  /**
+   * The column added to the batched query to tell which key a row was found for.
+   */
+  static final String BATCH_NR_FIELD = "KETTLE_BATCH_NR";
+
   private DatabaseLookupMeta meta;
   private DatabaseLookupData data;
 
@@ -80,44 +99,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
   synchronized Object[] lookupValues( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
     Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
 
-    Object[] lookupRow = new Object[ data.lookupMeta.size() ];
-    int lookupIndex = 0;
-
-    for ( int i = 0; i < meta.getStreamKeyField1().length; i++ ) {
-      if ( data.keynrs[ i ] >= 0 ) {
-        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs[ i ] );
-        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
-        lookupRow[ lookupIndex ] = row[ data.keynrs[ i ] ];
-
-        // Try to convert type if needed
-        if ( input.getType() != value.getType()
-          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
-          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
-          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
-        }
-
-        //If input is of type date and its mask does not contain time then we should trim the time part from the date
-        //otherwise we will clog the database lookup cache with to many entries
-        if ( input.getType() == ValueMetaInterface.TYPE_DATE && isTimelessMask( input.getConversionMask() ) ) {
-          lookupRow[lookupIndex] = Const.trimDate( (Date) lookupRow[lookupIndex] );
-        }
-
-        lookupIndex++;
-      }
-      if ( data.keynrs2[ i ] >= 0 ) {
-        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs2[ i ] );
-        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
-        lookupRow[ lookupIndex ] = row[ data.keynrs2[ i ] ];
-
-        // Try to convert type if needed
-        if ( input.getType() != value.getType()
-          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
-          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
-          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
-        }
-        lookupIndex++;
-      }
-    }
+    Object[] lookupRow = createLookupRow( inputRowMeta, row );
 
     Object[] add;
     boolean cache_now = false;
@@ -133,7 +115,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       add = null;
     }
 
-    if ( add == null ) {
+    if ( add == DatabaseLookupData.Cache.NOT_FOUND ) {
+      // We looked up before and found nothing
+      add = null;
+    } else if ( add == null ) {
       if ( !( meta.isCached() && meta.isLoadingAllDataInCache() ) || data.hasDBCondition ) { // do not go to the
         // database when all rows
         // are in (exception LIKE
@@ -145,13 +130,15 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
             + data.lookupMeta.getString( lookupRow ) );
         }
 
-        data.db.setValuesLookup( data.lookupMeta, lookupRow );
-        add = data.db.getLookup( meta.isFailingOnMultipleResults() );
+        add = lookupInDatabase( lookupRow );
         cache_now = true;
       }
     }
 
     if ( add == null ) { // nothing was found, unknown code: add default values
+      if ( meta.isCached() && cache_now && !meta.isLoadingAllDataInCache() && data.allEquals ) {
+        data.cache.storeRowInCache( meta, data.lookupMeta, lookupRow, DatabaseLookupData.Cache.NOT_FOUND );
+      }
       if ( meta.isEatingRowOnLookupFailure() ) {
         return null;
       }
@@ -185,13 +172,14 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       if ( !cacheHit ) {
         incrementLines();
         int[] types = meta.getReturnValueDefaultType();
+        RowMetaInterface returnRowMeta = data.lookupBatch != null ? data.batchReturnMeta : data.db.getReturnRowMeta();
 
         // The assumption here is that the types are in the same order
         // as the returned lookup row, but since we make the lookup row
         // that should not be a problem.
         //
         for ( int i = 0; i < types.length; i++ ) {
-          ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta( i );
+          ValueMetaInterface returned = returnRowMeta.getValueMeta( i );
           ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
 
           if ( returned != null && types[ i ] > 0 && types[ i ] != returned.getType() ) {
@@ -216,6 +204,77 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return outputRow;
   }
 
+  /**
+   * Builds the row of key values to look up, converted to the data types of the key fields in the table.
+   */
+  private Object[] createLookupRow( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
+    Object[] lookupRow = new Object[ data.lookupMeta.size() ];
+    int lookupIndex = 0;
+
+    for ( int i = 0; i < meta.getStreamKeyField1().length; i++ ) {
+      if ( data.keynrs[ i ] >= 0 ) {
+        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs[ i ] );
+        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
+        lookupRow[ lookupIndex ] = row[ data.keynrs[ i ] ];
+
+        // Try to convert type if needed
+        if ( input.getType() != value.getType()
+          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
+          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
+          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        }
+
+        //If input is of type date and its mask does not contain time then we should trim the time part from the date
+        //otherwise we will clog the database lookup cache with to many entries
+        if ( input.getType() == ValueMetaInterface.TYPE_DATE && isTimelessMask( input.getConversionMask() ) ) {
+          lookupRow[lookupIndex] = Const.trimDate( (Date) lookupRow[lookupIndex] );
+        }
+
+        lookupIndex++;
+      }
+      if ( data.keynrs2[ i ] >= 0 ) {
+        ValueMetaInterface input = inputRowMeta.getValueMeta( data.keynrs2[ i ] );
+        ValueMetaInterface value = data.lookupMeta.getValueMeta( lookupIndex );
+        lookupRow[ lookupIndex ] = row[ data.keynrs2[ i ] ];
+
+        // Try to convert type if needed
+        if ( input.getType() != value.getType()
+          || ValueMetaInterface.STORAGE_TYPE_BINARY_STRING == input.getStorageType() ) {
+          lookupRow[ lookupIndex ] = value.convertData( input, lookupRow[ lookupIndex ] );
+          value.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        }
+        lookupIndex++;
+      }
+    }
+
+    return lookupRow;
+  }
+
+  /**
+   * Looks up the return values of a key in the database, or in the results of the current batch in batched mode.
+   *
+   * @return the return values or null if nothing was found
+   */
+  private Object[] lookupInDatabase( Object[] lookupRow ) throws KettleException {
+    if ( data.lookupBatch == null ) {
+      data.db.setValuesLookup( data.lookupMeta, lookupRow );
+      return data.db.getLookup( meta.isFailingOnMultipleResults() );
+    }
+
+    RowMetaAndData key = new RowMetaAndData( data.lookupMeta, lookupRow );
+    if ( !data.batchResults.containsKey( key ) ) {
+      // The key was in the cache when the batch was looked up but it has been pushed out since
+      //
+      lookupBatch( Collections.singletonList( key ) );
+    }
+    Object[] add = data.batchResults.get( key );
+    if ( add == MULTIPLE_RESULTS ) {
+      throw new KettleDatabaseException(
+        "Only 1 row was expected as a result of a lookup, and at least 2 were found!" );
+    }
+    return add;
+  }
+
   @VisibleForTesting
   boolean isTimelessMask( String dateMask ) {
     if ( dateMask == null ) {
@@ -355,15 +414,18 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
 
   @Override
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    meta = (DatabaseLookupMeta) smi;
+    data = (DatabaseLookupData) sdi;
+
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      if ( data.lookupBatch != null && !flushLookupBatch() ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
 
-    meta = (DatabaseLookupMeta) smi;
-    data = (DatabaseLookupData) sdi;
-
     if ( first ) {
       first = false;
 
@@ -414,7 +476,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       }
 
       if ( meta.isCached() ) {
-        data.cache = DefaultCache.newCache( data, meta.getCacheSize() );
+        data.cache = createCache();
       }
 
       determineFieldsTypesQueryingDb();
@@ -431,6 +493,7 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         loadAllTableDataIntoTheCache();
       }
 
+      initLookupBatch();
     }
 
     if ( log.isRowLevel() ) {
@@ -438,6 +501,23 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         + getInputRowMeta().getString( r ) );
     }
 
+    if ( data.lookupBatch != null ) {
+      data.lookupBatch.add( r );
+      if ( data.lookupBatch.size() >= data.lookupBatchSize ) {
+        return flushLookupBatch();
+      }
+      return true;
+    }
+
+    return processLookupRow( r );
+  }
+
+  /**
+   * Looks up the values of a single row and passes the result on.
+   *
+   * @return false if the step has to stop because of an error
+   */
+  private boolean processLookupRow( Object[] r ) throws KettleException {
     try {
       // add new lookup values to the row
       Object[] outputRow = lookupValues( getInputRowMeta(), r );
@@ -470,6 +550,249 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * Creates a bounded segmented LRU cache when all conditions are "=", otherwise the cache has to be able to evaluate
+   * the conditions (or is a read-only copy of the table).
+   */
+  private DatabaseLookupData.Cache createCache() {
+    if ( !data.allEquals || meta.isLoadingAllDataInCache() ) {
+      return DefaultCache.newCache( data, meta.getCacheSize() );
+    }
+    long maxBytes = Const.toLong( environmentSubstitute( getVariable( Const.KETTLE_DB_LOOKUP_CACHE_MAX_MEMORY ) ), 0L );
+    long timeToLive = Const.toLong( environmentSubstitute( getVariable( Const.KETTLE_DB_LOOKUP_CACHE_TTL ) ), 0L );
+    return new SegmentedLruCache(
+      meta.getCacheSize(), maxBytes * 1024L * 1024L, timeToLive * 1000L, getStepMetrics() );
+  }
+
+  /**
+   * Switches to batched lookups if a batch size was set and the lookup only has "=" conditions on stream fields. The
+   * other conditions can't be resolved with a single query for a set of keys. The query for one key is repeated for
+   * every key of the batch, the batch number tells which key a row was found for:<br>
+   * SELECT 0 AS KETTLE_BATCH_NR, values FROM table WHERE key = ? UNION ALL SELECT 1 AS KETTLE_BATCH_NR, ...<br>
+   * This way the database matches the keys just like it does for a single lookup (collation, padding, data types).
+   * Since there is no way to sort the rows of every key in a union, lookups with an order by clause are done one at a
+   * time.
+   */
+  private void initLookupBatch() throws KettleException {
+    if ( meta.getLookupBatchSize() <= 1 || ( meta.isCached() && meta.isLoadingAllDataInCache() ) ) {
+      return;
+    }
+    for ( int i = 0; i < meta.getStreamKeyField1().length; i++ ) {
+      if ( data.conditions[ i ] != DatabaseLookupMeta.CONDITION_EQ || data.keynrs[ i ] < 0 || data.keynrs2[ i ] >= 0 ) {
+        if ( log.isDetailed() ) {
+          logDetailed( "Looking up one row at a time, batched lookups only support the '=' condition" );
+        }
+        return;
+      }
+    }
+    if ( !Utils.isEmpty( meta.getOrderByClause() ) ) {
+      if ( log.isDetailed() ) {
+        logDetailed( "Looking up one row at a time, batched lookups don't support an order by clause" );
+      }
+      return;
+    }
+
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    int nrKeys = meta.getTableKeyField().length;
+    int batchSize = Math.min( meta.getLookupBatchSize(), dbMeta.getMaxQueryBatchRows( nrKeys ) );
+    if ( batchSize <= 1 ) {
+      return;
+    }
+
+    StringBuilder sql = new StringBuilder();
+    for ( int i = 0; i < meta.getReturnValueField().length; i++ ) {
+      String returnField = meta.getReturnValueField()[ i ];
+      String rename = meta.getReturnValueNewName()[ i ];
+      sql.append( ", " ).append( dbMeta.quoteField( returnField ) );
+      if ( rename != null && !returnField.equalsIgnoreCase( rename ) ) {
+        sql.append( " AS " ).append( dbMeta.quoteField( rename ) );
+      }
+    }
+    sql.append( " FROM " ).append( dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) ) );
+    sql.append( " WHERE " );
+    for ( int i = 0; i < nrKeys; i++ ) {
+      if ( i > 0 ) {
+        sql.append( " AND " );
+      }
+      sql.append( dbMeta.quoteField( meta.getTableKeyField()[ i ] ) ).append( " = ?" );
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( "Looking up " + batchSize + " rows at a time with [SELECT n AS " + BATCH_NR_FIELD + sql
+        + "] for every row" );
+    }
+    data.batchQuery = sql.toString();
+    data.batchStatements = new HashMap<Integer, PreparedStatement>();
+    data.lookupBatchSize = batchSize;
+    data.lookupBatch = new ArrayList<Object[]>( batchSize );
+    data.batchResults = new HashMap<RowMetaAndData, Object[]>();
+  }
+
+  /**
+   * Batches with fewer keys use the statement for the next power of 2 (or the batch size) number of keys, padded with
+   * null keys. A null never equals anything, this way only a few statements are prepared.
+   *
+   * @return the number of keys of the statement to use for a number of keys
+   */
+  private int getBatchStatementSize( int nrKeys ) {
+    int size = Integer.highestOneBit( nrKeys );
+    if ( size < nrKeys ) {
+      size <<= 1;
+    }
+    return Math.min( size, data.lookupBatchSize );
+  }
+
+  private PreparedStatement getBatchStatement( int size ) throws KettleDatabaseException {
+    PreparedStatement statement = data.batchStatements.get( size );
+    if ( statement == null ) {
+      StringBuilder sql = new StringBuilder();
+      for ( int b = 0; b < size; b++ ) {
+        if ( b > 0 ) {
+          sql.append( Const.CR ).append( "UNION ALL" ).append( Const.CR );
+        }
+        sql.append( "SELECT " ).append( b ).append( " AS " ).append( BATCH_NR_FIELD ).append( data.batchQuery );
+      }
+      statement = data.db.prepareSQL( sql.toString() );
+      data.batchStatements.put( size, statement );
+    }
+    return statement;
+  }
+
+  /**
+   * Looks up the distinct keys of the buffered rows with a single query and then passes the rows on in their original
+   * order.
+   *
+   * @return false if the step has to stop because of an error
+   */
+  private boolean flushLookupBatch() throws KettleException {
+    if ( data.lookupBatch.isEmpty() ) {
+      return true;
+    }
+    data.batchResults.clear();
+    try {
+      // Identical keys are only looked up once
+      //
+      Set<RowMetaAndData> keys = new LinkedHashSet<RowMetaAndData>();
+      for ( Object[] row : data.lookupBatch ) {
+        Object[] lookupRow = createLookupRow( getInputRowMeta(), row );
+        if ( meta.isCached() && isInCache( lookupRow ) ) {
+          continue;
+        }
+        RowMetaAndData key = new RowMetaAndData( data.lookupMeta, lookupRow );
+        if ( containsNull( lookupRow ) ) {
+          // A null never equals anything in SQL, no need to ask the database
+          //
+          data.batchResults.put( key, null );
+        } else {
+          keys.add( key );
+        }
+      }
+      if ( !keys.isEmpty() ) {
+        lookupBatch( new ArrayList<RowMetaAndData>( keys ) );
+      }
+    } catch ( KettleException e ) {
+      // The batch query failed, there is no telling which row caused it
+      //
+      List<Object[]> rows = data.lookupBatch;
+      data.lookupBatch = new ArrayList<Object[]>( data.lookupBatchSize );
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        for ( Object[] row : rows ) {
+          putError( getInputRowMeta(), row, 1, e.getMessage(), null, "DBLOOKUPD001" );
+        }
+        return true;
+      }
+      logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing" )
+        + e.getMessage() );
+      setErrors( 1 );
+      stopAll();
+      setOutputDone(); // signal end to receiver(s)
+      return false;
+    }
+
+    try {
+      for ( Object[] row : data.lookupBatch ) {
+        if ( !processLookupRow( row ) ) {
+          return false;
+        }
+      }
+    } finally {
+      data.lookupBatch.clear();
+      data.batchResults.clear();
+    }
+    return true;
+  }
+
+  private boolean isInCache( Object[] lookupRow ) throws KettleException {
+    if ( data.cache instanceof SegmentedLruCache ) {
+      // Don't count this as a hit or a miss, the row is looked up in the cache again later on
+      //
+      return ( (SegmentedLruCache) data.cache ).containsKey( data.lookupMeta, lookupRow );
+    }
+    return data.cache.getRowFromCache( data.lookupMeta, lookupRow ) != null;
+  }
+
+  private static boolean containsNull( Object[] lookupRow ) {
+    for ( Object value : lookupRow ) {
+      if ( value == null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Looks up a list of keys with a batch statement and stores the results in {@code data.batchResults}. Keys without
+   * a match are stored with a null value.
+   */
+  private void lookupBatch( List<RowMetaAndData> keys ) throws KettleException {
+    int nrKeys = data.lookupMeta.size();
+    int size = getBatchStatementSize( keys.size() );
+    PreparedStatement statement = getBatchStatement( size );
+
+    RowMetaInterface paramsMeta = new RowMeta();
+    Object[] params = new Object[ size * nrKeys ];
+    for ( int b = 0; b < size; b++ ) {
+      paramsMeta.addRowMeta( data.lookupMeta );
+      if ( b < keys.size() ) {
+        System.arraycopy( keys.get( b ).getData(), 0, params, b * nrKeys, nrKeys );
+      }
+    }
+
+    ResultSet resultSet = data.db.openQuery( statement, paramsMeta, params );
+    RowMetaInterface resultMeta = data.db.getReturnRowMeta();
+    List<Object[]> rows = data.db.getRows( resultSet, 0, null );
+
+    int nrValues = resultMeta.size() - 1;
+    if ( data.batchReturnMeta == null ) {
+      data.batchReturnMeta = new RowMeta();
+      for ( int i = 0; i < nrValues; i++ ) {
+        data.batchReturnMeta.addValueMeta( resultMeta.getValueMeta( 1 + i ) );
+      }
+    }
+
+    Object[][] results = new Object[ keys.size() ][];
+    ValueMetaInterface batchNrMeta = resultMeta.getValueMeta( 0 );
+    for ( Object[] row : rows ) {
+      int batchNr = batchNrMeta.getInteger( row[ 0 ] ).intValue();
+      if ( batchNr < 0 || batchNr >= keys.size() ) {
+        continue;
+      }
+      if ( results[ batchNr ] == null ) {
+        // The first row wins, just like the query with a single key takes the first row of the result
+        //
+        Object[] add = new Object[ nrValues ];
+        System.arraycopy( row, 1, add, 0, nrValues );
+        results[ batchNr ] = add;
+      } else if ( meta.isFailingOnMultipleResults() ) {
+        results[ batchNr ] = MULTIPLE_RESULTS;
+      }
+    }
+    for ( int b = 0; b < keys.size(); b++ ) {
+      data.batchResults.put( keys.get( b ), results[ b ] );
+    }
+  }
+
   private void loadAllTableDataIntoTheCache() throws KettleException {
     DatabaseMeta dbMeta = meta.getDatabaseMeta();
 
@@ -652,9 +975,30 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     data = (DatabaseLookupData) sdi;
 
     if ( data.db != null ) {
+      if ( data.batchStatements != null ) {
+        for ( PreparedStatement statement : data.batchStatements.values() ) {
+          try {
+            data.db.closePreparedStatement( statement );
+          } catch ( KettleDatabaseException e ) {
+            logError( "Unable to close the batched lookup statement", e );
+          }
+        }
+        data.batchStatements = null;
+      }
       data.db.disconnect();
     }
 
+    if ( data.cache instanceof SegmentedLruCache ) {
+      SegmentedLruCache cache = (SegmentedLruCache) data.cache;
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.CacheStatistics", cache.getHits(),
+          cache.getMisses(), cache.getEvictions(), cache.size(), cache.getEstimatedSize() / 1024L ) );
+      }
+      log.snap( Metrics.METRIC_STEP_CACHE_HITS, getStepname(), cache.getHits() );
+      log.snap( Metrics.METRIC_STEP_CACHE_MISSES, getStepname(), cache.getMisses() );
+      log.snap( Metrics.METRIC_STEP_CACHE_EVICTIONS, getStepname(), cache.getEvictions() );
+    }
+
     // Recover memory immediately, allow in-memory data to be garbage collected
     //
     data.cache = null;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,6 +22,11 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -49,6 +54,13 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
   public int[] conditions;
   public boolean hasDBCondition;
 
+  public int lookupBatchSize; // > 0 when the keys of several rows are looked up with one query
+  public List<Object[]> lookupBatch; // Input rows waiting for the batched lookup
+  public Map<RowMetaAndData, Object[]> batchResults; // Looked up key --> return values (null: not found)
+  public String batchQuery; // SELECT ... FROM ... WHERE ... for one key, repeated with UNION ALL for every key
+  public Map<Integer, PreparedStatement> batchStatements; // Number of keys --> prepared batch statement
+  public RowMetaInterface batchReturnMeta;
+
   public DatabaseLookupData() {
     super();
 
@@ -59,6 +71,11 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
    * Cache for {@code DatabaseLookup} step.
    */
   public interface Cache {
+    /**
+     * Is stored for a key that was not found in the database, so that it isn't looked up again.
+     */
+    Object[] NOT_FOUND = new Object[ 0 ];
+
     /**
      * Returns the very first data row that matches all conditions or {@code null} if none has been found.
      * Note, cache should keep the order in which elements were put into it.
@@ -0,0 +1,378 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
+import org.pentaho.di.trans.step.StepMetrics;
+
+/**
+ * The cache of {@linkplain DatabaseLookup} when all the key conditions are "=" and the table isn't loaded entirely. The
+ * Database Join step uses it as well, with all the rows found for a key as the cached value.
+ * <br><br>
+ * Entries are evicted with a segmented LRU policy: a new key enters the probation segment and is only moved to the
+ * protected segment when it is found again. That way a run of keys that are only looked up once doesn't push the keys
+ * that are looked up all the time out of the cache. The cache is bounded by a number of entries and optionally by an
+ * estimated size in bytes, entries can expire after a while.<br>
+ * <br>
+ * Keys are stored as binary sort keys when the key types allow it, those are a lot smaller than the key values.
+ *
+ * @since 9.1
+ */
+public class SegmentedLruCache implements DatabaseLookupData.Cache {
+
+  /**
+   * The part of the entries (and bytes) reserved for the protected segment.
+   */
+  private static final double PROTECTED_RATIO = 0.8;
+
+  /**
+   * Estimated overhead of an entry: the hash map entry with its links, the key object and the entry object itself.
+   */
+  private static final int ENTRY_OVERHEAD = 112;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long timeToLive;
+
+  // The segments are kept in insertion order, an entry that is used is moved to the end explicitly. This way looking
+  // at an entry doesn't change the order.
+  //
+  private final LinkedHashMap<Object, Entry> probation = new LinkedHashMap<>();
+  private final LinkedHashMap<Object, Entry> protectedSegment = new LinkedHashMap<>();
+  private long probationBytes;
+  private long protectedBytes;
+
+  private boolean keyEncodingChecked;
+  private SortKeyEncoder keyEncoder;
+
+  private final StepMetrics metrics;
+
+  /**
+   * @param maxEntries
+   *          the maximum number of entries, 0 for no limit
+   * @param maxBytes
+   *          the maximum estimated size of the entries in bytes, 0 for no limit
+   * @param timeToLive
+   *          the number of milliseconds after which an entry expires, 0 to keep entries forever
+   */
+  public SegmentedLruCache( int maxEntries, long maxBytes, long timeToLive ) {
+    this( maxEntries, maxBytes, timeToLive, new StepMetrics() );
+  }
+
+  /**
+   * @param maxEntries
+   *          the maximum number of entries, 0 for no limit
+   * @param maxBytes
+   *          the maximum estimated size of the entries in bytes, 0 for no limit
+   * @param timeToLive
+   *          the number of milliseconds after which an entry expires, 0 to keep entries forever
+   * @param metrics
+   *          the metrics of the step using the cache, the hits, misses and evictions are counted there
+   */
+  public SegmentedLruCache( int maxEntries, long maxBytes, long timeToLive, StepMetrics metrics ) {
+    this.maxEntries = Math.max( 0, maxEntries );
+    this.maxBytes = Math.max( 0L, maxBytes );
+    this.timeToLive = Math.max( 0L, timeToLive );
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Object[] getRowFromCache( RowMetaInterface lookupMeta, Object[] lookupRow ) throws KettleException {
+    Object key = createKey( lookupMeta, lookupRow );
+
+    Entry entry = probation.remove( key );
+    if ( entry != null ) {
+      probationBytes -= entry.size;
+      if ( isExpired( entry ) ) {
+        metrics.addCacheMisses( 1L );
+        return null;
+      }
+      // Second hit: promote it
+      //
+      protectedSegment.put( key, entry );
+      protectedBytes += entry.size;
+      demoteProtectedOverflow();
+    } else {
+      entry = protectedSegment.remove( key );
+      if ( entry == null ) {
+        metrics.addCacheMisses( 1L );
+        return null;
+      }
+      if ( isExpired( entry ) ) {
+        protectedBytes -= entry.size;
+        metrics.addCacheMisses( 1L );
+        return null;
+      }
+      // Most recently used
+      //
+      protectedSegment.put( key, entry );
+    }
+    metrics.addCacheHits( 1L );
+    return entry.value;
+  }
+
+  /**
+   * Checks if a key is in the cache without counting a hit or a miss and without promoting the entry.
+   */
+  public boolean containsKey( RowMetaInterface lookupMeta, Object[] lookupRow ) throws KettleException {
+    Object key = createKey( lookupMeta, lookupRow );
+    if ( timeToLive == 0 ) {
+      return probation.containsKey( key ) || protectedSegment.containsKey( key );
+    }
+    // The segments are in insertion order, get() doesn't promote the entry
+    //
+    Entry entry = probation.get( key );
+    if ( entry == null ) {
+      entry = protectedSegment.get( key );
+    }
+    return entry != null && !isExpired( entry );
+  }
+
+  @Override
+  public void storeRowInCache( DatabaseLookupMeta meta, RowMetaInterface lookupMeta, Object[] lookupRow,
+                               Object[] add ) {
+    Object key;
+    try {
+      key = createKey( lookupMeta, lookupRow );
+    } catch ( KettleValueException e ) {
+      throw new RuntimeException( "Unable to create a cache key for the lookup values", e );
+    }
+    if ( probation.containsKey( key ) || protectedSegment.containsKey( key ) ) {
+      // Keep the first value, like the other caches
+      //
+      return;
+    }
+
+    Entry entry = new Entry( add, ENTRY_OVERHEAD + estimateKeySize( key ) + estimateSize( add ),
+      timeToLive > 0 ? currentTimeMillis() : 0L );
+    probation.put( key, entry );
+    probationBytes += entry.size;
+
+    // Always keep the new entry, even if it is larger than the cache on its own
+    //
+    while ( size() > 1 && isOverLimit( size(), getEstimatedSize(), 1.0 ) ) {
+      if ( probation.size() > 1 || protectedSegment.isEmpty() ) {
+        probationBytes -= removeEldest( probation ).size;
+      } else {
+        protectedBytes -= removeEldest( protectedSegment ).size;
+      }
+      metrics.addCacheEvictions( 1L );
+    }
+  }
+
+  /**
+   * Moves the least recently used entries of the protected segment back to the probation segment until the protected
+   * segment fits in its share of the cache.
+   */
+  private void demoteProtectedOverflow() {
+    while ( protectedSegment.size() > 1 && isOverLimit( protectedSegment.size(), protectedBytes, PROTECTED_RATIO ) ) {
+      Map.Entry<Object, Entry> eldest = protectedSegment.entrySet().iterator().next();
+      protectedSegment.remove( eldest.getKey() );
+      protectedBytes -= eldest.getValue().size;
+      probation.put( eldest.getKey(), eldest.getValue() );
+      probationBytes += eldest.getValue().size;
+    }
+  }
+
+  private boolean isOverLimit( int entries, long bytes, double ratio ) {
+    return ( maxEntries > 0 && entries > maxEntries * ratio ) || ( maxBytes > 0 && bytes > maxBytes * ratio );
+  }
+
+  private static Entry removeEldest( LinkedHashMap<Object, Entry> segment ) {
+    Iterator<Entry> iterator = segment.values().iterator();
+    Entry eldest = iterator.next();
+    iterator.remove();
+    return eldest;
+  }
+
+  private boolean isExpired( Entry entry ) {
+    return timeToLive > 0 && currentTimeMillis() - entry.created >= timeToLive;
+  }
+
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Creates a binary sort key if all the key types can be encoded, the key values otherwise. Two binary keys are equal
+   * if and only if the values compare as equal.
+   */
+  private Object createKey( RowMetaInterface lookupMeta, Object[] lookupRow ) throws KettleValueException {
+    if ( !keyEncodingChecked ) {
+      int[] fieldnrs = new int[ lookupMeta.size() ];
+      for ( int i = 0; i < fieldnrs.length; i++ ) {
+        fieldnrs[ i ] = i;
+      }
+      if ( fieldnrs.length > 0 && SortKeyEncoder.isSupported( lookupMeta, fieldnrs ) ) {
+        keyEncoder = new SortKeyEncoder( lookupMeta, fieldnrs );
+      }
+      keyEncodingChecked = true;
+    }
+    if ( keyEncoder != null ) {
+      return new BinaryKey( keyEncoder.encode( lookupRow ) );
+    }
+    return new ValueKey( lookupMeta, lookupRow );
+  }
+
+  private static long estimateKeySize( Object key ) {
+    if ( key instanceof BinaryKey ) {
+      return estimateSize( ( (BinaryKey) key ).key );
+    }
+    return estimateSize( ( (RowMetaAndData) key ).getData() );
+  }
+
+  /**
+   * @return a rough estimate of the memory used by a row of values
+   */
+  static long estimateSize( Object[] row ) {
+    if ( row == null ) {
+      return 0L;
+    }
+    long size = 16L + 8L * row.length;
+    for ( Object value : row ) {
+      size += estimateSize( value );
+    }
+    return size;
+  }
+
+  private static long estimateSize( Object value ) {
+    if ( value == null ) {
+      return 0L;
+    }
+    if ( value instanceof String ) {
+      return 40L + 2L * ( (String) value ).length();
+    }
+    if ( value instanceof byte[] ) {
+      return 16L + ( (byte[]) value ).length;
+    }
+    if ( value instanceof BigDecimal ) {
+      return 40L + ( (BigDecimal) value ).unscaledValue().bitLength() / 8;
+    }
+    if ( value instanceof Object[] ) {
+      return estimateSize( (Object[]) value ); // several rows cached for one key
+    }
+    return 24L; // Long, Double, Date, Boolean, ...
+  }
+
+  /**
+   * @return the number of entries in the cache
+   */
+  public int size() {
+    return probation.size() + protectedSegment.size();
+  }
+
+  /**
+   * @return the estimated size of the cached entries in bytes
+   */
+  public long getEstimatedSize() {
+    return probationBytes + protectedBytes;
+  }
+
+  public long getHits() {
+    return metrics.getCacheHits();
+  }
+
+  public long getMisses() {
+    return metrics.getCacheMisses();
+  }
+
+  public long getEvictions() {
+    return metrics.getCacheEvictions();
+  }
+
+  private static final class Entry {
+    private final Object[] value;
+    private final long size;
+    private final long created;
+
+    private Entry( Object[] value, long size, long created ) {
+      this.value = value;
+      this.size = size;
+      this.created = created;
+    }
+  }
+
+  private static final class BinaryKey {
+    private final byte[] key;
+    private final int hashCode;
+
+    private BinaryKey( byte[] key ) {
+      this.key = key;
+      this.hashCode = Arrays.hashCode( key );
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      return obj instanceof BinaryKey && Arrays.equals( key, ( (BinaryKey) obj ).key );
+    }
+  }
+
+  /**
+   * A key compared by value, for key types that can't be encoded. The hash code of a big number depends on its scale
+   * while comparing it doesn't, so big numbers are hashed without their trailing zeros: 1.5 and 1.50 are the same key.
+   */
+  private static final class ValueKey extends RowMetaAndData {
+    private final int hashCode;
+
+    private ValueKey( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
+      super( keyMeta, keyData );
+      int hash = 0;
+      for ( int i = 0; i < keyMeta.size(); i++ ) {
+        ValueMetaInterface valueMeta = keyMeta.getValueMeta( i );
+        if ( valueMeta.isBigNumber() && !valueMeta.isNull( keyData[ i ] ) ) {
+          hash = 31 * hash + valueMeta.getBigNumber( keyData[ i ] ).stripTrailingZeros().hashCode();
+        } else {
+          hash = 31 * hash + valueMeta.hashCode( keyData[ i ] );
+        }
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      return obj instanceof ValueKey && super.equals( obj );
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,14 +22,17 @@
 
 package org.pentaho.di.trans.steps.dimensionlookup;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
 
 /**
  * This class will act as a special purpose dimension Cache. The idea here is to not only cache the last version of a
@@ -38,6 +41,10 @@ import org.pentaho.di.core.row.ValueMetaInterface;
  * The way to achieve that result is to keep a sorted list in memory. Because we want as few conversion errors as
  * possible, we'll use the same row as we get from the database.
  *
+ * Once the rows are sorted, {@link #buildIndex()} can add a hash index on the natural key. It points to the first
+ * version of every key in the sorted list so a lookup only needs to scan the few versions of that one key instead of
+ * doing a binary search over the whole dimension.
+ *
  * @author matt
  *
  */
@@ -48,6 +55,12 @@ public class DimensionCache implements Comparator<Object[]> {
   private int fromDateIndex;
   private int toDateIndex;
 
+  /**
+   * Open addressing hash table with the position (+1) of the first version of every natural key, 0 is an empty slot.
+   */
+  private int[] keyIndex;
+  private SortKeyEncoder keyEncoder;
+
   /**
    * Create a new dimension cache object
    *
@@ -75,6 +88,7 @@ public class DimensionCache implements Comparator<Object[]> {
    */
   public void addRow( Object[] row ) {
     rowCache.add( row );
+    keyIndex = null;
   }
 
   /**
@@ -98,6 +112,7 @@ public class DimensionCache implements Comparator<Object[]> {
    */
   public void addRow( int index, Object[] row ) {
     rowCache.add( index, row );
+    keyIndex = null;
   }
 
   /**
@@ -109,6 +124,9 @@ public class DimensionCache implements Comparator<Object[]> {
    *           KettleException in case there are conversion errors during the lookup of the row
    */
   public int lookupRow( Object[] lookupRowData ) throws KettleException {
+    if ( keyIndex != null ) {
+      return lookupIndexedRow( lookupRowData );
+    }
     try {
       // First perform the lookup!
       //
@@ -186,6 +204,113 @@ public class DimensionCache implements Comparator<Object[]> {
 
   public void sortRows() {
     Collections.sort( rowCache, this );
+    keyIndex = null;
+  }
+
+  /**
+   * Builds a hash index on the natural keys of the sorted rows. This is only possible if binary keys can be encoded for
+   * the natural key fields (see {@link SortKeyEncoder#isSupported(RowMetaInterface, int[])}), otherwise lookups keep
+   * using a binary search. Adding rows or sorting again drops the index.
+   *
+   * @return true if the index was built
+   * @throws KettleException
+   *           in case a natural key can't be encoded
+   */
+  public boolean buildIndex() throws KettleException {
+    keyIndex = null;
+    if ( !SortKeyEncoder.isSupported( rowMeta, keyIndexes ) ) {
+      return false;
+    }
+    keyEncoder = new SortKeyEncoder( rowMeta, keyIndexes );
+
+    // The versions of a natural key are next to each other in the sorted list, count the keys to size the table.
+    //
+    int nrKeys = 0;
+    for ( int i = 0; i < rowCache.size(); i++ ) {
+      if ( isFirstVersion( i ) ) {
+        nrKeys++;
+      }
+    }
+
+    // Keep the table at most half full so the probe sequences stay short.
+    //
+    int capacity = Integer.highestOneBit( Math.max( 2, nrKeys ) ) << 2;
+    int[] table = new int[ capacity ];
+    int mask = capacity - 1;
+    for ( int i = 0; i < rowCache.size(); i++ ) {
+      if ( isFirstVersion( i ) ) {
+        int slot = hash( rowCache.get( i ) ) & mask;
+        while ( table[ slot ] != 0 ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        table[ slot ] = i + 1;
+      }
+    }
+    keyIndex = table;
+    return true;
+  }
+
+  /**
+   * @return true if the natural keys are indexed
+   */
+  public boolean isIndexed() {
+    return keyIndex != null;
+  }
+
+  private boolean isFirstVersion( int index ) throws KettleValueException {
+    return index == 0 || rowMeta.compare( rowCache.get( index - 1 ), rowCache.get( index ), keyIndexes ) != 0;
+  }
+
+  private int hash( Object[] row ) throws KettleValueException {
+    int hash = Arrays.hashCode( keyEncoder.encode( row ) );
+    return hash ^ ( hash >>> 16 );
+  }
+
+  /**
+   * Finds the natural key in the index and scans its versions for the one that has the lookup date in its date range.
+   *
+   * @return the index of the row or -1 if there is no matching row
+   */
+  private int lookupIndexedRow( Object[] lookupRowData ) throws KettleException {
+    try {
+      int mask = keyIndex.length - 1;
+      int slot = hash( lookupRowData ) & mask;
+      while ( keyIndex[ slot ] != 0 ) {
+        int start = keyIndex[ slot ] - 1;
+        if ( rowMeta.compare( rowCache.get( start ), lookupRowData, keyIndexes ) == 0 ) {
+          Date lookupDate = rowMeta.getDate( lookupRowData, fromDateIndex );
+          for ( int i = start; i < rowCache.size(); i++ ) {
+            Object[] row = rowCache.get( i );
+            if ( i > start && rowMeta.compare( row, lookupRowData, keyIndexes ) != 0 ) {
+              break;
+            }
+            if ( isInDateRange( row, lookupDate ) ) {
+              return i;
+            }
+          }
+          return -1;
+        }
+        slot = ( slot + 1 ) & mask;
+      }
+      return -1;
+    } catch ( RuntimeException e ) {
+      throw new KettleException( e );
+    }
+  }
+
+  /**
+   * A null start of the date range means -Infinity, a null end means +Infinity.
+   */
+  private boolean isInDateRange( Object[] row, Date lookupDate ) throws KettleValueException {
+    Date fromDate = rowMeta.getDate( row, fromDateIndex );
+    if ( lookupDate == null ) {
+      return fromDate == null;
+    }
+    if ( fromDate != null && fromDate.compareTo( lookupDate ) > 0 ) {
+      return false;
+    }
+    Date toDate = rowMeta.getDate( row, toDateIndex );
+    return toDate == null || toDate.compareTo( lookupDate ) > 0;
   }
 
   /**
@@ -254,6 +379,7 @@ public class DimensionCache implements Comparator<Object[]> {
    */
   public void setRowMeta( RowMetaInterface rowMeta ) {
     this.rowMeta = rowMeta;
+    this.keyIndex = null;
   }
 
   /**
@@ -269,6 +395,7 @@ public class DimensionCache implements Comparator<Object[]> {
    */
   public void setRowCache( List<Object[]> rowCache ) {
     this.rowCache = rowCache;
+    this.keyIndex = null;
   }
 
   /**
@@ -284,6 +411,7 @@ public class DimensionCache implements Comparator<Object[]> {
    */
   public void setKeyIndexes( int[] keyIndexes ) {
     this.keyIndexes = keyIndexes;
+    this.keyIndex = null;
   }
 
   /**
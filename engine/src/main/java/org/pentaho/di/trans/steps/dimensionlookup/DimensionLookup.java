@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -295,7 +295,15 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       sql += " FROM " + data.schemaTable;
       logDetailed( "Pre-loading cache by reading from database with: " + Const.CR + sql + Const.CR );
 
-      List<Object[]> rows = data.db.getRows( sql, -1 );
+      // Stream the dimension table into the cache, the JDBC driver doesn't need to buffer all of it as well
+      //
+      List<Object[]> rows;
+      data.db.setStreamingQuery( true );
+      try {
+        rows = data.db.getRows( sql, -1 );
+      } finally {
+        data.db.setStreamingQuery( false );
+      }
       RowMetaInterface rowMeta = data.db.getReturnRowMeta();
 
       data.preloadKeyIndexes = new int[ meta.getKeyLookup().length ];
@@ -313,6 +321,14 @@ public class DimensionLookup extends BaseStep implements StepInterface {
       data.preloadCache.sortRows();
       logDetailed( "Sorting of cached rows finished." );
 
+      // Index the natural keys so that every lookup doesn't need to do a binary search over all the rows
+      //
+      if ( data.preloadCache.buildIndex() ) {
+        logDetailed( "Indexed the natural keys of the cached rows." );
+      } else {
+        logDetailed( "The natural keys of the cached rows can't be indexed, binary searches are used instead." );
+      }
+
       // Also see what indexes to take to populate the lookup row...
       // We only ever compare indexes and the lookup date in the cache, the rest is not needed...
       //
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.trans.steps.dummytrans;
 
+import java.util.List;
+
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -47,16 +49,21 @@ public class DummyTrans extends BaseStep implements StepInterface {
   }
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
-    Object[] r = getRow(); // get row, set busy!
+    return processRows( smi, sdi );
+  }
+
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    List<Object[]> rows = getRows( getRowBatchSize() ); // get a batch of rows, set busy!
     // no more input to be expected...
-    if ( r == null ) {
+    if ( rows.isEmpty() ) {
       setOutputDone();
       return false;
     }
 
-    putRow( getInputRowMeta(), r ); // copy row to possible alternate rowset(s).
+    putRows( getInputRowMeta(), rows ); // copy rows to possible alternate rowset(s).
 
-    if ( checkFeedback( getLinesRead() ) ) {
+    if ( checkFeedback( getLinesRead(), rows.size() ) ) {
       if ( log.isBasic() ) {
         logBasic( BaseMessages.getString( PKG, "DummyTrans.Log.LineNumber" ) + getLinesRead() );
       }
@@ -22,11 +22,13 @@
 
 package org.pentaho.di.trans.steps.filterrows;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -68,14 +70,65 @@ public class FilterRows extends BaseStep implements StepInterface {
     }
   }
 
-  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+  private boolean[] keepRows( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    try {
+      return meta.getCondition().evaluate( new RowBatch( rowMeta, rows ) );
+    } catch ( Exception e ) {
+      String message =
+        BaseMessages.getString( PKG, "FilterRows.Exception.UnexpectedErrorFoundInEvaluationFuction" );
+      logError( message );
+      logError( Const.getStackTracker( e ) );
+      throw new KettleException( message, e );
+    }
+  }
+
+  private void prepareOutput() throws KettleException {
+    data.outputRowMeta = getInputRowMeta().clone();
+    meta.getFields( getInputRowMeta(), getStepname(), null, null, this, repository, metaStore );
+
+    // if filter refers to non-existing fields, throw exception
+    checkNonExistingFields();
+
+    // Simple numeric conditions are evaluated on the columns of a whole batch of rows
+    //
+    data.batchCondition = meta.getCondition().isBatchEvaluable( getInputRowMeta() );
+
+    // Cache the position of the RowSet for the output.
+    //
+    if ( data.chosesTargetSteps ) {
+      List<StreamInterface> targetStreams = meta.getStepIOMeta().getTargetStreams();
+      if ( !Utils.isEmpty( targetStreams.get( 0 ).getStepname() ) ) {
+        data.trueRowSet = findOutputRowSet( getStepname(), getCopy(), targetStreams.get( 0 ).getStepname(), 0 );
+        if ( data.trueRowSet == null ) {
+          throw new KettleException( BaseMessages.getString(
+            PKG, "FilterRows.Log.TargetStepInvalid", targetStreams.get( 0 ).getStepname() ) );
+        }
+      } else {
+        data.trueRowSet = null;
+      }
+
+      if ( !Utils.isEmpty( targetStreams.get( 1 ).getStepname() ) ) {
+        data.falseRowSet = findOutputRowSet( getStepname(), getCopy(), targetStreams.get( 1 ).getStepname(), 0 );
+        if ( data.falseRowSet == null ) {
+          throw new KettleException( BaseMessages.getString(
+            PKG, "FilterRows.Log.TargetStepInvalid", targetStreams.get( 1 ).getStepname() ) );
+        }
+      } else {
+        data.falseRowSet = null;
+      }
+    }
+  }
+
+  /**
+   * Filters a batch of rows at once. Rows sent to specific true/false target steps are still handed over one by one.
+   */
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (FilterRowsMeta) smi;
     data = (FilterRowsData) sdi;
 
-    boolean keep;
-
-    Object[] r = getRow(); // Get next usable row from input rowset(s)!
-    if ( r == null ) { // no more input to be expected...
+    List<Object[]> rows = getRows( getRowBatchSize() ); // Get the next usable rows from input rowset(s)!
+    if ( rows.isEmpty() ) { // no more input to be expected...
 
       setOutputDone();
       return false;
@@ -83,63 +136,49 @@ public class FilterRows extends BaseStep implements StepInterface {
 
     if ( first ) {
       first = false;
+      prepareOutput();
+    }
 
-      data.outputRowMeta = getInputRowMeta().clone();
-      meta.getFields( getInputRowMeta(), getStepname(), null, null, this, repository, metaStore );
-
-      // if filter refers to non-existing fields, throw exception
-      checkNonExistingFields();
-
-      // Cache the position of the RowSet for the output.
-      //
-      if ( data.chosesTargetSteps ) {
-        List<StreamInterface> targetStreams = meta.getStepIOMeta().getTargetStreams();
-        if ( !Utils.isEmpty( targetStreams.get( 0 ).getStepname() ) ) {
-          data.trueRowSet = findOutputRowSet( getStepname(), getCopy(), targetStreams.get( 0 ).getStepname(), 0 );
-          if ( data.trueRowSet == null ) {
-            throw new KettleException( BaseMessages.getString(
-              PKG, "FilterRows.Log.TargetStepInvalid", targetStreams.get( 0 ).getStepname() ) );
-          }
-        } else {
-          data.trueRowSet = null;
-        }
-
-        if ( !Utils.isEmpty( targetStreams.get( 1 ).getStepname() ) ) {
-          data.falseRowSet = findOutputRowSet( getStepname(), getCopy(), targetStreams.get( 1 ).getStepname(), 0 );
-          if ( data.falseRowSet == null ) {
-            throw new KettleException( BaseMessages.getString(
-              PKG, "FilterRows.Log.TargetStepInvalid", targetStreams.get( 1 ).getStepname() ) );
-          }
-        } else {
-          data.falseRowSet = null;
-        }
+    boolean[] keep;
+    if ( data.batchCondition ) {
+      keep = keepRows( getInputRowMeta(), rows );
+    } else {
+      keep = new boolean[ rows.size() ];
+      for ( int i = 0; i < keep.length; i++ ) {
+        keep[ i ] = keepRow( getInputRowMeta(), rows.get( i ) ); // Keep this row?
       }
     }
 
-    keep = keepRow( getInputRowMeta(), r ); // Keep this row?
     if ( !data.chosesTargetSteps ) {
-      if ( keep ) {
-        putRow( data.outputRowMeta, r ); // copy row to output rowset(s);
+      List<Object[]> keptRows = new ArrayList<Object[]>( rows.size() );
+      for ( int i = 0; i < keep.length; i++ ) {
+        if ( keep[ i ] ) {
+          keptRows.add( rows.get( i ) );
+        }
       }
+      putRows( data.outputRowMeta, keptRows ); // copy rows to output rowset(s);
     } else {
-      if ( keep ) {
-        if ( data.trueRowSet != null ) {
-          if ( log.isRowLevel() ) {
-            logRowlevel( "Sending row to true  :" + data.trueStepname + " : " + getInputRowMeta().getString( r ) );
+      for ( int i = 0; i < keep.length; i++ ) {
+        Object[] r = rows.get( i );
+        if ( keep[ i ] ) {
+          if ( data.trueRowSet != null ) {
+            if ( log.isRowLevel() ) {
+              logRowlevel( "Sending row to true  :" + data.trueStepname + " : " + getInputRowMeta().getString( r ) );
+            }
+            putRowTo( data.outputRowMeta, r, data.trueRowSet );
           }
-          putRowTo( data.outputRowMeta, r, data.trueRowSet );
-        }
-      } else {
-        if ( data.falseRowSet != null ) {
-          if ( log.isRowLevel() ) {
-            logRowlevel( "Sending row to false :" + data.falseStepname + " : " + getInputRowMeta().getString( r ) );
+        } else {
+          if ( data.falseRowSet != null ) {
+            if ( log.isRowLevel() ) {
+              logRowlevel( "Sending row to false :" + data.falseStepname + " : " + getInputRowMeta().getString( r ) );
+            }
+            putRowTo( data.outputRowMeta, r, data.falseRowSet );
           }
-          putRowTo( data.outputRowMeta, r, data.falseRowSet );
         }
       }
     }
 
-    if ( checkFeedback( getLinesRead() ) ) {
+    if ( checkFeedback( getLinesRead(), rows.size() ) ) {
       if ( log.isBasic() ) {
         logBasic( BaseMessages.getString( PKG, "FilterRows.Log.LineNumber" ) + getLinesRead() );
       }
@@ -148,6 +187,10 @@ public class FilterRows extends BaseStep implements StepInterface {
     return true;
   }
 
+  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    return processRows( smi, sdi );
+  }
+
   /**
    * @see StepInterface#init(org.pentaho.di.trans.step.StepMetaInterface , org.pentaho.di.trans.step.StepDataInterface)
    */
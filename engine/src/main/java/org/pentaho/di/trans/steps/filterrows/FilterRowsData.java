@@ -41,6 +41,11 @@ public class FilterRowsData extends BaseStepData implements StepDataInterface {
   public String trueStepname;
   public String falseStepname;
 
+  /**
+   * True if the condition can be evaluated on a whole batch of rows at once
+   */
+  public boolean batchCondition;
+
   public FilterRowsData() {
     super();
   }
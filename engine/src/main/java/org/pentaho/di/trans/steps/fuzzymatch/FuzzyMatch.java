@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,19 +22,19 @@
 
 package org.pentaho.di.trans.steps.fuzzymatch;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import org.apache.commons.codec.language.DoubleMetaphone;
-import org.apache.commons.codec.language.Metaphone;
-import org.apache.commons.codec.language.RefinedSoundex;
-import org.apache.commons.codec.language.Soundex;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.util.ExecutorUtil;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
-import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -61,6 +61,11 @@ import com.wcohen.ss.NeedlemanWunsch;
 public class FuzzyMatch extends BaseStep implements StepInterface {
   private static Class<?> PKG = FuzzyMatchMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * Fewer candidates than this per thread aren't worth the overhead of scoring them in parallel.
+   */
+  private static final int MIN_CANDIDATES_PER_THREAD = 1000;
+
   private FuzzyMatchMeta meta;
   private FuzzyMatchData data;
 
@@ -208,7 +213,7 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     }
   }
 
-  private Object[] getFromCache( Object[] keyRow ) throws KettleValueException {
+  private Object[] getFromCache( Object[] keyRow ) throws KettleException {
     if ( isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "FuzzyMatch.Log.ReadingMainStreamRow", getInputRowMeta().getString(
         keyRow ) ) );
@@ -218,18 +223,19 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
       case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
       case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
       case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
-        retval = doDistance( keyRow );
+        retval = lookup( getInputRowMeta().getString( keyRow, data.indexOfMainField ) );
         break;
       case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
       case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
       case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
       case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
-        retval = doPhonetic( keyRow );
+        retval = lookup( (String) keyRow[data.indexOfMainField] );
         break;
       case FuzzyMatchMeta.OPERATION_TYPE_JARO:
       case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
       case FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY:
-        retval = doSimilarity( keyRow );
+        Object o = keyRow[data.indexOfMainField];
+        retval = lookup( o == null ? "" : (String) o );
         break;
       default:
 
@@ -239,209 +245,228 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     return retval;
   }
 
-  private Object[] doDistance( Object[] row ) throws KettleValueException {
-    // Reserve room
-    Object[] rowData = buildEmptyRow();
+  /**
+   * Compares a main stream value with the lookup values that can match it. The candidates are scored in parallel when
+   * there are enough of them and more than one scoring thread is configured.
+   */
+  private Object[] lookup( String lookupvalue ) throws KettleException {
+    final String key = FuzzyMatchIndex.getKey( meta.getAlgorithmType(), meta.isCaseSensitive(), lookupvalue );
+    Match match = new Match( lookupvalue, key );
+
+    final int[] candidates = data.index.getCandidates( key );
+    int nrCandidates = candidates == null ? data.index.size() : candidates.length;
+    int nrChunks = Math.max( 1, Math.min( data.nrScoringThreads, nrCandidates / MIN_CANDIDATES_PER_THREAD ) );
+    if ( nrChunks == 1 ) {
+      score( match, candidates, 0, nrCandidates );
+      return match.getRowData();
+    }
 
-    Iterator<Object[]> it = data.look.iterator();
+    // The step thread scores the first chunk itself
+    //
+    List<Future<Match>> futures = new ArrayList<Future<Match>>();
+    int chunkSize = ( nrCandidates + nrChunks - 1 ) / nrChunks;
+    for ( int from = chunkSize; from < nrCandidates; from += chunkSize ) {
+      final int start = from;
+      final int end = Math.min( nrCandidates, from + chunkSize );
+      final Match chunk = new Match( lookupvalue, key );
+      futures.add( ExecutorUtil.getExecutor().submit( new Callable<Match>() {
+        @Override
+        public Match call() {
+          score( chunk, candidates, start, end );
+          return chunk;
+        }
+      } ) );
+    }
+    score( match, candidates, 0, Math.min( nrCandidates, chunkSize ) );
+    try {
+      for ( Future<Match> future : futures ) {
+        match.merge( future.get() );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( e.getCause() );
+    }
+    return match.getRowData();
+  }
 
-    long distance = -1;
+  private void score( Match match, int[] candidates, int from, int to ) {
+    for ( int i = from; i < to; i++ ) {
+      int rowNr = candidates == null ? i : candidates[i];
+      match.add( data.index.getRow( rowNr ), data.index.getKey( rowNr ) );
+    }
+  }
 
-    // Object o=row[data.indexOfMainField];
-    String lookupvalue = getInputRowMeta().getString( row, data.indexOfMainField );
+  /**
+   * Keeps track of the closest lookup value, or of all the matching lookup values, for a main stream value. The lookup
+   * values have to be added in the order of the cache, a match of a range of lookup values that follows can be merged.
+   */
+  private class Match {
+    private final String lookupvalue;
+    private final String key;
+
+    private Object[] cachedData;
+    private long distance = -1;
+    private double similarity = 0;
+    private String code;
+    private boolean reset;
+    private StringBuilder values;
+
+    Match( String lookupvalue, String key ) {
+      this.lookupvalue = lookupvalue;
+      this.key = key;
+    }
 
-    while ( it.hasNext() ) {
-      // Get cached row data
-      Object[] cachedData = it.next();
+    /**
+     * @param cached
+     *          the cached lookup row, the lookup value comes first
+     * @param cacheKey
+     *          the compared form of the lookup value, see {@link FuzzyMatchIndex#getKey(int, boolean, String)}
+     */
+    void add( Object[] cached, String cacheKey ) {
       // Key value is the first value
-      String cacheValue = (String) cachedData[0];
-
-      int cdistance = -1;
-      String usecacheValue = cacheValue;
-      String uselookupvalue = lookupvalue;
-      if ( !meta.isCaseSensitive() ) {
-        usecacheValue = cacheValue.toLowerCase();
-        uselookupvalue = lookupvalue.toLowerCase();
-      }
+      String cacheValue = (String) cached[0];
 
       switch ( meta.getAlgorithmType() ) {
+        case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
         case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
-          cdistance = Utils.getDamerauLevenshteinDistance( usecacheValue, uselookupvalue );
-          break;
         case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
-          cdistance = Math.abs( (int) new NeedlemanWunsch().score( usecacheValue, uselookupvalue ) );
+          int cdistance;
+          switch ( meta.getAlgorithmType() ) {
+            case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+              cdistance = Utils.getDamerauLevenshteinDistance( cacheKey, key );
+              break;
+            case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
+              cdistance = Math.abs( (int) new NeedlemanWunsch().score( cacheKey, key ) );
+              break;
+            default:
+              cdistance = StringUtils.getLevenshteinDistance( cacheKey, key );
+              break;
+          }
+          if ( data.minimalDistance <= cdistance && cdistance <= data.maximalDistance ) {
+            if ( meta.isGetCloserValue() ) {
+              if ( cdistance < distance || distance == -1 ) {
+                // Get closer value
+                // minimal distance
+                distance = cdistance;
+                cachedData = cached;
+              }
+            } else {
+              addValue( cacheValue );
+            }
+          }
           break;
-        default:
-          cdistance = StringUtils.getLevenshteinDistance( usecacheValue, uselookupvalue );
+        case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+        case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+        case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+        case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+          // The last lookup value with the same code wins
+          if ( key.equals( cacheKey ) ) {
+            code = cacheKey;
+            cachedData = cached;
+          }
           break;
-      }
-
-      if ( data.minimalDistance <= cdistance && cdistance <= data.maximalDistance ) {
-        if ( meta.isGetCloserValue() ) {
-          if ( cdistance < distance || distance == -1 ) {
-            // Get closer value
-            // minimal distance
-            distance = cdistance;
-            int index = 0;
-            rowData[index++] = cacheValue;
-            // Add metric value?
-            if ( data.addValueFieldName ) {
-              rowData[index++] = distance;
-            }
-            // Add additional return values?
-            if ( data.addAdditionalFields ) {
-              for ( int i = 0; i < meta.getValue().length; i++ ) {
-                int nr = i + 1;
-                int nf = i + index;
-                rowData[nf] = cachedData[nr];
+        default:
+          double csimilarity;
+          switch ( meta.getAlgorithmType() ) {
+            case FuzzyMatchMeta.OPERATION_TYPE_JARO:
+              csimilarity = new Jaro().score( cacheValue, lookupvalue );
+              break;
+            case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
+              csimilarity = new JaroWinkler().score( cacheValue, lookupvalue );
+              break;
+            default:
+              // Letters pair similarity
+              csimilarity = LetterPairSimilarity.getSimiliarity( cacheValue, lookupvalue );
+              break;
+          }
+          if ( data.minimalSimilarity <= csimilarity && csimilarity <= data.maximalSimilarity ) {
+            if ( meta.isGetCloserValue() ) {
+              if ( csimilarity > similarity || ( csimilarity == 0 && cacheValue.equals( lookupvalue ) ) ) {
+                // An equal value without similarity starts over from there
+                reset |= csimilarity == 0;
+                similarity = csimilarity;
+                cachedData = cached;
               }
+            } else {
+              addValue( cacheValue );
             }
           }
-        } else {
-          // get all values separated by values separator
-          if ( rowData[0] == null ) {
-            rowData[0] = cacheValue;
-          } else {
-            rowData[0] = (String) rowData[0] + data.valueSeparator + cacheValue;
-          }
-        }
+          break;
       }
     }
 
-    return rowData;
-  }
-
-  private Object[] doPhonetic( Object[] row ) {
-    // Reserve room
-    Object[] rowData = buildEmptyRow();
-
-    Iterator<Object[]> it = data.look.iterator();
-
-    Object o = row[data.indexOfMainField];
-    String lookupvalue = (String) o;
-
-    String lookupValueMF = getEncodedMF( lookupvalue, meta.getAlgorithmType() );
-
-    while ( it.hasNext() ) {
-      // Get cached row data
-      Object[] cachedData = it.next();
-      // Key value is the first value
-      String cacheValue = (String) cachedData[0];
-
-      String cacheValueMF = getEncodedMF( cacheValue, meta.getAlgorithmType() );
-
-      if ( lookupValueMF.equals( cacheValueMF ) ) {
-
-        // Add match value
-        int index = 0;
-        rowData[index++] = cacheValue;
+    private void addValue( String cacheValue ) {
+      // get all values separated by values separator
+      if ( values == null ) {
+        values = new StringBuilder( cacheValue );
+      } else {
+        values.append( data.valueSeparator ).append( cacheValue );
+      }
+    }
 
-        // Add metric value?
-        if ( data.addValueFieldName ) {
-          rowData[index++] = cacheValueMF;
+    /**
+     * Adds the outcome of the lookup values that follow the ones of this match.
+     */
+    void merge( Match next ) {
+      if ( next.values != null ) {
+        if ( values == null ) {
+          values = next.values;
+        } else {
+          values.append( data.valueSeparator ).append( next.values );
         }
-        // Add additional return values?
-        if ( data.addAdditionalFields ) {
-          for ( int i = 0; i < meta.getValue().length; i++ ) {
-            int nf = i + index;
-            int nr = i + 1;
-            rowData[nf] = cachedData[nr];
-          }
+      }
+      if ( next.cachedData == null ) {
+        return;
+      }
+      if ( next.distance != -1 ) {
+        if ( distance == -1 || next.distance < distance ) {
+          distance = next.distance;
+          cachedData = next.cachedData;
         }
+      } else if ( next.code != null ) {
+        code = next.code;
+        cachedData = next.cachedData;
+      } else if ( next.reset || next.similarity > similarity ) {
+        reset |= next.reset;
+        similarity = next.similarity;
+        cachedData = next.cachedData;
       }
     }
 
-    return rowData;
-  }
-
-  private String getEncodedMF( String value, Integer algorithmType ) {
-    String encodedValueMF = "";
-    switch ( algorithmType ) {
-      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
-        encodedValueMF = ( new Metaphone() ).metaphone( value );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
-        encodedValueMF = ( ( new DoubleMetaphone() ).doubleMetaphone( value ) );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
-        encodedValueMF = ( new Soundex() ).encode( value );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
-        encodedValueMF = ( new RefinedSoundex() ).encode( value );
-        break;
-      default:
-        break;
-    }
-    return encodedValueMF;
-  }
-
-  private Object[] doSimilarity( Object[] row ) {
-
-    // Reserve room
-    Object[] rowData = buildEmptyRow();
-    // prepare to read from cache ...
-    Iterator<Object[]> it = data.look.iterator();
-    double similarity = 0;
-
-    // get current value from main stream
-    Object o = row[data.indexOfMainField];
-
-    String lookupvalue = o == null ? "" : (String) o;
-
-    while ( it.hasNext() ) {
-      // Get cached row data
-      Object[] cachedData = it.next();
-      // Key value is the first value
-      String cacheValue = (String) cachedData[0];
-
-      double csimilarity = new Double( 0 );
-
-      switch ( meta.getAlgorithmType() ) {
-        case FuzzyMatchMeta.OPERATION_TYPE_JARO:
-          csimilarity = new Jaro().score( cacheValue, lookupvalue );
-          break;
-        case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
-          csimilarity = new JaroWinkler().score( cacheValue, lookupvalue );
-          break;
-        default:
-          // Letters pair similarity
-          csimilarity = LetterPairSimilarity.getSimiliarity( cacheValue, lookupvalue );
-          break;
+    Object[] getRowData() {
+      // Reserve room
+      Object[] rowData = buildEmptyRow();
+      if ( values != null ) {
+        rowData[0] = values.toString();
+      }
+      if ( cachedData == null ) {
+        return rowData;
       }
 
-      if ( data.minimalSimilarity <= csimilarity && csimilarity <= data.maximalSimilarity ) {
-        if ( meta.isGetCloserValue() ) {
-          if ( csimilarity > similarity || ( csimilarity == 0 && cacheValue.equals( lookupvalue ) ) ) {
-            similarity = csimilarity;
-            // Update match value
-            int index = 0;
-            rowData[index++] = cacheValue;
-            // Add metric value?
-            if ( data.addValueFieldName ) {
-              rowData[index++] = new Double( similarity );
-            }
-
-            // Add additional return values?
-            if ( data.addAdditionalFields ) {
-              for ( int i = 0; i < meta.getValue().length; i++ ) {
-                int nf = i + index;
-                int nr = i + 1;
-                rowData[nf] = cachedData[nr];
-              }
-            }
-          }
+      int index = 0;
+      rowData[index++] = cachedData[0];
+      // Add metric value?
+      if ( data.addValueFieldName ) {
+        if ( code != null ) {
+          rowData[index++] = code;
+        } else if ( distance != -1 ) {
+          rowData[index++] = distance;
         } else {
-          // get all values separated by values separator
-          if ( rowData[0] == null ) {
-            rowData[0] = cacheValue;
-          } else {
-            rowData[0] = (String) rowData[0] + data.valueSeparator + cacheValue;
-          }
+          rowData[index++] = new Double( similarity );
+        }
+      }
+      // Add additional return values?
+      if ( data.addAdditionalFields ) {
+        for ( int i = 0; i < meta.getValue().length; i++ ) {
+          int nf = i + index;
+          int nr = i + 1;
+          rowData[nf] = cachedData[nr];
         }
       }
+      return rowData;
     }
-
-    return rowData;
   }
 
   /**
@@ -473,6 +498,13 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
       if ( isDetailed() ) {
         logDetailed( BaseMessages.getString( PKG, "FuzzyMatch.Log.ReadValuesInMemory", data.look.size() ) );
       }
+
+      // Index the lookup values so only the ones that can match are compared
+      //
+      data.index =
+        new FuzzyMatchIndex( meta.getAlgorithmType(), meta.isCaseSensitive(), data.look, data.maximalDistance,
+          data.minimalSimilarity );
+      data.look.clear();
     }
 
     Object[] r = getRow(); // Get row from input rowset & set row busy!
@@ -612,6 +644,11 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
           break;
       }
 
+      data.nrScoringThreads = Math.max( 1, Const.toInt( environmentSubstitute( meta.getScoringThreads() ), 1 ) );
+      if ( isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "FuzzyMatch.Log.ScoringThreads", data.nrScoringThreads ) );
+      }
+
       data.readLookupValues = true;
 
       return true;
@@ -623,6 +660,7 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     meta = (FuzzyMatchMeta) smi;
     data = (FuzzyMatchData) sdi;
     data.look.clear();
+    data.index = null;
     super.dispose( smi, sdi );
   }
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -40,6 +40,12 @@ public class FuzzyMatchData extends BaseStepData implements StepDataInterface {
   /** used to store values in used to look up things */
   public HashSet<Object[]> look;
 
+  /** the lookup values, indexed once they are all read */
+  public FuzzyMatchIndex index;
+
+  /** number of threads that score the lookup values of a row */
+  public int nrScoringThreads;
+
   public boolean readLookupValues;
 
   /** index of main stream field **/
@@ -75,6 +81,7 @@ public class FuzzyMatchData extends BaseStepData implements StepDataInterface {
     this.valueSeparator = "";
     this.nrCachedFields = 1;
     this.addAdditionalFields = false;
+    this.nrScoringThreads = 1;
   }
 
 }
@@ -0,0 +1,477 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.commons.codec.language.Metaphone;
+import org.apache.commons.codec.language.RefinedSoundex;
+import org.apache.commons.codec.language.Soundex;
+
+/**
+ * An index on the values of the lookup stream of the Fuzzy Match step. For a value of the main stream it returns the
+ * lookup values that can possibly match, so only these have to be scored instead of all of them:
+ * <ul>
+ * <li>Levenshtein and Damerau-Levenshtein: an inverted index on the pairs of consecutive characters (q-grams with q =
+ * 2), only the values with a length that differs no more than the maximal distance and that share enough pairs to be
+ * within the maximal distance are returned (the q-gram count filter).</li>
+ * <li>Jaro and Jaro-Winkler: the values with a length that allows the minimal similarity to be reached.</li>
+ * <li>Pair letters similarity: an inverted index on the letter pairs, only the values that share enough pairs to
+ * reach the minimal similarity are returned.</li>
+ * <li>Phonetic algorithms: the values are grouped on their code, only the values with the same code are returned.</li>
+ * </ul>
+ * None of these filters drops a value that matches. The candidates are returned in the order of the lookup values
+ * that was passed in, so the step finds the same match as it would by comparing all the values.<br>
+ * <br>
+ * The index is read-only once it's built, except for {@link #getCandidates(String)} which uses a work area and may
+ * only be called by one thread at a time.
+ *
+ * @since 9.1
+ */
+public class FuzzyMatchIndex {
+
+  private final int algorithm;
+  private final boolean caseSensitive;
+  private final int maximalDistance;
+  private final double minimalSimilarity;
+
+  private final Object[][] rows;
+  private final String[] keys;
+
+  /** The row numbers sorted on the length of their key, and these lengths */
+  private int[] byLength;
+  private int[] lengths;
+
+  private Map<String, int[]> blocks;
+
+  private Map<String, int[]> pairRows;
+  private int[] nrPairs;
+  private int[] emptyRows;
+  private int[] hits;
+
+  /**
+   * @param algorithm
+   *          the algorithm of the step, one of the FuzzyMatchMeta.OPERATION_TYPE constants
+   * @param caseSensitive
+   *          false if the distance algorithms ignore the case
+   * @param lookupRows
+   *          the cached rows of the lookup stream, the lookup value (a String) comes first
+   * @param maximalDistance
+   *          the maximal distance of a match for the distance algorithms
+   * @param minimalSimilarity
+   *          the minimal similarity of a match for the similarity algorithms
+   */
+  public FuzzyMatchIndex( int algorithm, boolean caseSensitive, Collection<Object[]> lookupRows, int maximalDistance,
+    double minimalSimilarity ) {
+    this.algorithm = algorithm;
+    this.caseSensitive = caseSensitive;
+    this.maximalDistance = maximalDistance;
+    this.minimalSimilarity = minimalSimilarity;
+
+    rows = lookupRows.toArray( new Object[ lookupRows.size() ][] );
+    keys = new String[ rows.length ];
+    for ( int i = 0; i < rows.length; i++ ) {
+      keys[ i ] = getKey( algorithm, caseSensitive, (String) rows[ i ][ 0 ] );
+    }
+
+    switch ( algorithm ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
+      case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+        buildLengthIndex();
+        buildPairIndex();
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_JARO:
+      case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
+        buildLengthIndex();
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY:
+        buildPairIndex();
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+        buildBlocks();
+        break;
+      default:
+        // Needleman-Wunsch: every value has to be scored
+        break;
+    }
+  }
+
+  /**
+   * @return the value that's compared for a lookup or main stream value: the value in lower case for the distance
+   *         algorithms that ignore the case, the phonetic code for the phonetic algorithms or the value itself
+   */
+  public static String getKey( int algorithm, boolean caseSensitive, String value ) {
+    switch ( algorithm ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
+      case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+      case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
+        return caseSensitive ? value : value.toLowerCase();
+      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+        return getEncodedMF( value, algorithm );
+      default:
+        return value;
+    }
+  }
+
+  static String getEncodedMF( String value, int algorithmType ) {
+    String encodedValueMF = "";
+    switch ( algorithmType ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+        encodedValueMF = ( new Metaphone() ).metaphone( value );
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+        encodedValueMF = ( ( new DoubleMetaphone() ).doubleMetaphone( value ) );
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+        encodedValueMF = ( new Soundex() ).encode( value );
+        break;
+      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+        encodedValueMF = ( new RefinedSoundex() ).encode( value );
+        break;
+      default:
+        break;
+    }
+    return encodedValueMF;
+  }
+
+  /**
+   * @param key
+   *          the key of the main stream value, see {@link #getKey(int, boolean, String)}
+   * @return the numbers of the lookup rows that can match, in ascending order, or null if all the rows can match
+   */
+  public int[] getCandidates( String key ) {
+    switch ( algorithm ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
+        return searchEditDistance( key, 2 );
+      case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+        // Swapping 2 characters breaks the pairs they are part of as well as the pair they form
+        //
+        return searchEditDistance( key, 3 );
+      case FuzzyMatchMeta.OPERATION_TYPE_JARO:
+        return getSimilarLengths( key.length(), 3.0 * minimalSimilarity - 2.0 );
+      case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
+        // The Winkler prefix bonus is at most 4 * 0.1 * ( 1 - jaro ), so jaro >= ( minimal - 0.4 ) / 0.6
+        //
+        return getSimilarLengths( key.length(), 5.0 * minimalSimilarity - 4.0 );
+      case FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY:
+        return searchPairs( key );
+      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+        int[] block = blocks.get( key );
+        return block == null ? new int[ 0 ] : block;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return the number of lookup rows
+   */
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * @return the cached lookup row with the given number
+   */
+  public Object[] getRow( int rowNr ) {
+    return rows[ rowNr ];
+  }
+
+  /**
+   * @return the key of the lookup row with the given number, see {@link #getKey(int, boolean, String)}
+   */
+  public String getKey( int rowNr ) {
+    return keys[ rowNr ];
+  }
+
+  public int getAlgorithm() {
+    return algorithm;
+  }
+
+  public boolean isCaseSensitive() {
+    return caseSensitive;
+  }
+
+  private void buildLengthIndex() {
+    Integer[] sorted = new Integer[ rows.length ];
+    for ( int i = 0; i < sorted.length; i++ ) {
+      sorted[ i ] = i;
+    }
+    Arrays.sort( sorted, ( a, b ) -> Integer.compare( keys[ a ].length(), keys[ b ].length() ) );
+    byLength = new int[ sorted.length ];
+    lengths = new int[ sorted.length ];
+    for ( int i = 0; i < sorted.length; i++ ) {
+      byLength[ i ] = sorted[ i ];
+      lengths[ i ] = keys[ sorted[ i ] ].length();
+    }
+  }
+
+  /**
+   * Jaro is at most ( 2 + shortest length / longest length ) / 3, so the lengths have to be within the given ratio.
+   */
+  private int[] getSimilarLengths( int length, double ratio ) {
+    if ( ratio <= 0.0 ) {
+      return null;
+    }
+    // Leave some room for rounding errors
+    //
+    ratio -= 1E-9;
+    return getLengthRange( (int) Math.ceil( length * ratio ), (int) Math.floor( length / ratio ) );
+  }
+
+  private int[] getLengthRange( int from, int to ) {
+    int start = lowerBound( Math.max( 0, from ) );
+    int end = to == Integer.MAX_VALUE ? lengths.length : lowerBound( to + 1 );
+    if ( start == 0 && end == lengths.length ) {
+      return null;
+    }
+    int[] candidates = Arrays.copyOfRange( byLength, start, Math.max( start, end ) );
+    Arrays.sort( candidates );
+    return candidates;
+  }
+
+  /**
+   * @return the position of the first length that's not smaller than the given length
+   */
+  private int lowerBound( int length ) {
+    int low = 0;
+    int high = lengths.length;
+    while ( low < high ) {
+      int middle = ( low + high ) >>> 1;
+      if ( lengths[ middle ] < length ) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private void buildBlocks() {
+    Map<String, IntList> lists = new HashMap<String, IntList>();
+    for ( int i = 0; i < keys.length; i++ ) {
+      IntList list = lists.get( keys[ i ] );
+      if ( list == null ) {
+        list = new IntList();
+        lists.put( keys[ i ], list );
+      }
+      list.add( i );
+    }
+    blocks = new HashMap<String, int[]>( (int) ( lists.size() / 0.75f ) + 1 );
+    for ( Map.Entry<String, IntList> entry : lists.entrySet() ) {
+      blocks.put( entry.getKey(), entry.getValue().toArray() );
+    }
+  }
+
+  /**
+   * @return the pairs of the index: the letter pairs for the pair letters similarity, all the pairs of consecutive
+   *         characters of the key for the distance algorithms
+   */
+  private List<String> getPairs( String key ) {
+    if ( algorithm == FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY ) {
+      return getLetterPairs( key );
+    }
+    List<String> pairs = new ArrayList<String>();
+    for ( int i = 0; i < key.length() - 1; i++ ) {
+      pairs.add( key.substring( i, i + 2 ) );
+    }
+    return pairs;
+  }
+
+  /**
+   * The letter pairs of a value, the same way {@link LetterPairSimilarity} finds them.
+   */
+  private static List<String> getLetterPairs( String value ) {
+    List<String> pairs = new ArrayList<String>();
+    for ( String word : value.toUpperCase().split( "\\s" ) ) {
+      for ( int i = 0; i < word.length() - 1; i++ ) {
+        pairs.add( word.substring( i, i + 2 ) );
+      }
+    }
+    return pairs;
+  }
+
+  private void buildPairIndex() {
+    Map<String, IntList> lists = new HashMap<String, IntList>();
+    IntList empty = new IntList();
+    nrPairs = new int[ keys.length ];
+    for ( int i = 0; i < keys.length; i++ ) {
+      if ( keys[ i ].isEmpty() ) {
+        empty.add( i );
+      }
+      // A row shows up once in the list of a pair for every time it contains the pair
+      //
+      List<String> pairs = getPairs( keys[ i ] );
+      nrPairs[ i ] = pairs.size();
+      for ( String pair : pairs ) {
+        IntList list = lists.get( pair );
+        if ( list == null ) {
+          list = new IntList();
+          lists.put( pair, list );
+        }
+        list.add( i );
+      }
+    }
+    pairRows = new HashMap<String, int[]>( (int) ( lists.size() / 0.75f ) + 1 );
+    for ( Map.Entry<String, IntList> entry : lists.entrySet() ) {
+      pairRows.put( entry.getKey(), entry.getValue().toArray() );
+    }
+    emptyRows = empty.toArray();
+    hits = new int[ keys.length ];
+  }
+
+  /**
+   * The similarity is 2 * common pairs / ( pairs of the value + pairs of the lookup value ), the common pairs are
+   * counted from the inverted index.
+   */
+  private int[] searchPairs( String value ) {
+    if ( minimalSimilarity <= 0.0 ) {
+      return null;
+    }
+    List<String> pairs = getPairs( value );
+    IntList touched = countCommonPairs( pairs );
+
+    IntList candidates = new IntList();
+    for ( int t = 0; t < touched.size; t++ ) {
+      int row = touched.values[ t ];
+      if ( 2.0 * hits[ row ] >= minimalSimilarity * ( pairs.size() + nrPairs[ row ] ) - 1E-9 ) {
+        candidates.add( row );
+      }
+      hits[ row ] = 0;
+    }
+    // Two empty values are similar as well
+    //
+    if ( value.isEmpty() ) {
+      for ( int row : emptyRows ) {
+        candidates.add( row );
+      }
+    }
+    int[] result = candidates.toArray();
+    Arrays.sort( result );
+    return result;
+  }
+
+  /**
+   * Counts the pairs every lookup key shares with the pairs of a value in {@link #hits}, a pair that occurs several
+   * times is counted as often as it occurs in both.
+   *
+   * @return the rows with at least one pair in common, their hits have to be set back to 0 by the caller
+   */
+  private IntList countCommonPairs( List<String> pairs ) {
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for ( String pair : pairs ) {
+      Integer count = counts.get( pair );
+      counts.put( pair, count == null ? 1 : count + 1 );
+    }
+
+    IntList touched = new IntList();
+    for ( Map.Entry<String, Integer> entry : counts.entrySet() ) {
+      int[] list = pairRows.get( entry.getKey() );
+      if ( list == null ) {
+        continue;
+      }
+      int count = entry.getValue();
+      int i = 0;
+      while ( i < list.length ) {
+        // The occurrences of a row are next to each other
+        //
+        int row = list[ i ];
+        int occurrences = 0;
+        while ( i < list.length && list[ i ] == row ) {
+          occurrences++;
+          i++;
+        }
+        if ( hits[ row ] == 0 ) {
+          touched.add( row );
+        }
+        hits[ row ] += Math.min( count, occurrences );
+      }
+    }
+    return touched;
+  }
+
+  /**
+   * Every edit changes the length by at most 1 and breaks at most the given number of pairs of consecutive characters,
+   * so 2 values within the maximal distance share at least the pairs of the longest value minus the pairs the edits
+   * can break.
+   *
+   * @param pairsPerEdit
+   *          the number of pairs a single edit can break
+   */
+  private int[] searchEditDistance( String key, int pairsPerEdit ) {
+    int length = key.length();
+    int from = length - maximalDistance;
+    int to = length + maximalDistance;
+    int maxBroken = maximalDistance * pairsPerEdit;
+    if ( length - 1 - maxBroken <= 0 ) {
+      // Values without a single pair in common can still match, only the length helps
+      //
+      return getLengthRange( from, to );
+    }
+
+    IntList touched = countCommonPairs( getPairs( key ) );
+    IntList candidates = new IntList();
+    for ( int t = 0; t < touched.size; t++ ) {
+      int row = touched.values[ t ];
+      int rowLength = keys[ row ].length();
+      if ( from <= rowLength && rowLength <= to && hits[ row ] >= Math.max( length, rowLength ) - 1 - maxBroken ) {
+        candidates.add( row );
+      }
+      hits[ row ] = 0;
+    }
+    int[] result = candidates.toArray();
+    Arrays.sort( result );
+    return result;
+  }
+
+  private static class IntList {
+    private int[] values = new int[ 4 ];
+    private int size;
+
+    void add( int value ) {
+      if ( size == values.length ) {
+        values = Arrays.copyOf( values, size * 2 );
+      }
+      values[ size++ ] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf( values, size );
+    }
+  }
+}
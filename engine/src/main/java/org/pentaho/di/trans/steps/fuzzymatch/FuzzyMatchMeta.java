@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -141,6 +141,9 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
   /** rename to this after lookup */
   private String[] valueName;
 
+  /** number of threads that score the lookup values of a row **/
+  private String scoringThreads;
+
   public FuzzyMatchMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -328,6 +331,21 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
     this.separator = separator;
   }
 
+  /**
+   * @return Returns the number of threads that score the lookup values of a row.
+   */
+  public String getScoringThreads() {
+    return scoringThreads;
+  }
+
+  /**
+   * @param scoringThreads
+   *          The number of threads that score the lookup values of a row.
+   */
+  public void setScoringThreads( String scoringThreads ) {
+    this.scoringThreads = scoringThreads;
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode, databases );
   }
@@ -389,6 +407,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
       minimalValue = XMLHandler.getTagValue( stepnode, "minimalValue" );
       maximalValue = XMLHandler.getTagValue( stepnode, "maximalValue" );
       separator = XMLHandler.getTagValue( stepnode, "separator" );
+      scoringThreads = XMLHandler.getTagValue( stepnode, "scoring_threads" );
 
       outputmatchfield = XMLHandler.getTagValue( stepnode, "outputmatchfield" );
       outputvaluefield = XMLHandler.getTagValue( stepnode, "outputvaluefield" );
@@ -427,6 +446,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
     value = null;
     valueName = null;
     separator = DEFAULT_SEPARATOR;
+    scoringThreads = "1";
     closervalue = true;
     minimalValue = "0";
     maximalValue = "1";
@@ -527,6 +547,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " + XMLHandler.addTagValue( "minimalValue", minimalValue ) );
     retval.append( "    " + XMLHandler.addTagValue( "maximalValue", maximalValue ) );
     retval.append( "    " + XMLHandler.addTagValue( "separator", separator ) );
+    retval.append( "    " + XMLHandler.addTagValue( "scoring_threads", scoringThreads ) );
 
     retval.append( "    " ).append( XMLHandler.addTagValue( "algorithm", getAlgorithmTypeCode( algorithm ) ) );
 
@@ -557,6 +578,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
       minimalValue = rep.getStepAttributeString( id_step, "minimalValue" );
       maximalValue = rep.getStepAttributeString( id_step, "maximalValue" );
       separator = rep.getStepAttributeString( id_step, "separator" );
+      scoringThreads = rep.getStepAttributeString( id_step, "scoring_threads" );
 
       algorithm = getAlgorithmTypeByCode( Const.NVL( rep.getStepAttributeString( id_step, "algorithm" ), "" ) );
 
@@ -587,6 +609,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "minimalValue", minimalValue );
       rep.saveStepAttribute( id_transformation, id_step, "maximalValue", maximalValue );
       rep.saveStepAttribute( id_transformation, id_step, "separator", separator );
+      rep.saveStepAttribute( id_transformation, id_step, "scoring_threads", scoringThreads );
       rep.saveStepAttribute( id_transformation, id_step, "algorithm", getAlgorithmTypeCode( algorithm ) );
 
       for ( int i = 0; i < value.length; i++ ) {
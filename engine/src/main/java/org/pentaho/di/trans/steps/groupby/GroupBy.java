@@ -22,13 +22,11 @@
 
 package org.pentaho.di.trans.steps.groupby;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -46,6 +44,9 @@ import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaBase;
@@ -797,7 +798,8 @@ public class GroupBy extends BaseStep implements StepInterface {
         }
         data.tempFile = File.createTempFile( getMeta().getPrefix(), ".tmp", new File( pathToTmp ) );
         data.fosToTempFile = new FileOutputStream( data.tempFile );
-        data.dosToTempFile = new DataOutputStream( data.fosToTempFile );
+        data.spillWriter = new RowSpillWriter( data.fosToTempFile, data.inputRowMeta, RowSpillCompression
+            .getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ), RowSpillCompression.NONE ) );
         data.firstRead = true;
       } catch ( IOException e ) {
         throw new KettleFileException( BaseMessages.getString( PKG, "GroupBy.Exception.UnableToCreateTemporaryFile" ),
@@ -805,7 +807,7 @@ public class GroupBy extends BaseStep implements StepInterface {
       }
       // OK, save the oldest rows to disk!
       Object[] oldest = data.bufferList.get( 0 );
-      data.inputRowMeta.writeData( data.dosToTempFile, oldest );
+      data.spillWriter.writeRow( oldest );
       data.bufferList.remove( 0 );
       data.rowsOnFile++;
     }
@@ -821,10 +823,11 @@ public class GroupBy extends BaseStep implements StepInterface {
   private Object[] getRowFromBuffer() throws KettleFileException {
     if ( data.rowsOnFile > 0 ) {
       if ( data.firstRead ) {
-        // Open the inputstream first...
+        // Write the last block of rows, then open the inputstream...
+        closeOutput();
         try {
           data.fisToTmpFile = new FileInputStream( data.tempFile );
-          data.disToTmpFile = new DataInputStream( data.fisToTmpFile );
+          data.spillReader = new RowSpillReader( new BufferedInputStream( data.fisToTmpFile ), data.inputRowMeta );
           data.firstRead = false;
         } catch ( IOException e ) {
           throw new KettleFileException( BaseMessages.getString(
@@ -833,12 +836,7 @@ public class GroupBy extends BaseStep implements StepInterface {
       }
 
       // Read one row from the file!
-      Object[] row;
-      try {
-        row = data.inputRowMeta.readData( data.disToTmpFile );
-      } catch ( SocketTimeoutException e ) {
-        throw new KettleFileException( e ); // Shouldn't happen on files
-      }
+      Object[] row = data.spillReader.readRow();
       data.rowsOnFile--;
 
       return row;
@@ -855,9 +853,10 @@ public class GroupBy extends BaseStep implements StepInterface {
 
   private void closeOutput() throws KettleFileException {
     try {
-      if ( data.dosToTempFile != null ) {
-        data.dosToTempFile.close();
-        data.dosToTempFile = null;
+      if ( data.spillWriter != null ) {
+        data.spillWriter.close(); // also closes the file stream
+        data.spillWriter = null;
+        data.fosToTempFile = null;
       }
       if ( data.fosToTempFile != null ) {
         data.fosToTempFile.close();
@@ -872,14 +871,14 @@ public class GroupBy extends BaseStep implements StepInterface {
 
   private void closeInput() throws KettleFileException {
     try {
+      if ( data.spillReader != null ) {
+        data.spillReader.close(); // also closes the file stream
+        data.spillReader = null;
+      }
       if ( data.fisToTmpFile != null ) {
         data.fisToTmpFile.close();
         data.fisToTmpFile = null;
       }
-      if ( data.disToTmpFile != null ) {
-        data.disToTmpFile.close();
-        data.disToTmpFile = null;
-      }
     } catch ( IOException e ) {
       throw new KettleFileException(
           BaseMessages.getString( PKG, "GroupBy.Exception.UnableToCloseInputStream", data.tempFile.getPath() ), e );
@@ -0,0 +1,324 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+
+/**
+ * Joins the rows of 2 streams on equal keys with a hash table, the inputs don't need to be sorted. All the rows of the
+ * second stream are read first and are put in the hash table (the build side), the rows of the first stream are then
+ * looked up in it as they arrive (the probe side). When the rows of the second stream don't fit in the maximum memory,
+ * part of them are spilled to disk together with the rows of the first stream that need them, and are joined at the
+ * end.<br>
+ * <br>
+ * Like the Merge Join step, the output rows contain the fields of the first stream followed by the fields of the second
+ * stream and keys with null values match each other.
+ *
+ * @since 9.1
+ */
+public class HashJoin extends BaseStep implements StepInterface {
+  private static Class<?> PKG = HashJoinMeta.class; // for i18n purposes, needed by Translator2!!
+
+  private HashJoinMeta meta;
+  private HashJoinData data;
+
+  public HashJoin( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
+    Trans trans ) {
+    super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
+  }
+
+  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    meta = (HashJoinMeta) smi;
+    data = (HashJoinData) sdi;
+
+    List<StreamInterface> infoStreams = meta.getStepIOMeta().getInfoStreams();
+
+    if ( first ) {
+      first = false;
+
+      // Find the RowSets to read from
+      //
+      data.oneRowSet = findInputRowSet( infoStreams.get( 0 ).getStepname() );
+      if ( data.oneRowSet == null ) {
+        throw new KettleException( BaseMessages.getString(
+          PKG, "HashJoin.Exception.UnableToFindSpecifiedStep", infoStreams.get( 0 ).getStepname() ) );
+      }
+
+      data.twoRowSet = findInputRowSet( infoStreams.get( 1 ).getStepname() );
+      if ( data.twoRowSet == null ) {
+        throw new KettleException( BaseMessages.getString(
+          PKG, "HashJoin.Exception.UnableToFindSpecifiedStep", infoStreams.get( 1 ).getStepname() ) );
+      }
+
+      if ( !readBuildRows( infoStreams.get( 1 ).getStepname() ) ) {
+        // Nothing can match: make sure that all rows from the first stream are depleted, or the transformation can
+        // stall.
+        //
+        while ( getRowFrom( data.oneRowSet ) != null && !isStopped() ) {
+          // skip the row
+        }
+        setOutputDone();
+        return false;
+      }
+    }
+
+    Object[] row = getRowFrom( data.oneRowSet );
+    if ( row == null || isStopped() ) {
+      if ( data.oneMeta == null ) {
+        prepareOutput( getTransMeta().getStepFields( infoStreams.get( 0 ).getStepname() ) );
+      }
+      if ( !isStopped() ) {
+        data.table.finish();
+      }
+      if ( data.table.getNrSpills() > 0 && log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "HashJoin.Log.RowsSpilledToDisk", data.table.getNrSpills() ) );
+      }
+      data.table.clear();
+      data.table = null;
+
+      setOutputDone();
+      return false;
+    }
+
+    if ( data.oneMeta == null ) {
+      prepareOutput( data.oneRowSet.getRowMeta() );
+    }
+    data.table.probe( getKey( data.oneMeta, row, data.keyNrs1 ), data.oneMeta, row );
+
+    if ( checkFeedback( getLinesRead() ) ) {
+      logBasic( BaseMessages.getString( PKG, "HashJoin.LineNumber" ) + getLinesRead() );
+    }
+    return true;
+  }
+
+  /**
+   * Reads all the rows of the second stream into the hash table.
+   *
+   * @return false if there is no need to read the first stream: there are no rows to match with
+   */
+  private boolean readBuildRows( String stepname ) throws KettleException {
+    Object[] row = getRowFrom( data.twoRowSet );
+    if ( row != null ) {
+      data.twoMeta = data.twoRowSet.getRowMeta();
+    } else {
+      data.twoMeta = getTransMeta().getStepFields( stepname );
+    }
+
+    // The keys of both streams are serialized with the key metadata of the second stream
+    //
+    data.keyNrs2 = findKeyNrs( data.twoMeta, meta.getKeyFields2() );
+    data.keyMeta = new RowMeta();
+    for ( int keyNr : data.keyNrs2 ) {
+      ValueMetaInterface keyMeta = data.twoMeta.getValueMeta( keyNr ).clone();
+      keyMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      data.keyMeta.addValueMeta( keyMeta );
+    }
+
+    long maxMemory = Const.toLong( environmentSubstitute( meta.getMaxMemory() ), 0L ) * 1024L * 1024L;
+    String directory = environmentSubstitute( meta.getDirectory() );
+    data.table = new HashJoinTable( data.twoMeta, data.two_optional, data.one_optional, maxMemory,
+      Utils.isEmpty( directory ) ? null : new File( directory ),
+      RowSpillCompression.getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ), RowSpillCompression.NONE ),
+      new HashJoinTable.JoinHandler() {
+        @Override
+        public void joinRows( Object[] probeRow, Object[] buildRow ) throws KettleException {
+          putJoinedRow( probeRow, buildRow );
+        }
+      } );
+
+    int nrFields = data.twoMeta.size();
+    long nrRows = 0L;
+    for ( ; row != null && !isStopped(); row = getRowFrom( data.twoRowSet ) ) {
+      // Don't keep the empty space at the end of the rows
+      //
+      if ( row.length > nrFields ) {
+        row = Arrays.copyOf( row, nrFields );
+      }
+      data.table.addBuildRow( getKey( data.twoMeta, row, data.keyNrs2 ), row );
+      nrRows++;
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "HashJoin.Log.BuildRowsRead", nrRows,
+        data.table.getUsedMemory() / 1024L ) );
+    }
+    return nrRows > 0 || data.two_optional;
+  }
+
+  /**
+   * Sets up the keys of the first stream and the output row metadata.
+   */
+  private void prepareOutput( RowMetaInterface oneMeta ) throws KettleStepException {
+    data.oneMeta = oneMeta;
+    data.keyNrs1 = findKeyNrs( data.oneMeta, meta.getKeyFields1() );
+    if ( data.keyNrs1.length != data.keyNrs2.length ) {
+      throw new KettleStepException( BaseMessages.getString( PKG, "HashJoin.Exception.InvalidKeyLayoutDetected" ) );
+    }
+    for ( int i = 0; i < data.keyNrs1.length; i++ ) {
+      if ( data.oneMeta.getValueMeta( data.keyNrs1[i] ).getType() != data.keyMeta.getValueMeta( i ).getType() ) {
+        throw new KettleStepException( BaseMessages.getString( PKG, "HashJoin.Exception.InvalidKeyLayoutDetected" ) );
+      }
+    }
+
+    // just for speed: oneMeta+twoMeta
+    //
+    data.outputRowMeta = new RowMeta();
+    data.outputRowMeta.mergeRowMeta( data.oneMeta.clone() );
+    data.outputRowMeta.mergeRowMeta( data.twoMeta.clone() );
+  }
+
+  private int[] findKeyNrs( RowMetaInterface rowMeta, String[] keyFields ) throws KettleStepException {
+    int[] keyNrs = new int[keyFields.length];
+    for ( int i = 0; i < keyNrs.length; i++ ) {
+      keyNrs[i] = rowMeta.indexOfValue( keyFields[i] );
+      if ( keyNrs[i] < 0 ) {
+        String message =
+          BaseMessages.getString( PKG, "HashJoin.Exception.UnableToFindFieldInReferenceStream", keyFields[i] );
+        logError( message );
+        throw new KettleStepException( message );
+      }
+    }
+    return keyNrs;
+  }
+
+  /**
+   * Serializes the key of a row, the keys of both streams have to end up the same way whatever their storage type.
+   */
+  private byte[] getKey( RowMetaInterface rowMeta, Object[] row, int[] keyNrs ) throws KettleValueException {
+    Object[] keyData = new Object[keyNrs.length];
+    for ( int i = 0; i < keyNrs.length; i++ ) {
+      Object value = rowMeta.getValueMeta( keyNrs[i] ).convertToNormalStorageType( row[keyNrs[i]] );
+      keyData[i] = normalizeKeyValue( data.keyMeta.getValueMeta( i ), value );
+    }
+    return RowMeta.extractData( data.keyMeta, keyData );
+  }
+
+  /**
+   * The keys are compared on their bytes, so values which are equal for {@link ValueMetaInterface#compare} have to be
+   * serialized the same way: big numbers lose their trailing zeros (1.0 and 1.00 are the same key) and strings are
+   * trimmed or folded to one case when the key field ignores whitespace or case.
+   *
+   * @param keyMeta
+   *          the metadata of the key field
+   * @param value
+   *          the value in normal storage
+   * @return the value to serialize
+   */
+  static Object normalizeKeyValue( ValueMetaInterface keyMeta, Object value ) {
+    if ( value == null ) {
+      return null;
+    }
+    switch ( keyMeta.getType() ) {
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        BigDecimal number = (BigDecimal) value;
+        return number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+      case ValueMetaInterface.TYPE_STRING:
+        String string = (String) value;
+        if ( keyMeta.isIgnoreWhitespace() ) {
+          string = string.trim();
+        }
+        if ( keyMeta.isCaseInsensitive() ) {
+          // Fold every character the way String.compareToIgnoreCase() compares them
+          //
+          char[] chars = string.toCharArray();
+          for ( int i = 0; i < chars.length; i++ ) {
+            chars[i] = Character.toLowerCase( Character.toUpperCase( chars[i] ) );
+          }
+          string = new String( chars );
+        }
+        return string;
+      default:
+        return value;
+    }
+  }
+
+  private void putJoinedRow( Object[] oneRow, Object[] twoRow ) throws KettleStepException {
+    Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+    if ( oneRow != null ) {
+      System.arraycopy( oneRow, 0, outputRowData, 0, data.oneMeta.size() );
+    }
+    if ( twoRow != null ) {
+      System.arraycopy( twoRow, 0, outputRowData, data.oneMeta.size(), data.twoMeta.size() );
+    }
+    putRow( data.outputRowMeta, outputRowData );
+  }
+
+  /**
+   * @see StepInterface#init(org.pentaho.di.trans.step.StepMetaInterface , org.pentaho.di.trans.step.StepDataInterface)
+   */
+  public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
+    meta = (HashJoinMeta) smi;
+    data = (HashJoinData) sdi;
+
+    if ( super.init( smi, sdi ) ) {
+      List<StreamInterface> infoStreams = meta.getStepIOMeta().getInfoStreams();
+      if ( infoStreams.get( 0 ).getStepMeta() == null || infoStreams.get( 1 ).getStepMeta() == null ) {
+        logError( BaseMessages.getString( PKG, "HashJoin.Log.TwoStepsNeeded" ) );
+        return false;
+      }
+      String joinType = meta.getJoinType();
+      for ( int i = 0; i < HashJoinMeta.join_types.length; ++i ) {
+        if ( joinType.equalsIgnoreCase( HashJoinMeta.join_types[i] ) ) {
+          data.one_optional = HashJoinMeta.one_optionals[i];
+          data.two_optional = HashJoinMeta.two_optionals[i];
+          return true;
+        }
+      }
+      logError( BaseMessages.getString( PKG, "HashJoin.Log.InvalidJoinType", meta.getJoinType() ) );
+    }
+    return false;
+  }
+
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (HashJoinData) sdi;
+
+    if ( data.table != null ) {
+      data.table.clear(); // also deletes the temporary files
+      data.table = null;
+    }
+    super.dispose( smi, sdi );
+  }
+}
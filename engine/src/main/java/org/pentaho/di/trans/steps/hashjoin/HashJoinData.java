@@ -0,0 +1,60 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.StepDataInterface;
+
+/**
+ * @since 9.1
+ */
+public class HashJoinData extends BaseStepData implements StepDataInterface {
+  public RowMetaInterface oneMeta, twoMeta;
+  public RowMetaInterface outputRowMeta; // just for speed: oneMeta+twoMeta
+  public boolean one_optional, two_optional;
+  public int[] keyNrs1;
+  public int[] keyNrs2;
+
+  /** The metadata of the keys in normal storage, the keys of both steps are serialized with it */
+  public RowMetaInterface keyMeta;
+
+  public RowSet oneRowSet;
+  public RowSet twoRowSet;
+
+  /** The rows of the second step */
+  public HashJoinTable table;
+
+  /**
+   * Default initializer
+   */
+  public HashJoinData() {
+    super();
+    one_optional = false;
+    two_optional = false;
+    keyNrs1 = null;
+    keyNrs2 = null;
+  }
+
+}
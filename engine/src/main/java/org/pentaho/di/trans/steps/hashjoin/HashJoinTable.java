@@ -0,0 +1,394 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillPartitions;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
+
+/**
+ * The hash table of the Hash Join step. The rows of the build side (the second stream) are stored under their key,
+ * serialized to bytes, so keys are compared and hashed without looking at the field types. Several rows can have the
+ * same key.<br>
+ * <br>
+ * The rows are hashed into partitions which are kept in memory as long as they fit in the maximum amount of memory.
+ * When they don't, the largest partition in memory is written to a temporary file and all the build rows of that
+ * partition are appended to the file from then on (grace hash join, see {@link RowSpillPartitions}). Probe rows with a
+ * key in a partition in memory are joined right away, the others are written to a probe file of their partition and
+ * are joined in {@link #finish()}: every spilled partition is read back into a table of its own, which spills again on
+ * the next bits of the hash if it still doesn't fit.
+ *
+ * @since 9.1
+ */
+public class HashJoinTable {
+
+  /**
+   * Receives the joined rows.
+   */
+  public interface JoinHandler {
+    /**
+     * @param probeRow
+     *          the row of the probe side (the first stream) or null for a build row without a match
+     * @param buildRow
+     *          the row of the build side (the second stream) or null for a probe row without a match
+     */
+    void joinRows( Object[] probeRow, Object[] buildRow ) throws KettleException;
+  }
+
+  private static final int NR_PARTITIONS = RowSpillPartitions.NR_PARTITIONS;
+  private static final int MAX_LEVEL = RowSpillPartitions.getMaxLevel( 32 );
+
+  /**
+   * Estimated overhead of a row: the hash map entry, the key object and the row entry.
+   */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final RowMetaInterface buildRowMeta;
+  private RowMetaInterface probeRowMeta;
+  private final boolean probeOuter;
+  private final boolean buildOuter;
+  private final long maxMemory;
+  private final File directory;
+  private final RowSpillCompression compression;
+  private final JoinHandler handler;
+  private final int level;
+
+  private final Map<Key, Entry>[] partitions;
+  private final long[] partitionBytes;
+  private long usedMemory;
+
+  private final RowSpillPartitions buildFiles;
+  private final RowSpillPartitions probeFiles;
+  private int nrSpills;
+
+  /**
+   * @param buildRowMeta
+   *          the metadata of the build rows
+   * @param probeOuter
+   *          true to pass the probe rows without a match to the handler (left or full outer join)
+   * @param buildOuter
+   *          true to pass the build rows without a match to the handler (right or full outer join)
+   * @param maxMemory
+   *          the estimated number of bytes the build rows can use in memory, 0 or less never spills
+   * @param directory
+   *          the directory of the temporary files or null for the default temporary directory
+   * @param compression
+   *          the compression of the temporary files
+   * @param handler
+   *          receives the joined rows
+   */
+  public HashJoinTable( RowMetaInterface buildRowMeta, boolean probeOuter, boolean buildOuter, long maxMemory,
+    File directory, RowSpillCompression compression, JoinHandler handler ) {
+    this( buildRowMeta, null, probeOuter, buildOuter, maxMemory, directory, compression, handler, 0 );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private HashJoinTable( RowMetaInterface buildRowMeta, RowMetaInterface probeRowMeta, boolean probeOuter,
+    boolean buildOuter, long maxMemory, File directory, RowSpillCompression compression, JoinHandler handler,
+    int level ) {
+    this.buildRowMeta = buildRowMeta;
+    this.probeRowMeta = probeRowMeta;
+    this.probeOuter = probeOuter;
+    this.buildOuter = buildOuter;
+    this.maxMemory = maxMemory <= 0 ? Long.MAX_VALUE : maxMemory;
+    this.directory = directory;
+    this.compression = compression;
+    this.handler = handler;
+    this.level = level;
+
+    partitions = new Map[ NR_PARTITIONS ];
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      partitions[ p ] = new HashMap<Key, Entry>();
+    }
+    partitionBytes = new long[ NR_PARTITIONS ];
+    buildFiles = new RowSpillPartitions( directory, "hashjoin-build-" + level + "-", compression );
+    probeFiles = new RowSpillPartitions( directory, "hashjoin-probe-" + level + "-", compression );
+  }
+
+  /**
+   * Adds a row of the build side, all build rows have to be added before the first probe row.
+   *
+   * @param key
+   *          the key of the row, serialized
+   * @param row
+   *          the row
+   */
+  public void addBuildRow( byte[] key, Object[] row ) throws KettleException {
+    Key hashKey = new Key( key );
+    int p = getPartition( hashKey );
+    RowSpillWriter writer = buildFiles.getWriter( p );
+    if ( writer != null ) {
+      writer.writeBytes( key );
+      writer.writeRow( row );
+      return;
+    }
+
+    Entry entry = new Entry( row );
+    Entry first = partitions[ p ].get( hashKey );
+    if ( first == null ) {
+      entry.key = hashKey;
+      partitions[ p ].put( hashKey, entry );
+    } else {
+      // Keep the rows of a key in the order they were added
+      //
+      first.last.next = entry;
+      first.last = entry;
+    }
+    long size = ENTRY_OVERHEAD + RowSpillPartitions.estimateSize( row ) + ( first == null ? key.length : 0 );
+    partitionBytes[ p ] += size;
+    usedMemory += size;
+
+    while ( level < MAX_LEVEL && usedMemory > maxMemory && spillLargestPartition() ) {
+      // keep on spilling until the rows fit
+    }
+  }
+
+  /**
+   * Joins a row of the probe side with the build rows of its key, or keeps it for {@link #finish()} if these rows are
+   * on disk.
+   *
+   * @param key
+   *          the key of the row, serialized the same way as the keys of the build rows
+   * @param rowMeta
+   *          the metadata of the probe rows
+   * @param row
+   *          the row
+   */
+  public void probe( byte[] key, RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    Key hashKey = new Key( key );
+    int p = getPartition( hashKey );
+    if ( buildFiles.isSpilled( p ) ) {
+      probeRowMeta = rowMeta;
+      RowSpillWriter writer = probeFiles.getWriter( p );
+      if ( writer == null ) {
+        writer = probeFiles.createWriter( p, probeRowMeta );
+      }
+      writer.writeBytes( key );
+      writer.writeRow( row );
+      return;
+    }
+
+    Entry entry = partitions[ p ].get( hashKey );
+    if ( entry == null ) {
+      if ( probeOuter ) {
+        handler.joinRows( row, null );
+      }
+      return;
+    }
+    for ( ; entry != null; entry = entry.next ) {
+      entry.matched = true;
+      handler.joinRows( row, entry.row );
+    }
+  }
+
+  /**
+   * Passes the build rows in memory without a match to the handler in case of a right or full outer join, then joins
+   * the rows on disk one partition at a time. The order of the rows on disk isn't kept.
+   */
+  public void finish() throws KettleException {
+    // Flush all the files first, that way the buffers of the writers are released before going a level deeper
+    //
+    buildFiles.closeWriters();
+    probeFiles.closeWriters();
+
+    if ( buildOuter ) {
+      for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+        for ( Entry first : partitions[ p ].values() ) {
+          for ( Entry entry = first; entry != null; entry = entry.next ) {
+            if ( !entry.matched ) {
+              handler.joinRows( null, entry.row );
+            }
+          }
+        }
+      }
+    }
+    clearMemory();
+
+    // Only the partitions on disk have probe rows left
+    //
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( buildFiles.isSpilled( p ) ) {
+        finishPartition( p );
+      }
+    }
+  }
+
+  /**
+   * @return the number of times a partition was spilled to disk, including the partitions of spilled partitions
+   */
+  public int getNrSpills() {
+    return nrSpills;
+  }
+
+  /**
+   * @return the estimated number of bytes of memory in use by the build rows
+   */
+  public long getUsedMemory() {
+    return usedMemory;
+  }
+
+  /**
+   * Removes all the rows and deletes the temporary files.
+   */
+  public void clear() {
+    clearMemory();
+    buildFiles.clear();
+    probeFiles.clear();
+  }
+
+  private void clearMemory() {
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      partitions[ p ].clear();
+      partitionBytes[ p ] = 0L;
+    }
+    usedMemory = 0L;
+  }
+
+  /**
+   * Joins the rows of a spilled partition in a table of its own.
+   */
+  private void finishPartition( int p ) throws KettleException {
+    if ( !probeFiles.isSpilled( p ) ) {
+      // Nothing to join in this partition, none of the build rows has a match
+      //
+      if ( buildOuter ) {
+        RowSpillReader reader = buildFiles.createReader( p, buildRowMeta );
+        try {
+          for ( byte[] key = reader.readBytes(); key != null; key = reader.readBytes() ) {
+            handler.joinRows( null, reader.readRow() );
+          }
+        } finally {
+          reader.close();
+        }
+      }
+      buildFiles.delete( p );
+      return;
+    }
+
+    HashJoinTable partition =
+      new HashJoinTable( buildRowMeta, probeRowMeta, probeOuter, buildOuter, maxMemory, directory, compression,
+        handler, level + 1 );
+    try {
+      RowSpillReader reader = buildFiles.createReader( p, buildRowMeta );
+      try {
+        for ( byte[] key = reader.readBytes(); key != null; key = reader.readBytes() ) {
+          partition.addBuildRow( key, reader.readRow() );
+        }
+      } finally {
+        reader.close();
+      }
+      buildFiles.delete( p );
+
+      reader = probeFiles.createReader( p, probeRowMeta );
+      try {
+        for ( byte[] key = reader.readBytes(); key != null; key = reader.readBytes() ) {
+          partition.probe( key, probeRowMeta, reader.readRow() );
+        }
+      } finally {
+        reader.close();
+      }
+      probeFiles.delete( p );
+
+      partition.finish();
+      nrSpills += partition.getNrSpills();
+    } finally {
+      partition.clear();
+    }
+  }
+
+  private int getPartition( Key key ) {
+    return RowSpillPartitions.getPartition( key.hash, level );
+  }
+
+  /**
+   * Writes the largest partition in memory to disk.
+   *
+   * @return false if there was nothing left to spill
+   */
+  private boolean spillLargestPartition() throws KettleException {
+    int largest = buildFiles.getLargestPartition( partitionBytes );
+    if ( largest < 0 ) {
+      return false;
+    }
+
+    RowSpillWriter writer = buildFiles.createWriter( largest, buildRowMeta );
+    for ( Entry first : partitions[ largest ].values() ) {
+      for ( Entry entry = first; entry != null; entry = entry.next ) {
+        writer.writeBytes( first.key.bytes );
+        writer.writeRow( entry.row );
+      }
+    }
+    partitions[ largest ] = new HashMap<Key, Entry>();
+    usedMemory -= partitionBytes[ largest ];
+    partitionBytes[ largest ] = 0L;
+    nrSpills++;
+    return true;
+  }
+
+  /**
+   * A serialized key with its spread hash code.
+   */
+  private static final class Key {
+    private final byte[] bytes;
+    private final int hash;
+
+    private Key( byte[] bytes ) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode( bytes ) * 0x9E3779B9;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+      return obj instanceof Key && hash == ( (Key) obj ).hash && Arrays.equals( bytes, ( (Key) obj ).bytes );
+    }
+  }
+
+  /**
+   * A build row, the first row of a key also knows the key and the last row of the key.
+   */
+  private static final class Entry {
+    private final Object[] row;
+    private Entry next;
+    private Entry last;
+    private Key key;
+    private boolean matched;
+
+    private Entry( Object[] row ) {
+      this.row = row;
+      this.last = this;
+    }
+  }
+}
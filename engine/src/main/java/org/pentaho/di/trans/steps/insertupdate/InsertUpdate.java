@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,17 +22,21 @@
 
 package org.pentaho.di.trans.steps.insertupdate;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -55,6 +59,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class InsertUpdate extends BaseStep implements StepInterface {
   private static Class<?> PKG = InsertUpdateMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The column with the number of the row in the batch lookup query */
+  static final String BATCH_NR_FIELD = "KETTLE_BATCH_NR";
+
   private InsertUpdateMeta meta;
   private InsertUpdateData data;
 
@@ -185,6 +192,15 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     if ( r == null ) {
       // no more input to be expected...
 
+      if ( data.mergeSize > 0 ) {
+        try {
+          flushMerge();
+        } catch ( KettleException e ) {
+          logError( BaseMessages.getString( PKG, "InsertUpdate.Log.ErrorInStep" ), e );
+          setErrors( 1 );
+          stopAll();
+        }
+      }
       setOutputDone();
       return false;
     }
@@ -293,12 +309,20 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         }
         prepareUpdate( getInputRowMeta() );
       }
+
+      if ( meta.isUseMerge() ) {
+        prepareMerge( getInputRowMeta() );
+      }
     }
 
     try {
-      lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
-      putRow( data.outputRowMeta, r ); // Nothing changed to the input, return the same row, pass a "cloned" metadata
-                                       // row.
+      if ( data.mergeSize > 0 ) {
+        addToMerge( r );
+      } else {
+        lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
+        putRow( data.outputRowMeta, r ); // Nothing changed to the input, return the same row, pass a "cloned"
+                                         // metadata row.
+      }
 
       if ( checkFeedback( getLinesRead() ) ) {
         if ( log.isBasic() ) {
@@ -464,6 +488,307 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Figures out if the rows can be merged into the table in batches and prepares the columns of the merge statement.
+   * That is possible if the keys are compared with = and the database can generate a multi-row merge statement.
+   */
+  void prepareMerge( RowMetaInterface rowMeta ) throws KettleException {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+
+    if ( getStepMeta().isDoingErrorHandling() ) {
+      logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.NoMerge.ErrorHandling" ) );
+      return;
+    }
+
+    // The merge statement inserts the same columns as the insert statement, the keys have to be in there
+    //
+    List<String> columns = new ArrayList<String>();
+    for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+      columns.add( databaseMeta.quoteField( meta.getUpdateLookup()[i] ) );
+    }
+    List<String> keyColumns = new ArrayList<String>();
+    int[] keyNrs = new int[meta.getKeyLookup().length];
+    for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
+      if ( !"=".equals( meta.getKeyCondition()[i] ) ) {
+        logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.NoMerge.KeyCondition", meta.getKeyCondition()[i] ) );
+        return;
+      }
+      String column = databaseMeta.quoteField( meta.getKeyLookup()[i] );
+      keyNrs[i] = rowMeta.indexOfValue( meta.getKeyStream()[i] );
+      int index = columns.indexOf( column );
+      if ( index < 0 || data.valuenrs[index] != keyNrs[i] ) {
+        logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.NoMerge.KeyNotInserted", meta.getKeyLookup()[i] ) );
+        return;
+      }
+      keyColumns.add( column );
+    }
+
+    // A key column is never updated, even if it's in the update fields
+    //
+    List<String> updateColumns = new ArrayList<String>();
+    for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+      String column = columns.get( i );
+      if ( meta.getUpdate()[i].booleanValue() && !meta.isUpdateBypassed() && !keyColumns.contains( column ) ) {
+        updateColumns.add( column );
+      }
+    }
+
+    data.mergeRowMeta = data.insertRowMeta;
+    data.mergeValueNrs = data.valuenrs;
+    data.mergeKeyNrs = keyNrs;
+    data.mergeColumns = columns.toArray( new String[columns.size()] );
+    data.mergeKeyColumns = keyColumns.toArray( new String[keyColumns.size()] );
+    data.mergeUpdateColumns = updateColumns.toArray( new String[updateColumns.size()] );
+
+    // Never merge more rows than the commit size in one go
+    //
+    int size = Const.toInt( getVariable( Const.KETTLE_MULTI_ROW_INSERT_SIZE ), Const.MULTI_ROW_INSERT_SIZE );
+    size = Math.min( size, databaseMeta.getMaxMultiRowMergeRows( data.mergeColumns.length ) );
+    int commitSize = meta.getCommitSize( this );
+    if ( commitSize > 0 ) {
+      size = Math.min( size, commitSize );
+    }
+    if ( data.mergeKeyColumns.length == 0 || size < 1 || databaseMeta.getMultiRowMergeStatement(
+      data.schemaTable, data.mergeColumns, data.mergeKeyColumns, data.mergeUpdateColumns, 1 ) == null ) {
+      logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.NoMerge.Database" ) );
+      return;
+    }
+
+    // The rows are looked up in batches first so only new and changed rows are merged
+    //
+    StringBuilder lookupQuery = new StringBuilder();
+    data.mergeLookupParameterRowMeta = new RowMeta();
+    for ( String column : data.mergeColumns ) {
+      lookupQuery.append( ", " ).append( column );
+    }
+    lookupQuery.append( " FROM " ).append( data.schemaTable ).append( " WHERE " );
+    for ( int i = 0; i < data.mergeKeyColumns.length; i++ ) {
+      if ( i > 0 ) {
+        lookupQuery.append( " AND " );
+      }
+      lookupQuery.append( data.mergeKeyColumns[i] ).append( " = ?" );
+      data.mergeLookupParameterRowMeta.addValueMeta( rowMeta.getValueMeta( data.mergeKeyNrs[i] ).clone() );
+    }
+    data.mergeLookupQuery = lookupQuery.toString();
+    data.mergeLookupSize =
+      Math.max( 1, Math.min( size, databaseMeta.getMaxQueryBatchRows( data.mergeKeyColumns.length ) ) );
+
+    data.mergeSize = size;
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "InsertUpdate.Log.MergingRows", String.valueOf( size ) ) );
+    }
+  }
+
+  /**
+   * Keeps a row to merge with the next statement. A statement can't insert and update the same key, so the buffered
+   * rows are merged first if the key of this row is already in there. The keys are compared with their metadata, just
+   * like the database compares them, so binary string and lazy conversion values match as well.
+   */
+  void addToMerge( Object[] r ) throws KettleException {
+    Object[] key = new Object[data.mergeKeyNrs.length];
+    for ( int i = 0; i < key.length; i++ ) {
+      key[i] = r[data.mergeKeyNrs[i]];
+    }
+    RowMetaAndData keyRow = new RowMetaAndData( data.mergeLookupParameterRowMeta, key );
+    if ( data.mergeKeys.contains( keyRow ) ) {
+      flushMerge();
+    }
+    data.mergeKeys.add( keyRow );
+    data.mergeRows.add( r );
+
+    if ( data.mergeRows.size() >= data.mergeSize ) {
+      flushMerge();
+    }
+  }
+
+  /**
+   * Looks up the buffered rows in the table, merges the new and changed rows into the table with one statement and
+   * passes all rows on. Just like with the row by row lookups, rows that didn't change are not updated. The commit
+   * follows once the commit size is reached.
+   */
+  void flushMerge() throws KettleException {
+    int nrRows = data.mergeRows.size();
+    if ( nrRows == 0 ) {
+      return;
+    }
+
+    Object[][] found = lookupMergeRows();
+    List<Object[]> writeRows = new ArrayList<Object[]>( nrRows );
+    int nrInserts = 0;
+    int nrUpdates = 0;
+    for ( int r = 0; r < nrRows; r++ ) {
+      Object[] row = data.mergeRows.get( r );
+      if ( found[r] == null ) {
+        writeRows.add( row );
+        nrInserts++;
+      } else if ( !meta.isUpdateBypassed() && isChanged( row, found[r] ) ) {
+        writeRows.add( row );
+        nrUpdates++;
+      }
+    }
+    if ( !writeRows.isEmpty() ) {
+      merge( writeRows );
+    }
+
+    putRows( data.outputRowMeta, data.mergeRows );
+    for ( int i = 0; i < nrRows; i++ ) {
+      incrementLinesInput();
+    }
+    for ( int i = 0; i < nrInserts; i++ ) {
+      incrementLinesOutput();
+    }
+    for ( int i = 0; i < nrUpdates; i++ ) {
+      incrementLinesUpdated();
+    }
+    for ( int i = nrInserts + nrUpdates; i < nrRows; i++ ) {
+      incrementLinesSkipped();
+    }
+    data.mergeRows.clear();
+    data.mergeKeys.clear();
+
+    data.mergeCommitCounter += writeRows.size();
+    int commitSize = meta.getCommitSize( this );
+    if ( commitSize > 0 && data.mergeCommitCounter >= commitSize && !data.db.isAutoCommit() ) {
+      data.db.commit();
+      data.mergeCommitCounter = 0;
+    }
+  }
+
+  /**
+   * Looks up the buffered rows in the table with as few queries as possible. Every part of a query selects the number
+   * of the row in the batch, so the results are matched with the rows by position.
+   *
+   * @return for every buffered row the batch number and the values of the insert fields in the table, null if the
+   *         row isn't in the table
+   */
+  private Object[][] lookupMergeRows() throws KettleException {
+    int nrRows = data.mergeRows.size();
+    int nrKeys = data.mergeKeyNrs.length;
+    Object[][] found = new Object[nrRows][];
+
+    for ( int from = 0; from < nrRows; from += data.mergeLookupSize ) {
+      int nrLookups = Math.min( data.mergeLookupSize, nrRows - from );
+      int size = getMergeLookupStatementSize( nrLookups );
+      PreparedStatement statement = getMergeLookupStatement( size );
+
+      // Unused parts of the statement get null keys, those never match
+      //
+      RowMetaInterface paramsMeta = new RowMeta();
+      Object[] params = new Object[size * nrKeys];
+      for ( int b = 0; b < size; b++ ) {
+        paramsMeta.addRowMeta( data.mergeLookupParameterRowMeta );
+        if ( b < nrLookups ) {
+          Object[] row = data.mergeRows.get( from + b );
+          for ( int k = 0; k < nrKeys; k++ ) {
+            params[b * nrKeys + k] = row[data.mergeKeyNrs[k]];
+          }
+        }
+      }
+
+      ResultSet resultSet = data.db.openQuery( statement, paramsMeta, params );
+      data.mergeLookupReturnRowMeta = data.db.getReturnRowMeta();
+      List<Object[]> results = data.db.getRows( resultSet, 0, null );
+
+      ValueMetaInterface batchNrMeta = data.mergeLookupReturnRowMeta.getValueMeta( 0 );
+      for ( Object[] result : results ) {
+        int batchNr = batchNrMeta.getInteger( result[0] ).intValue();
+        // The first row wins, just like with the lookup of a single row
+        //
+        if ( batchNr >= 0 && batchNr < nrLookups && found[from + batchNr] == null ) {
+          found[from + batchNr] = result;
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the size of the lookup statement to use for the given number of rows: the next power of 2, so only a few
+   *         statements are prepared
+   */
+  private int getMergeLookupStatementSize( int nrLookups ) {
+    int size = 1;
+    while ( size < nrLookups ) {
+      size <<= 1;
+    }
+    return Math.min( size, data.mergeLookupSize );
+  }
+
+  private PreparedStatement getMergeLookupStatement( int size ) throws KettleDatabaseException {
+    PreparedStatement statement = data.mergeLookupStatements.get( size );
+    if ( statement == null ) {
+      StringBuilder sql = new StringBuilder();
+      for ( int b = 0; b < size; b++ ) {
+        if ( b > 0 ) {
+          sql.append( Const.CR ).append( "UNION ALL" ).append( Const.CR );
+        }
+        sql.append( "SELECT " ).append( b ).append( " AS " ).append( BATCH_NR_FIELD ).append( data.mergeLookupQuery );
+      }
+      if ( log.isDetailed() ) {
+        logDetailed( "Setting merge lookup preparedStatement to [" + sql + "]" );
+      }
+      statement = data.db.prepareSQL( sql.toString() );
+      data.mergeLookupStatements.put( size, statement );
+    }
+    return statement;
+  }
+
+  /**
+   * @return true if one of the fields to update differs from the value in the table
+   */
+  private boolean isChanged( Object[] row, Object[] found ) throws KettleValueException {
+    for ( int i = 0; i < data.valuenrs.length; i++ ) {
+      if ( meta.getUpdate()[i].booleanValue() ) {
+        ValueMetaInterface valueMeta = getInputRowMeta().getValueMeta( data.valuenrs[i] );
+        ValueMetaInterface retMeta = data.mergeLookupReturnRowMeta.getValueMeta( i + 1 );
+        if ( retMeta.compare( found[i + 1], valueMeta, row[data.valuenrs[i]] ) != 0 ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Inserts or updates the rows with one statement.
+   */
+  private void merge( List<Object[]> rows ) throws KettleException {
+    int nrRows = rows.size();
+
+    // The statement for a full set of rows is kept, the one for fewer rows is only used once.
+    //
+    boolean full = nrRows == data.mergeSize;
+    PreparedStatement mergeStatement = full ? data.prepStatementMerge : null;
+    if ( mergeStatement == null ) {
+      String sql =
+        meta.getDatabaseMeta().getMultiRowMergeStatement(
+          data.schemaTable, data.mergeColumns, data.mergeKeyColumns, data.mergeUpdateColumns, nrRows );
+      mergeStatement = data.db.prepareSQL( sql );
+      if ( full ) {
+        data.prepStatementMerge = mergeStatement;
+      }
+    }
+
+    try {
+      List<Object[]> mergeRows = new ArrayList<Object[]>( nrRows );
+      for ( Object[] r : rows ) {
+        Object[] mergeRow = new Object[data.mergeValueNrs.length];
+        for ( int i = 0; i < data.mergeValueNrs.length; i++ ) {
+          mergeRow[i] = r[data.mergeValueNrs[i]];
+        }
+        mergeRows.add( mergeRow );
+      }
+      data.db.setValues( data.mergeRowMeta, mergeRows, mergeStatement );
+      mergeStatement.executeUpdate();
+    } catch ( Exception e ) {
+      throw new KettleDatabaseException( "Error merging " + nrRows + " rows into table [" + data.schemaTable + "]", e );
+    } finally {
+      if ( !full ) {
+        data.db.closePreparedStatement( mergeStatement );
+      }
+    }
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (InsertUpdateMeta) smi;
     data = (InsertUpdateData) sdi;
@@ -500,6 +825,19 @@ public class InsertUpdate extends BaseStep implements StepInterface {
 
     if ( data.db != null ) {
       try {
+        // Rows can still be buffered when the transformation was stopped
+        //
+        if ( data.mergeSize > 0 && getErrors() == 0 ) {
+          flushMerge();
+        }
+        if ( data.prepStatementMerge != null ) {
+          data.db.closePreparedStatement( data.prepStatementMerge );
+          data.prepStatementMerge = null;
+        }
+        for ( PreparedStatement statement : data.mergeLookupStatements.values() ) {
+          data.db.closePreparedStatement( statement );
+        }
+        data.mergeLookupStatements.clear();
         if ( !data.db.isAutoCommit() ) {
           if ( getErrors() == 0 ) {
             data.db.commit();
@@ -509,7 +847,7 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         }
         data.db.closeUpdate();
         data.db.closeInsert();
-      } catch ( KettleDatabaseException e ) {
+      } catch ( KettleException e ) {
         logError( BaseMessages.getString( PKG, "InsertUpdate.Log.UnableToCommitConnection" ) + e.toString() );
         setErrors( 1 );
       } finally {
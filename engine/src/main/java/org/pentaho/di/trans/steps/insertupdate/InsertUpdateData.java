@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -23,7 +23,14 @@
 package org.pentaho.di.trans.steps.insertupdate;
 
 import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -54,6 +61,32 @@ public class InsertUpdateData extends BaseStepData implements StepDataInterface
   public RowMetaInterface lookupReturnRowMeta;
   public RowMetaInterface insertRowMeta;
 
+  /** The number of rows merged with one statement, 0 if the rows are looked up one by one */
+  public int mergeSize;
+  public RowMetaInterface mergeRowMeta;
+  public int[] mergeValueNrs; // Stream value nrs of the merged columns
+  public int[] mergeKeyNrs; // Stream value nrs of the keys
+  public String[] mergeColumns;
+  public String[] mergeKeyColumns;
+  public String[] mergeUpdateColumns;
+
+  /** The rows to merge with the next statement and their keys: a statement can only merge a key once */
+  public List<Object[]> mergeRows;
+  public Set<RowMetaAndData> mergeKeys;
+
+  /** The prepared merge statement for mergeSize rows */
+  public PreparedStatement prepStatementMerge;
+  public int mergeCommitCounter;
+
+  /** The rows to merge are looked up with up to mergeLookupSize rows per query */
+  public int mergeLookupSize;
+  /** The part of the lookup query after the batch number: the insert fields, the table and the keys */
+  public String mergeLookupQuery;
+  public RowMetaInterface mergeLookupParameterRowMeta;
+  public RowMetaInterface mergeLookupReturnRowMeta;
+  /** The prepared lookup statements per number of rows */
+  public Map<Integer, PreparedStatement> mergeLookupStatements;
+
   /**
    * Default constructor.
    */
@@ -61,5 +94,8 @@ public class InsertUpdateData extends BaseStepData implements StepDataInterface
     super();
 
     db = null;
+    mergeRows = new ArrayList<Object[]>();
+    mergeKeys = new HashSet<RowMetaAndData>();
+    mergeLookupStatements = new HashMap<Integer, PreparedStatement>();
   }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -117,6 +117,10 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
   @Injection( name = "DO_NOT" )
   private boolean updateBypassed;
 
+  /** Insert or update the rows in batches with one merge statement per batch */
+  @Injection( name = "USE_MERGE" )
+  private boolean useMerge;
+
   @Injection( name = "CONNECTIONNAME" )
   public void setConnection( String connectionName ) {
     databaseMeta = DatabaseMeta.findDatabase( databases, connectionName );
@@ -342,6 +346,7 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
       schemaName = XMLHandler.getTagValue( stepnode, "lookup", "schema" );
       tableName = XMLHandler.getTagValue( stepnode, "lookup", "table" );
       updateBypassed = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "update_bypassed" ) );
+      useMerge = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "use_merge" ) );
 
       Node lookup = XMLHandler.getSubNode( stepnode, "lookup" );
       nrkeys = XMLHandler.countNodes( lookup, "key" );
@@ -422,6 +427,7 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
         XMLHandler.addTagValue( "connection", databaseMeta == null ? "" : databaseMeta.getName() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "commit", commitSize ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "update_bypassed", updateBypassed ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "use_merge", useMerge ) );
     retval.append( "    <lookup>" ).append( Const.CR );
     retval.append( "      " ).append( XMLHandler.addTagValue( "schema", schemaName ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "table", tableName ) );
@@ -468,6 +474,7 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
       schemaName = rep.getStepAttributeString( id_step, "schema" );
       tableName = rep.getStepAttributeString( id_step, "table" );
       updateBypassed = rep.getStepAttributeBoolean( id_step, "update_bypassed" );
+      useMerge = rep.getStepAttributeBoolean( id_step, "use_merge" );
 
       int nrkeys = rep.countNrStepAttributes( id_step, "key_field" );
       int nrvalues = rep.countNrStepAttributes( id_step, "value_name" );
@@ -499,6 +506,7 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
       rep.saveStepAttribute( id_transformation, id_step, "schema", schemaName );
       rep.saveStepAttribute( id_transformation, id_step, "table", tableName );
       rep.saveStepAttribute( id_transformation, id_step, "update_bypassed", updateBypassed );
+      rep.saveStepAttribute( id_transformation, id_step, "use_merge", useMerge );
 
       for ( int i = 0; i < keyStream.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "key_name", keyStream[i] );
@@ -854,6 +862,21 @@ public class InsertUpdateMeta extends BaseStepMeta implements StepMetaInterface,
     this.updateBypassed = updateBypassed;
   }
 
+  /**
+   * @return true if the rows are inserted or updated in batches with one merge statement per batch
+   */
+  public boolean isUseMerge() {
+    return useMerge;
+  }
+
+  /**
+   * @param useMerge
+   *          true to insert or update the rows in batches with one merge statement per batch
+   */
+  public void setUseMerge( boolean useMerge ) {
+    this.useMerge = useMerge;
+  }
+
   public RowMetaInterface getRequiredFields( VariableSpace space ) throws KettleException {
     String realSchemaName = space.environmentSubstitute( schemaName );
     String realTableName = space.environmentSubstitute( tableName );
@@ -22,22 +22,24 @@
 
 package org.pentaho.di.trans.steps.joinrows;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -89,7 +91,7 @@ public class JoinRows extends BaseStep implements StepInterface {
       // ** INPUT SIDE **
       data.file = new File[rowSetsSize];
       data.fileInputStream = new FileInputStream[rowSetsSize];
-      data.dataInputStream = new DataInputStream[rowSetsSize];
+      data.spillReader = new RowSpillReader[rowSetsSize];
       data.size = new int[rowSetsSize];
       data.fileRowMeta = new RowMetaInterface[rowSetsSize];
       data.joinrow = new Object[rowSetsSize][];
@@ -97,7 +99,7 @@ public class JoinRows extends BaseStep implements StepInterface {
       data.cache = new List[rowSetsSize];
       data.position = new int[rowSetsSize];
       data.fileOutputStream = new FileOutputStream[rowSetsSize];
-      data.dataOutputStream = new DataOutputStream[rowSetsSize];
+      data.spillWriter = new RowSpillWriter[rowSetsSize];
       data.restart = new boolean[rowSetsSize];
 
       for ( int i = 1; i < rowSetsSize; i++ ) {
@@ -114,8 +116,8 @@ public class JoinRows extends BaseStep implements StepInterface {
         // data.row[i] = null;
         data.position[i] = 0;
 
-        data.dataInputStream[i] = null;
-        data.dataOutputStream[i] = null;
+        data.spillReader[i] = null;
+        data.spillWriter[i] = null;
 
         data.joinrow[i] = null;
         data.restart[i] = false;
@@ -154,14 +156,23 @@ public class JoinRows extends BaseStep implements StepInterface {
       }
     } else {
       if ( data.cache[filenr] == null ) {
+        if ( data.size[filenr] == 0 ) {
+          if ( log.isBasic() ) {
+            logBasic( BaseMessages.getString( PKG, "JoinRows.Log.NoRowsComingFromStep" )
+              + data.rs[filenr].getOriginStepName() + "]" );
+          }
+          return null;
+        }
+
         // See if we need to open the file?
-        if ( data.dataInputStream[filenr] == null ) {
+        if ( data.spillReader[filenr] == null ) {
           try {
             data.fileInputStream[filenr] = new FileInputStream( data.file[filenr] );
-            data.dataInputStream[filenr] = new DataInputStream( data.fileInputStream[filenr] );
-          } catch ( FileNotFoundException fnfe ) {
+            data.spillReader[filenr] =
+              new RowSpillReader( new BufferedInputStream( data.fileInputStream[filenr] ), data.fileRowMeta[filenr] );
+          } catch ( FileNotFoundException | KettleFileException e ) {
             logError( BaseMessages.getString( PKG, "JoinRows.Log.UnableToFindOrOpenTemporaryFile" )
-              + data.file[filenr] + "] : " + fnfe.toString() );
+              + data.file[filenr] + "] : " + e.toString() );
             setErrors( 1 );
             stopAll();
             return null;
@@ -170,28 +181,14 @@ public class JoinRows extends BaseStep implements StepInterface {
 
         // Read a row from the temporary file
 
-        if ( data.size[filenr] == 0 ) {
-          if ( log.isBasic() ) {
-            logBasic( BaseMessages.getString( PKG, "JoinRows.Log.NoRowsComingFromStep" )
-              + data.rs[filenr].getOriginStepName() + "]" );
-          }
-          return null;
-        }
-
         try {
-          rowData = data.fileRowMeta[filenr].readData( data.dataInputStream[filenr] );
+          rowData = data.spillReader[filenr].readRow();
         } catch ( KettleFileException e ) {
           logError( BaseMessages.getString( PKG, "JoinRows.Log.UnableToReadDataFromTempFile" )
             + filenr + " [" + data.file[filenr] + "]" );
           setErrors( 1 );
           stopAll();
           return null;
-        } catch ( SocketTimeoutException e ) {
-          logError( BaseMessages.getString( PKG, "JoinRows.Log.UnableToReadDataFromTempFile" )
-            + filenr + " [" + data.file[filenr] + "]" );
-          setErrors( 1 );
-          stopAll();
-          return null;
         }
         if ( log.isRowLevel() ) {
           logRowlevel( BaseMessages.getString( PKG, "JoinRows.Log.ReadRowFromFile" )
@@ -204,17 +201,16 @@ public class JoinRows extends BaseStep implements StepInterface {
         // The file will then be re-opened if needed later on.
         if ( data.position[filenr] >= data.size[filenr] ) {
           try {
-            data.dataInputStream[filenr].close();
-            data.fileInputStream[filenr].close();
+            data.spillReader[filenr].close(); // also closes the file stream
 
-            data.dataInputStream[filenr] = null;
+            data.spillReader[filenr] = null;
             data.fileInputStream[filenr] = null;
 
             data.position[filenr] = 0;
             data.restart[filenr] = true; // indicate that we restarted.
-          } catch ( IOException ioe ) {
+          } catch ( KettleFileException e ) {
             logError( BaseMessages.getString( PKG, "JoinRows.Log.UnableToCloseInputStream" )
-              + data.file[filenr] + "] : " + ioe.toString() );
+              + data.file[filenr] + "] : " + e.toString() );
             setErrors( 1 );
             stopAll();
             return null;
@@ -354,13 +350,10 @@ public class JoinRows extends BaseStep implements StepInterface {
     }
 
     // We need to open a new outputstream
-    if ( data.dataOutputStream[data.filenr] == null ) {
+    if ( data.fileOutputStream[data.filenr] == null ) {
       try {
         // Open the temp file
         data.fileOutputStream[data.filenr] = new FileOutputStream( data.file[data.filenr] );
-
-        // Open the data output stream...
-        data.dataOutputStream[data.filenr] = new DataOutputStream( data.fileOutputStream[data.filenr] );
       } catch ( FileNotFoundException fnfe ) {
         logError( BaseMessages.getString( PKG, "JoinRows.Log.UnableToOpenOutputstream" )
           + data.file[data.filenr].toString() + "] : " + fnfe.toString() );
@@ -379,9 +372,14 @@ public class JoinRows extends BaseStep implements StepInterface {
       if ( data.fileRowMeta[data.filenr] == null ) {
         // The first row is used as meta-data, clone it for safety
         data.fileRowMeta[data.filenr] = rowSet.getRowMeta().clone();
+
+        // The row metadata is written once, at the start of the file
+        data.spillWriter[data.filenr] = new RowSpillWriter( data.fileOutputStream[data.filenr],
+          data.fileRowMeta[data.filenr], RowSpillCompression.getCompression(
+            getVariable( Const.KETTLE_SPILL_COMPRESSION ), RowSpillCompression.NONE ) );
       }
 
-      data.fileRowMeta[data.filenr].writeData( data.dataOutputStream[data.filenr], rowData );
+      data.spillWriter[data.filenr].writeRow( rowData );
       data.size[data.filenr]++;
 
       if ( log.isRowLevel() ) {
@@ -413,13 +411,16 @@ public class JoinRows extends BaseStep implements StepInterface {
 
       // Close outputstream.
       try {
-        data.dataOutputStream[data.filenr].close();
-        data.fileOutputStream[data.filenr].close();
-        data.dataOutputStream[data.filenr] = null;
+        if ( data.spillWriter[data.filenr] != null ) {
+          data.spillWriter[data.filenr].close(); // also closes the file stream
+        } else {
+          data.fileOutputStream[data.filenr].close();
+        }
+        data.spillWriter[data.filenr] = null;
         data.fileOutputStream[data.filenr] = null;
-      } catch ( IOException ioe ) {
+      } catch ( IOException | KettleFileException e ) {
         logError( BaseMessages.getString( PKG, "JoinRows.Log.ErrorInClosingOutputStream" )
-          + data.filenr + " : [" + data.file[data.filenr].toString() + "] : " + ioe.toString() );
+          + data.filenr + " : [" + data.file[data.filenr].toString() + "] : " + e.toString() );
       }
 
       // Advance to the next file/input-stream...
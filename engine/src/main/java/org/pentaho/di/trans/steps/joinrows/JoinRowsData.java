@@ -22,8 +22,6 @@
 
 package org.pentaho.di.trans.steps.joinrows;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -31,6 +29,8 @@ import java.util.List;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -42,7 +42,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 public class JoinRowsData extends BaseStepData implements StepDataInterface {
   public File[] file;
   public FileInputStream[] fileInputStream;
-  public DataInputStream[] dataInputStream;
+  public RowSpillReader[] spillReader;
   public RowMetaInterface[] fileRowMeta;
 
   public int[] size;
@@ -54,7 +54,7 @@ public class JoinRowsData extends BaseStepData implements StepDataInterface {
   public boolean caching;
 
   public FileOutputStream[] fileOutputStream;
-  public DataOutputStream[] dataOutputStream;
+  public RowSpillWriter[] spillWriter;
 
   public Object[][] joinrow;
 
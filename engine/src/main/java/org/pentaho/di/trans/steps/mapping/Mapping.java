@@ -47,6 +47,7 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepMetrics;
 import org.pentaho.di.trans.steps.TransStepUtil;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
@@ -519,6 +520,10 @@ public class Mapping extends BaseStep implements StepInterface {
     //
     getData().getMappingTrans().setSafeModeEnabled( getTrans().isSafeModeEnabled() );
 
+    // Run the steps of the mapping on the same kind of threads
+    //
+    getData().getMappingTrans().setStepThreadMode( getTrans().getStepThreadMode() );
+
     // Pass down the metrics gathering flag:
     //
     getData().getMappingTrans().setGatheringMetrics( getTrans().isGatheringMetrics() );
@@ -657,6 +662,14 @@ public class Mapping extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * The counters of a mapping are the ones of the steps inside the mapping, see the getters below.
+   */
+  @Override
+  public StepMetrics getStepMetrics() {
+    return StepMetrics.copyOf( this );
+  }
+
   @Override
   public long getLinesInput() {
     if ( getData() != null && getData().linesInputStepNr != -1 ) {
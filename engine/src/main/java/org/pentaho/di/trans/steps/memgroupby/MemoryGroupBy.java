@@ -22,9 +22,12 @@
 
 package org.pentaho.di.trans.steps.memgroupby;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -34,9 +37,11 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowBatch;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
 import org.pentaho.di.core.row.ValueDataUtil;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaBase;
@@ -170,6 +175,25 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       data.groupAggMeta = new RowMeta();
       data.groupAggMeta.addRowMeta( data.groupMeta );
       data.groupAggMeta.addRowMeta( data.aggMeta );
+
+      // Keep the groups off the heap if we're allowed to
+      //
+      long maxMemory = Const.toLong( getVariable( Const.KETTLE_MEMORY_GROUP_BY_MAX_MEMORY ), 0L );
+      if ( r != null && maxMemory > 0
+        && MemoryGroupByHashTable.isSupported( data.inputRowMeta, data.groupnrs, data.subjectnrs,
+          meta.getAggregateType(), data.aggMeta ) ) {
+        String spillDirectory = getVariable( Const.KETTLE_SPILL_DIRECTORY );
+        data.hashTable = new MemoryGroupByHashTable( data.inputRowMeta, data.groupnrs, data.subjectnrs,
+          meta.getAggregateType(), minNullIsValued, maxMemory * 1024 * 1024,
+          Utils.isEmpty( spillDirectory ) ? null : new File( spillDirectory ),
+          RowSpillCompression.getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ),
+            RowSpillCompression.NONE ) );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "MemoryGroupBy.Log.UsingOffHeapHashTable", maxMemory ) );
+        }
+      }
+
+      data.batchAggregation = data.hashTable == null && isBatchAggregation();
     }
 
     // Here is where we start to do the real work...
@@ -199,28 +223,230 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     return true;
   }
 
-  private void handleLastOfGroup() throws KettleException {
-    // Dump the content of the map...
+  /**
+   * Once the metadata is known (first row) the rows are aggregated a batch at a time.
+   */
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    if ( first ) {
+      return processRow( smi, sdi );
+    }
+    meta = (MemoryGroupByMeta) smi;
+    data = (MemoryGroupByData) sdi;
+
+    List<Object[]> rows = getRows( getRowBatchSize() ); // get rows!
+    if ( rows.isEmpty() ) { // no more input to be expected...
+
+      updateValueMeta();
+      handleLastOfGroup();
+
+      setOutputDone();
+      return false;
+    }
+
+    if ( data.newBatch ) {
+      data.newBatch = false;
+    }
+
+    if ( data.batchAggregation ) {
+      addToAggregate( rows );
+    } else {
+      for ( Object[] r : rows ) {
+        addToAggregate( r );
+      }
+    }
+
+    if ( checkFeedback( getLinesRead(), rows.size() ) ) {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "MemoryGroupBy.LineNumber" ) + getLinesRead() );
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Sums, averages and counts can be calculated on a whole batch of rows at once.
+   *
+   * @return true if all aggregates are sums or averages of Integer or Number fields (normal storage, same result type)
+   *         or counts.
+   */
+  private boolean isBatchAggregation() {
+    for ( int i = 0; i < data.subjectnrs.length; i++ ) {
+      switch ( meta.getAggregateType()[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[i] );
+          if ( !RowBatch.isPrimitive( subjMeta ) || data.aggMeta.getValueMeta( i ).getType() != subjMeta.getType() ) {
+            return false;
+          }
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a batch of rows to the aggregates. The result is the same as calling addToAggregate() for every row: the
+   * values of a group are summed in the order of the rows. The sums are kept in primitives for the duration of the
+   * batch and only written back to the aggregate once per group.
+   *
+   * @param rows
+   *          the rows to add
+   * @throws KettleException
+   */
+  void addToAggregate( List<Object[]> rows ) throws KettleException {
+    int size = rows.size();
+
+    // Look up (or create) the aggregate of every row, the groups of this batch get a slot.
     //
-    for ( HashEntry entry : data.map.keySet() ) {
+    List<Aggregate> aggregates = new ArrayList<Aggregate>();
+    Map<Aggregate, Integer> slots = new IdentityHashMap<Aggregate, Integer>();
+    int[] rowSlots = new int[size];
+    for ( int r = 0; r < size; r++ ) {
+      Object[] row = rows.get( r );
+      Object[] groupData = new Object[data.groupMeta.size()];
+      for ( int i = 0; i < data.groupnrs.length; i++ ) {
+        groupData[i] = row[data.groupnrs[i]];
+      }
+      HashEntry entry = data.getHashEntry( groupData );
+
       Aggregate aggregate = data.map.get( entry );
-      Object[] aggregateResult = getAggregateResult( aggregate );
+      if ( aggregate == null ) {
+        aggregate = new Aggregate();
+        newAggregate( row, aggregate );
+        data.map.put( entry, aggregate );
+      }
+      Integer slot = slots.get( aggregate );
+      if ( slot == null ) {
+        slot = aggregates.size();
+        aggregates.add( aggregate );
+        slots.put( aggregate, slot );
+      }
+      rowSlots[r] = slot;
+    }
+    int nrSlots = aggregates.size();
 
-      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
-      int index = 0;
-      for ( int i = 0; i < data.groupMeta.size(); i++ ) {
-        outputRowData[index++] = data.groupMeta.getValueMeta( i ).convertToNormalStorageType( entry.getGroupData()[i] );
+    RowBatch batch = new RowBatch( data.inputRowMeta, rows );
+    for ( int i = 0; i < data.subjectnrs.length; i++ ) {
+      int aggregateType = meta.getAggregateType()[i];
+      switch ( aggregateType ) {
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          for ( int r = 0; r < size; r++ ) {
+            aggregates.get( rowSlots[r] ).counts[i]++;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+          ValueMetaInterface subjMeta = data.inputRowMeta.getValueMeta( data.subjectnrs[i] );
+          for ( int r = 0; r < size; r++ ) {
+            if ( !subjMeta.isNull( rows.get( r )[data.subjectnrs[i]] ) ) {
+              aggregates.get( rowSlots[r] ).counts[i]++;
+            }
+          }
+          break;
+        default:
+          // Sum or average
+          //
+          boolean average = aggregateType == MemoryGroupByMeta.TYPE_GROUP_AVERAGE;
+          ValueMetaInterface valueMeta = data.aggMeta.getValueMeta( i );
+          RowBatch.Column column = batch.getColumn( data.subjectnrs[i] );
+          boolean[] hasValue = new boolean[nrSlots];
+          long[] counts = new long[nrSlots];
+          if ( column instanceof RowBatch.LongColumn ) {
+            long[] values = ( (RowBatch.LongColumn) column ).getValues();
+            long[] sums = new long[nrSlots];
+            for ( int slot = 0; slot < nrSlots; slot++ ) {
+              Object value = aggregates.get( slot ).agg[i];
+              if ( value != null ) {
+                sums[slot] = valueMeta.getInteger( value );
+                hasValue[slot] = true;
+              }
+            }
+            for ( int r = 0; r < size; r++ ) {
+              if ( !column.isNull( r ) ) {
+                int slot = rowSlots[r];
+                sums[slot] = hasValue[slot] ? sums[slot] + values[r] : values[r];
+                hasValue[slot] = true;
+                counts[slot]++;
+              }
+            }
+            for ( int slot = 0; slot < nrSlots; slot++ ) {
+              if ( hasValue[slot] ) {
+                aggregates.get( slot ).agg[i] = Long.valueOf( sums[slot] );
+              }
+            }
+          } else {
+            double[] values = ( (RowBatch.DoubleColumn) column ).getValues();
+            double[] sums = new double[nrSlots];
+            for ( int slot = 0; slot < nrSlots; slot++ ) {
+              Object value = aggregates.get( slot ).agg[i];
+              if ( value != null ) {
+                sums[slot] = valueMeta.getNumber( value );
+                hasValue[slot] = true;
+              }
+            }
+            for ( int r = 0; r < size; r++ ) {
+              if ( !column.isNull( r ) ) {
+                int slot = rowSlots[r];
+                sums[slot] = hasValue[slot] ? sums[slot] + values[r] : values[r];
+                hasValue[slot] = true;
+                counts[slot]++;
+              }
+            }
+            for ( int slot = 0; slot < nrSlots; slot++ ) {
+              if ( hasValue[slot] ) {
+                aggregates.get( slot ).agg[i] = Double.valueOf( sums[slot] );
+              }
+            }
+          }
+          if ( average ) {
+            for ( int slot = 0; slot < nrSlots; slot++ ) {
+              aggregates.get( slot ).counts[i] += counts[slot];
+            }
+          }
+          break;
       }
-      for ( int i = 0; i < data.aggMeta.size(); i++ ) {
-        outputRowData[index++] = data.aggMeta.getValueMeta( i ).convertToNormalStorageType( aggregateResult[i] );
+    }
+  }
+
+  private void handleLastOfGroup() throws KettleException {
+    boolean empty;
+    if ( data.hashTable != null ) {
+      // Dump the content of the off-heap table, the group values are already in normal storage
+      //
+      data.hashTable.forEachGroup( new MemoryGroupByHashTable.GroupHandler() {
+        @Override
+        public void handleGroup( Object[] groupData, Aggregate aggregate ) throws KettleException {
+          putGroupRow( groupData, aggregate );
+        }
+      } );
+      if ( data.hashTable.getNrSpills() > 0 && log.isDetailed() ) {
+        logDetailed( BaseMessages.getString(
+          PKG, "MemoryGroupBy.Log.GroupsSpilledToDisk", data.hashTable.getNrSpills() ) );
       }
-      putRow( data.outputRowMeta, outputRowData );
+      empty = data.hashTable.isEmpty();
+    } else {
+      // Dump the content of the map...
+      //
+      for ( HashEntry entry : data.map.keySet() ) {
+        Object[] groupData = new Object[data.groupMeta.size()];
+        for ( int i = 0; i < data.groupMeta.size(); i++ ) {
+          groupData[i] = data.groupMeta.getValueMeta( i ).convertToNormalStorageType( entry.getGroupData()[i] );
+        }
+        putGroupRow( groupData, data.map.get( entry ) );
+      }
+      empty = data.map.isEmpty();
     }
 
     // What if we always need to give back one row?
     // This means we give back 0 for count all, count distinct, null for everything else
     //
-    if ( data.map.isEmpty() && meta.isAlwaysGivingBackOneRow() ) {
+    if ( empty && meta.isAlwaysGivingBackOneRow() ) {
       Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
       int index = 0;
       for ( int i = 0; i < data.groupMeta.size(); i++ ) {
@@ -239,6 +465,20 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     }
   }
 
+  private void putGroupRow( Object[] groupData, Aggregate aggregate ) throws KettleException {
+    Object[] aggregateResult = getAggregateResult( aggregate );
+
+    Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+    int index = 0;
+    for ( int i = 0; i < data.groupMeta.size(); i++ ) {
+      outputRowData[index++] = groupData[i];
+    }
+    for ( int i = 0; i < data.aggMeta.size(); i++ ) {
+      outputRowData[index++] = data.aggMeta.getValueMeta( i ).convertToNormalStorageType( aggregateResult[i] );
+    }
+    putRow( data.outputRowMeta, outputRowData );
+  }
+
   @VisibleForTesting
   void updateValueMeta() throws KettleException {
 
@@ -261,6 +501,10 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
    * @throws KettleException
    */
   @SuppressWarnings( "unchecked" ) void addToAggregate( Object[] r ) throws KettleException {
+    if ( data.hashTable != null ) {
+      data.hashTable.add( r );
+      return;
+    }
 
     Object[] groupData = new Object[data.groupMeta.size()];
     for ( int i = 0; i < data.groupnrs.length; i++ ) {
@@ -603,6 +847,9 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     // Clear the complete cache...
     //
     data.map.clear();
+    if ( data.hashTable != null ) {
+      data.hashTable.clear();
+    }
 
     data.newBatch = true;
   }
@@ -99,6 +99,16 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 
   public boolean newBatch;
 
+  /**
+   * True if all the aggregates can be calculated on a whole batch of rows at once
+   */
+  public boolean batchAggregation;
+
+  /**
+   * The off-heap table the groups are kept in instead of the map, null if the groups are kept on the heap
+   */
+  public MemoryGroupByHashTable hashTable;
+
   public MemoryGroupByData() {
     super();
 
@@ -113,5 +123,8 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
    */
   public void clear() {
     map = new HashMap<MemoryGroupByData.HashEntry, Aggregate>();
+    if ( hashTable != null ) {
+      hashTable.clear();
+    }
   }
 }
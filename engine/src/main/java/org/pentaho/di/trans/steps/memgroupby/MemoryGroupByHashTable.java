@@ -0,0 +1,737 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillPartitions;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+
+/**
+ * An open addressing hash table for the Memory Group By step that keeps the groups off the Java heap. The group keys
+ * are serialized to bytes and every aggregate is kept in a primitive accumulator, both are stored in direct byte
+ * buffers. Only sums, averages, minimums and maximums of Integer and Number fields and counts are supported, see
+ * {@link #isSupported(RowMetaInterface, int[], int[], int[], RowMetaInterface)}.<br>
+ * <br>
+ * When the table grows beyond the maximum amount of memory all its groups are spilled to a set of partition files on
+ * disk (partitioned by the hash of the key) and the table starts over. At the end every partition is aggregated on its
+ * own, partitions that still don't fit are partitioned again on the next bits of the hash (grace hash aggregation, see
+ * {@link RowSpillPartitions}).
+ *
+ * @since 9.1
+ */
+public class MemoryGroupByHashTable {
+
+  /**
+   * Receives the groups of the table one at a time.
+   */
+  public interface GroupHandler {
+    /**
+     * @param groupData
+     *          the values of the group fields (normal storage)
+     * @param aggregate
+     *          the aggregate of the group, filled in the same way as the heap based aggregation does
+     * @throws KettleException
+     */
+    void handleGroup( Object[] groupData, Aggregate aggregate ) throws KettleException;
+  }
+
+  static final int PAGE_SIZE = 4 * 1024 * 1024;
+  static final int INITIAL_CAPACITY = 1024;
+
+  private static final int NR_PARTITIONS = RowSpillPartitions.NR_PARTITIONS;
+  private static final int MAX_LEVEL = RowSpillPartitions.getMaxLevel( 32 );
+
+  /**
+   * An accumulator is a value (8 bytes), a count (8 bytes) and flags (1 byte)
+   */
+  private static final int ACCUMULATOR_SIZE = 17;
+  private static final byte HAS_VALUE = 1;
+  private static final byte SAW_NULL = 2;
+
+  private final int[] groupTypes;
+  private final int[] groupnrs;
+  private final int[] subjectnrs;
+  private final ValueMetaInterface[] groupMetas;
+  private final ValueMetaInterface[] subjectMetas;
+  private final int[] aggregateTypes;
+  private final boolean[] integerValues;
+  private final boolean minNullIsValued;
+  private final long maxMemory;
+  private final File directory;
+  private final RowSpillCompression compression;
+  private final int level;
+  private final int accumulatorsSize;
+
+  /**
+   * A spilled group is a single binary value: the hash, the length of the key, the key and the accumulators.
+   */
+  private final RowMetaInterface spillMeta;
+
+  private final List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+  private final List<Integer> pageEnds = new ArrayList<Integer>();
+  private int pageNr;
+  private int pageOffset;
+  private long usedPageBytes;
+
+  private ByteBuffer slots;
+  private int capacity;
+  private long nrGroups;
+
+  private byte[] key = new byte[ 256 ];
+  private int keyLength;
+
+  private RowSpillPartitions spillFiles;
+  private int nrSpills;
+
+  /**
+   * Create a new table for the rows of a Memory Group By step.
+   *
+   * @param inputRowMeta
+   *          the metadata of the input rows
+   * @param groupnrs
+   *          the indexes of the group fields
+   * @param subjectnrs
+   *          the indexes of the subject fields of the aggregates
+   * @param aggregateTypes
+   *          the aggregate types, see MemoryGroupByMeta
+   * @param minNullIsValued
+   *          true if a null is the minimum value of a field (KETTLE_AGGREGATION_MIN_NULL_IS_VALUED)
+   * @param maxMemory
+   *          the maximum amount of memory in bytes before the groups are spilled to disk
+   * @param directory
+   *          the directory of the temporary files or null for the default temporary directory
+   * @param compression
+   *          the compression of the temporary files
+   */
+  public MemoryGroupByHashTable( RowMetaInterface inputRowMeta, int[] groupnrs, int[] subjectnrs,
+    int[] aggregateTypes, boolean minNullIsValued, long maxMemory, File directory,
+    RowSpillCompression compression ) {
+    this.groupnrs = groupnrs;
+    this.subjectnrs = subjectnrs;
+    this.aggregateTypes = aggregateTypes;
+    this.minNullIsValued = minNullIsValued;
+    this.maxMemory = maxMemory;
+    this.directory = directory;
+    this.compression = compression;
+    this.level = 0;
+    this.spillMeta = createSpillMeta();
+
+    groupMetas = new ValueMetaInterface[ groupnrs.length ];
+    groupTypes = new int[ groupnrs.length ];
+    for ( int i = 0; i < groupnrs.length; i++ ) {
+      groupMetas[ i ] = inputRowMeta.getValueMeta( groupnrs[ i ] );
+      groupTypes[ i ] = groupMetas[ i ].getType();
+    }
+    subjectMetas = new ValueMetaInterface[ subjectnrs.length ];
+    integerValues = new boolean[ subjectnrs.length ];
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      subjectMetas[ i ] = inputRowMeta.getValueMeta( subjectnrs[ i ] );
+      integerValues[ i ] = subjectMetas[ i ].getType() == ValueMetaInterface.TYPE_INTEGER;
+    }
+    accumulatorsSize = ACCUMULATOR_SIZE * aggregateTypes.length;
+    allocateSlots( INITIAL_CAPACITY );
+  }
+
+  /**
+   * Creates a table for the groups of a spilled partition.
+   */
+  private MemoryGroupByHashTable( MemoryGroupByHashTable parent ) {
+    this.groupnrs = parent.groupnrs;
+    this.subjectnrs = parent.subjectnrs;
+    this.groupMetas = parent.groupMetas;
+    this.groupTypes = parent.groupTypes;
+    this.subjectMetas = parent.subjectMetas;
+    this.integerValues = parent.integerValues;
+    this.aggregateTypes = parent.aggregateTypes;
+    this.minNullIsValued = parent.minNullIsValued;
+    this.maxMemory = parent.maxMemory;
+    this.directory = parent.directory;
+    this.compression = parent.compression;
+    this.level = parent.level + 1;
+    this.spillMeta = parent.spillMeta;
+    this.accumulatorsSize = parent.accumulatorsSize;
+    allocateSlots( INITIAL_CAPACITY );
+  }
+
+  /**
+   * Checks if the aggregation can be done with this table: the group fields need to be Strings (case sensitive, no
+   * trimming, no collation), Integers, Numbers, Dates or Booleans and the aggregates have to be sums, averages,
+   * minimums or maximums of Integer or Number fields (normal storage, same result type) or counts.
+   *
+   * @return true if the aggregation can be done with this table
+   */
+  public static boolean isSupported( RowMetaInterface inputRowMeta, int[] groupnrs, int[] subjectnrs,
+    int[] aggregateTypes, RowMetaInterface aggMeta ) {
+    for ( int groupnr : groupnrs ) {
+      ValueMetaInterface valueMeta = inputRowMeta.getValueMeta( groupnr );
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_STRING:
+          if ( valueMeta.isCaseInsensitive() || valueMeta.isIgnoreWhitespace() || !valueMeta.isCollatorDisabled() ) {
+            return false;
+          }
+          break;
+        case ValueMetaInterface.TYPE_INTEGER:
+        case ValueMetaInterface.TYPE_NUMBER:
+        case ValueMetaInterface.TYPE_DATE:
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          break;
+        default:
+          return false;
+      }
+    }
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      switch ( aggregateTypes[ i ] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          ValueMetaInterface subjMeta = inputRowMeta.getValueMeta( subjectnrs[ i ] );
+          if ( subjMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL
+            || ( !subjMeta.isInteger() && !subjMeta.isNumber() )
+            || aggMeta.getValueMeta( i ).getType() != subjMeta.getType() ) {
+            return false;
+          }
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a row to the aggregate of its group.
+   *
+   * @param row
+   *          the input row
+   * @throws KettleException
+   *           in case a value can't be read or the groups can't be spilled to disk
+   */
+  public void add( Object[] row ) throws KettleException {
+    serializeKey( row );
+    long address = findOrInsert( hash( key, keyLength ), key, keyLength );
+    ByteBuffer page = pages.get( (int) ( address >>> 32 ) );
+    int position = (int) address + 8 + keyLength;
+
+    for ( int i = 0; i < aggregateTypes.length; i++, position += ACCUMULATOR_SIZE ) {
+      Object subj = row[ subjectnrs[ i ] ];
+      boolean isNull = subjectMetas[ i ].isNull( subj );
+      switch ( aggregateTypes[ i ] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          combine( i, page, position, (byte) 0, 0L, 1L );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+          combine( i, page, position, (byte) 0, 0L, isNull ? 0L : 1L );
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+          if ( isNull ) {
+            combine( i, page, position, SAW_NULL, 0L, 0L );
+            break;
+          }
+          combine( i, page, position, HAS_VALUE, toBits( i, subj ), 1L );
+          break;
+        default:
+          if ( !isNull ) {
+            combine( i, page, position, HAS_VALUE, toBits( i, subj ), 1L );
+          }
+          break;
+      }
+    }
+
+    spillIfNeeded();
+  }
+
+  /**
+   * Hands all the groups of the table to the handler. Spilled partitions are read back and aggregated one at a time.
+   *
+   * @param handler
+   *          the handler of the groups
+   * @throws KettleException
+   *           in case the spilled partitions can't be read
+   */
+  public void forEachGroup( GroupHandler handler ) throws KettleException {
+    if ( spillFiles == null ) {
+      for ( int p = 0; p <= pageNr && p < pages.size(); p++ ) {
+        ByteBuffer page = pages.get( p );
+        int end = p == pageNr ? pageOffset : pageEnds.get( p );
+        int position = 0;
+        while ( position < end ) {
+          int length = page.getInt( position + 4 );
+          handler.handleGroup( deserializeKey( page, position + 8 ), getAggregate( page, position + 8 + length ) );
+          position += 8 + length + accumulatorsSize;
+        }
+      }
+      return;
+    }
+
+    // Spill what's left and aggregate the partitions one by one
+    //
+    spill();
+    spillFiles.closeWriters();
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( !spillFiles.isSpilled( p ) ) {
+        continue;
+      }
+      MemoryGroupByHashTable partition = new MemoryGroupByHashTable( this );
+      try {
+        RowSpillReader reader = spillFiles.createReader( p, spillMeta );
+        try {
+          byte[] accumulators = new byte[ accumulatorsSize ];
+          for ( Object[] row = reader.readRow(); row != null; row = reader.readRow() ) {
+            ByteBuffer entry = ByteBuffer.wrap( (byte[]) row[ 0 ] );
+            int hash = entry.getInt();
+            int length = entry.getInt();
+            if ( partition.key.length < length ) {
+              partition.key = new byte[ length ];
+            }
+            entry.get( partition.key, 0, length );
+            entry.get( accumulators );
+            partition.merge( hash, length, accumulators );
+          }
+        } finally {
+          reader.close();
+        }
+        spillFiles.delete( p );
+        partition.forEachGroup( handler );
+      } finally {
+        partition.clear();
+      }
+    }
+  }
+
+  /**
+   * @return true if no rows were added since the table was created or cleared
+   */
+  public boolean isEmpty() {
+    return nrGroups == 0 && nrSpills == 0;
+  }
+
+  /**
+   * @return the number of times the groups were spilled to disk
+   */
+  public int getNrSpills() {
+    return nrSpills;
+  }
+
+  /**
+   * @return the number of bytes of memory in use by the table
+   */
+  public long getUsedMemory() {
+    return usedPageBytes + pageOffset + (long) capacity * 8;
+  }
+
+  /**
+   * Removes all the groups, releases the memory and deletes the spill files.
+   */
+  public void clear() {
+    if ( spillFiles != null ) {
+      spillFiles.clear();
+    }
+    spillFiles = null;
+    nrSpills = 0;
+    pages.clear();
+    pageEnds.clear();
+    reset();
+  }
+
+  /**
+   * Adds the accumulators of a spilled group, the key is in the key buffer.
+   */
+  private void merge( int hash, int length, byte[] accumulators ) throws KettleException {
+    long address = findOrInsert( hash, key, length );
+    ByteBuffer page = pages.get( (int) ( address >>> 32 ) );
+    int position = (int) address + 8 + length;
+
+    ByteBuffer source = ByteBuffer.wrap( accumulators );
+    for ( int i = 0; i < aggregateTypes.length; i++, position += ACCUMULATOR_SIZE ) {
+      int offset = i * ACCUMULATOR_SIZE;
+      combine( i, page, position, source.get( offset + 16 ), source.getLong( offset ), source.getLong( offset + 8 ) );
+    }
+
+    spillIfNeeded();
+  }
+
+  private void combine( int i, ByteBuffer page, int position, byte flags, long bits, long count ) {
+    byte current = page.get( position + 16 );
+    if ( ( flags & HAS_VALUE ) != 0 ) {
+      if ( ( current & HAS_VALUE ) == 0 ) {
+        page.putLong( position, bits );
+      } else {
+        page.putLong( position, combineValues( i, page.getLong( position ), bits ) );
+      }
+    }
+    if ( count != 0L ) {
+      page.putLong( position + 8, page.getLong( position + 8 ) + count );
+    }
+    page.put( position + 16, (byte) ( current | flags ) );
+  }
+
+  /**
+   * Combines the current value of an accumulator with a new one. On a tie the current value is kept, just like the
+   * heap based aggregation does.
+   */
+  private long combineValues( int i, long current, long value ) {
+    boolean integer = integerValues[ i ];
+    switch ( aggregateTypes[ i ] ) {
+      case MemoryGroupByMeta.TYPE_GROUP_SUM:
+      case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+        if ( integer ) {
+          return current + value;
+        }
+        return Double.doubleToRawLongBits( Double.longBitsToDouble( current ) + Double.longBitsToDouble( value ) );
+      case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        if ( integer ) {
+          return value < current ? value : current;
+        }
+        return Double.compare( Double.longBitsToDouble( value ), Double.longBitsToDouble( current ) ) < 0
+          ? value : current;
+      case MemoryGroupByMeta.TYPE_GROUP_MAX:
+        if ( integer ) {
+          return value > current ? value : current;
+        }
+        return Double.compare( Double.longBitsToDouble( value ), Double.longBitsToDouble( current ) ) > 0
+          ? value : current;
+      default:
+        return current;
+    }
+  }
+
+  private long toBits( int i, Object subj ) throws KettleValueException {
+    if ( integerValues[ i ] ) {
+      return subjectMetas[ i ].getInteger( subj );
+    }
+    return Double.doubleToRawLongBits( subjectMetas[ i ].getNumber( subj ) );
+  }
+
+  private Object fromBits( int i, long bits ) {
+    if ( integerValues[ i ] ) {
+      return Long.valueOf( bits );
+    }
+    return Double.valueOf( Double.longBitsToDouble( bits ) );
+  }
+
+  /**
+   * Fills an aggregate from the accumulators, the same way MemoryGroupBy.addToAggregate() would have.
+   */
+  private Aggregate getAggregate( ByteBuffer page, int position ) {
+    Aggregate aggregate = new Aggregate();
+    aggregate.agg = new Object[ aggregateTypes.length ];
+    aggregate.counts = new long[ aggregateTypes.length ];
+    for ( int i = 0; i < aggregateTypes.length; i++, position += ACCUMULATOR_SIZE ) {
+      byte flags = page.get( position + 16 );
+      aggregate.counts[ i ] = page.getLong( position + 8 );
+      if ( ( flags & HAS_VALUE ) != 0 ) {
+        aggregate.agg[ i ] = fromBits( i, page.getLong( position ) );
+      }
+      if ( aggregateTypes[ i ] == MemoryGroupByMeta.TYPE_GROUP_MIN && minNullIsValued && ( flags & SAW_NULL ) != 0 ) {
+        aggregate.agg[ i ] = null;
+      }
+    }
+    return aggregate;
+  }
+
+  /**
+   * Finds the entry of a key or appends a new one.
+   *
+   * @return the address of the entry: the page number in the high and the offset in the low 32 bits.
+   */
+  private long findOrInsert( int hash, byte[] keyData, int length ) {
+    int mask = capacity - 1;
+    int slot = hash & mask;
+    while ( true ) {
+      long stored = slots.getLong( slot << 3 );
+      if ( stored == 0L ) {
+        long address = append( hash, keyData, length );
+        slots.putLong( slot << 3, address + 1 );
+        nrGroups++;
+        if ( nrGroups > ( capacity >>> 1 ) + ( capacity >>> 2 ) ) {
+          grow();
+        }
+        return address;
+      }
+      long address = stored - 1;
+      if ( keyEquals( address, hash, keyData, length ) ) {
+        return address;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+  }
+
+  private boolean keyEquals( long address, int hash, byte[] keyData, int length ) {
+    ByteBuffer page = pages.get( (int) ( address >>> 32 ) );
+    int position = (int) address;
+    if ( page.getInt( position ) != hash || page.getInt( position + 4 ) != length ) {
+      return false;
+    }
+    position += 8;
+    for ( int i = 0; i < length; i++ ) {
+      if ( page.get( position + i ) != keyData[ i ] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long append( int hash, byte[] keyData, int length ) {
+    int entrySize = 8 + length + accumulatorsSize;
+    if ( pages.isEmpty() ) {
+      pages.add( ByteBuffer.allocateDirect( Math.max( PAGE_SIZE, entrySize ) ) );
+    } else if ( pageOffset + entrySize > pages.get( pageNr ).capacity() ) {
+      if ( pageNr == pageEnds.size() ) {
+        pageEnds.add( pageOffset );
+      } else {
+        pageEnds.set( pageNr, pageOffset );
+      }
+      usedPageBytes += pageOffset;
+      pageNr++;
+      pageOffset = 0;
+      if ( pageNr == pages.size() ) {
+        pages.add( ByteBuffer.allocateDirect( Math.max( PAGE_SIZE, entrySize ) ) );
+      } else if ( pages.get( pageNr ).capacity() < entrySize ) {
+        pages.set( pageNr, ByteBuffer.allocateDirect( entrySize ) );
+      }
+    }
+    ByteBuffer page = pages.get( pageNr );
+    int position = pageOffset;
+    page.putInt( position, hash );
+    page.putInt( position + 4, length );
+    for ( int i = 0; i < length; i++ ) {
+      page.put( position + 8 + i, keyData[ i ] );
+    }
+    // Pages are re-used after a spill: clear the accumulators
+    //
+    for ( int i = position + 8 + length; i < position + entrySize; i++ ) {
+      page.put( i, (byte) 0 );
+    }
+    pageOffset += entrySize;
+    return ( (long) pageNr << 32 ) | position;
+  }
+
+  private void allocateSlots( int newCapacity ) {
+    capacity = newCapacity;
+    slots = ByteBuffer.allocateDirect( capacity * 8 );
+  }
+
+  private void grow() {
+    ByteBuffer oldSlots = slots;
+    int oldCapacity = capacity;
+    allocateSlots( capacity * 2 );
+    int mask = capacity - 1;
+    for ( int i = 0; i < oldCapacity; i++ ) {
+      long stored = oldSlots.getLong( i << 3 );
+      if ( stored != 0L ) {
+        long address = stored - 1;
+        int hash = pages.get( (int) ( address >>> 32 ) ).getInt( (int) address );
+        int slot = hash & mask;
+        while ( slots.getLong( slot << 3 ) != 0L ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        slots.putLong( slot << 3, stored );
+      }
+    }
+  }
+
+  /**
+   * Empties the table but keeps the pages around to be re-used.
+   */
+  private void reset() {
+    pageNr = 0;
+    pageOffset = 0;
+    usedPageBytes = 0L;
+    nrGroups = 0L;
+    allocateSlots( INITIAL_CAPACITY );
+  }
+
+  private void spillIfNeeded() throws KettleException {
+    if ( level < MAX_LEVEL && getUsedMemory() > maxMemory ) {
+      spill();
+    }
+  }
+
+  /**
+   * Writes all the groups to the partition files and empties the table.
+   */
+  private void spill() throws KettleException {
+    if ( spillFiles == null ) {
+      spillFiles = new RowSpillPartitions( directory, "memgroupby-" + level + "-", compression );
+    }
+
+    for ( int p = 0; p <= pageNr && p < pages.size(); p++ ) {
+      ByteBuffer page = pages.get( p );
+      int end = p == pageNr ? pageOffset : pageEnds.get( p );
+      int position = 0;
+      while ( position < end ) {
+        int hash = page.getInt( position );
+        int length = page.getInt( position + 4 );
+        byte[] entry = new byte[ 8 + length + accumulatorsSize ];
+        ByteBuffer source = page.duplicate();
+        source.position( position );
+        source.get( entry );
+
+        int partition = RowSpillPartitions.getPartition( hash, level );
+        RowSpillWriter writer = spillFiles.getWriter( partition );
+        if ( writer == null ) {
+          writer = spillFiles.createWriter( partition, spillMeta );
+        }
+        writer.writeRow( new Object[] { entry } );
+        position += entry.length;
+      }
+    }
+    nrSpills++;
+    reset();
+  }
+
+  private static RowMetaInterface createSpillMeta() {
+    RowMetaInterface spillMeta = new RowMeta();
+    spillMeta.addValueMeta( new ValueMetaBinary( "group" ) );
+    return spillMeta;
+  }
+
+  /**
+   * Serializes the group fields of a row into the key buffer. Values that are equal according to the value metadata
+   * get the same bytes.
+   */
+  private void serializeKey( Object[] row ) throws KettleValueException {
+    keyLength = 0;
+    for ( int i = 0; i < groupnrs.length; i++ ) {
+      ValueMetaInterface valueMeta = groupMetas[ i ];
+      Object value = row[ groupnrs[ i ] ];
+      ensureKeyCapacity( 9 );
+      if ( valueMeta.isNull( value ) ) {
+        key[ keyLength++ ] = 0;
+        continue;
+      }
+      key[ keyLength++ ] = 1;
+      switch ( groupTypes[ i ] ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          putLong( valueMeta.getInteger( value ) );
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          putLong( Double.doubleToLongBits( valueMeta.getNumber( value ) ) );
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          putLong( valueMeta.getDate( value ).getTime() );
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          key[ keyLength++ ] = (byte) ( valueMeta.getBoolean( value ) ? 1 : 0 );
+          break;
+        default:
+          byte[] bytes = valueMeta.getString( value ).getBytes( StandardCharsets.UTF_8 );
+          ensureKeyCapacity( 4 + bytes.length );
+          putInt( bytes.length );
+          System.arraycopy( bytes, 0, key, keyLength, bytes.length );
+          keyLength += bytes.length;
+          break;
+      }
+    }
+  }
+
+  private Object[] deserializeKey( ByteBuffer page, int position ) {
+    Object[] groupData = new Object[ groupTypes.length ];
+    for ( int i = 0; i < groupTypes.length; i++ ) {
+      if ( page.get( position++ ) == 0 ) {
+        continue;
+      }
+      switch ( groupTypes[ i ] ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          groupData[ i ] = Long.valueOf( page.getLong( position ) );
+          position += 8;
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          groupData[ i ] = Double.valueOf( Double.longBitsToDouble( page.getLong( position ) ) );
+          position += 8;
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          groupData[ i ] = new Date( page.getLong( position ) );
+          position += 8;
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          groupData[ i ] = Boolean.valueOf( page.get( position++ ) != 0 );
+          break;
+        default:
+          int length = page.getInt( position );
+          byte[] bytes = new byte[ length ];
+          ByteBuffer string = page.duplicate();
+          string.position( position + 4 );
+          string.get( bytes );
+          groupData[ i ] = new String( bytes, StandardCharsets.UTF_8 );
+          position += 4 + length;
+          break;
+      }
+    }
+    return groupData;
+  }
+
+  private void ensureKeyCapacity( int extra ) {
+    if ( keyLength + extra > key.length ) {
+      byte[] newKey = new byte[ Math.max( key.length * 2, keyLength + extra ) ];
+      System.arraycopy( key, 0, newKey, 0, keyLength );
+      key = newKey;
+    }
+  }
+
+  private void putLong( long value ) {
+    for ( int shift = 56; shift >= 0; shift -= 8 ) {
+      key[ keyLength++ ] = (byte) ( value >>> shift );
+    }
+  }
+
+  private void putInt( int value ) {
+    for ( int shift = 24; shift >= 0; shift -= 8 ) {
+      key[ keyLength++ ] = (byte) ( value >>> shift );
+    }
+  }
+
+  /**
+   * A 32 bit hash of the key bytes, all bits are mixed as the top bits select the spill partition.
+   */
+  private static int hash( byte[] keyData, int length ) {
+    int hash = 1;
+    for ( int i = 0; i < length; i++ ) {
+      hash = 31 * hash + keyData[ i ];
+    }
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
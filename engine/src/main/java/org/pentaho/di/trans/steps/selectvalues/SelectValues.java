@@ -340,85 +340,113 @@ public class SelectValues extends BaseStep implements StepInterface {
   }
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    return processRows( smi, sdi );
+  }
+
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (SelectValuesMeta) smi;
     data = (SelectValuesData) sdi;
 
-    Object[] rowData = getRow(); // get row from rowset, wait for our turn, indicate busy!
-    if ( rowData == null ) { // no more input to be expected...
+    List<Object[]> rows = getRows( getRowBatchSize() ); // get a batch of rows, wait for our turn, indicate busy!
+    if ( rows.isEmpty() ) { // no more input to be expected...
 
       setOutputDone();
       return false;
     }
 
-    Object[] rowCopy = null;
-    if ( getStepMeta().isDoingErrorHandling() ) {
-      rowCopy = getInputRowMeta().cloneRow( rowData );
-    }
-
-    if ( log.isRowLevel() ) {
-      logRowlevel( BaseMessages.getString( PKG, "SelectValues.Log.GotRowFromPreviousStep" )
-        + getInputRowMeta().getString( rowData ) );
-    }
-
     if ( first ) {
       first = false;
-
-      data.selectRowMeta = getInputRowMeta().clone();
-      meta.getSelectFields( data.selectRowMeta, getStepname() );
-      data.deselectRowMeta = data.selectRowMeta.clone();
-      meta.getDeleteFields( data.deselectRowMeta );
-      data.metadataRowMeta = data.deselectRowMeta.clone();
-      meta.getMetadataFields( data.metadataRowMeta, getStepname(), this );
+      prepareRowMetas();
     }
 
-    try {
-      Object[] outputData = rowData;
-
-      if ( data.select ) {
-        outputData = selectValues( getInputRowMeta(), outputData );
-      }
-      if ( data.deselect ) {
-        outputData = removeValues( data.selectRowMeta, outputData );
-      }
-      if ( data.metadata ) {
-        outputData = metadataValues( data.deselectRowMeta, outputData );
-      }
-
-      if ( outputData == null ) {
-        setOutputDone(); // signal end to receiver(s)
-        return false;
+    List<Object[]> outputRows = new ArrayList<Object[]>( rows.size() );
+    for ( Object[] rowData : rows ) {
+      Object[] rowCopy = null;
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        rowCopy = getInputRowMeta().cloneRow( rowData );
       }
 
-      // Send the row on its way
-      //
-      putRow( data.metadataRowMeta, outputData );
       if ( log.isRowLevel() ) {
-        logRowlevel( BaseMessages.getString( PKG, "SelectValues.Log.WroteRowToNextStep" )
-          + data.metadataRowMeta.getString( outputData ) );
+        logRowlevel( BaseMessages.getString( PKG, "SelectValues.Log.GotRowFromPreviousStep" )
+          + getInputRowMeta().getString( rowData ) );
       }
 
-    } catch ( KettleException e ) {
-      if ( getStepMeta().isDoingErrorHandling() ) {
-        String field;
-        if ( e instanceof KettleConversionException ) {
-          List<ValueMetaInterface> fields = ( (KettleConversionException) e ).getFields();
-          field = fields.isEmpty() ? null : fields.get( 0 ).getName();
-        } else {
-          field = null;
+      try {
+        Object[] outputData = selectRowData( rowData );
+
+        if ( outputData == null ) {
+          putRows( data.metadataRowMeta, outputRows );
+          setOutputDone(); // signal end to receiver(s)
+          return false;
         }
-        putError( getInputRowMeta(), rowCopy, 1, e.getMessage(), field, "SELECT001" );
-      } else {
-        throw e;
+
+        outputRows.add( outputData );
+        if ( log.isRowLevel() ) {
+          logRowlevel( BaseMessages.getString( PKG, "SelectValues.Log.WroteRowToNextStep" )
+            + data.metadataRowMeta.getString( outputData ) );
+        }
+      } catch ( KettleException e ) {
+        // The rows before the failing one go first, just like row by row
+        //
+        if ( !outputRows.isEmpty() ) {
+          putRows( data.metadataRowMeta, outputRows );
+          outputRows = new ArrayList<Object[]>( rows.size() );
+        }
+        handleSelectError( e, rowCopy );
       }
     }
 
-    if ( checkFeedback( getLinesRead() ) ) {
+    // Send the rows on their way
+    //
+    putRows( data.metadataRowMeta, outputRows );
+
+    if ( checkFeedback( getLinesRead(), rows.size() ) ) {
       logBasic( BaseMessages.getString( PKG, "SelectValues.Log.LineNumber" ) + getLinesRead() );
     }
 
     return true;
   }
 
+  private void prepareRowMetas() throws KettleException {
+    data.selectRowMeta = getInputRowMeta().clone();
+    meta.getSelectFields( data.selectRowMeta, getStepname() );
+    data.deselectRowMeta = data.selectRowMeta.clone();
+    meta.getDeleteFields( data.deselectRowMeta );
+    data.metadataRowMeta = data.deselectRowMeta.clone();
+    meta.getMetadataFields( data.metadataRowMeta, getStepname(), this );
+  }
+
+  private Object[] selectRowData( Object[] rowData ) throws KettleException {
+    Object[] outputData = rowData;
+
+    if ( data.select ) {
+      outputData = selectValues( getInputRowMeta(), outputData );
+    }
+    if ( data.deselect ) {
+      outputData = removeValues( data.selectRowMeta, outputData );
+    }
+    if ( data.metadata ) {
+      outputData = metadataValues( data.deselectRowMeta, outputData );
+    }
+    return outputData;
+  }
+
+  private void handleSelectError( KettleException e, Object[] rowCopy ) throws KettleException {
+    if ( getStepMeta().isDoingErrorHandling() ) {
+      String field;
+      if ( e instanceof KettleConversionException ) {
+        List<ValueMetaInterface> fields = ( (KettleConversionException) e ).getFields();
+        field = fields.isEmpty() ? null : fields.get( 0 ).getName();
+      } else {
+        field = null;
+      }
+      putError( getInputRowMeta(), rowCopy, 1, e.getMessage(), field, "SELECT001" );
+    } else {
+      throw e;
+    }
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (SelectValuesMeta) smi;
     data = (SelectValuesData) sdi;
@@ -156,6 +156,10 @@ public class SimpleMapping extends BaseStep implements StepInterface {
     //
     simpleMappingData.mappingTrans.setSafeModeEnabled( getTrans().isSafeModeEnabled() );
 
+    // Run the steps of the mapping on the same kind of threads
+    //
+    simpleMappingData.mappingTrans.setStepThreadMode( getTrans().getStepThreadMode() );
+
     // Pass down the metrics gathering flag:
     //
     simpleMappingData.mappingTrans.setGatheringMetrics( getTrans().isGatheringMetrics() );
@@ -0,0 +1,151 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A tree of losers to merge a number of sorted runs (temporary files) into one. The tree keeps the current row of every
+ * run in its leaves and the loser of every match in its inner nodes so that replacing the winner only takes log2(runs)
+ * comparisons: just the matches on the path from the winner's leaf to the root are replayed.<br>
+ * <br>
+ * Runs that are exhausted have a null row and lose every match. When rows are equal the run with the lowest number
+ * wins, that way merging the runs in the order they were written keeps the sort stable.
+ *
+ * @since 9.1
+ */
+public class LoserTree {
+  private final Comparator<RowTempFile> comparator;
+
+  /**
+   * The current row of every run, the file number of a leaf is its index.
+   */
+  private final RowTempFile[] leaves;
+
+  /**
+   * The index of the loser of the match played in every inner node, the overall winner is kept in node 0.
+   */
+  private final int[] tree;
+
+  /**
+   * Builds the tree with the first row of every run.
+   *
+   * @param rows
+   *          the first row of every run, the row of an empty run is null
+   * @param comparator
+   *          the comparator of the rows
+   */
+  public LoserTree( List<RowTempFile> rows, Comparator<RowTempFile> comparator ) {
+    this.comparator = comparator;
+    int size = rows.size();
+    leaves = new RowTempFile[ size ];
+    for ( int i = 0; i < size; i++ ) {
+      leaves[ i ] = new RowTempFile( rows.get( i ).row, rows.get( i ).key, i );
+    }
+    tree = new int[ Math.max( 1, size ) ];
+
+    // Play all the matches bottom up: leaf i is node size+i, the children of node n are nodes 2n and 2n+1
+    //
+    int[] winners = new int[ 2 * size ];
+    for ( int i = 0; i < size; i++ ) {
+      winners[ size + i ] = i;
+    }
+    for ( int node = size - 1; node > 0; node-- ) {
+      int left = winners[ 2 * node ];
+      int right = winners[ 2 * node + 1 ];
+      if ( beats( right, left ) ) {
+        winners[ node ] = right;
+        tree[ node ] = left;
+      } else {
+        winners[ node ] = left;
+        tree[ node ] = right;
+      }
+    }
+    tree[ 0 ] = size > 1 ? winners[ 1 ] : 0;
+  }
+
+  /**
+   * @return true if all the runs are exhausted
+   */
+  public boolean isEmpty() {
+    return leaves.length == 0 || leaves[ tree[ 0 ] ].row == null;
+  }
+
+  /**
+   * @return the smallest row of all the runs with the number of the run it came from, null if all runs are exhausted
+   */
+  public RowTempFile peek() {
+    return isEmpty() ? null : leaves[ tree[ 0 ] ];
+  }
+
+  /**
+   * Replaces the smallest row with the next row of the same run and finds the new smallest row.
+   *
+   * @param row
+   *          the next row of the run of the smallest row, null if the run is exhausted
+   */
+  public void replaceWinner( Object[] row ) {
+    replaceWinner( row, null );
+  }
+
+  /**
+   * Replaces the smallest row with the next row of the same run and finds the new smallest row.
+   *
+   * @param row
+   *          the next row of the run of the smallest row, null if the run is exhausted
+   * @param key
+   *          the binary sort key of the row, null if the rows are compared field by field
+   */
+  public void replaceWinner( Object[] row, byte[] key ) {
+    int winner = tree[ 0 ];
+    leaves[ winner ].row = row;
+    leaves[ winner ].key = key;
+
+    for ( int node = ( leaves.length + winner ) / 2; node > 0; node /= 2 ) {
+      if ( beats( tree[ node ], winner ) ) {
+        int loser = winner;
+        winner = tree[ node ];
+        tree[ node ] = loser;
+      }
+    }
+    tree[ 0 ] = winner;
+  }
+
+  /**
+   * @return true if leaf a comes before leaf b
+   */
+  private boolean beats( int a, int b ) {
+    RowTempFile one = leaves[ a ];
+    RowTempFile two = leaves[ b ];
+    if ( one.row == null ) {
+      return false;
+    }
+    if ( two.row == null ) {
+      return true;
+    }
+    int cmp = comparator.compare( one, two );
+    return cmp < 0 || ( cmp == 0 && a < b );
+  }
+}
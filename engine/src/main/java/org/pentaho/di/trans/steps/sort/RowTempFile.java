@@ -29,8 +29,18 @@ public class RowTempFile {
   public Object[] row;
   public int fileNumber;
 
+  /**
+   * The binary sort key of the row, null if the rows are compared field by field
+   */
+  public byte[] key;
+
   public RowTempFile( Object[] row, int fileNumber ) {
     this.row = row;
     this.fileNumber = fileNumber;
   }
+
+  public RowTempFile( Object[] row, byte[] key, int fileNumber ) {
+    this( row, fileNumber );
+    this.key = key;
+  }
 }
@@ -23,19 +23,15 @@
 package org.pentaho.di.trans.steps.sort;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
@@ -44,7 +40,12 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -64,6 +65,11 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class SortRows extends BaseStep implements StepInterface {
   private static Class<?> PKG = SortRows.class; // for i18n
 
+  /**
+   * Buffers smaller than this are not worth splitting up over several threads.
+   */
+  private static final int PARALLEL_SORT_MIN_SIZE = 8192;
+
   private SortRowsMeta meta;
   private SortRowsData data;
 
@@ -132,8 +138,7 @@ public class SortRows extends BaseStep implements StepInterface {
     quickSort( data.buffer );
 
     // Then write them to disk...
-    DataOutputStream dos;
-    GZIPOutputStream gzos;
+    RowSpillWriter writer;
     int p;
 
     try {
@@ -142,14 +147,7 @@ public class SortRows extends BaseStep implements StepInterface {
               getTransMeta() );
 
       data.files.add( fileObject ); // Remember the files!
-      OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
-      if ( data.compressFiles ) {
-        gzos = new GZIPOutputStream( new BufferedOutputStream( outputStream ) );
-        dos = new DataOutputStream( gzos );
-      } else {
-        dos = new DataOutputStream( new BufferedOutputStream( outputStream, 500000 ) );
-        gzos = null;
-      }
+      writer = createTempFileWriter( fileObject );
 
       // Just write the data, nothing else
       List<Integer> duplicates = new ArrayList<Integer>();
@@ -159,7 +157,9 @@ public class SortRows extends BaseStep implements StepInterface {
         while ( index < data.buffer.size() ) {
           Object[] row = data.buffer.get( index );
           if ( previousRow != null ) {
-            int result = data.outputRowMeta.compare( row, previousRow, data.fieldnrs );
+            int result = data.bufferKeys != null
+                ? SortKeyEncoder.compare( data.bufferKeys[index], data.bufferKeys[index - 1] )
+                : data.outputRowMeta.compare( row, previousRow, data.fieldnrs );
             if ( result == 0 ) {
               duplicates.add( index );
               if ( log.isRowLevel() ) {
@@ -186,7 +186,7 @@ public class SortRows extends BaseStep implements StepInterface {
           }
         }
         if ( !skip ) {
-          data.outputRowMeta.writeData( dos, data.buffer.get( p ) );
+          writeTempFileRow( writer, data.buffer.get( p ), data.bufferKeys != null ? data.bufferKeys[p] : null );
         }
       }
 
@@ -205,13 +205,10 @@ public class SortRows extends BaseStep implements StepInterface {
 
       // Clear the list
       data.buffer.clear();
+      data.bufferKeys = null;
 
       // Close temp-file
-      dos.close(); // close data stream
-      if ( gzos != null ) {
-        gzos.close(); // close gzip stream
-      }
-      outputStream.close(); // close file stream
+      writer.close(); // also closes the file stream
 
       // How much memory do we have left?
       //
@@ -230,40 +227,60 @@ public class SortRows extends BaseStep implements StepInterface {
     data.getBufferIndex = 0;
   }
 
-  private DataInputStream getDataInputStream( GZIPInputStream gzipInputStream ) {
-    DataInputStream result = new DataInputStream( gzipInputStream );
-    data.gzis.add( gzipInputStream );
-    return result;
+  /**
+   * Opens a temp file to write sorted rows to in the spill file format.
+   */
+  private RowSpillWriter createTempFileWriter( FileObject fileObject ) throws KettleException {
+    OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
+    try {
+      return new RowSpillWriter( outputStream, data.outputRowMeta, data.spillCompression );
+    } catch ( KettleException e ) {
+      BaseStep.closeQuietly( outputStream );
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a temp file to read the sorted rows back.
+   */
+  private RowSpillReader createTempFileReader( FileObject fileObject ) throws KettleException {
+    InputStream inputStream = KettleVFS.getInputStream( fileObject );
+    try {
+      return new RowSpillReader( new BufferedInputStream( inputStream, 50000 ), data.outputRowMeta );
+    } catch ( KettleException e ) {
+      BaseStep.closeQuietly( inputStream );
+      throw e;
+    }
   }
 
   // get sorted rows from available files in iterative manner.
   // that means call to this method will continue to return rows
   // till all temp files will not be read to the end.
-  Object[] getBuffer() throws KettleValueException {
+  Object[] getBuffer() throws KettleException {
     Object[] retval;
 
     // Open all files at once and read one row from each file...
-    if ( data.files.size() > 0 && ( data.dis.size() == 0 || data.fis.size() == 0 ) ) {
-      if ( log.isBasic() ) {
-        logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
-      }
-
+    if ( data.files.size() > 0 && data.mergeTree == null ) {
+      List<RowTempFile> rows = new ArrayList<RowTempFile>();
       try {
+        // Too many files to merge at once? Merge them in several passes...
+        //
+        if ( data.maxMergeFiles > 1 && data.files.size() > data.maxMergeFiles ) {
+          mergeTempFiles();
+        }
+
+        if ( log.isBasic() ) {
+          logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
+        }
+
         for ( int f = 0; f < data.files.size() && !isStopped(); f++ ) {
           FileObject fileObject = data.files.get( f );
           String filename = KettleVFS.getFilename( fileObject );
           if ( log.isDetailed() ) {
             logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OpeningTempFile", filename ) );
           }
-          InputStream fi = KettleVFS.getInputStream( fileObject );
-          DataInputStream di;
-          data.fis.add( fi );
-          if ( data.compressFiles ) {
-            di = getDataInputStream( new GZIPInputStream( new BufferedInputStream( fi ) ) );
-          } else {
-            di = new DataInputStream( new BufferedInputStream( fi, 50000 ) );
-          }
-          data.dis.add( di );
+          RowSpillReader reader = createTempFileReader( fileObject );
+          data.readers.add( reader );
 
           // How long is the buffer?
           int buffersize = data.bufferSizes.get( f );
@@ -273,18 +290,15 @@ public class SortRows extends BaseStep implements StepInterface {
                 filename, buffersize ) );
           }
 
-          if ( buffersize > 0 ) {
-            Object[] row = data.outputRowMeta.readData( di );
-            data.rowbuffer.add( row ); // new row from input stream
-            data.tempRows.add( new RowTempFile( row, f ) );
-          }
+          // new row from input stream
+          rows.add( buffersize > 0 ? readTempFileRow( reader, f ) : new RowTempFile( null, f ) );
         }
-
-        // Sort the data row buffer
-        Collections.sort( data.tempRows, data.comparator );
       } catch ( Exception e ) {
-        logError( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
+        throw new KettleException( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
       }
+
+      // Merge the files: the smallest row of all the files wins
+      data.mergeTree = new LoserTree( rows, data.comparator );
     }
 
     if ( data.files.size() == 0 ) {
@@ -299,77 +313,156 @@ public class SortRows extends BaseStep implements StepInterface {
     } else {
       // read from disk processing
 
-      if ( data.rowbuffer.size() == 0 ) {
-        retval = null;
+      RowTempFile rowTempFile = data.mergeTree.peek();
+      if ( rowTempFile == null ) {
+        retval = null; // all files are read back completely
       } else {
-        // We now have "filenr" rows waiting: which one is the smallest?
-        //
-        if ( log.isRowLevel() ) {
-          for ( int i = 0; i < data.rowbuffer.size() && !isStopped(); i++ ) {
-            Object[] b = data.rowbuffer.get( i );
-            logRowlevel( BaseMessages
-                .getString( PKG, "SortRows.RowLevel.PrintRow", i, data.outputRowMeta.getString( b ) ) );
-          }
-        }
-
-        RowTempFile rowTempFile = data.tempRows.remove( 0 );
         retval = rowTempFile.row;
         int smallest = rowTempFile.fileNumber;
+        if ( log.isRowLevel() ) {
+          logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.PrintRow", smallest, data.outputRowMeta
+              .getString( retval ) ) );
+        }
 
         // now get another Row for position smallest
 
         FileObject file = data.files.get( smallest );
-        DataInputStream di = data.dis.get( smallest );
-        InputStream fi = data.fis.get( smallest );
-
-        try {
-          Object[] row2 = data.outputRowMeta.readData( di );
-          RowTempFile extra = new RowTempFile( row2, smallest );
-
-          int index = Collections.binarySearch( data.tempRows, extra, data.comparator );
-          if ( index < 0 ) {
-            data.tempRows.add( index * ( -1 ) - 1, extra );
-          } else {
-            data.tempRows.add( index, extra );
-          }
-        } catch ( KettleFileException fe ) { // empty file or EOF mostly
-          GZIPInputStream gzfi = ( data.compressFiles ) ? data.gzis.get( smallest ) : null;
+        RowSpillReader reader = data.readers.get( smallest );
+
+        RowTempFile next = readTempFileRow( reader, smallest );
+        data.mergeTree.replaceWinner( next.row, next.key );
+
+        if ( next.row == null ) { // end of the file
           try {
-            di.close();
-            fi.close();
-            if ( gzfi != null ) {
-              gzfi.close();
-            }
+            reader.close();
             file.delete();
-          } catch ( IOException e ) {
+          } catch ( KettleFileException | IOException e ) {
             logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", smallest, file.toString() ) );
             setErrors( 1 );
             stopAll();
             return null;
           }
+        }
+      }
+    }
+    return retval;
+  }
 
-          data.files.remove( smallest );
-          data.dis.remove( smallest );
-          data.fis.remove( smallest );
+  /**
+   * Reads the next row (and its sort key) from a temp file.
+   *
+   * @return the row, the row is null if there are no more rows in the file
+   * @throws KettleFileException
+   *           in case the file can't be read
+   */
+  private RowTempFile readTempFileRow( RowSpillReader reader, int fileNumber ) throws KettleFileException {
+    byte[] key = null;
+    if ( data.sortKeyEncoder != null ) {
+      key = reader.readBytes();
+      if ( key == null ) {
+        return new RowTempFile( null, fileNumber );
+      }
+    }
+    return new RowTempFile( reader.readRow(), key, fileNumber );
+  }
 
-          if ( gzfi != null ) {
-            data.gzis.remove( smallest );
-          }
+  /**
+   * Writes a row to a temp file, preceded by its sort key if we have one.
+   */
+  private void writeTempFileRow( RowSpillWriter writer, Object[] row, byte[] key ) throws KettleException {
+    if ( key != null ) {
+      writer.writeBytes( key );
+    }
+    writer.writeRow( row );
+  }
 
-          // Also update all file numbers in in data.tempRows if they are larger
-          // than smallest.
-          //
-          for ( RowTempFile rtf : data.tempRows ) {
-            if ( rtf.fileNumber > smallest ) {
-              rtf.fileNumber--;
-            }
-          }
-        } catch ( SocketTimeoutException e ) {
-          throw new KettleValueException( e ); // should never happen on local files
+  private void closeQuietly( RowSpillReader reader ) {
+    try {
+      reader.close();
+    } catch ( KettleFileException e ) {
+      // Ignore errors
+    }
+  }
+
+  /**
+   * Merges groups of consecutive temp files into one temp file until no more than the maximum number of files is left.
+   * Every pass reads and writes all rows once but never opens more than the maximum number of files at a time. Merging
+   * consecutive files keeps the rows that are equal in the order they were read.
+   */
+  void mergeTempFiles() throws KettleException {
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "SortRows.Basic.MergingTempFiles", data.files.size(),
+          data.maxMergeFiles ) );
+    }
+    while ( data.files.size() > data.maxMergeFiles && !isStopped() ) {
+      for ( int index = 0; index < data.files.size() && !isStopped(); index++ ) {
+        int end = Math.min( index + data.maxMergeFiles, data.files.size() );
+        if ( end - index < 2 ) {
+          continue;
+        }
+        List<FileObject> files = data.files.subList( index, end );
+        List<Integer> sizes = data.bufferSizes.subList( index, end );
+        long nrRows = 0L;
+        for ( Integer size : sizes ) {
+          nrRows += size;
         }
+        FileObject merged = mergeTempFiles( files );
+
+        files.clear();
+        sizes.clear();
+        data.files.add( index, merged );
+        // The number of rows is only used to see if a file is empty
+        data.bufferSizes.add( index, (int) Math.min( nrRows, Integer.MAX_VALUE ) );
       }
     }
-    return retval;
+  }
+
+  /**
+   * Merges the rows of a number of sorted temp files into a new sorted temp file and deletes the merged files.
+   *
+   * @return the new temp file
+   */
+  private FileObject mergeTempFiles( List<FileObject> files ) throws KettleException {
+    FileObject fileObject;
+    List<RowSpillReader> inputs = new ArrayList<RowSpillReader>();
+    try {
+      List<RowTempFile> rows = new ArrayList<RowTempFile>();
+      for ( int f = 0; f < files.size(); f++ ) {
+        RowSpillReader reader = createTempFileReader( files.get( f ) );
+        inputs.add( reader );
+        rows.add( readTempFileRow( reader, f ) );
+      }
+
+      fileObject =
+          KettleVFS.createTempFile( meta.getPrefix(), ".tmp", environmentSubstitute( meta.getDirectory() ),
+              getTransMeta() );
+      RowSpillWriter writer = createTempFileWriter( fileObject );
+      try {
+        LoserTree mergeTree = new LoserTree( rows, data.comparator );
+        for ( RowTempFile row = mergeTree.peek(); row != null && !isStopped(); row = mergeTree.peek() ) {
+          writeTempFileRow( writer, row.row, row.key );
+          RowTempFile next = readTempFileRow( inputs.get( row.fileNumber ), row.fileNumber );
+          mergeTree.replaceWinner( next.row, next.key );
+        }
+      } finally {
+        writer.close(); // also closes the file stream
+      }
+    } catch ( Exception e ) {
+      throw new KettleException( "Error merging temp-files!", e );
+    } finally {
+      for ( RowSpillReader reader : inputs ) {
+        closeQuietly( reader );
+      }
+    }
+
+    try {
+      for ( FileObject file : files ) {
+        file.delete();
+      }
+    } catch ( FileSystemException e ) {
+      throw new KettleException( "Error deleting merged temp-files!", e );
+    }
+    return fileObject;
   }
 
   @Override
@@ -438,6 +531,12 @@ public class SortRows extends BaseStep implements StepInterface {
         i++;
       }
       data.rowComparator = new RowObjectArrayComparator( data.outputRowMeta, data.fieldnrs );
+
+      // Compare binary sort keys instead of the key fields?
+      if ( ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_SORT_NORMALIZED_KEYS, "N" ) )
+          && SortKeyEncoder.isSupported( data.outputRowMeta, data.fieldnrs ) ) {
+        data.sortKeyEncoder = new SortKeyEncoder( data.outputRowMeta, data.fieldnrs );
+      }
     } // end if first
 
     // it is not first row and it is null
@@ -570,13 +669,11 @@ public class SortRows extends BaseStep implements StepInterface {
     //
     data.buffer = new ArrayList<Object[]>( 5000 );
 
-    // Buffer for reading from disk
-    //
-    data.rowbuffer = new ArrayList<Object[]>( 5000 );
-
     data.compressFiles = getBooleanValueOfVariable( meta.getCompressFilesVariable(), meta.getCompressFiles() );
+    data.spillCompression = RowSpillCompression.getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ),
+        data.compressFiles ? RowSpillCompression.DEFLATE : RowSpillCompression.NONE );
 
-    data.tempRows = new ArrayList<RowTempFile>();
+    data.maxMergeFiles = Const.toInt( getVariable( Const.KETTLE_SORT_ROWS_MAX_MERGE_FILES ), -1 );
 
     data.minSortSize = 5000;
 
@@ -594,18 +691,13 @@ public class SortRows extends BaseStep implements StepInterface {
     // Clean out the sort buffer
     data.buffer.clear();
     data.getBufferIndex = 0;
-    data.rowbuffer.clear();
+    data.bufferKeys = null;
+    data.mergeTree = null;
 
-    // close any open DataInputStream objects
-    if ( ( data.dis != null ) && ( data.dis.size() > 0 ) ) {
-      for ( DataInputStream dis : data.dis ) {
-        BaseStep.closeQuietly( dis );
-      }
-    }
-    // close any open InputStream objects
-    if ( ( data.fis != null ) && ( data.fis.size() > 0 ) ) {
-      for ( InputStream is : data.fis ) {
-        BaseStep.closeQuietly( is );
+    // close any open temp-file readers
+    if ( data.readers != null ) {
+      for ( RowSpillReader reader : data.readers ) {
+        closeQuietly( reader );
       }
     }
     // remove temp files
@@ -619,14 +711,31 @@ public class SortRows extends BaseStep implements StepInterface {
         logError( e.getLocalizedMessage(), e );
       }
     }
+    data.files.clear();
+    data.readers.clear();
+    data.bufferSizes.clear();
   }
 
   /**
    * Sort the entire vector, if it is not empty.
    */
   void quickSort( List<Object[]> elements ) throws KettleException {
+    data.bufferKeys = null;
     if ( elements.size() > 0 ) {
-      Collections.sort( elements, data.rowComparator );
+      boolean parallel = elements.size() >= PARALLEL_SORT_MIN_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1;
+      if ( data.sortKeyEncoder != null ) {
+        sortOnKeys( elements, parallel );
+      } else if ( parallel ) {
+        // Sort large buffers on all the available cores, the sort is stable just like Collections.sort()
+        //
+        Object[][] rows = elements.toArray( new Object[elements.size()][] );
+        Arrays.parallelSort( rows, data.rowComparator );
+        for ( int i = 0; i < rows.length; i++ ) {
+          elements.set( i, rows[i] );
+        }
+      } else {
+        Collections.sort( elements, data.rowComparator );
+      }
 
       long nrConversions = 0L;
       for ( ValueMetaInterface valueMeta : data.outputRowMeta.getValueMetaList() ) {
@@ -639,6 +748,28 @@ public class SortRows extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Encodes the sort key of every row once and sorts the rows on their keys. The keys are kept in the same order as the
+   * rows so they can be written to the temp files.
+   */
+  private void sortOnKeys( List<Object[]> elements, boolean parallel ) throws KettleException {
+    RowTempFile[] rows = new RowTempFile[elements.size()];
+    for ( int i = 0; i < rows.length; i++ ) {
+      Object[] row = elements.get( i );
+      rows[i] = new RowTempFile( row, data.sortKeyEncoder.encode( row ), 0 );
+    }
+    if ( parallel ) {
+      Arrays.parallelSort( rows, data.comparator );
+    } else {
+      Arrays.sort( rows, data.comparator );
+    }
+    data.bufferKeys = new byte[rows.length][];
+    for ( int i = 0; i < rows.length; i++ ) {
+      elements.set( i, rows[i].row );
+      data.bufferKeys[i] = rows[i].key;
+    }
+  }
+
   /**
    * Calling this method will alert the step that we finished passing records to the step. Specifically for steps like
    * "Sort Rows" it means that the buffered rows can be sorted and passed on.
@@ -694,6 +825,9 @@ public class SortRows extends BaseStep implements StepInterface {
 
     @Override
     public int compare( RowTempFile o1, RowTempFile o2 ) {
+      if ( o1.key != null && o2.key != null ) {
+        return SortKeyEncoder.compare( o1.key, o2.key );
+      }
       try {
         return rowMeta.compare( o1.row, o2.row, fieldNrs );
       } catch ( KettleValueException e ) {
@@ -22,15 +22,15 @@
 
 package org.pentaho.di.trans.steps.sort;
 
-import java.io.DataInputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -43,26 +43,35 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public List<Object[]> buffer;
   public int getBufferIndex;
 
-  public List<InputStream> fis;
-  public List<GZIPInputStream> gzis;
-  public List<DataInputStream> dis;
-  public List<Object[]> rowbuffer;
+  public List<RowSpillReader> readers;
   public List<Integer> bufferSizes;
 
-  // To store rows and file references
-  public List<RowTempFile> tempRows;
+  // To merge the rows of the temp files
+  public LoserTree mergeTree;
+  public int maxMergeFiles;
 
   public int[] fieldnrs; // the corresponding field numbers;
   public FileObject fil;
   public RowMetaInterface outputRowMeta;
   public int sortSize;
   public boolean compressFiles;
+  public RowSpillCompression spillCompression;
   public int[] convertKeysToNative;
   public boolean convertAnyKeysToNative;
 
   Comparator<RowTempFile> comparator;
   Comparator<Object[]> rowComparator;
 
+  /**
+   * Encodes the binary sort keys, null if the rows are compared field by field
+   */
+  public SortKeyEncoder sortKeyEncoder;
+
+  /**
+   * The sort keys of the rows in the sorted buffer
+   */
+  public byte[][] bufferKeys;
+
   public int freeCounter;
   public int freeMemoryPct;
   public int minSortSize;
@@ -80,9 +89,7 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
     super();
 
     files = new ArrayList<FileObject>();
-    fis = new ArrayList<InputStream>();
-    gzis = new ArrayList<GZIPInputStream>();
-    dis = new ArrayList<DataInputStream>();
+    readers = new ArrayList<RowSpillReader>();
     bufferSizes = new ArrayList<Integer>();
 
     previous = null; // Heroic
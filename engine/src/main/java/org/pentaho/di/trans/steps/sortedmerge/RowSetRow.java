@@ -29,6 +29,7 @@ public class RowSetRow {
   private RowSet rowSet;
   private RowMetaInterface rowMeta;
   private Object[] rowData;
+  private byte[] key;
 
   /**
    * @param rowSet
@@ -85,4 +86,19 @@ public class RowSetRow {
   public void setRowMeta( RowMetaInterface rowMeta ) {
     this.rowMeta = rowMeta;
   }
+
+  /**
+   * @return the binary sort key of the row, null if the rows are compared field by field
+   */
+  public byte[] getKey() {
+    return key;
+  }
+
+  /**
+   * @param key
+   *          the binary sort key to set
+   */
+  public void setKey( byte[] key ) {
+    this.key = key;
+  }
 }
@@ -27,10 +27,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -93,10 +96,6 @@ public class SortedMerge extends BaseStep implements StepInterface {
         RowSet rowSet = inputRowSets.get( i );
         Object[] row = getRowFrom( rowSet );
         if ( row != null ) {
-          // Add this row to the sortedBuffer...
-          // Which is not yet sorted, we'll get to that later.
-          //
-          data.sortedBuffer.add( new RowSetRow( rowSet, rowSet.getRowMeta(), row ) );
           if ( data.rowMeta == null ) {
             data.rowMeta = rowSet.getRowMeta().clone();
           }
@@ -118,12 +117,28 @@ public class SortedMerge extends BaseStep implements StepInterface {
 
               data.rowMeta.getValueMeta( data.fieldIndices[f] ).setSortedDescending( !meta.getAscending()[f] );
             }
+
+            // Compare binary sort keys instead of the key fields? The keys are encoded just like the rows are
+            // compared: with the metadata of the row set.
+            //
+            if ( ValueMetaBase.convertStringToBoolean( getVariable( Const.KETTLE_SORT_NORMALIZED_KEYS, "N" ) )
+              && SortKeyEncoder.isSupported( rowSet.getRowMeta(), data.fieldIndices ) ) {
+              data.sortKeyEncoder = new SortKeyEncoder( rowSet.getRowMeta(), data.fieldIndices );
+            }
           }
+
+          // Add this row to the sortedBuffer...
+          // Which is not yet sorted, we'll get to that later.
+          //
+          data.sortedBuffer.add( newRowSetRow( rowSet, row ) );
         }
 
         data.comparator = new Comparator<RowSetRow>() {
 
           public int compare( RowSetRow o1, RowSetRow o2 ) {
+            if ( o1.getKey() != null && o2.getKey() != null ) {
+              return SortKeyEncoder.compare( o1.getKey(), o2.getKey() );
+            }
             try {
               return o1.getRowMeta().compare( o1.getRowData(), o2.getRowData(), data.fieldIndices );
             } catch ( KettleValueException e ) {
@@ -161,7 +176,7 @@ public class SortedMerge extends BaseStep implements StepInterface {
     if ( extraRow != null ) {
       // Add this one to the sortedBuffer
       //
-      RowSetRow add = new RowSetRow( smallestRow.getRowSet(), smallestRow.getRowSet().getRowMeta(), extraRow );
+      RowSetRow add = newRowSetRow( smallestRow.getRowSet(), extraRow );
       int index = Collections.binarySearch( data.sortedBuffer, add, data.comparator );
       if ( index < 0 ) {
         data.sortedBuffer.add( -index - 1, add );
@@ -184,6 +199,14 @@ public class SortedMerge extends BaseStep implements StepInterface {
     return outputRowData;
   }
 
+  private RowSetRow newRowSetRow( RowSet rowSet, Object[] row ) throws KettleValueException {
+    RowSetRow rowSetRow = new RowSetRow( rowSet, rowSet.getRowMeta(), row );
+    if ( data.sortKeyEncoder != null ) {
+      rowSetRow.setKey( data.sortKeyEncoder.encode( row ) );
+    }
+    return rowSetRow;
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (SortedMergeMeta) smi;
     data = (SortedMergeData) sdi;
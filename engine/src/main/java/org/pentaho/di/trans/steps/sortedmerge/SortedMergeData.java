@@ -26,6 +26,7 @@ import java.util.Comparator;
 import java.util.List;
 
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.SortKeyEncoder;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -41,6 +42,11 @@ public class SortedMergeData extends BaseStepData implements StepDataInterface {
   public List<RowSetRow> sortedBuffer;
   public Comparator<RowSetRow> comparator;
 
+  /**
+   * Encodes the binary sort keys, null if the rows are compared field by field
+   */
+  public SortKeyEncoder sortKeyEncoder;
+
   public SortedMergeData() {
     super();
   }
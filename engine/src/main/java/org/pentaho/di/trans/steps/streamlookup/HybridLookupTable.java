@@ -0,0 +1,316 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillPartitions;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
+
+/**
+ * The lookup table of the Stream Lookup step when it's allowed to spill to disk (hybrid hash join). The lookup rows are
+ * hashed into partitions which are kept in memory as long as they fit in the maximum amount of memory. When they don't,
+ * the largest partition in memory is written to a temporary file and all the lookup rows of that partition are appended
+ * to the file from then on, see {@link RowSpillPartitions}.<br>
+ * <br>
+ * Rows of the main stream with a key in a partition in memory are looked up right away. The others are written to a
+ * probe file of their partition and are looked up at the end, see {@link #forEachSpilledRow(ProbeHandler)}: every
+ * spilled partition is read back into a table of its own, which spills again on the next bits of the hash if it still
+ * doesn't fit, and its probe rows are looked up.
+ *
+ * @since 9.1
+ */
+public class HybridLookupTable {
+
+  /**
+   * Handles the main stream rows that were spilled, once their lookup rows are back in memory.
+   */
+  public interface ProbeHandler {
+    /**
+     * @param row
+     *          the row of the main stream
+     * @param value
+     *          the values found for the key of the row or null if nothing was found
+     */
+    void handleRow( Object[] row, Object[] value ) throws KettleException;
+  }
+
+  private static final int NR_PARTITIONS = RowSpillPartitions.NR_PARTITIONS;
+  private static final int MAX_LEVEL = RowSpillPartitions.getMaxLevel( 32 );
+
+  /**
+   * Estimated overhead of an entry: the hash map entry, the key object and the arrays.
+   */
+  private static final int ENTRY_OVERHEAD = 112;
+
+  private final RowMetaInterface keyMeta;
+  private final RowMetaInterface valueMeta;
+  private final RowMetaInterface buildMeta;
+  private final long maxMemory;
+  private final File directory;
+  private final RowSpillCompression compression;
+  private final int level;
+
+  private final Map<RowMetaAndData, Object[]>[] partitions;
+  private final long[] partitionBytes;
+  private long usedMemory;
+
+  private final RowSpillPartitions buildFiles;
+  private final RowSpillPartitions probeFiles;
+  private RowMetaInterface probeRowMeta;
+  private RowMetaInterface probeMeta;
+  private int nrSpills;
+
+  /**
+   * @param keyMeta
+   *          the metadata of the keys, in normal storage
+   * @param valueMeta
+   *          the metadata of the values
+   * @param maxMemory
+   *          the estimated number of bytes the lookup rows can use in memory
+   * @param directory
+   *          the directory of the temporary files or null for the default temporary directory
+   * @param compression
+   *          the compression of the temporary files
+   */
+  public HybridLookupTable( RowMetaInterface keyMeta, RowMetaInterface valueMeta, long maxMemory, File directory,
+    RowSpillCompression compression ) {
+    this( keyMeta, valueMeta, maxMemory, directory, compression, 0 );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private HybridLookupTable( RowMetaInterface keyMeta, RowMetaInterface valueMeta, long maxMemory, File directory,
+    RowSpillCompression compression, int level ) {
+    this.keyMeta = keyMeta;
+    this.valueMeta = valueMeta;
+    this.maxMemory = Math.max( 0L, maxMemory );
+    this.directory = directory;
+    this.compression = compression;
+    this.level = level;
+
+    buildMeta = new RowMeta();
+    buildMeta.addRowMeta( keyMeta );
+    buildMeta.addRowMeta( valueMeta );
+
+    partitions = new Map[ NR_PARTITIONS ];
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      partitions[ p ] = new HashMap<RowMetaAndData, Object[]>();
+    }
+    partitionBytes = new long[ NR_PARTITIONS ];
+    buildFiles = new RowSpillPartitions( directory, "streamlookup-build-" + level + "-", compression );
+    probeFiles = new RowSpillPartitions( directory, "streamlookup-probe-" + level + "-", compression );
+  }
+
+  /**
+   * Adds a lookup row, the values of a key that was added before are replaced.
+   */
+  public void put( Object[] keyData, Object[] valueData ) throws KettleException {
+    int p = getPartition( keyData );
+    if ( buildFiles.getWriter( p ) != null ) {
+      buildFiles.getWriter( p ).writeRow( createBuildRow( keyData, valueData ) );
+      return;
+    }
+
+    Object[] previous = partitions[ p ].put( new RowMetaAndData( keyMeta, keyData ), valueData );
+    long size = previous == null
+      ? ENTRY_OVERHEAD + RowSpillPartitions.estimateSize( keyData ) + RowSpillPartitions.estimateSize( valueData )
+      : RowSpillPartitions.estimateSize( valueData ) - RowSpillPartitions.estimateSize( previous );
+    partitionBytes[ p ] += size;
+    usedMemory += size;
+
+    while ( level < MAX_LEVEL && usedMemory > maxMemory && spillLargestPartition() ) {
+      // keep on spilling until the rows fit
+    }
+  }
+
+  /**
+   * @return true if the lookup rows for the key are on disk, the row with the key has to be passed to
+   *         {@link #spillProbeRow(Object[], RowMetaInterface, Object[])}
+   */
+  public boolean isSpilled( Object[] keyData ) throws KettleValueException {
+    return buildFiles.isSpilled( getPartition( keyData ) );
+  }
+
+  /**
+   * @return the values for the key or null if nothing was found, only valid for keys that aren't spilled
+   */
+  public Object[] get( Object[] keyData ) throws KettleValueException {
+    return partitions[ getPartition( keyData ) ].get( new RowMetaAndData( keyMeta, keyData ) );
+  }
+
+  /**
+   * Writes a main stream row to the probe file of its partition, it's looked up at the end.
+   */
+  public void spillProbeRow( Object[] keyData, RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    int p = getPartition( keyData );
+    if ( probeMeta == null ) {
+      probeRowMeta = rowMeta;
+      probeMeta = new RowMeta();
+      probeMeta.addRowMeta( keyMeta );
+      probeMeta.addRowMeta( rowMeta );
+    }
+    if ( probeFiles.getWriter( p ) == null ) {
+      probeFiles.createWriter( p, probeMeta );
+    }
+
+    Object[] probeRow = new Object[ probeMeta.size() ];
+    System.arraycopy( keyData, 0, probeRow, 0, keyMeta.size() );
+    System.arraycopy( row, 0, probeRow, keyMeta.size(), probeRowMeta.size() );
+    probeFiles.getWriter( p ).writeRow( probeRow );
+  }
+
+  /**
+   * Looks up all the spilled main stream rows, one partition at a time. The order of the rows isn't kept.
+   */
+  public void forEachSpilledRow( ProbeHandler handler ) throws KettleException {
+    // Flush all the files first, that way the buffers of the writers are released before going a level deeper
+    //
+    buildFiles.closeWriters();
+    probeFiles.closeWriters();
+
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( !buildFiles.isSpilled( p ) ) {
+        continue;
+      }
+      if ( !probeFiles.isSpilled( p ) ) {
+        // No rows to look up in this partition
+        //
+        buildFiles.delete( p );
+        continue;
+      }
+
+      HybridLookupTable partition =
+        new HybridLookupTable( keyMeta, valueMeta, maxMemory, directory, compression, level + 1 );
+      try {
+        int nrKeys = keyMeta.size();
+        RowSpillReader reader = buildFiles.createReader( p, buildMeta );
+        try {
+          for ( Object[] buildRow = reader.readRow(); buildRow != null; buildRow = reader.readRow() ) {
+            Object[] keyData = new Object[ nrKeys ];
+            Object[] valueData = new Object[ valueMeta.size() ];
+            System.arraycopy( buildRow, 0, keyData, 0, nrKeys );
+            System.arraycopy( buildRow, nrKeys, valueData, 0, valueData.length );
+            partition.put( keyData, valueData );
+          }
+        } finally {
+          reader.close();
+        }
+        buildFiles.delete( p );
+
+        reader = probeFiles.createReader( p, probeMeta );
+        try {
+          for ( Object[] probeRow = reader.readRow(); probeRow != null; probeRow = reader.readRow() ) {
+            Object[] keyData = new Object[ nrKeys ];
+            Object[] row = new Object[ probeRowMeta.size() ];
+            System.arraycopy( probeRow, 0, keyData, 0, nrKeys );
+            System.arraycopy( probeRow, nrKeys, row, 0, row.length );
+            if ( partition.isSpilled( keyData ) ) {
+              partition.spillProbeRow( keyData, probeRowMeta, row );
+            } else {
+              handler.handleRow( row, partition.get( keyData ) );
+            }
+          }
+        } finally {
+          reader.close();
+        }
+        probeFiles.delete( p );
+
+        partition.forEachSpilledRow( handler );
+        nrSpills += partition.getNrSpills();
+      } finally {
+        partition.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the number of times a partition was spilled to disk, including the partitions of spilled partitions
+   */
+  public int getNrSpills() {
+    return nrSpills;
+  }
+
+  /**
+   * @return the estimated number of bytes of memory in use by the lookup rows
+   */
+  public long getUsedMemory() {
+    return usedMemory;
+  }
+
+  /**
+   * Removes all the lookup rows and deletes the temporary files.
+   */
+  public void clear() {
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      partitions[ p ].clear();
+      partitionBytes[ p ] = 0L;
+    }
+    buildFiles.clear();
+    probeFiles.clear();
+    usedMemory = 0L;
+  }
+
+  private int getPartition( Object[] keyData ) throws KettleValueException {
+    // Spread the hash code, the hash maps of the partitions use its lowest bits
+    //
+    return RowSpillPartitions.getPartition( keyMeta.hashCode( keyData ) * 0x9E3779B9, level );
+  }
+
+  /**
+   * Writes the largest partition in memory to disk.
+   *
+   * @return false if there was nothing left to spill
+   */
+  private boolean spillLargestPartition() throws KettleException {
+    int largest = buildFiles.getLargestPartition( partitionBytes );
+    if ( largest < 0 ) {
+      return false;
+    }
+
+    RowSpillWriter writer = buildFiles.createWriter( largest, buildMeta );
+    for ( Map.Entry<RowMetaAndData, Object[]> entry : partitions[ largest ].entrySet() ) {
+      writer.writeRow( createBuildRow( entry.getKey().getData(), entry.getValue() ) );
+    }
+    partitions[ largest ] = new HashMap<RowMetaAndData, Object[]>();
+    usedMemory -= partitionBytes[ largest ];
+    partitionBytes[ largest ] = 0L;
+    nrSpills++;
+    return true;
+  }
+
+  private Object[] createBuildRow( Object[] keyData, Object[] valueData ) {
+    Object[] buildRow = new Object[ buildMeta.size() ];
+    System.arraycopy( keyData, 0, buildRow, 0, keyMeta.size() );
+    System.arraycopy( valueData, 0, buildRow, keyMeta.size(), valueMeta.size() );
+    return buildRow;
+  }
+}
@@ -0,0 +1,307 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A read-only lookup index shared by all the copies of a Stream Lookup step, or by all the Stream Lookup steps in the
+ * JVM that use the same name for it. One of the steps reads the lookup rows and builds the index, the others wait for
+ * it and then look up their rows in it concurrently.<br>
+ * <br>
+ * The index is split in partitions on the hash of the key. The partitions are built in parallel in the common fork-join
+ * pool and are never changed afterwards, so no locking is needed to read them. An index is kept as long as a step uses
+ * it: it's removed when the last step releases it.
+ *
+ * @since 9.1
+ */
+public class SharedLookupIndex {
+
+  private static final Map<String, SharedLookupIndex> INDEXES = new HashMap<String, SharedLookupIndex>();
+
+  private final String name;
+  private int references;
+  private boolean building;
+
+  private final CountDownLatch built = new CountDownLatch( 1 );
+  private volatile KettleException failure;
+
+  private RowMetaInterface keyMeta;
+  private RowMetaInterface valueMeta;
+  private int partitionMask;
+  private Map<RowMetaAndData, Object[]>[] maps;
+  private ByteArrayHashIndex[] hashIndexes;
+  private int size;
+
+  private SharedLookupIndex( String name ) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the index with the given name, a new empty index is created if no step uses an index with that name. Every
+   * call has to be matched with a call to {@link #release()}.
+   */
+  public static SharedLookupIndex acquire( String name ) {
+    synchronized ( INDEXES ) {
+      SharedLookupIndex index = INDEXES.get( name );
+      if ( index == null ) {
+        index = new SharedLookupIndex( name );
+        INDEXES.put( name, index );
+      }
+      index.references++;
+      return index;
+    }
+  }
+
+  /**
+   * Stops using the index, the index is removed when no step uses it anymore.
+   */
+  public void release() {
+    synchronized ( INDEXES ) {
+      references--;
+      if ( references <= 0 && INDEXES.get( name ) == this ) {
+        INDEXES.remove( name );
+      }
+    }
+  }
+
+  /**
+   * @return true if the caller has to read the lookup rows and build the index, false if another step does that (or
+   *         did it already) and the caller only has to wait for it
+   */
+  public boolean startBuilding() {
+    synchronized ( INDEXES ) {
+      if ( building ) {
+        return false;
+      }
+      building = true;
+      return true;
+    }
+  }
+
+  /**
+   * Builds the index, the steps that wait for it can use it as soon as this method returns.
+   *
+   * @param keyMeta
+   *          the metadata of the keys, in normal storage, null if there are no lookup rows
+   * @param valueMeta
+   *          the metadata of the values, null if there are no lookup rows
+   * @param keys
+   *          the keys of the lookup rows
+   * @param values
+   *          the values of the lookup rows, the last values of a key are kept
+   * @param preserveMemory
+   *          true to store the keys and values as bytes
+   */
+  public void build( RowMetaInterface keyMeta, RowMetaInterface valueMeta, final List<Object[]> keys,
+    final List<Object[]> values, boolean preserveMemory ) throws KettleException {
+    try {
+      this.keyMeta = keyMeta;
+      this.valueMeta = valueMeta;
+      size = keys.size();
+
+      // A few partitions per thread so the threads finish at about the same time
+      //
+      int nrPartitions = 1;
+      while ( nrPartitions < ForkJoinPool.getCommonPoolParallelism() * 4 && nrPartitions < size ) {
+        nrPartitions <<= 1;
+      }
+      partitionMask = nrPartitions - 1;
+
+      // Hash the keys in parallel first...
+      //
+      final int[] partitionNrs = new int[ size ];
+      int chunkSize = Math.max( 1024, ( size + nrPartitions - 1 ) / nrPartitions );
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for ( int start = 0; start < size; start += chunkSize ) {
+        final int from = start;
+        final int to = Math.min( size, start + chunkSize );
+        tasks.add( new Callable<Void>() {
+          @Override
+          public Void call() throws KettleValueException {
+            for ( int i = from; i < to; i++ ) {
+              partitionNrs[ i ] = getPartition( keys.get( i ) );
+            }
+            return null;
+          }
+        } );
+      }
+      invokeAll( tasks );
+
+      // ... then gather the rows of every partition, in their original order ...
+      //
+      final int[][] partitionRows = new int[ nrPartitions ][];
+      int[] counts = new int[ nrPartitions ];
+      for ( int partitionNr : partitionNrs ) {
+        counts[ partitionNr ]++;
+      }
+      for ( int p = 0; p < nrPartitions; p++ ) {
+        partitionRows[ p ] = new int[ counts[ p ] ];
+        counts[ p ] = 0;
+      }
+      for ( int i = 0; i < size; i++ ) {
+        int p = partitionNrs[ i ];
+        partitionRows[ p ][ counts[ p ]++ ] = i;
+      }
+
+      // ... and build the partitions in parallel.
+      //
+      tasks.clear();
+      if ( preserveMemory ) {
+        hashIndexes = new ByteArrayHashIndex[ nrPartitions ];
+      } else {
+        @SuppressWarnings( "unchecked" )
+        Map<RowMetaAndData, Object[]>[] partitionMaps = new Map[ nrPartitions ];
+        maps = partitionMaps;
+      }
+      for ( int p = 0; p < nrPartitions; p++ ) {
+        final int partition = p;
+        tasks.add( new Callable<Void>() {
+          @Override
+          public Void call() throws KettleValueException {
+            buildPartition( partition, partitionRows[ partition ], keys, values );
+            return null;
+          }
+        } );
+      }
+      invokeAll( tasks );
+    } catch ( KettleException e ) {
+      fail( e );
+      throw e;
+    } catch ( RuntimeException e ) {
+      fail( new KettleException( "Unable to build the shared lookup index", e ) );
+      throw e;
+    }
+    built.countDown();
+  }
+
+  /**
+   * Lets the steps that wait for the index know that it won't be built.
+   */
+  public void fail( KettleException e ) {
+    failure = e;
+    built.countDown();
+  }
+
+  /**
+   * Waits until the index is built.
+   *
+   * @return true if the index is built, false if the time ran out
+   * @throws KettleException
+   *           in case building the index failed or the thread was interrupted
+   */
+  public boolean awaitIndex( long timeout, TimeUnit unit ) throws KettleException {
+    try {
+      if ( !built.await( timeout, unit ) ) {
+        return false;
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for the shared lookup index", e );
+    }
+    if ( failure != null ) {
+      throw new KettleException( "Unable to build the shared lookup index", failure );
+    }
+    return true;
+  }
+
+  /**
+   * @return the values for the key or null if nothing was found, only call this once the index is built
+   */
+  public Object[] get( Object[] keyData ) throws KettleValueException {
+    if ( size == 0 ) {
+      return null;
+    }
+    int p = getPartition( keyData );
+    if ( maps != null ) {
+      return maps[ p ].get( new RowMetaAndData( keyMeta, keyData ) );
+    }
+    byte[] value = hashIndexes[ p ].get( RowMeta.extractData( keyMeta, keyData ) );
+    return value == null ? null : RowMeta.getRow( valueMeta, value );
+  }
+
+  /**
+   * @return the number of lookup rows the index was built from
+   */
+  public int size() {
+    return size;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private int getPartition( Object[] keyData ) throws KettleValueException {
+    // Use the high bits of the spread hash code, the maps of the partitions use the low bits
+    //
+    int hash = keyMeta.hashCode( keyData ) * 0x9E3779B9;
+    return ( hash >>> 16 ) & partitionMask;
+  }
+
+  private void buildPartition( int partition, int[] rows, List<Object[]> keys, List<Object[]> values )
+    throws KettleValueException {
+    if ( maps != null ) {
+      Map<RowMetaAndData, Object[]> map = new HashMap<RowMetaAndData, Object[]>( (int) ( rows.length / 0.75f ) + 1 );
+      for ( int row : rows ) {
+        map.put( new RowMetaAndData( keyMeta, keys.get( row ) ), values.get( row ) );
+      }
+      maps[ partition ] = map;
+    } else {
+      ByteArrayHashIndex hashIndex = new ByteArrayHashIndex( keyMeta, Math.max( 16, rows.length * 2 ) );
+      for ( int row : rows ) {
+        hashIndex.put( RowMeta.extractData( keyMeta, keys.get( row ) ),
+          RowMeta.extractData( valueMeta, values.get( row ) ) );
+      }
+      hashIndexes[ partition ] = hashIndex;
+    }
+  }
+
+  private static void invokeAll( List<Callable<Void>> tasks ) throws KettleException {
+    try {
+      for ( Future<Void> future : ForkJoinPool.commonPool().invokeAll( tasks ) ) {
+        future.get();
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while building the shared lookup index", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Unable to build the shared lookup index", e.getCause() );
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,10 +22,14 @@
 
 package org.pentaho.di.trans.steps.streamlookup;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
@@ -35,6 +39,7 @@ import org.pentaho.di.core.hash.ByteArrayHashIndex;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
 import org.pentaho.di.core.util.Utils;
@@ -59,6 +64,12 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class StreamLookup extends BaseStep implements StepInterface {
   private static Class<?> PKG = StreamLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * Returned by {@link #lookupValues(RowMetaInterface, Object[])} when the lookup rows for the key of the row were
+   * spilled to disk: the row is looked up once all the rows are read.
+   */
+  private static final Object[] DEFERRED = new Object[0];
+
   private StreamLookupMeta meta;
   private StreamLookupData data;
 
@@ -150,6 +161,13 @@ public class StreamLookup extends BaseStep implements StepInterface {
     int[] valueNrs = new int[meta.getValue().length];
     boolean firstRun = true;
 
+    // Only one step builds a shared index, the others still read their lookup rows to keep the rows flowing
+    //
+    if ( data.sharedIndex != null && data.sharedIndex.startBuilding() ) {
+      data.sharedKeys = new ArrayList<Object[]>();
+      data.sharedValues = new ArrayList<Object[]>();
+    }
+
     // Which row set do we read from?
     //
     RowSet rowSet = findInputRowSet( data.infoStream.getStepname() );
@@ -198,6 +216,20 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
         data.cacheKeyMeta = cacheKeyMeta;
         data.cacheValueMeta = cacheValueMeta;
+
+        // Spill the lookup rows to disk if they don't fit in the memory we're allowed to use (hybrid hash join)
+        //
+        long maxMemory = Const.toLong( getVariable( Const.KETTLE_STREAM_LOOKUP_MAX_MEMORY ), 0L );
+        if ( maxMemory > 0 && !meta.isMemoryPreservationActive() && data.sharedIndex == null ) {
+          String spillDirectory = getVariable( Const.KETTLE_SPILL_DIRECTORY );
+          data.lookupTable = new HybridLookupTable( cacheKeyMeta, cacheValueMeta, maxMemory * 1024 * 1024,
+            Utils.isEmpty( spillDirectory ) ? null : new File( spillDirectory ),
+            RowSpillCompression.getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ),
+              RowSpillCompression.NONE ) );
+          if ( log.isDetailed() ) {
+            logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.UsingHybridHashJoin", maxMemory ) );
+          }
+        }
       }
 
       Object[] keyData = new Object[keyNrs.length];
@@ -218,6 +250,49 @@ public class StreamLookup extends BaseStep implements StepInterface {
       rowData = getRowFrom( rowSet );
     }
 
+    if ( data.lookupTable != null && data.lookupTable.getNrSpills() > 0 && log.isDetailed() ) {
+      logDetailed( BaseMessages.getString(
+        PKG, "StreamLookup.Log.LookupRowsSpilledToDisk", data.lookupTable.getNrSpills() ) );
+    }
+
+    if ( data.sharedIndex != null ) {
+      return finishSharedIndex();
+    }
+
+    return true;
+  }
+
+  /**
+   * Builds the shared index if this step read the rows for it, otherwise waits until another step did.
+   */
+  private boolean finishSharedIndex() throws KettleException {
+    if ( data.sharedKeys != null ) {
+      if ( isStopped() ) {
+        // Don't let the other steps use half an index
+        //
+        data.sharedIndex.fail( new KettleException( "The step building the shared lookup index was stopped" ) );
+        data.sharedKeys = null;
+        data.sharedValues = null;
+        return true;
+      }
+      data.sharedIndex.build( data.cacheKeyMeta, data.cacheValueMeta, data.sharedKeys, data.sharedValues,
+        meta.isMemoryPreservationActive() );
+      data.sharedKeys = null;
+      data.sharedValues = null;
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString(
+          PKG, "StreamLookup.Log.SharedIndexBuilt", data.sharedIndex.getName(), data.sharedIndex.size() ) );
+      }
+    } else {
+      while ( !data.sharedIndex.awaitIndex( 1, TimeUnit.SECONDS ) ) {
+        if ( isStopped() ) {
+          return true;
+        }
+      }
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.UsingSharedIndex", data.sharedIndex.getName() ) );
+      }
+    }
     return true;
   }
 
@@ -275,6 +350,10 @@ public class StreamLookup extends BaseStep implements StepInterface {
     if ( data.hasLookupRows ) {
       try {
         if ( meta.getKeystream().length > 0 ) {
+          if ( data.lookupTable != null && data.lookupTable.isSpilled( lu ) ) {
+            data.lookupTable.spillProbeRow( lu, rowMeta, row );
+            return DEFERRED;
+          }
           add = getFromCache( data.cacheKeyMeta, lu );
         } else {
    // Just take the first element in the hashtable...
@@ -293,8 +372,15 @@ public class StreamLookup extends BaseStep implements StepInterface {
   }
 
   private void addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
-    Object[] valueData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
+    Object[] valueData ) throws KettleException {
+    if ( data.sharedIndex != null ) {
+      // The index is built once all the rows are read, by one step only
+      //
+      if ( data.sharedKeys != null ) {
+        data.sharedKeys.add( keyData );
+        data.sharedValues.add( valueData );
+      }
+    } else if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
         KeyValue keyValue = new KeyValue( keyData, valueData );
         int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
@@ -328,6 +414,8 @@ public class StreamLookup extends BaseStep implements StepInterface {
             .put( RowMeta.extractData( keyMeta, keyData ), RowMeta.extractData( valueMeta, valueData ) );
         }
       }
+    } else if ( data.lookupTable != null ) {
+      data.lookupTable.put( keyData, valueData );
     } else {
       // We can't just put Object[] in the map The compare function is not in it.
       // We need to wrap in and use that. Let's use RowMetaAndData for this one.
@@ -336,7 +424,9 @@ public class StreamLookup extends BaseStep implements StepInterface {
   }
 
   private Object[] getFromCache( RowMetaInterface keyMeta, Object[] keyData ) throws KettleValueException {
-    if ( meta.isMemoryPreservationActive() ) {
+    if ( data.sharedIndex != null ) {
+      return data.sharedIndex.get( keyData );
+    } else if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
         KeyValue keyValue = new KeyValue( keyData, null );
         int idx = Collections.binarySearch( data.list, keyValue, data.comparator );
@@ -366,6 +456,8 @@ public class StreamLookup extends BaseStep implements StepInterface {
           }
         }
       }
+    } else if ( data.lookupTable != null ) {
+      return data.lookupTable.get( keyData );
     } else {
       return data.look.get( new RowMetaAndData( keyMeta, keyData ) );
     }
@@ -394,6 +486,18 @@ public class StreamLookup extends BaseStep implements StepInterface {
     if ( r == null ) {
       // no more input to be expected...
 
+      // Look up the rows that were spilled to disk together with their lookup rows
+      //
+      if ( data.lookupTable != null ) {
+        data.lookupTable.forEachSpilledRow( new HybridLookupTable.ProbeHandler() {
+          @Override
+          public void handleRow( Object[] row, Object[] value ) throws KettleException {
+            Object[] add = value == null ? data.nullIf : value;
+            putRow( data.outputRowMeta, RowDataUtil.addRowData( row, getInputRowMeta().size(), add ) );
+          }
+        } );
+      }
+
       if ( log.isDetailed() ) {
         logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.StoppedProcessingWithEmpty", getLinesRead()
           + "" ) );
@@ -450,7 +554,9 @@ public class StreamLookup extends BaseStep implements StepInterface {
       return false;
     }
 
-    putRow( data.outputRowMeta, outputRow ); // copy row to output rowset(s);
+    if ( outputRow != DEFERRED ) {
+      putRow( data.outputRowMeta, outputRow ); // copy row to output rowset(s);
+    }
 
     if ( checkFeedback( getLinesRead() ) ) {
       if ( log.isBasic() ) {
@@ -469,6 +575,16 @@ public class StreamLookup extends BaseStep implements StepInterface {
     if ( super.init( smi, sdi ) ) {
       data.readLookupValues = true;
 
+      if ( meta.isSharedIndex() ) {
+        String name = environmentSubstitute( meta.getSharedIndexName() );
+        if ( Utils.isEmpty( name ) ) {
+          // Only share the index between the copies of this step
+          //
+          name = getTrans().getLogChannelId() + "/" + getStepname();
+        }
+        data.sharedIndex = SharedLookupIndex.acquire( name );
+      }
+
       return true;
     }
 
@@ -483,6 +599,21 @@ public class StreamLookup extends BaseStep implements StepInterface {
     data.list = null;
     data.hashIndex = null;
     data.longIndex = null;
+    if ( data.lookupTable != null ) {
+      data.lookupTable.clear(); // also deletes the temporary files
+      data.lookupTable = null;
+    }
+    if ( data.sharedIndex != null ) {
+      if ( data.sharedKeys != null ) {
+        // We never got to build the index, don't let the other steps wait for it
+        //
+        data.sharedIndex.fail( new KettleException( "The step building the shared lookup index ended early" ) );
+        data.sharedKeys = null;
+        data.sharedValues = null;
+      }
+      data.sharedIndex.release();
+      data.sharedIndex = null;
+    }
 
     super.dispose( smi, sdi );
   }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -74,6 +74,16 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
   public ByteArrayHashIndex hashIndex;
   public LongHashIndex longIndex;
 
+  /** The lookup rows when they can be spilled to disk, used instead of look */
+  public HybridLookupTable lookupTable;
+
+  /** The lookup index shared with the other step copies, used instead of all the other structures */
+  public SharedLookupIndex sharedIndex;
+
+  /** The lookup rows for the shared index, only kept by the step that builds it */
+  public List<Object[]> sharedKeys;
+  public List<Object[]> sharedValues;
+
   public RowMetaInterface lookupMeta;
 
   public RowMetaInterface infoMeta;
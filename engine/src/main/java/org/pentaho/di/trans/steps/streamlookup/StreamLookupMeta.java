@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -101,6 +101,14 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
   @Injection( name = "INTEGER_PAIR" )
   private boolean usingIntegerPair;
 
+  /** Build the lookup index once and share it with the other step copies */
+  @Injection( name = "SHARED_INDEX" )
+  private boolean sharedIndex;
+
+  /** The name of the shared index, steps with the same name share the index across transformations */
+  @Injection( name = "SHARED_INDEX_NAME" )
+  private String sharedIndexName;
+
   public StreamLookupMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -163,6 +171,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "preserve_memory" ) ) );
       setUsingSortedList( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "sorted_list" ) ) );
       setUsingIntegerPair( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "integer_pair" ) ) );
+      setSharedIndex( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "shared_index" ) ) );
+      setSharedIndexName( XMLHandler.getTagValue( stepnode, "shared_index_name" ) );
 
       Node lookup = XMLHandler.getSubNode( stepnode, "lookup" );
       nrkeys = XMLHandler.countNodes( lookup, "key" );
@@ -211,6 +221,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     setMemoryPreservationActive( true );
     setUsingSortedList( false );
     setUsingIntegerPair( false );
+    setSharedIndex( false );
+    setSharedIndexName( null );
 
     allocate( 0, 0 );
   }
@@ -254,6 +266,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append( XMLHandler.addTagValue( "preserve_memory", isMemoryPreservationActive() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "sorted_list", isUsingSortedList() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "integer_pair", isUsingIntegerPair() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "shared_index", isSharedIndex() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "shared_index_name", getSharedIndexName() ) );
 
     retval.append( "    <lookup>" ).append( Const.CR );
     for ( int i = 0; i < getKeystream().length; i++ ) {
@@ -288,6 +302,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( rep.getStepAttributeBoolean( id_step, "preserve_memory" ) );
       setUsingSortedList( rep.getStepAttributeBoolean( id_step, "sorted_list" ) );
       setUsingIntegerPair( rep.getStepAttributeBoolean( id_step, "integer_pair" ) );
+      setSharedIndex( rep.getStepAttributeBoolean( id_step, "shared_index" ) );
+      setSharedIndexName( rep.getStepAttributeString( id_step, "shared_index_name" ) );
 
       int nrkeys = rep.countNrStepAttributes( id_step, "lookup_key_name" );
       int nrvalues = rep.countNrStepAttributes( id_step, "return_value_name" );
@@ -325,6 +341,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "preserve_memory", isMemoryPreservationActive() );
       rep.saveStepAttribute( id_transformation, id_step, "sorted_list", isUsingSortedList() );
       rep.saveStepAttribute( id_transformation, id_step, "integer_pair", isUsingIntegerPair() );
+      rep.saveStepAttribute( id_transformation, id_step, "shared_index", isSharedIndex() );
+      rep.saveStepAttribute( id_transformation, id_step, "shared_index_name", getSharedIndexName() );
 
       for ( int i = 0; i < getKeystream().length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "lookup_key_name", getKeystream()[i] );
@@ -667,6 +685,39 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     this.usingIntegerPair = usingIntegerPair;
   }
 
+  /**
+   * @return true if the lookup index is built once and shared by all the step copies
+   */
+  public boolean isSharedIndex() {
+    return sharedIndex;
+  }
+
+  /**
+   * @param sharedIndex
+   *          true to build the lookup index once and share it with the other step copies
+   */
+  public void setSharedIndex( boolean sharedIndex ) {
+    this.sharedIndex = sharedIndex;
+  }
+
+  /**
+   * @return the name of the shared index or null to only share it between the copies of this step
+   */
+  public String getSharedIndexName() {
+    return sharedIndexName;
+  }
+
+  /**
+   * Steps that use the same name share their lookup index, also across transformations running in the same JVM. Only
+   * give steps the same name if they read the same lookup rows.
+   *
+   * @param sharedIndexName
+   *          the name of the shared index or null to only share it between the copies of this step
+   */
+  public void setSharedIndexName( String sharedIndexName ) {
+    this.sharedIndexName = sharedIndexName;
+  }
+
   /**
    * If we use injection we can have different arrays lengths.
    * We need synchronize them for consistency behavior with UI
@@ -169,14 +169,15 @@ public class TableAgileMart extends TableOutput implements TableManager {
     return false;
   }
 
-  public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     if ( rowLimit != -1 && rowsWritten >= rowLimit ) {
       // we are done, ignore any new rows
       TableOutputMeta meta = (TableOutputMeta) smi;
       util.updateMetadata( meta, rowsWritten );
       throw new KettleException( "Row limit exceeded" );
     }
-    boolean result = super.processRow( smi, sdi );
+    boolean result = super.processRows( smi, sdi );
     if ( result ) {
       rowsWritten++;
     } else {
@@ -186,6 +187,12 @@ public class TableAgileMart extends TableOutput implements TableManager {
     return result;
   }
 
+  @Override
+  public int getRowBatchSize() {
+    // The row limit is verified row by row
+    return 1;
+  }
+
   @Override
   public boolean dropTable() {
     TableOutputMeta meta = getMeta();
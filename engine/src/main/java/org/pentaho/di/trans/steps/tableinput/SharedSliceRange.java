@@ -0,0 +1,133 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+
+/**
+ * The range of values of the split column of a Table Input query, shared by the copies of the step that run in the same
+ * transformation. The first copy that needs the range of a query reads it, the other copies wait for it and use the
+ * same range. That way the MIN/MAX query only runs once instead of once per copy, and all the copies split the query
+ * on the same bounds, even when the table changes in the meantime.<br>
+ * <br>
+ * Copies that run on other slave servers read the range themselves.
+ *
+ * @since 9.1
+ */
+public class SharedSliceRange {
+
+  private static final Map<String, SharedSliceRange> RANGES = new HashMap<String, SharedSliceRange>();
+
+  /**
+   * Reads the range of values of the split column from the database.
+   */
+  public interface RangeReader {
+    /**
+     * @return the lowest and the highest value of the split column, no data if the query returned no rows
+     */
+    RowMetaAndData readRange() throws KettleDatabaseException;
+  }
+
+  private static class Range {
+    private int uses;
+    private RowMetaAndData value;
+  }
+
+  private final String name;
+  private int references;
+  private final Map<String, Range> ranges = new HashMap<String, Range>();
+
+  private SharedSliceRange( String name ) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the shared range with the given name, it's created if no step copy uses it. Every call has to be matched with
+   * a call to {@link #release()}.
+   */
+  public static SharedSliceRange acquire( String name ) {
+    synchronized ( RANGES ) {
+      SharedSliceRange range = RANGES.get( name );
+      if ( range == null ) {
+        range = new SharedSliceRange( name );
+        RANGES.put( name, range );
+      }
+      range.references++;
+      return range;
+    }
+  }
+
+  /**
+   * Stops using the shared range, it's removed when no step copy uses it anymore.
+   */
+  public void release() {
+    synchronized ( RANGES ) {
+      references--;
+      if ( references <= 0 && RANGES.get( name ) == this ) {
+        RANGES.remove( name );
+      }
+    }
+  }
+
+  /**
+   * Gets the range of a query, it's read with the given reader if no other copy read it yet. The range is forgotten
+   * once every copy got it.
+   *
+   * @param query
+   *          the query with its parameters
+   * @param reader
+   *          reads the range from the database
+   * @return the lowest and the highest value of the split column
+   */
+  public RowMetaAndData getRange( String query, RangeReader reader ) throws KettleDatabaseException {
+    Range range;
+    synchronized ( RANGES ) {
+      range = ranges.get( query );
+      if ( range == null ) {
+        range = new Range();
+        ranges.put( query, range );
+      }
+      range.uses++;
+      if ( range.uses >= references ) {
+        ranges.remove( query );
+      }
+    }
+
+    // The other copies wait while the first one reads the range. If reading fails, the next copy tries again.
+    //
+    synchronized ( range ) {
+      if ( range.value == null ) {
+        range.value = reader.readRange();
+      }
+      return range.value;
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+}
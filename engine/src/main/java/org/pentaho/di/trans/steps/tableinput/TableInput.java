@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,8 +22,12 @@
 
 package org.pentaho.di.trans.steps.tableinput;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
@@ -32,6 +36,7 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -229,6 +234,16 @@ public class TableInput extends BaseStep implements StepInterface {
       sql = meta.getSQL();
     }
 
+    if ( data.sliceColumn != null ) {
+      RowMetaAndData bounds = readSliceBounds( sql, parametersMeta, parameters );
+      sql = getSliceSQL( sql, bounds.size() > 0 );
+
+      RowMetaInterface sliceParametersMeta = parametersMeta.clone();
+      sliceParametersMeta.addRowMeta( bounds.getRowMeta() );
+      parameters = RowDataUtil.addRowData( parameters, parametersMeta.size(), bounds.getData() );
+      parametersMeta = sliceParametersMeta;
+    }
+
     if ( log.isDetailed() ) {
       logDetailed( "SQL query : " + sql );
     }
@@ -268,6 +283,168 @@ public class TableInput extends BaseStep implements StepInterface {
     return success;
   }
 
+  /**
+   * Looks up the range of values of the slice column in the query and determines the bounds of the slice of this step
+   * copy. The range is only read once and shared by the copies of the step.
+   *
+   * @return the lower and/or upper bound of the slice. There are no bounds if the column only contains nulls or if there
+   *         are no rows.
+   */
+  private RowMetaAndData readSliceBounds( final String sql, final RowMetaInterface parametersMeta,
+    final Object[] parameters ) throws KettleDatabaseException {
+    String query = sql;
+    if ( !parametersMeta.isEmpty() ) {
+      try {
+        query += Const.CR + parametersMeta.getString( parameters );
+      } catch ( KettleValueException e ) {
+        throw new KettleDatabaseException( e );
+      }
+    }
+    RowMetaAndData rangeRow = data.sliceRange.getRange( query, new SharedSliceRange.RangeReader() {
+      @Override
+      public RowMetaAndData readRange() throws KettleDatabaseException {
+        return readSliceRange( sql, parametersMeta, parameters );
+      }
+    } );
+    Object[] range = rangeRow.getData();
+
+    RowMetaAndData bounds = new RowMetaAndData();
+    if ( range != null && range[ 0 ] != null && range[ 1 ] != null ) {
+      ValueMetaInterface rangeValueMeta = rangeRow.getRowMeta().getValueMeta( 0 );
+      Object[] values = getSliceBounds( rangeValueMeta, range[ 0 ], range[ 1 ], data.nrSlices, data.slice );
+      for ( Object value : values ) {
+        if ( value != null ) {
+          bounds.addValue( rangeValueMeta.clone(), value );
+        }
+      }
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "TableInput.Log.ReadingSlice", Integer.toString( data.slice + 1 ),
+        Integer.toString( data.nrSlices ), data.sliceColumn ) );
+    }
+    return bounds;
+  }
+
+  private RowMetaAndData readSliceRange( String sql, RowMetaInterface parametersMeta, Object[] parameters )
+    throws KettleDatabaseException {
+    String column = meta.getDatabaseMeta().quoteField( data.sliceColumn );
+    String rangeSql = "SELECT MIN(" + column + "), MAX(" + column + ") FROM ( " + sql + " ) kettle_slice";
+    if ( log.isDetailed() ) {
+      logDetailed( "Determining the range of the slice column with : " + rangeSql );
+    }
+
+    ResultSet rs;
+    if ( parametersMeta.isEmpty() ) {
+      rs = data.db.openQuery( rangeSql, null, null );
+    } else {
+      rs = data.db.openQuery( rangeSql, parametersMeta, parameters );
+    }
+    try {
+      Object[] range = data.db.getRow( rs );
+      return new RowMetaAndData( data.db.getReturnRowMeta(), range );
+    } finally {
+      data.db.closeQuery( rs );
+    }
+  }
+
+  /**
+   * Wraps the query to only select the rows of the slice of this step copy. The first slice also reads the rows where
+   * the slice column is null, the last slice has no upper bound.
+   */
+  private String getSliceSQL( String sql, boolean hasBounds ) {
+    String column = meta.getDatabaseMeta().quoteField( data.sliceColumn );
+    String condition;
+    if ( !hasBounds ) {
+      // Nothing to split: the first copy reads everything, the others nothing.
+      //
+      if ( data.slice == 0 ) {
+        return sql;
+      }
+      condition = "1 = 0";
+    } else if ( data.slice == 0 ) {
+      condition = column + " < ? OR " + column + " IS NULL";
+    } else if ( data.slice == data.nrSlices - 1 ) {
+      condition = column + " >= ?";
+    } else {
+      condition = column + " >= ? AND " + column + " < ?";
+    }
+    return "SELECT * FROM ( " + sql + " ) kettle_slice WHERE " + condition;
+  }
+
+  /**
+   * Splits the range of values between min and max in equal parts.
+   *
+   * @param valueMeta
+   *          the numeric or date metadata of min and max
+   * @param min
+   *          the lowest value
+   * @param max
+   *          the highest value
+   * @param nrSlices
+   *          the number of slices
+   * @param slice
+   *          the slice to get the bounds for
+   * @return the lower bound (inclusive) and the upper bound (exclusive) of the slice. There is no lower bound (null) for
+   *         the first slice and no upper bound (null) for the last slice.
+   * @throws KettleDatabaseException
+   *           in case the column is not numeric or a date
+   */
+  static Object[] getSliceBounds( ValueMetaInterface valueMeta, Object min, Object max, int nrSlices, int slice )
+    throws KettleDatabaseException {
+    try {
+      BigDecimal from = toBigDecimal( valueMeta, min );
+      BigDecimal range = toBigDecimal( valueMeta, max ).subtract( from );
+
+      Object[] bounds = new Object[ 2 ];
+      if ( slice > 0 ) {
+        bounds[ 0 ] = fromBigDecimal( valueMeta, getSplitPoint( from, range, slice, nrSlices ) );
+      }
+      if ( slice < nrSlices - 1 ) {
+        bounds[ 1 ] = fromBigDecimal( valueMeta, getSplitPoint( from, range, slice + 1, nrSlices ) );
+      }
+      return bounds;
+    } catch ( KettleValueException e ) {
+      throw new KettleDatabaseException( e );
+    }
+  }
+
+  private static BigDecimal getSplitPoint( BigDecimal from, BigDecimal range, int slice, int nrSlices ) {
+    return from.add( range.multiply( BigDecimal.valueOf( slice ) ).divide( BigDecimal.valueOf( nrSlices ),
+      MathContext.DECIMAL128 ) );
+  }
+
+  private static BigDecimal toBigDecimal( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return BigDecimal.valueOf( valueMeta.getInteger( value ) );
+      case ValueMetaInterface.TYPE_NUMBER:
+        return BigDecimal.valueOf( valueMeta.getNumber( value ) );
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return valueMeta.getBigNumber( value );
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return BigDecimal.valueOf( valueMeta.getDate( value ).getTime() );
+      default:
+        throw new KettleValueException( BaseMessages.getString( PKG, "TableInput.Exception.SliceColumnType",
+          valueMeta.getName(), valueMeta.getTypeDesc() ) );
+    }
+  }
+
+  private static Object fromBigDecimal( ValueMetaInterface valueMeta, BigDecimal value ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return value.longValue();
+      case ValueMetaInterface.TYPE_NUMBER:
+        return value.doubleValue();
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return new Timestamp( value.longValue() );
+      case ValueMetaInterface.TYPE_DATE:
+        return new Date( value.longValue() );
+      default:
+        return value;
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     if ( log.isBasic() ) {
       logBasic( "Finished reading query, closing connection." );
@@ -282,6 +459,10 @@ public class TableInput extends BaseStep implements StepInterface {
       if ( data.db != null ) {
         data.db.disconnect();
       }
+      if ( data.sliceRange != null ) {
+        data.sliceRange.release();
+        data.sliceRange = null;
+      }
     }
 
     super.dispose( smi, sdi );
@@ -333,6 +514,25 @@ public class TableInput extends BaseStep implements StepInterface {
       data.db.shareVariablesWith( this );
 
       data.db.setQueryLimit( Const.toInt( environmentSubstitute( meta.getRowLimit() ), 0 ) );
+      data.db.setFetchSize( Const.toInt( environmentSubstitute( meta.getFetchSize() ), 0 ) );
+
+      // Every step copy reads its own slice of the query
+      //
+      String sliceColumn = environmentSubstitute( meta.getPartitionColumn() );
+      if ( !Utils.isEmpty( sliceColumn ) && getUniqueStepCountAcrossSlaves() > 1 ) {
+        // The query is wrapped in a derived table, some databases don't allow an ORDER BY clause in there.
+        // The rows of the copies are mixed anyway.
+        //
+        String sql = meta.isVariableReplacementActive() ? environmentSubstitute( meta.getSQL() ) : meta.getSQL();
+        if ( meta.getDatabaseMeta().getDatabaseInterface().createSqlScriptParser().indexOfOrderBy( sql ) >= 0 ) {
+          logError( BaseMessages.getString( PKG, "TableInput.Exception.SliceWithOrderBy", sliceColumn ) );
+          return false;
+        }
+        data.sliceColumn = sliceColumn;
+        data.nrSlices = getUniqueStepCountAcrossSlaves();
+        data.slice = getUniqueStepNrAcrossSlaves();
+        data.sliceRange = SharedSliceRange.acquire( getTrans().getLogChannelId() + "/" + getStepname() );
+      }
 
       try {
         if ( getTransMeta().isUsingUniqueConnections() ) {
@@ -346,6 +546,9 @@ public class TableInput extends BaseStep implements StepInterface {
         if ( meta.getDatabaseMeta().isRequiringTransactionsOnQueries() ) {
           data.db.setCommit( 100 ); // needed for PGSQL it seems...
         }
+        // Hand the rows over as they arrive, don't let the driver read the whole result into memory first
+        //
+        data.db.setStreamingQuery( true );
         if ( log.isDetailed() ) {
           logDetailed( "Connected to database..." );
         }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -46,6 +46,15 @@ public class TableInputData extends BaseStepData implements StepDataInterface {
   public boolean isCanceled;
   public StreamInterface infoStream;
 
+  /** The column to split the query on, null if the query isn't split */
+  public String sliceColumn;
+  /** The number of slices the query is split in: one per step copy across all slave servers */
+  public int nrSlices;
+  /** The slice to read in this step copy */
+  public int slice;
+  /** The range of values of the slice column, shared with the other copies */
+  public SharedSliceRange sliceRange;
+
   public TableInputData() {
     super();
 
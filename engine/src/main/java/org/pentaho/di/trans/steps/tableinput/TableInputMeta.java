@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -100,6 +100,14 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
   @Injection( name = "CACHED_ROW_META" )
   private boolean cachedRowMetaActive;
 
+  /** The number of rows to fetch at once, empty or 0 for the default of the database type */
+  @Injection( name = "FETCH_SIZE" )
+  private String fetchSize;
+
+  /** The numeric or date column to split the query on, one slice per step copy */
+  @Injection( name = "PARTITION_COLUMN" )
+  private String partitionColumn;
+
   private RowMetaInterface cachedRowMeta;
 
   public TableInputMeta() {
@@ -195,6 +203,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       variableReplacementActive = "Y".equals( XMLHandler.getTagValue( stepnode, "variables_active" ) );
       lazyConversionActive = "Y".equals( XMLHandler.getTagValue( stepnode, "lazy_conversion_active" ) );
       cachedRowMetaActive = "Y".equals( XMLHandler.getTagValue( stepnode, "cached_row_meta_active" ) );
+      fetchSize = XMLHandler.getTagValue( stepnode, "fetch_size" );
+      partitionColumn = XMLHandler.getTagValue( stepnode, "partition_column" );
       cachedRowMeta = new RowMeta( XMLHandler.getSubNode( stepnode, RowMeta.XML_META_TAG ) );
 
     } catch ( Exception e ) {
@@ -314,6 +324,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " + XMLHandler.addTagValue( "variables_active", variableReplacementActive ) );
     retval.append( "    " + XMLHandler.addTagValue( "lazy_conversion_active", lazyConversionActive ) );
     retval.append( "    " + XMLHandler.addTagValue( "cached_row_meta_active", cachedRowMetaActive ) );
+    retval.append( "    " + XMLHandler.addTagValue( "fetch_size", fetchSize ) );
+    retval.append( "    " + XMLHandler.addTagValue( "partition_column", partitionColumn ) );
     storeCachedRowMeta( retval );
     return retval.toString();
   }
@@ -367,6 +379,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       variableReplacementActive = rep.getStepAttributeBoolean( id_step, "variables_active" );
       lazyConversionActive = rep.getStepAttributeBoolean( id_step, "lazy_conversion_active" );
       cachedRowMetaActive = rep.getStepAttributeBoolean( id_step, "cached_row_meta_active" );
+      fetchSize = rep.getStepAttributeString( id_step, "fetch_size" );
+      partitionColumn = rep.getStepAttributeString( id_step, "partition_column" );
 
       String sRowMeta = rep.getStepAttributeString( id_step, RowMeta.XML_META_TAG );
       if ( sRowMeta != null ) {
@@ -393,6 +407,8 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "variables_active", variableReplacementActive );
       rep.saveStepAttribute( id_transformation, id_step, "lazy_conversion_active", lazyConversionActive );
       rep.saveStepAttribute( id_transformation, id_step, "cached_row_meta_active", cachedRowMetaActive );
+      rep.saveStepAttribute( id_transformation, id_step, "fetch_size", fetchSize );
+      rep.saveStepAttribute( id_transformation, id_step, "partition_column", partitionColumn );
       if ( cachedRowMeta != null ) {
         rep.saveStepAttribute( id_transformation, id_step, RowMeta.XML_META_TAG, cachedRowMeta.getMetaXML() );
       }
@@ -618,6 +634,36 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     this.cachedRowMetaActive = cachedRowMetaActive;
   }
 
+  /**
+   * @return the number of rows to fetch at once, empty or 0 for the default of the database type
+   */
+  public String getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @param fetchSize
+   *          the number of rows to fetch at once, empty or 0 for the default of the database type
+   */
+  public void setFetchSize( String fetchSize ) {
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * @return the numeric or date column to split the query on when running multiple step copies
+   */
+  public String getPartitionColumn() {
+    return partitionColumn;
+  }
+
+  /**
+   * @param partitionColumn
+   *          the numeric or date column to split the query on when running multiple step copies
+   */
+  public void setPartitionColumn( String partitionColumn ) {
+    this.partitionColumn = partitionColumn;
+  }
+
   /**
    * @return the cachedRowMetaActive
    */
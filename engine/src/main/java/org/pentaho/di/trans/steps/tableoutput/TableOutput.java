@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -30,6 +30,7 @@ import org.pentaho.di.core.exception.KettleDatabaseBatchException;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -47,8 +48,13 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Writes rows to a database table.
@@ -68,72 +74,64 @@ public class TableOutput extends BaseStep implements StepInterface {
   }
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    return processRows( smi, sdi );
+  }
+
+  @Override
+  public boolean processRows( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (TableOutputMeta) smi;
     data = (TableOutputData) sdi;
 
-    Object[] r = getRow(); // this also waits for a previous step to be finished.
-    if ( r == null ) { // no more input to be expected...
+    List<Object[]> rows = getRows( getRowBatchSize() ); // this also waits for a previous step to be finished.
+    if ( rows.isEmpty() ) { // no more input to be expected...
       // truncate the table if there are no rows at all coming into this step
       if ( first && meta.truncateTable() ) {
         truncateTable();
       }
+      if ( data.multiRowInsertSize > 0 || data.insertExecutor != null ) {
+        try {
+          finishInserts();
+        } catch ( KettleException e ) {
+          logError( "Because of an error, this step can't continue: ", e );
+          setErrors( 1 );
+          stopAll();
+          setOutputDone(); // signal end to receiver(s)
+        }
+      }
       return false;
     }
 
     if ( first ) {
       first = false;
-      if ( meta.truncateTable() ) {
-        truncateTable();
-      }
-      data.outputRowMeta = getInputRowMeta().clone();
-      meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
-
-      if ( !meta.specifyFields() ) {
-        // Just take the input row
-        data.insertRowMeta = getInputRowMeta().clone();
-      } else {
-
-        data.insertRowMeta = new RowMeta();
-
-        //
-        // Cache the position of the compare fields in Row row
-        //
-        data.valuenrs = new int[meta.getFieldDatabase().length];
-        for ( int i = 0; i < meta.getFieldDatabase().length; i++ ) {
-          data.valuenrs[i] = getInputRowMeta().indexOfValue( meta.getFieldStream()[i] );
-          if ( data.valuenrs[i] < 0 ) {
-            throw new KettleStepException( BaseMessages.getString(
-              PKG, "TableOutput.Exception.FieldRequired", meta.getFieldStream()[i] ) );
-          }
-        }
-
-        for ( int i = 0; i < meta.getFieldDatabase().length; i++ ) {
-          ValueMetaInterface insValue = getInputRowMeta().searchValueMeta( meta.getFieldStream()[i] );
-          if ( insValue != null ) {
-            ValueMetaInterface insertValue = insValue.clone();
-            insertValue.setName( meta.getFieldDatabase()[i] );
-            data.insertRowMeta.addValueMeta( insertValue );
-          } else {
-            throw new KettleStepException( BaseMessages.getString(
-              PKG, "TableOutput.Exception.FailedToFindField", meta.getFieldStream()[i] ) );
-          }
-        }
-      }
+      prepareOutput();
     }
 
+    List<Object[]> outputRows = new ArrayList<Object[]>();
     try {
-      Object[] outputRowData = writeToTable( getInputRowMeta(), r );
-      if ( outputRowData != null ) {
-        putRow( data.outputRowMeta, outputRowData ); // in case we want it go further...
-        incrementLinesOutput();
+      for ( Object[] r : rows ) {
+        if ( data.multiRowInsertSize > 0 ) {
+          addToMultiRowInsert( r );
+          continue;
+        }
+        if ( data.insertExecutor != null ) {
+          addToBatch( r );
+          continue;
+        }
+        Object[] outputRowData = writeToTable( getInputRowMeta(), r );
+        if ( outputRowData != null ) {
+          outputRows.add( outputRowData );
+          incrementLinesOutput();
+        }
       }
+      putRows( data.outputRowMeta, outputRows ); // in case we want it go further...
 
-      if ( checkFeedback( getLinesRead() ) ) {
+      if ( checkFeedback( getLinesRead(), rows.size() ) ) {
         if ( log.isBasic() ) {
           logBasic( "linenr " + getLinesRead() );
         }
       }
     } catch ( KettleException e ) {
+      putRows( data.outputRowMeta, outputRows );
       logError( "Because of an error, this step can't continue: ", e );
       setErrors( 1 );
       stopAll();
@@ -144,6 +142,442 @@ public class TableOutput extends BaseStep implements StepInterface {
     return true;
   }
 
+  private void prepareOutput() throws KettleException {
+    if ( meta.truncateTable() ) {
+      truncateTable();
+    }
+    data.outputRowMeta = getInputRowMeta().clone();
+    meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
+
+    if ( !meta.specifyFields() ) {
+      // Just take the input row
+      data.insertRowMeta = getInputRowMeta().clone();
+    } else {
+
+      data.insertRowMeta = new RowMeta();
+
+      //
+      // Cache the position of the compare fields in Row row
+      //
+      data.valuenrs = new int[meta.getFieldDatabase().length];
+      for ( int i = 0; i < meta.getFieldDatabase().length; i++ ) {
+        data.valuenrs[i] = getInputRowMeta().indexOfValue( meta.getFieldStream()[i] );
+        if ( data.valuenrs[i] < 0 ) {
+          throw new KettleStepException( BaseMessages.getString(
+            PKG, "TableOutput.Exception.FieldRequired", meta.getFieldStream()[i] ) );
+        }
+      }
+
+      for ( int i = 0; i < meta.getFieldDatabase().length; i++ ) {
+        ValueMetaInterface insValue = getInputRowMeta().searchValueMeta( meta.getFieldStream()[i] );
+        if ( insValue != null ) {
+          ValueMetaInterface insertValue = insValue.clone();
+          insertValue.setName( meta.getFieldDatabase()[i] );
+          data.insertRowMeta.addValueMeta( insertValue );
+        } else {
+          throw new KettleStepException( BaseMessages.getString(
+            PKG, "TableOutput.Exception.FailedToFindField", meta.getFieldStream()[i] ) );
+        }
+      }
+    }
+
+    // Insert a number of rows with one statement if the database supports it, it takes a lot less round trips.
+    // Never insert more rows than the commit size in one go.
+    //
+    if ( data.multiRowInsert ) {
+      int size = Const.toInt( getVariable( Const.KETTLE_MULTI_ROW_INSERT_SIZE ), Const.MULTI_ROW_INSERT_SIZE );
+      size = Math.min( size, data.databaseMeta.getMaxMultiRowInsertRows( data.insertRowMeta.size() ) );
+      size = Math.min( size, data.commitSize );
+      if ( size > 1 ) {
+        data.multiRowInsertSize = size;
+        if ( log.isDetailed() ) {
+          logDetailed( "Inserting up to " + size + " rows per insert statement" );
+        }
+      }
+    }
+
+    // Optionally execute and commit the multi-row insert statements or the batches in the background while we collect
+    // the next rows. One thread on the step connection keeps the statements and the commits in order.
+    // A batch is the rows of one commit, all in the same table.
+    //
+    int pipelineSize = Const.toInt( getVariable( Const.KETTLE_TABLE_OUTPUT_PIPELINE ), Const.TABLE_OUTPUT_PIPELINE );
+    boolean pipelineBatches = data.batchMode && !meta.isTableNameInField() && !meta.isPartitioningEnabled();
+    if ( pipelineSize > 0 && ( data.multiRowInsertSize > 0 || pipelineBatches ) ) {
+      data.insertPipelineSize = pipelineSize;
+      data.insertExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r, getStepname() + "." + getCopy() + " - insert" );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+      if ( log.isDetailed() ) {
+        logDetailed( "Executing and committing up to " + pipelineSize + " "
+          + ( data.multiRowInsertSize > 0 ? "insert statements" : "batches" ) + " in the background" );
+      }
+    }
+  }
+
+  /**
+   * Keeps a row to insert with the next multi-row insert statement. Just like in batch mode, the rows are only passed
+   * to the next steps once they are committed.
+   */
+  private void addToMultiRowInsert( Object[] r ) throws KettleException {
+    data.multiRowInsertRows.add( getInsertRowData( r ) );
+    data.batchBuffer.add( r );
+
+    if ( data.multiRowInsertRows.size() >= data.multiRowInsertSize ) {
+      flushMultiRowInsert();
+    }
+  }
+
+  /**
+   * Inserts the buffered rows with one statement and commits once the commit size is reached. In pipelined mode the
+   * statement is executed in the background while the step buffers the next rows.
+   */
+  void flushMultiRowInsert() throws KettleException {
+    int nrRows = data.multiRowInsertRows.size();
+    if ( nrRows == 0 ) {
+      return;
+    }
+
+    // Keep track of the commits here so we know which rows can be passed on once the statement is executed.
+    //
+    Integer commitCounter = data.commitCounterMap.get( data.tableName );
+    commitCounter = ( commitCounter == null ? 0 : commitCounter ) + nrRows;
+    final boolean commit = commitCounter >= data.commitSize;
+    data.commitCounterMap.put( data.tableName, commit ? 0 : commitCounter );
+
+    final List<Object[]> insertRows = new ArrayList<Object[]>( data.multiRowInsertRows );
+    data.multiRowInsertRows.clear();
+    List<Object[]> committedRows = null;
+    if ( commit ) {
+      committedRows = new ArrayList<Object[]>( data.batchBuffer );
+      data.batchBuffer.clear();
+    }
+
+    if ( data.insertExecutor == null ) {
+      try {
+        executeMultiRowInsert( insertRows, commit );
+      } catch ( KettleException e ) {
+        // The rows will be rolled back: don't pass them on
+        //
+        data.batchBuffer.clear();
+        throw e;
+      }
+      passCommittedRows( committedRows );
+      return;
+    }
+
+    submitInsert( new TableOutputData.PendingInsert( committedRows ), new BackgroundInsert( insertRows.size() ) {
+      @Override
+      void insert() throws KettleException {
+        executeMultiRowInsert( insertRows, commit );
+      }
+    } );
+  }
+
+  /**
+   * Keeps a row to insert with the next batch. The batch is inserted and committed in the background once it has the
+   * commit size.
+   */
+  private void addToBatch( Object[] r ) throws KettleException {
+    data.batchBuffer.add( r );
+    if ( data.batchBuffer.size() >= data.commitSize ) {
+      flushBatch();
+    }
+  }
+
+  /**
+   * Hands the collected rows to the insert thread, which inserts them as one batch and commits. The rows are passed on
+   * or sent to the error handling once the batch is done.
+   */
+  void flushBatch() throws KettleException {
+    if ( data.batchBuffer.isEmpty() ) {
+      return;
+    }
+    final TableOutputData.PendingInsert batch =
+      new TableOutputData.PendingInsert( new ArrayList<Object[]>( data.batchBuffer ) );
+    data.batchBuffer.clear();
+
+    submitInsert( batch, new BackgroundInsert( batch.committedRows.size() ) {
+      @Override
+      void insert() throws KettleException {
+        executeBatch( batch );
+      }
+    } );
+  }
+
+  /**
+   * Executes an insert in the background. When too many are in flight already, this waits for the oldest one first.
+   */
+  private void submitInsert( TableOutputData.PendingInsert pendingInsert, BackgroundInsert insert )
+    throws KettleException {
+    while ( data.pendingInserts.size() >= data.insertPipelineSize ) {
+      finishPendingInsert();
+    }
+
+    pendingInsert.future = data.insertExecutor.submit( insert );
+    data.pendingInserts.add( pendingInsert );
+
+    // Pass on the rows of the inserts that are done, in the order they were inserted
+    //
+    while ( !data.pendingInserts.isEmpty() && data.pendingInserts.peek().future.isDone() ) {
+      finishPendingInsert();
+    }
+  }
+
+  /**
+   * An insert on the insert thread. Once one fails, the transaction is rolled back and the inserts queued after it
+   * are skipped.
+   */
+  private abstract class BackgroundInsert implements Callable<Void> {
+    private final int nrRows;
+
+    BackgroundInsert( int nrRows ) {
+      this.nrRows = nrRows;
+    }
+
+    @Override
+    public Void call() throws KettleException {
+      if ( data.insertFailed ) {
+        throw new KettleDatabaseException( "Skipped inserting " + nrRows + " rows into table ["
+          + data.tableName + "] because of a previous error" );
+      }
+      try {
+        insert();
+      } catch ( KettleException | RuntimeException e ) {
+        data.insertFailed = true;
+        try {
+          data.db.rollback();
+        } catch ( KettleDatabaseException re ) {
+          logError( "Unexpected error rolling back the database connection.", re );
+        }
+        throw e;
+      }
+      return null;
+    }
+
+    abstract void insert() throws KettleException;
+  }
+
+  /**
+   * Inserts the rows of a batch and commits, on the insert thread. Just like on the step thread, rows that can't be
+   * inserted go to the error handling if the step has it: the error of every row is kept with the batch, so the step
+   * thread sends the rows on in their order.
+   */
+  private void executeBatch( TableOutputData.PendingInsert batch ) throws KettleException {
+    List<Object[]> rows = batch.committedRows;
+    PreparedStatement insertStatement = getInsertStatement( data.tableName );
+    boolean errorHandling = getStepMeta().isDoingErrorHandling();
+
+    // The rows in the batch, the others failed already
+    //
+    int[] batchRowNrs = new int[rows.size()];
+    int nrBatched = 0;
+    for ( int i = 0; i < rows.size(); i++ ) {
+      Object[] r = rows.get( i );
+      try {
+        data.db.setValues( data.insertRowMeta, getInsertRowData( r ), insertStatement );
+        data.db.insertRow( insertStatement, true, false );
+        batchRowNrs[nrBatched++] = i;
+      } catch ( KettleDatabaseException dbe ) {
+        if ( errorHandling ) {
+          batch.setError( i, dbe.toString(), "TOP001" );
+        } else if ( meta.ignoreErrors() ) {
+          logIgnoredError( data.outputRowMeta, r, dbe );
+        } else {
+          throw new KettleException( "Error inserting row into table ["
+            + data.tableName + "] with values: " + data.outputRowMeta.getString( r ), dbe );
+        }
+      }
+    }
+
+    try {
+      if ( nrBatched > 0 && data.db.getUseBatchInsert( true ) ) {
+        insertStatement.executeBatch();
+        data.db.commit();
+        insertStatement.clearBatch();
+      } else {
+        data.db.commit();
+      }
+    } catch ( SQLException ex ) {
+      KettleDatabaseBatchException be = Database.createKettleDatabaseBatchException( "Error updating batch", ex );
+      data.db.clearBatch( insertStatement );
+      if ( !errorHandling ) {
+        throw new KettleException( getBatchErrorMessage( data.tableName, be ), be );
+      }
+
+      // Keep what was inserted, the other rows go to the error handling
+      //
+      data.db.commit( true );
+      int[] updateCounts = be.getUpdateCounts();
+      int errNr = 0;
+      for ( int b = 0; b < nrBatched; b++ ) {
+        if ( updateCounts != null && b < updateCounts.length && updateCounts[b] > 0 ) {
+          continue;
+        }
+        String errorMessage = be.toString();
+        if ( updateCounts != null && errNr < be.getExceptionsList().size() ) {
+          errorMessage = be.getExceptionsList().get( errNr++ ).toString();
+        }
+        batch.setError( batchRowNrs[b], errorMessage, updateCounts != null ? "TOP0002" : "TOP0003" );
+      }
+    }
+  }
+
+  /**
+   * @return the values to insert of a row
+   */
+  private Object[] getInsertRowData( Object[] r ) {
+    if ( !meta.specifyFields() ) {
+      return r;
+    }
+    Object[] insertRowData = new Object[data.valuenrs.length];
+    for ( int idx = 0; idx < data.valuenrs.length; idx++ ) {
+      insertRowData[idx] = r[data.valuenrs[idx]];
+    }
+    return insertRowData;
+  }
+
+  /**
+   * Executes one multi-row insert statement. In pipelined mode this runs on the insert thread, the step thread doesn't
+   * use the connection until all pending inserts are finished.
+   */
+  private void executeMultiRowInsert( List<Object[]> rows, boolean commit ) throws KettleException {
+    int nrRows = rows.size();
+
+    // The statement for a full set of rows is kept, the one for the last rows is only used once.
+    //
+    boolean full = nrRows == data.multiRowInsertSize;
+    PreparedStatement insertStatement = full ? data.multiRowInsertStatement : null;
+    if ( insertStatement == null ) {
+      String sql =
+        data.db.getMultiRowInsertStatement( environmentSubstitute( meta.getSchemaName() ), data.tableName,
+          data.insertRowMeta, nrRows );
+      insertStatement = data.db.prepareSQL( sql );
+      if ( full ) {
+        data.multiRowInsertStatement = insertStatement;
+      }
+    }
+
+    try {
+      data.db.setValues( data.insertRowMeta, rows, insertStatement );
+      insertStatement.executeUpdate();
+    } catch ( Exception e ) {
+      throw new KettleDatabaseException( "Error inserting " + nrRows + " rows into table [" + data.tableName + "]", e );
+    } finally {
+      if ( !full ) {
+        data.db.closePreparedStatement( insertStatement );
+      }
+    }
+
+    if ( commit ) {
+      data.db.commit();
+    }
+  }
+
+  private void passCommittedRows( List<Object[]> committedRows ) throws KettleStepException {
+    if ( committedRows == null ) {
+      return;
+    }
+    putRows( data.outputRowMeta, committedRows );
+    for ( int i = 0; i < committedRows.size(); i++ ) {
+      incrementLinesOutput();
+    }
+  }
+
+  /**
+   * Passes on the rows of an insert that is done. The rows that couldn't be inserted go to the error handling in
+   * between, so all the rows keep their order.
+   */
+  private void passCommittedRows( TableOutputData.PendingInsert pendingInsert ) throws KettleStepException {
+    if ( pendingInsert.errors == null ) {
+      passCommittedRows( pendingInsert.committedRows );
+      return;
+    }
+    List<Object[]> rows = pendingInsert.committedRows;
+    List<Object[]> outputRows = new ArrayList<Object[]>( rows.size() );
+    for ( int i = 0; i < rows.size(); i++ ) {
+      if ( pendingInsert.errors[i] == null ) {
+        outputRows.add( rows.get( i ) );
+        continue;
+      }
+      if ( !outputRows.isEmpty() ) {
+        passCommittedRows( outputRows );
+        outputRows = new ArrayList<Object[]>( rows.size() - i );
+      }
+      putError( data.outputRowMeta, rows.get( i ), 1L, pendingInsert.errors[i], null, pendingInsert.errorCodes[i] );
+    }
+    passCommittedRows( outputRows );
+  }
+
+  /**
+   * Waits for the oldest insert executing in the background and passes on the rows it committed. If it failed, the
+   * other pending inserts are cancelled and the error is thrown.
+   */
+  private void finishPendingInsert() throws KettleException {
+    TableOutputData.PendingInsert pendingInsert = data.pendingInserts.poll();
+    try {
+      pendingInsert.future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      cancelPendingInserts();
+      throw new KettleException( "Interrupted while waiting for the rows to be inserted into table ["
+        + data.tableName + "]", e );
+    } catch ( ExecutionException e ) {
+      cancelPendingInserts();
+      if ( e.getCause() instanceof KettleException ) {
+        throw (KettleException) e.getCause();
+      }
+      throw new KettleDatabaseException( "Error inserting rows into table [" + data.tableName + "]", e.getCause() );
+    }
+    passCommittedRows( pendingInsert );
+  }
+
+  /**
+   * Inserts the rows that are still collected, waits for all the inserts executing in the background and passes on
+   * the rows.
+   */
+  void finishInserts() throws KettleException {
+    if ( data.multiRowInsertSize > 0 ) {
+      flushMultiRowInsert();
+    } else {
+      flushBatch();
+    }
+    finishPendingInserts();
+  }
+
+  /**
+   * Waits for all the inserts executing in the background and passes on the rows they committed.
+   */
+  void finishPendingInserts() throws KettleException {
+    while ( !data.pendingInserts.isEmpty() ) {
+      finishPendingInsert();
+    }
+  }
+
+  /**
+   * Skips the inserts that didn't start yet and waits for the running one: the connection can only be rolled back once
+   * the insert thread is done with it. None of the rows are passed on.
+   */
+  private void cancelPendingInserts() {
+    data.insertFailed = true;
+    for ( TableOutputData.PendingInsert pendingInsert : data.pendingInserts ) {
+      try {
+        pendingInsert.future.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch ( ExecutionException e ) {
+        // Skipped or failed, the first error is the one that gets reported
+      }
+    }
+    data.pendingInserts.clear();
+    data.batchBuffer.clear();
+  }
+
   protected Object[] writeToTable( RowMetaInterface rowMeta, Object[] r ) throws KettleException {
 
     if ( r == null ) { // Stop: last line or error encountered
@@ -229,27 +663,14 @@ public class TableOutput extends BaseStep implements StepInterface {
       //
       // The values to insert are those in the fields sections
       //
-      insertRowData = new Object[data.valuenrs.length];
-      for ( int idx = 0; idx < data.valuenrs.length; idx++ ) {
-        insertRowData[idx] = r[data.valuenrs[idx]];
-      }
+      insertRowData = getInsertRowData( r );
     }
 
     if ( Utils.isEmpty( tableName ) ) {
       throw new KettleStepException( "The tablename is not defined (empty)" );
     }
 
-    insertStatement = data.preparedStatements.get( tableName );
-    if ( insertStatement == null ) {
-      String sql =
-        data.db
-          .getInsertStatement( environmentSubstitute( meta.getSchemaName() ), tableName, data.insertRowMeta );
-      if ( log.isDetailed() ) {
-        logDetailed( "Prepared statement : " + sql );
-      }
-      insertStatement = data.db.prepareSQL( sql, meta.isReturningGeneratedKeys() );
-      data.preparedStatements.put( tableName, insertStatement );
-    }
+    insertStatement = getInsertStatement( tableName );
 
     try {
       // For PG & GP, we add a savepoint before the row.
@@ -336,16 +757,7 @@ public class TableOutput extends BaseStep implements StepInterface {
       } else {
         data.db.clearBatch( insertStatement );
         data.db.rollback();
-        StringBuilder msg = new StringBuilder( "Error batch inserting rows into table [" + tableName + "]." );
-        msg.append( Const.CR );
-        msg.append( "Errors encountered (first 10):" ).append( Const.CR );
-        for ( int x = 0; x < be.getExceptionsList().size() && x < 10; x++ ) {
-          Exception exception = be.getExceptionsList().get( x );
-          if ( exception.getMessage() != null ) {
-            msg.append( exception.getMessage() ).append( Const.CR );
-          }
-        }
-        throw new KettleException( msg.toString(), be );
+        throw new KettleException( getBatchErrorMessage( tableName, be ), be );
       }
     } catch ( KettleDatabaseException dbe ) {
       if ( getStepMeta().isDoingErrorHandling() ) {
@@ -365,18 +777,7 @@ public class TableOutput extends BaseStep implements StepInterface {
         errorMessage = dbe.toString();
       } else {
         if ( meta.ignoreErrors() ) {
-          if ( data.warnings < 20 ) {
-            if ( log.isBasic() ) {
-              logBasic( "WARNING: Couldn't insert row into table: "
-                + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
-            }
-          } else if ( data.warnings == 20 ) {
-            if ( log.isBasic() ) {
-              logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
-                + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
-            }
-          }
-          data.warnings++;
+          logIgnoredError( rowMeta, r, dbe );
         } else {
           setErrors( getErrors() + 1 );
           data.db.rollback();
@@ -408,9 +809,8 @@ public class TableOutput extends BaseStep implements StepInterface {
         outputRowData = null;
 
         if ( rowIsSafe ) { // A commit was done and the rows are all safe (no error)
+          putRows( data.outputRowMeta, data.batchBuffer );
           for ( int i = 0; i < data.batchBuffer.size(); i++ ) {
-            Object[] row = data.batchBuffer.get( i );
-            putRow( data.outputRowMeta, row );
             incrementLinesOutput();
           }
           // Clear the buffer
@@ -427,6 +827,50 @@ public class TableOutput extends BaseStep implements StepInterface {
     return outputRowData;
   }
 
+  private PreparedStatement getInsertStatement( String tableName ) throws KettleDatabaseException {
+    PreparedStatement insertStatement = data.preparedStatements.get( tableName );
+    if ( insertStatement == null ) {
+      String sql =
+        data.db
+          .getInsertStatement( environmentSubstitute( meta.getSchemaName() ), tableName, data.insertRowMeta );
+      if ( log.isDetailed() ) {
+        logDetailed( "Prepared statement : " + sql );
+      }
+      insertStatement = data.db.prepareSQL( sql, meta.isReturningGeneratedKeys() );
+      data.preparedStatements.put( tableName, insertStatement );
+    }
+    return insertStatement;
+  }
+
+  private void logIgnoredError( RowMetaInterface rowMeta, Object[] r, KettleDatabaseException dbe )
+    throws KettleValueException {
+    if ( data.warnings < 20 ) {
+      if ( log.isBasic() ) {
+        logBasic( "WARNING: Couldn't insert row into table: "
+          + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
+      }
+    } else if ( data.warnings == 20 ) {
+      if ( log.isBasic() ) {
+        logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
+          + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
+      }
+    }
+    data.warnings++;
+  }
+
+  private static String getBatchErrorMessage( String tableName, KettleDatabaseBatchException be ) {
+    StringBuilder msg = new StringBuilder( "Error batch inserting rows into table [" + tableName + "]." );
+    msg.append( Const.CR );
+    msg.append( "Errors encountered (first 10):" ).append( Const.CR );
+    for ( int x = 0; x < be.getExceptionsList().size() && x < 10; x++ ) {
+      Exception exception = be.getExceptionsList().get( x );
+      if ( exception.getMessage() != null ) {
+        msg.append( exception.getMessage() ).append( Const.CR );
+      }
+    }
+    return msg.toString();
+  }
+
   public boolean isRowLevel() {
     return log.isRowLevel();
   }
@@ -504,6 +948,19 @@ public class TableOutput extends BaseStep implements StepInterface {
         // Per PDI-6211 : give a warning that batch mode operation in combination with step error handling can lead to
         // incorrectly processed rows.
         //
+        // Multi-row inserts need the same as batch mode. Besides, we can't tell which row failed so we can't do error
+        // handling and the table needs to be the same for all rows.
+        //
+        if ( meta.useMultiRowInsert() ) {
+          data.multiRowInsert =
+            !meta.isReturningGeneratedKeys() && !getTransMeta().isUsingUniqueConnections() && !data.useSafePoints
+              && !getStepMeta().isDoingErrorHandling() && !meta.ignoreErrors() && !meta.isTableNameInField()
+              && !meta.isPartitioningEnabled();
+          if ( !data.multiRowInsert ) {
+            logBasic( BaseMessages.getString( PKG, "TableOutput.Log.MultiRowInsertDisabled" ) );
+          }
+        }
+
         if ( getStepMeta().isDoingErrorHandling() && !dbInterface.supportsErrorHandlingOnBatchUpdates() ) {
           log.logMinimal( BaseMessages.getString(
             PKG, "TableOutput.Warning.ErrorHandlingIsNotFullySupportedWithBatchProcessing" ) );
@@ -577,6 +1034,27 @@ public class TableOutput extends BaseStep implements StepInterface {
 
     if ( data.db != null ) {
       try {
+        if ( data.multiRowInsertSize > 0 || data.insertExecutor != null ) {
+          try {
+            if ( getErrors() == 0 ) {
+              finishInserts();
+            } else {
+              cancelPendingInserts();
+            }
+          } finally {
+            if ( data.insertExecutor != null ) {
+              data.insertExecutor.shutdown();
+              data.insertExecutor = null;
+            }
+          }
+        }
+        if ( data.multiRowInsertStatement != null ) {
+          data.db.closePreparedStatement( data.multiRowInsertStatement );
+          data.multiRowInsertStatement = null;
+        }
+        if ( data.multiRowInsertSize > 0 && getErrors() == 0 ) {
+          data.db.commit();
+        }
         for ( String schemaTable : data.preparedStatements.keySet() ) {
           // Get a commit counter per prepared statement to keep track of separate tables, etc.
           //
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -25,11 +25,15 @@ package org.pentaho.di.trans.steps.tableoutput;
 import java.sql.PreparedStatement;
 import java.sql.Savepoint;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -78,6 +82,30 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
   public int commitSize;
 
+  /** Can rows be inserted with multi-row insert statements? */
+  public boolean multiRowInsert;
+
+  /** The number of rows per multi-row insert statement, 0 if rows are inserted one by one */
+  public int multiRowInsertSize;
+
+  /** The rows to insert with the next multi-row insert statement */
+  public List<Object[]> multiRowInsertRows;
+
+  /** The prepared multi-row insert statement for multiRowInsertSize rows */
+  public PreparedStatement multiRowInsertStatement;
+
+  /** Executes the multi-row inserts in the background, null if the step thread executes them */
+  public ExecutorService insertExecutor;
+
+  /** The maximum number of multi-row inserts executing in the background */
+  public int insertPipelineSize;
+
+  /** The multi-row inserts executing in the background, oldest first */
+  public Deque<PendingInsert> pendingInserts;
+
+  /** Set once a background insert failed, the inserts queued after it are skipped */
+  public volatile boolean insertFailed;
+
   public TableOutputData() {
     super();
 
@@ -91,8 +119,42 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
     indexOfTableNameField = -1;
 
     batchBuffer = new ArrayList<Object[]>();
+    multiRowInsertRows = new ArrayList<Object[]>();
+    pendingInserts = new ArrayDeque<PendingInsert>();
     commitCounterMap = new HashMap<String, Integer>();
 
     releaseSavepoint = true;
   }
+
+  /**
+   * A multi-row insert or a batch executing in the background with the rows to pass on once it is done.
+   */
+  public static class PendingInsert {
+    public Future<?> future;
+
+    /** The rows committed by this insert, null if it doesn't commit */
+    public final List<Object[]> committedRows;
+
+    /** The error descriptions of the committed rows that couldn't be inserted, null if all of them are */
+    public String[] errors;
+
+    /** The error codes of the committed rows that couldn't be inserted */
+    public String[] errorCodes;
+
+    public PendingInsert( List<Object[]> committedRows ) {
+      this.committedRows = committedRows;
+    }
+
+    /**
+     * Sends a committed row to the error handling.
+     */
+    public void setError( int rowNr, String errorDescription, String errorCode ) {
+      if ( errors == null ) {
+        errors = new String[committedRows.size()];
+        errorCodes = new String[committedRows.size()];
+      }
+      errors[rowNr] = errorDescription;
+      errorCodes[rowNr] = errorCode;
+    }
+  }
 }
@@ -0,0 +1,368 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.RowSpillPartitions;
+import org.pentaho.di.core.row.RowSpillReader;
+import org.pentaho.di.core.row.RowSpillWriter;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A set of 128 bit fingerprints of the keys of the rows seen by the Unique Rows (HashSet) step. Only the fingerprints
+ * are kept, 16 bytes per distinct key, in open addressing tables of primitive longs, so no objects are created for the
+ * rows that are kept track of. Two different keys with the same 128 bit fingerprint are considered equal, the odds of
+ * that happening are negligible for any realistic number of rows.<br>
+ * <br>
+ * The fingerprints are hashed into partitions which are kept in memory as long as they fit in the maximum amount of
+ * memory. When they don't, the fingerprints of the largest partition in memory are written to a temporary file and
+ * the rows of that partition are written to a file of their own from then on (see {@link RowSpillPartitions}), these
+ * rows are only checked in
+ * {@link #finish(RowHandler)}: the fingerprints of every spilled partition are read back in a set of their own, which
+ * spills again on the next bits of the fingerprint if it still doesn't fit, after which the rows are checked against
+ * it.
+ *
+ * @since 9.1
+ */
+public class FingerprintSet {
+
+  /**
+   * The outcome of adding a row.
+   */
+  public enum Result {
+    /** The key wasn't seen before */
+    UNIQUE,
+    /** The key was seen before */
+    DUPLICATE,
+    /** The partition of the key is on disk, the row is handled in {@link FingerprintSet#finish(RowHandler)} */
+    SPILLED,
+  }
+
+  /**
+   * Receives the rows of the spilled partitions.
+   */
+  public interface RowHandler {
+    /**
+     * @param row
+     *          the row
+     * @param unique
+     *          true if the key of the row wasn't seen before, false for a duplicate row
+     */
+    void handleRow( Object[] row, boolean unique ) throws KettleException;
+  }
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final int NR_PARTITIONS = RowSpillPartitions.NR_PARTITIONS;
+
+  /**
+   * The partitions are based on the high half of the fingerprint.
+   */
+  private static final int MAX_LEVEL = RowSpillPartitions.getMaxLevel( 64 );
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final RowMetaInterface rowMeta;
+  private final RowMetaInterface fingerprintMeta;
+  private final long maxMemory;
+  private final File directory;
+  private final RowSpillCompression compression;
+  private final int level;
+
+  /**
+   * The fingerprints of every partition, the high and low half next to each other. 0,0 marks an empty slot.
+   */
+  private final long[][] tables;
+  private final long[] sizes;
+  private long usedMemory;
+  private long size;
+
+  private final RowSpillPartitions fingerprintFiles;
+  private final RowSpillPartitions rowFiles;
+  private int nrSpills;
+
+  /**
+   * @param rowMeta
+   *          the metadata of the rows
+   * @param maxMemory
+   *          the number of bytes the fingerprints can use in memory, 0 or less never spills
+   * @param directory
+   *          the directory of the temporary files or null for the default temporary directory
+   * @param compression
+   *          the compression of the temporary files
+   */
+  public FingerprintSet( RowMetaInterface rowMeta, long maxMemory, File directory, RowSpillCompression compression ) {
+    this( rowMeta, maxMemory, directory, compression, 0 );
+  }
+
+  private FingerprintSet( RowMetaInterface rowMeta, long maxMemory, File directory, RowSpillCompression compression,
+    int level ) {
+    this.rowMeta = rowMeta;
+    this.maxMemory = maxMemory <= 0 ? Long.MAX_VALUE : maxMemory;
+    this.directory = directory;
+    this.compression = compression;
+    this.level = level;
+
+    fingerprintMeta = new RowMeta();
+    fingerprintMeta.addValueMeta( new ValueMetaInteger( "high" ) );
+    fingerprintMeta.addValueMeta( new ValueMetaInteger( "low" ) );
+
+    tables = new long[ NR_PARTITIONS ][];
+    sizes = new long[ NR_PARTITIONS ];
+    fingerprintFiles = new RowSpillPartitions( directory, "uniquerows-fingerprints-" + level + "-", compression );
+    rowFiles = new RowSpillPartitions( directory, "uniquerows-rows-" + level + "-", compression );
+  }
+
+  /**
+   * Adds the key of a row.
+   *
+   * @param key
+   *          the key of the row, serialized
+   * @param row
+   *          the row, it's written to disk if the partition of the key is spilled
+   * @return whether or not the key was seen before, or SPILLED if that's only known in {@link #finish(RowHandler)}
+   */
+  public Result add( byte[] key, Object[] row ) throws KettleException {
+    ByteBuffer fingerprint = ByteBuffer.wrap( HASH_FUNCTION.hashBytes( key ).asBytes() );
+    return add( fingerprint.getLong( 0 ), fingerprint.getLong( 8 ), row );
+  }
+
+  private Result add( long high, long low, Object[] row ) throws KettleException {
+    if ( high == 0L && low == 0L ) {
+      low = 1L;
+    }
+    int p = getPartition( high );
+    RowSpillWriter writer = rowFiles.getWriter( p );
+    if ( writer != null ) {
+      writer.writeBytes( ByteBuffer.allocate( 16 ).putLong( high ).putLong( low ).array() );
+      writer.writeRow( row );
+      return Result.SPILLED;
+    }
+    if ( !insert( p, high, low ) ) {
+      return Result.DUPLICATE;
+    }
+    while ( level < MAX_LEVEL && usedMemory > maxMemory && spillLargestPartition() ) {
+      // keep on spilling until the fingerprints fit
+    }
+    return Result.UNIQUE;
+  }
+
+  /**
+   * Adds a fingerprint of a key that was seen before, all of these have to be added before the first row.
+   */
+  private void addSeen( long high, long low ) throws KettleException {
+    int p = getPartition( high );
+    if ( fingerprintFiles.getWriter( p ) != null ) {
+      fingerprintFiles.getWriter( p ).writeRow( new Object[] { high, low } );
+      return;
+    }
+    insert( p, high, low );
+    while ( level < MAX_LEVEL && usedMemory > maxMemory && spillLargestPartition() ) {
+      // keep on spilling until the fingerprints fit
+    }
+  }
+
+  /**
+   * Checks the rows on disk one partition at a time and passes them to the handler. The order of these rows isn't
+   * kept.
+   */
+  public void finish( RowHandler handler ) throws KettleException {
+    // Flush all the files first, that way the buffers of the writers are released before going a level deeper
+    //
+    fingerprintFiles.closeWriters();
+    rowFiles.closeWriters();
+    clearMemory();
+
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      if ( fingerprintFiles.isSpilled( p ) ) {
+        finishPartition( p, handler );
+      }
+    }
+  }
+
+  /**
+   * @return the number of distinct fingerprints kept in memory
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the number of times a partition was spilled to disk, including the partitions of spilled partitions
+   */
+  public int getNrSpills() {
+    return nrSpills;
+  }
+
+  /**
+   * @return the number of bytes of memory in use by the fingerprint tables
+   */
+  public long getUsedMemory() {
+    return usedMemory;
+  }
+
+  /**
+   * Removes all the fingerprints and deletes the temporary files.
+   */
+  public void clear() {
+    clearMemory();
+    fingerprintFiles.clear();
+    rowFiles.clear();
+  }
+
+  private void clearMemory() {
+    for ( int p = 0; p < NR_PARTITIONS; p++ ) {
+      tables[ p ] = null;
+      sizes[ p ] = 0L;
+    }
+    usedMemory = 0L;
+    size = 0L;
+  }
+
+  /**
+   * @return true if the fingerprint was added, false if it was in the table already
+   */
+  private boolean insert( int p, long high, long low ) {
+    long[] table = tables[ p ];
+    if ( table == null ) {
+      table = new long[ 2 * INITIAL_CAPACITY ];
+      tables[ p ] = table;
+      usedMemory += 8L * table.length;
+    }
+    int mask = ( table.length >> 1 ) - 1;
+    int slot = (int) ( low ^ ( low >>> 32 ) ) & mask;
+    while ( true ) {
+      int index = slot << 1;
+      if ( table[ index ] == 0L && table[ index + 1 ] == 0L ) {
+        table[ index ] = high;
+        table[ index + 1 ] = low;
+        break;
+      }
+      if ( table[ index ] == high && table[ index + 1 ] == low ) {
+        return false;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+    size++;
+
+    // Keep the load factor under 1/2 so the probe sequences stay short
+    //
+    if ( ++sizes[ p ] > ( table.length >> 2 ) ) {
+      long[] grown = new long[ table.length << 1 ];
+      int grownMask = ( grown.length >> 1 ) - 1;
+      for ( int index = 0; index < table.length; index += 2 ) {
+        long l = table[ index + 1 ];
+        if ( table[ index ] != 0L || l != 0L ) {
+          int s = (int) ( l ^ ( l >>> 32 ) ) & grownMask;
+          while ( grown[ s << 1 ] != 0L || grown[ ( s << 1 ) + 1 ] != 0L ) {
+            s = ( s + 1 ) & grownMask;
+          }
+          grown[ s << 1 ] = table[ index ];
+          grown[ ( s << 1 ) + 1 ] = l;
+        }
+      }
+      tables[ p ] = grown;
+      usedMemory += 8L * ( grown.length - table.length );
+    }
+    return true;
+  }
+
+  /**
+   * Writes the fingerprints of the largest partition in memory to disk.
+   *
+   * @return false if there was nothing left to spill
+   */
+  private boolean spillLargestPartition() throws KettleException {
+    int largest = fingerprintFiles.getLargestPartition( sizes );
+    if ( largest < 0 ) {
+      return false;
+    }
+
+    RowSpillWriter writer = fingerprintFiles.createWriter( largest, fingerprintMeta );
+    long[] table = tables[ largest ];
+    for ( int index = 0; index < table.length; index += 2 ) {
+      if ( table[ index ] != 0L || table[ index + 1 ] != 0L ) {
+        writer.writeRow( new Object[] { table[ index ], table[ index + 1 ] } );
+      }
+    }
+    rowFiles.createWriter( largest, rowMeta );
+
+    tables[ largest ] = null;
+    usedMemory -= 8L * table.length;
+    size -= sizes[ largest ];
+    sizes[ largest ] = 0L;
+    nrSpills++;
+    return true;
+  }
+
+  /**
+   * Checks the rows of a spilled partition against the fingerprints of that partition, in a set of its own.
+   */
+  private void finishPartition( int p, RowHandler handler ) throws KettleException {
+    FingerprintSet partition = new FingerprintSet( rowMeta, maxMemory, directory, compression, level + 1 );
+    try {
+      RowSpillReader reader = fingerprintFiles.createReader( p, fingerprintMeta );
+      try {
+        for ( Object[] fingerprint = reader.readRow(); fingerprint != null; fingerprint = reader.readRow() ) {
+          partition.addSeen( (Long) fingerprint[ 0 ], (Long) fingerprint[ 1 ] );
+        }
+      } finally {
+        reader.close();
+      }
+      fingerprintFiles.delete( p );
+
+      reader = rowFiles.createReader( p, rowMeta );
+      try {
+        for ( byte[] bytes = reader.readBytes(); bytes != null; bytes = reader.readBytes() ) {
+          ByteBuffer fingerprint = ByteBuffer.wrap( bytes );
+          Object[] row = reader.readRow();
+          Result result = partition.add( fingerprint.getLong( 0 ), fingerprint.getLong( 8 ), row );
+          if ( result != Result.SPILLED ) {
+            handler.handleRow( row, result == Result.UNIQUE );
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      rowFiles.delete( p );
+
+      partition.finish( handler );
+      nrSpills += partition.getNrSpills();
+    } finally {
+      partition.clear();
+    }
+  }
+
+  private int getPartition( long high ) {
+    return RowSpillPartitions.getPartition( high, level );
+  }
+}
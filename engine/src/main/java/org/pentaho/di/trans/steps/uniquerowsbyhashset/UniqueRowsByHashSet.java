@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -22,7 +22,13 @@
 
 package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
+import java.io.File;
+
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
@@ -33,6 +39,9 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
 public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
   private static Class<?> PKG = UniqueRowsByHashSetMeta.class; // for i18n purposes, needed by Translator2!!
 
@@ -51,6 +60,60 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
     return data.seen.add( new RowKey( row, data ) );
   }
 
+  /**
+   * Serializes the (compared) values of a row, in normal storage so the same values always give the same bytes.
+   */
+  private byte[] getKey( Object[] row ) throws KettleException {
+    Object[] keyData = new Object[data.keyMeta.size()];
+    for ( int i = 0; i < keyData.length; i++ ) {
+      int fieldnr = data.fieldnrs.length == 0 ? i : data.fieldnrs[i];
+      keyData[i] = data.inputRowMeta.getValueMeta( fieldnr ).convertToNormalStorageType( row[fieldnr] );
+    }
+    return RowMeta.extractData( data.keyMeta, keyData );
+  }
+
+  private void initKeys() throws KettleException {
+    data.keyMeta = new RowMeta();
+    int nrKeys = data.fieldnrs.length == 0 ? data.inputRowMeta.size() : data.fieldnrs.length;
+    for ( int i = 0; i < nrKeys; i++ ) {
+      ValueMetaInterface keyMeta =
+        data.inputRowMeta.getValueMeta( data.fieldnrs.length == 0 ? i : data.fieldnrs[i] ).clone();
+      keyMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      data.keyMeta.addValueMeta( keyMeta );
+    }
+
+    String dedupeMode = meta.getDedupeMode();
+    if ( UniqueRowsByHashSetMeta.DEDUPE_MODE_FINGERPRINTS.equals( dedupeMode ) ) {
+      long maxMemory = Const.toLong( environmentSubstitute( meta.getMaxMemory() ), 0L ) * 1024L * 1024L;
+      String directory = environmentSubstitute( meta.getDirectory() );
+      data.fingerprints = new FingerprintSet( data.inputRowMeta, maxMemory,
+        Utils.isEmpty( directory ) ? null : new File( directory ),
+        RowSpillCompression.getCompression( getVariable( Const.KETTLE_SPILL_COMPRESSION ), RowSpillCompression.NONE ) );
+    } else if ( UniqueRowsByHashSetMeta.DEDUPE_MODE_APPROXIMATE.equals( dedupeMode ) ) {
+      long expectedRows = Const.toLong( environmentSubstitute( meta.getExpectedRows() ), -1L );
+      double rate = Const.toDouble( environmentSubstitute( meta.getFalsePositiveRate() ), -1.0 );
+      if ( expectedRows <= 0L || rate <= 0.0 || rate >= 1.0 ) {
+        throw new KettleException( BaseMessages.getString( PKG, "UniqueRowsByHashSet.Exception.InvalidFilterSettings",
+          meta.getExpectedRows(), meta.getFalsePositiveRate() ) );
+      }
+      data.filter =
+        BloomFilter.create( Funnels.byteArrayFunnel(), (int) Math.min( expectedRows, Integer.MAX_VALUE ), rate );
+    }
+  }
+
+  private void handleRow( Object[] row, boolean unique ) throws KettleException {
+    if ( unique ) {
+      putRow( data.outputRowMeta, row );
+    } else {
+      incrementLinesRejected();
+      if ( data.sendDuplicateRows ) {
+        // Simply add this row to the error row
+        putError( data.inputRowMeta, row, 1, data.realErrorDescription, Utils.isEmpty( data.compareFields )
+          ? null : data.compareFields, "UNRH001" );
+      }
+    }
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (UniqueRowsByHashSetMeta) smi;
     data = (UniqueRowsByHashSetData) sdi;
@@ -58,6 +121,20 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
     Object[] r = getRow(); // get row!
     if ( r == null ) { // no more input to be expected...
 
+      if ( data.fingerprints != null ) {
+        // The rows of the partitions on disk are only checked now
+        //
+        data.fingerprints.finish( new FingerprintSet.RowHandler() {
+          @Override
+          public void handleRow( Object[] row, boolean unique ) throws KettleException {
+            UniqueRowsByHashSet.this.handleRow( row, unique );
+          }
+        } );
+        if ( log.isDetailed() && data.fingerprints.getNrSpills() > 0 ) {
+          logDetailed( BaseMessages.getString( PKG, "UniqueRowsByHashSet.Log.FingerprintsSpilled",
+            data.fingerprints.getNrSpills() ) );
+        }
+      }
       data.clearHashSet();
       setOutputDone();
       return false;
@@ -93,17 +170,20 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
       if ( data.sendDuplicateRows && !Utils.isEmpty( meta.getErrorDescription() ) ) {
         data.realErrorDescription = environmentSubstitute( meta.getErrorDescription() );
       }
+      initKeys();
     }
 
-    if ( isUniqueRow( r ) ) {
-      putRow( data.outputRowMeta, r );
-    } else {
-      incrementLinesRejected();
-      if ( data.sendDuplicateRows ) {
-        // Simply add this row to the error row
-        putError( getInputRowMeta(), r, 1, data.realErrorDescription, Utils.isEmpty( data.compareFields )
-          ? null : data.compareFields, "UNRH001" );
+    if ( data.fingerprints != null ) {
+      FingerprintSet.Result result = data.fingerprints.add( getKey( r ), r );
+      if ( result != FingerprintSet.Result.SPILLED ) {
+        handleRow( r, result == FingerprintSet.Result.UNIQUE );
       }
+    } else if ( data.filter != null ) {
+      // The filter only changes for a key that wasn't added before
+      //
+      handleRow( r, data.filter.put( getKey( r ) ) );
+    } else {
+      handleRow( r, isUniqueRow( r ) );
     }
 
     if ( checkFeedback( getLinesRead() ) ) {
@@ -127,4 +207,13 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
     return false;
   }
 
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (UniqueRowsByHashSetData) sdi;
+
+    // Removes the temporary files in case the step was stopped
+    //
+    data.clearHashSet();
+    super.dispose( smi, sdi );
+  }
+
 }
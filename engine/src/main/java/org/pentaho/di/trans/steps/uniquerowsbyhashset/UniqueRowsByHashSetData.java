@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -28,6 +28,8 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import com.google.common.hash.BloomFilter;
+
 public class UniqueRowsByHashSetData extends BaseStepData implements StepDataInterface {
   public RowMetaInterface outputRowMeta;
   public RowMetaInterface inputRowMeta;
@@ -39,11 +41,22 @@ public class UniqueRowsByHashSetData extends BaseStepData implements StepDataInt
 
   public HashSet<RowKey> seen = new HashSet<RowKey>();
 
+  /** The metadata of the serialized keys in the fingerprint and approximate modes */
+  public RowMetaInterface keyMeta;
+  public FingerprintSet fingerprints;
+  public BloomFilter<byte[]> filter;
+
   public UniqueRowsByHashSetData() {
     super();
   }
 
   public void clearHashSet() {
+    seen.clear();
+    if ( fingerprints != null ) {
+      fingerprints.clear();
+      fingerprints = null;
+    }
+    filter = null;
     sendDuplicateRows = false;
     compareFields = null;
     realErrorDescription = null;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -26,6 +26,7 @@ import java.util.List;
 
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -49,6 +50,17 @@ import org.w3c.dom.Node;
 public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInterface {
   private static Class<?> PKG = UniqueRowsByHashSetMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** Keep the (compared) values of every distinct row in a hash set */
+  public static final String DEDUPE_MODE_ROWS = "rows";
+
+  /** Keep a 128 bit fingerprint of every distinct row in memory, spill to disk when they don't fit */
+  public static final String DEDUPE_MODE_FINGERPRINTS = "fingerprints";
+
+  /** Keep a Bloom filter of the rows, unique rows can be taken for duplicates at the configured rate */
+  public static final String DEDUPE_MODE_APPROXIMATE = "approximate";
+
+  public static final String[] DEDUPE_MODES = { DEDUPE_MODE_ROWS, DEDUPE_MODE_FINGERPRINTS, DEDUPE_MODE_APPROXIMATE };
+
   /** Whether to compare strictly by hash value or to store the row values for strict equality checking */
   private boolean storeValues;
 
@@ -58,6 +70,21 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
   private boolean rejectDuplicateRow;
   private String errorDescription;
 
+  /** How the rows that were seen are kept track of, one of the DEDUPE_MODE constants */
+  private String dedupeMode;
+
+  /** The memory in MB the fingerprints can use before they are spilled to disk */
+  private String maxMemory;
+
+  /** The directory of the temporary files of the fingerprints that are spilled to disk */
+  private String directory;
+
+  /** The expected number of distinct rows, used to size the Bloom filter */
+  private String expectedRows;
+
+  /** The rate at which the Bloom filter takes a unique row for a duplicate */
+  private String falsePositiveRate;
+
   public UniqueRowsByHashSetMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -119,6 +146,46 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
     return errorDescription;
   }
 
+  public String getDedupeMode() {
+    return dedupeMode;
+  }
+
+  public void setDedupeMode( String dedupeMode ) {
+    this.dedupeMode = dedupeMode;
+  }
+
+  public String getMaxMemory() {
+    return maxMemory;
+  }
+
+  public void setMaxMemory( String maxMemory ) {
+    this.maxMemory = maxMemory;
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  public void setDirectory( String directory ) {
+    this.directory = directory;
+  }
+
+  public String getExpectedRows() {
+    return expectedRows;
+  }
+
+  public void setExpectedRows( String expectedRows ) {
+    this.expectedRows = expectedRows;
+  }
+
+  public String getFalsePositiveRate() {
+    return falsePositiveRate;
+  }
+
+  public void setFalsePositiveRate( String falsePositiveRate ) {
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode );
   }
@@ -139,6 +206,11 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
       storeValues = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "store_values" ) );
       rejectDuplicateRow = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "reject_duplicate_row" ) );
       errorDescription = XMLHandler.getTagValue( stepnode, "error_description" );
+      dedupeMode = Const.NVL( XMLHandler.getTagValue( stepnode, "dedupe_mode" ), DEDUPE_MODE_ROWS );
+      maxMemory = XMLHandler.getTagValue( stepnode, "max_memory" );
+      directory = XMLHandler.getTagValue( stepnode, "directory" );
+      expectedRows = XMLHandler.getTagValue( stepnode, "expected_rows" );
+      falsePositiveRate = XMLHandler.getTagValue( stepnode, "false_positive_rate" );
 
       Node fields = XMLHandler.getSubNode( stepnode, "fields" );
       int nrfields = XMLHandler.countNodes( fields, "field" );
@@ -160,6 +232,11 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
   public void setDefault() {
     rejectDuplicateRow = false;
     errorDescription = null;
+    dedupeMode = DEDUPE_MODE_ROWS;
+    maxMemory = "512";
+    directory = "%%java.io.tmpdir%%";
+    expectedRows = "10000000";
+    falsePositiveRate = "0.001";
     int nrfields = 0;
 
     allocate( nrfields );
@@ -179,6 +256,11 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
     retval.append( "      " + XMLHandler.addTagValue( "store_values", storeValues ) );
     retval.append( "      " + XMLHandler.addTagValue( "reject_duplicate_row", rejectDuplicateRow ) );
     retval.append( "      " + XMLHandler.addTagValue( "error_description", errorDescription ) );
+    retval.append( "      " + XMLHandler.addTagValue( "dedupe_mode", dedupeMode ) );
+    retval.append( "      " + XMLHandler.addTagValue( "max_memory", maxMemory ) );
+    retval.append( "      " + XMLHandler.addTagValue( "directory", directory ) );
+    retval.append( "      " + XMLHandler.addTagValue( "expected_rows", expectedRows ) );
+    retval.append( "      " + XMLHandler.addTagValue( "false_positive_rate", falsePositiveRate ) );
     retval.append( "    <fields>" );
     for ( int i = 0; i < compareFields.length; i++ ) {
       retval.append( "      <field>" );
@@ -195,6 +277,11 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
       storeValues = rep.getStepAttributeBoolean( id_step, "store_values" );
       rejectDuplicateRow = rep.getStepAttributeBoolean( id_step, "reject_duplicate_row" );
       errorDescription = rep.getStepAttributeString( id_step, "error_description" );
+      dedupeMode = Const.NVL( rep.getStepAttributeString( id_step, "dedupe_mode" ), DEDUPE_MODE_ROWS );
+      maxMemory = rep.getStepAttributeString( id_step, "max_memory" );
+      directory = rep.getStepAttributeString( id_step, "directory" );
+      expectedRows = rep.getStepAttributeString( id_step, "expected_rows" );
+      falsePositiveRate = rep.getStepAttributeString( id_step, "false_positive_rate" );
       int nrfields = rep.countNrStepAttributes( id_step, "field_name" );
 
       allocate( nrfields );
@@ -213,6 +300,11 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
       rep.saveStepAttribute( id_transformation, id_step, "store_values", storeValues );
       rep.saveStepAttribute( id_transformation, id_step, "reject_duplicate_row", rejectDuplicateRow );
       rep.saveStepAttribute( id_transformation, id_step, "error_description", errorDescription );
+      rep.saveStepAttribute( id_transformation, id_step, "dedupe_mode", dedupeMode );
+      rep.saveStepAttribute( id_transformation, id_step, "max_memory", maxMemory );
+      rep.saveStepAttribute( id_transformation, id_step, "directory", directory );
+      rep.saveStepAttribute( id_transformation, id_step, "expected_rows", expectedRows );
+      rep.saveStepAttribute( id_transformation, id_step, "false_positive_rate", falsePositiveRate );
       for ( int i = 0; i < compareFields.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "field_name", compareFields[i] );
       }
@@ -238,6 +330,16 @@ public class UniqueRowsByHashSetMeta extends BaseStepMeta implements StepMetaInt
           PKG, "UniqueRowsByHashSetMeta.CheckResult.NoInputReceivedFromOtherSteps" ), stepMeta );
       remarks.add( cr );
     }
+
+    if ( DEDUPE_MODE_APPROXIMATE.equals( dedupeMode ) ) {
+      double rate = Const.toDouble( transMeta.environmentSubstitute( falsePositiveRate ), -1.0 );
+      if ( rate <= 0.0 || rate >= 1.0 ) {
+        cr =
+          new CheckResult( CheckResultInterface.TYPE_RESULT_ERROR, BaseMessages.getString(
+            PKG, "UniqueRowsByHashSetMeta.CheckResult.InvalidFalsePositiveRate", falsePositiveRate ), stepMeta );
+        remarks.add( cr );
+      }
+    }
   }
 
   public StepInterface getStep( StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr,
@@ -56,6 +56,7 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.StepThreadMode;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -134,6 +135,28 @@ public class TransTest {
     verify( trans ).fireTransFinishedListeners();
   }
 
+  @Test
+  public void testStepThreadMode() {
+    assertEquals( StepThreadMode.PLATFORM, trans.getStepThreadMode() );
+
+    trans.setVariable( Const.KETTLE_STEP_THREAD_MODE, "virtual" );
+    assertEquals( StepThreadMode.VIRTUAL, trans.getStepThreadMode() );
+
+    trans.setStepThreadMode( StepThreadMode.PLATFORM );
+    assertEquals( StepThreadMode.PLATFORM, trans.getStepThreadMode() );
+  }
+
+  @Test( timeout = 1000 )
+  public void transWithNoStepsIsNotEndlessOnVirtualThreads() throws Exception {
+    trans.setStepThreadMode( StepThreadMode.VIRTUAL );
+    trans.prepareExecution( new String[] {} );
+    trans.startThreads();
+
+    while ( trans.isRunning() ) {
+      Thread.sleep( 1 );
+    }
+  }
+
   @Test
   public void testFindDatabaseWithEncodedConnectionName() {
     DatabaseMeta dbMeta1 =
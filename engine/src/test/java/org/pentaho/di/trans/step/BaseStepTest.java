@@ -55,6 +55,7 @@ import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.QueueRowSet;
 import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RingBufferRowSet;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.SingleRowRowSet;
@@ -394,6 +395,177 @@ public class BaseStepTest {
     verify( rowHandler, times( 1 ) ).putRow( rowMetaInterface, objects );
   }
 
+  @Test
+  public void getRowsWithRowHandler() throws KettleException {
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface,
+        0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setRowHandler( rowHandler );
+    baseStep.getRows( 10 );
+    verify( rowHandler, times( 1 ) ).getRows( 10 );
+  }
+
+  @Test
+  public void putRowsWithRowHandler() throws KettleException {
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface,
+        0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setRowHandler( rowHandler );
+
+    RowMetaInterface rowMetaInterface = mock( RowMetaInterface.class );
+    List<Object[]> rows = Arrays.asList( new Object[] { "foo" }, new Object[] { "bar" } );
+    baseStep.putRows( rowMetaInterface, rows );
+    verify( rowHandler, times( 1 ) ).putRows( rowMetaInterface, rows );
+  }
+
+  @Test
+  public void putRowsHandsOverBatchToSingleOutputRowSet() throws KettleException {
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setStopped( false );
+    baseStep.setRepartitioning( StepPartitioningMeta.PARTITIONING_METHOD_NONE );
+    RowSet rowSet = new RingBufferRowSet( 10 );
+    baseStep.setOutputRowSets( new ArrayList<RowSet>( Arrays.asList( rowSet ) ) );
+
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( long i = 0; i < 5; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+
+    baseStep.putRows( rowMeta, rows );
+
+    assertEquals( 5, rowSet.size() );
+    assertEquals( 5, baseStep.getLinesWritten() );
+    for ( long i = 0; i < 5; i++ ) {
+      assertEquals( i, rowSet.getRowImmediate()[ 0 ] );
+    }
+  }
+
+  @Test
+  public void putRowsStopsHandingOverRowsWhenStopped() throws KettleException {
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setStopped( true );
+    baseStep.setRepartitioning( StepPartitioningMeta.PARTITIONING_METHOD_NONE );
+    RowSet rowSet = new RingBufferRowSet( 10 );
+    baseStep.setOutputRowSets( new ArrayList<RowSet>( Arrays.asList( rowSet ) ) );
+
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( long i = 0; i < 5; i++ ) {
+      rows.add( new Object[] { i } );
+    }
+
+    baseStep.putRows( rowMeta, rows );
+
+    assertEquals( 0, rowSet.size() );
+    assertEquals( 0, baseStep.getLinesWritten() );
+  }
+
+  @Test
+  public void getRowsTakesAvailableRowsFromSingleInputRowSet() throws KettleException {
+    BaseStep baseStepSpy =
+      spy( new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface,
+        0, mockHelper.transMeta, mockHelper.trans ) );
+    doNothing().when( baseStepSpy ).waitUntilTransformationIsStarted();
+    doNothing().when( baseStepSpy ).openRemoteInputStepSocketsOnce();
+
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    RowSet rowSet = new RingBufferRowSet( 10 );
+    for ( long i = 0; i < 5; i++ ) {
+      rowSet.putRow( rowMeta, new Object[] { i } );
+    }
+    baseStepSpy.setInputRowSets( new ArrayList<RowSet>( Arrays.asList( rowSet ) ) );
+
+    List<Object[]> rows = baseStepSpy.getRows( 3 );
+
+    assertEquals( 3, rows.size() );
+    for ( int i = 0; i < 3; i++ ) {
+      assertEquals( (long) i, rows.get( i )[ 0 ] );
+    }
+    assertEquals( 3, baseStepSpy.getLinesRead() );
+    assertEquals( 2, rowSet.size() );
+    assertEquals( rowMeta, baseStepSpy.getInputRowMeta() );
+  }
+
+  @Test
+  public void countersAreViewsOnStepMetrics() {
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    StepMetrics metrics = baseStep.getStepMetrics();
+
+    assertEquals( 1, baseStep.incrementLinesRead() );
+    assertEquals( 2, baseStep.incrementLinesRead() );
+    assertEquals( 1, baseStep.decrementLinesRead() );
+    assertEquals( 1, baseStep.incrementLinesWritten() );
+    assertEquals( 1, baseStep.incrementLinesInput() );
+    assertEquals( 1, baseStep.incrementLinesOutput() );
+    assertEquals( 1, baseStep.incrementLinesUpdated() );
+    assertEquals( 1, baseStep.incrementLinesSkipped() );
+    assertEquals( 1, baseStep.incrementLinesRejected() );
+    baseStep.setErrors( 3 );
+
+    assertEquals( 1, metrics.getLinesRead() );
+    assertEquals( 1, metrics.getLinesWritten() );
+    assertEquals( 1, metrics.getLinesInput() );
+    assertEquals( 1, metrics.getLinesOutput() );
+    assertEquals( 1, metrics.getLinesUpdated() );
+    assertEquals( 1, metrics.getLinesSkipped() );
+    assertEquals( 1, metrics.getLinesRejected() );
+    assertEquals( 3, metrics.getErrors() );
+
+    metrics.addLinesRead( 10 );
+    assertEquals( 11, baseStep.getLinesRead() );
+    baseStep.setLinesRead( 5 );
+    assertEquals( 5, metrics.getLinesRead() );
+  }
+
+  @Test
+  @SuppressWarnings( "deprecation" )
+  public void deprecatedCounterFieldsAreCopiedFromStepMetrics() {
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+
+    // The fields only change when the counters are copied
+    //
+    baseStep.incrementLinesRead();
+    baseStep.incrementLinesSkipped();
+    baseStep.setLinesOutput( 7 );
+    assertEquals( 0, baseStep.linesRead );
+    baseStep.copyCountersToFields();
+    assertEquals( 1, baseStep.linesRead );
+    assertEquals( 1, baseStep.linesSkipped );
+    assertEquals( 7, baseStep.linesOutput );
+
+    // Writing to a field doesn't change the counter
+    //
+    baseStep.linesInput += 2;
+    assertEquals( 0, baseStep.getLinesInput() );
+    assertEquals( 1, baseStep.incrementLinesInput() );
+    baseStep.copyCountersToFields();
+    assertEquals( 1, baseStep.linesInput );
+  }
+
+  @Test
+  public void checkFeedbackForBatches() {
+    when( mockHelper.transMeta.isFeedbackShown() ).thenReturn( true );
+    when( mockHelper.transMeta.getFeedbackSize() ).thenReturn( 100 );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+
+    assertTrue( baseStep.checkFeedback( 100, 1 ) );
+    assertTrue( baseStep.checkFeedback( 120, 50 ) );
+    assertFalse( baseStep.checkFeedback( 99, 50 ) );
+    assertFalse( baseStep.checkFeedback( 250, 49 ) );
+    assertFalse( baseStep.checkFeedback( 0, 0 ) );
+  }
+
   @Test
   public void putErrorWithRowHandler() throws KettleException {
     BaseStep baseStep =
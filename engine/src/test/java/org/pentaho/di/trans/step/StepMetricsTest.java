@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StepMetricsTest {
+
+  @Test
+  public void testAddAndSet() {
+    StepMetrics metrics = new StepMetrics();
+    metrics.addLinesRead( 3 );
+    metrics.addLinesRead( -1 );
+    metrics.addLinesWritten( 5 );
+    metrics.setLinesInput( 7 );
+    metrics.setLinesInput( 2 );
+    metrics.addErrors( 1 );
+
+    assertEquals( 2, metrics.getLinesRead() );
+    assertEquals( 5, metrics.getLinesWritten() );
+    assertEquals( 2, metrics.getLinesInput() );
+    assertEquals( 0, metrics.getLinesOutput() );
+    assertEquals( 1, metrics.getErrors() );
+
+    metrics.reset();
+    assertEquals( 0, metrics.getLinesRead() );
+    assertEquals( 0, metrics.getLinesWritten() );
+    assertEquals( 0, metrics.getLinesInput() );
+    assertEquals( 0, metrics.getErrors() );
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final StepMetrics metrics = new StepMetrics();
+    final int nrThreads = 4;
+    final int nrUpdates = 100000;
+
+    List<Thread> threads = new ArrayList<>();
+    for ( int i = 0; i < nrThreads; i++ ) {
+      Thread thread = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          for ( int j = 0; j < nrUpdates; j++ ) {
+            metrics.addLinesRead( 1 );
+            metrics.addLinesOutput( 2 );
+          }
+        }
+      } );
+      threads.add( thread );
+      thread.start();
+    }
+    for ( Thread thread : threads ) {
+      thread.join();
+    }
+
+    assertEquals( nrThreads * nrUpdates, metrics.getLinesRead() );
+    assertEquals( 2L * nrThreads * nrUpdates, metrics.getLinesOutput() );
+  }
+
+  @Test
+  public void testCopyOf() {
+    StepInterface step = mock( StepInterface.class );
+    when( step.getLinesRead() ).thenReturn( 1L );
+    when( step.getLinesWritten() ).thenReturn( 2L );
+    when( step.getLinesInput() ).thenReturn( 3L );
+    when( step.getLinesOutput() ).thenReturn( 4L );
+    when( step.getLinesUpdated() ).thenReturn( 5L );
+    when( step.getLinesRejected() ).thenReturn( 6L );
+    when( step.getErrors() ).thenReturn( 7L );
+
+    StepMetrics metrics = StepMetrics.copyOf( step );
+
+    assertEquals( 1L, metrics.getLinesRead() );
+    assertEquals( 2L, metrics.getLinesWritten() );
+    assertEquals( 3L, metrics.getLinesInput() );
+    assertEquals( 4L, metrics.getLinesOutput() );
+    assertEquals( 5L, metrics.getLinesUpdated() );
+    assertEquals( 6L, metrics.getLinesRejected() );
+    assertEquals( 7L, metrics.getErrors() );
+    assertEquals( 0L, metrics.getLinesSkipped() );
+  }
+
+  @Test
+  public void testCopyOfBaseStepIncludesLinesSkipped() {
+    BaseStep step = mock( BaseStep.class );
+    when( step.getLinesRead() ).thenReturn( 1L );
+    when( step.getLinesSkipped() ).thenReturn( 8L );
+
+    StepMetrics metrics = StepMetrics.copyOf( step );
+
+    assertEquals( 1L, metrics.getLinesRead() );
+    assertEquals( 8L, metrics.getLinesSkipped() );
+  }
+}
@@ -24,6 +24,7 @@ package org.pentaho.di.trans.step;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class StepStatusTest {
 
@@ -34,4 +35,35 @@ public class StepStatusTest {
     String[] overrides = status.getTransLogFields( "Override" );
     assertEquals( "Override", overrides[10] );
   }
+
+  @Test
+  public void testCacheStatisticsInXml() throws Exception {
+    StepStatus status = new StepStatus();
+    status.setStepname( "lookup" );
+    status.setStatusDescription( "Running" );
+    status.setCacheHits( 10 );
+    status.setCacheMisses( 3 );
+    status.setCacheEvictions( 1 );
+
+    StepStatus copy = status.fromXML( status.getXML() );
+    assertEquals( 10, copy.getCacheHits() );
+    assertEquals( 3, copy.getCacheMisses() );
+    assertEquals( 1, copy.getCacheEvictions() );
+  }
+
+  @Test
+  public void testNoCacheStatisticsInXml() throws Exception {
+    StepStatus status = new StepStatus();
+    status.setStepname( "filter" );
+    status.setStatusDescription( "Running" );
+
+    // Steps without a cache, and servers of older versions, don't write the cache statistics
+    //
+    String xml = status.getXML();
+    assertFalse( xml.contains( "cacheHits" ) );
+    StepStatus copy = status.fromXML( xml );
+    assertEquals( 0, copy.getCacheHits() );
+    assertEquals( 0, copy.getCacheMisses() );
+    assertEquals( 0, copy.getCacheEvictions() );
+  }
 }
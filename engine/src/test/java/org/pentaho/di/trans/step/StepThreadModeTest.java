@@ -0,0 +1,64 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StepThreadModeTest {
+
+  @Test
+  public void testGetStepThreadModeByCode() {
+    assertEquals( StepThreadMode.PLATFORM, StepThreadMode.getStepThreadModeByCode( "platform", null ) );
+    assertEquals( StepThreadMode.VIRTUAL, StepThreadMode.getStepThreadModeByCode( "Virtual", null ) );
+    assertEquals( StepThreadMode.VIRTUAL, StepThreadMode.getStepThreadModeByCode( " VIRTUAL ", null ) );
+    assertEquals( StepThreadMode.PLATFORM, StepThreadMode.getStepThreadModeByCode( null, StepThreadMode.PLATFORM ) );
+    assertEquals( StepThreadMode.PLATFORM, StepThreadMode.getStepThreadModeByCode( "green", StepThreadMode.PLATFORM ) );
+  }
+
+  @Test
+  public void testNewThreadIsNotStarted() throws Exception {
+    for ( StepThreadMode mode : StepThreadMode.values() ) {
+      final AtomicBoolean ran = new AtomicBoolean( false );
+      Thread thread = mode.newThread( new Runnable() {
+        @Override
+        public void run() {
+          ran.set( true );
+        }
+      } );
+      thread.setName( "test " + mode.getCode() );
+      assertFalse( thread.isAlive() );
+      assertFalse( ran.get() );
+
+      thread.start();
+      thread.join();
+      assertTrue( ran.get() );
+      assertEquals( "test " + mode.getCode(), thread.getName() );
+    }
+  }
+}
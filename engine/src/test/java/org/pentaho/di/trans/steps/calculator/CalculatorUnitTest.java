@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.calculator;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
@@ -244,6 +245,54 @@ public class CalculatorUnitTest {
     verify( data ).clearValuesMetaMapping();
   }
 
+  @Test
+  public void testBatchCalculation() throws KettleException {
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "a" ) );
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "b" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "c" ) );
+
+    RowSet inputRowSet = smh.getMockInputRowSet( new Object[][] {
+      { 2L, 3L, 0.5 }, { null, 3L, 1.5 }, { 4L, -5L, null } } );
+    inputRowSet.setRowMeta( inputRowMeta );
+
+    Calculator calculator = new Calculator( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    calculator.addRowSetToInputRowSets( inputRowSet );
+    calculator.setInputRowMeta( inputRowMeta );
+    calculator.init( smh.initStepMetaInterface, smh.initStepDataInterface );
+
+    CalculatorMeta meta = new CalculatorMeta();
+    meta.setCalculation( new CalculatorMetaFunction[] {
+      new CalculatorMetaFunction( "sum", CalculatorMetaFunction.CALC_ADD, "a", "b", null,
+        ValueMetaInterface.TYPE_INTEGER, 0, 0, true, "", "", "", "" ),
+      new CalculatorMetaFunction( "product", CalculatorMetaFunction.CALC_MULTIPLY, "sum", "a", null,
+        ValueMetaInterface.TYPE_INTEGER, 0, 0, false, "", "", "", "" ),
+      new CalculatorMetaFunction( "diff", CalculatorMetaFunction.CALC_SUBTRACT, "c", "c", null,
+        ValueMetaInterface.TYPE_NUMBER, 0, 0, false, "", "", "", "" ) } );
+
+    final List<Object[]> result = new ArrayList<Object[]>();
+    calculator.addRowListener( new RowAdapter() {
+      @Override public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        result.add( row );
+      }
+    } );
+
+    CalculatorData data = new CalculatorData();
+    while ( calculator.processRows( meta, data ) ) {
+      assertTrue( data.isBatchCalculation() );
+    }
+
+    // The temporary sum is removed from the result
+    //
+    assertEquals( 3, result.size() );
+    assertEquals( 10L, result.get( 0 )[ 3 ] );
+    assertEquals( 0.0, result.get( 0 )[ 4 ] );
+    assertEquals( null, result.get( 1 )[ 3 ] );
+    assertEquals( 0.0, result.get( 1 )[ 4 ] );
+    assertEquals( -4L, result.get( 2 )[ 3 ] );
+    assertEquals( null, result.get( 2 )[ 4 ] );
+  }
+
   @Test
   public void testRound1() throws KettleException {
     assertRound1( 1.0, 1.2 );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2019 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,23 +24,47 @@ package org.pentaho.di.trans.steps.databasejoin;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.SqlScriptParser;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.repository.Repository;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+import org.pentaho.metastore.api.IMetaStore;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -123,4 +147,205 @@ public class DatabaseJoinTest {
     verify( mockStepDataInterface.db, times( 0 ) ).cancelStatement( any( PreparedStatement.class ) );
     assertFalse( mockStepDataInterface.isCanceled );
   }
+
+  @Test
+  public void testBatchedJoinWithCache() throws Exception {
+    StepMockHelper<DatabaseJoinMeta, DatabaseJoinData> smh =
+      new StepMockHelper<DatabaseJoinMeta, DatabaseJoinData>( "databaseJoin", DatabaseJoinMeta.class,
+        DatabaseJoinData.class );
+    try {
+      when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+        smh.logChannelInterface );
+      when( smh.trans.isRunning() ).thenReturn( true );
+
+      DatabaseJoinMeta meta = smh.processRowsStepMetaInterface;
+      mockJoinMeta( meta, "SELECT name FROM t WHERE id = ?" );
+
+      Database db = mock( Database.class );
+      PreparedStatement batchStatement = mock( PreparedStatement.class );
+      ResultSet rs = mock( ResultSet.class );
+      doReturn( batchStatement ).when( db ).prepareSQL( anyString() );
+      doReturn( rs ).when( db ).openQuery( eq( batchStatement ), any( RowMetaInterface.class ), any( Object[].class ) );
+      RowMeta resultMeta = new RowMeta();
+      resultMeta.addValueMeta( new ValueMetaInteger( DatabaseJoin.BATCH_NR_FIELD ) );
+      resultMeta.addValueMeta( new ValueMetaString( "name" ) );
+      doReturn( resultMeta ).when( db ).getReturnRowMeta();
+      when( db.getRow( rs ) ).thenReturn( new Object[] { 0L, "a" }, new Object[] { 1L, "b" },
+        new Object[] { 1L, "c" }, null );
+
+      DatabaseJoinData data = smh.processRowsStepDataInterface;
+      data.db = db;
+      DatabaseJoin step = createJoinStep( smh, data );
+      List<Object[]> output = processRows( step, meta, data );
+
+      // Key 2 is found in the cache for the second batch, only key 4 is looked up. The number of keys of a statement
+      // is rounded up to a power of 2, at most the batch size.
+      //
+      ArgumentCaptor<String> sql = ArgumentCaptor.forClass( String.class );
+      verify( db, times( 3 ) ).prepareSQL( sql.capture() );
+      assertEquals( 3, countBatchParts( sql.getAllValues().get( 0 ) ) );
+      assertEquals( 2, countBatchParts( sql.getAllValues().get( 1 ) ) );
+      assertEquals( 1, countBatchParts( sql.getAllValues().get( 2 ) ) );
+      ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass( Object[].class );
+      verify( db, times( 2 ) ).openQuery( eq( batchStatement ), any( RowMetaInterface.class ), params.capture() );
+      assertArrayEquals( new Object[] { 1L, 2L }, params.getAllValues().get( 0 ) );
+      assertArrayEquals( new Object[] { 4L }, params.getAllValues().get( 1 ) );
+      assertEquals( 3, step.getLinesInput() );
+
+      String[] expected = { "a", "b", "c", "a", "b", "c", null };
+      long[] expectedIds = { 1L, 2L, 2L, 1L, 2L, 2L, 4L };
+      assertEquals( expected.length, output.size() );
+      for ( int i = 0; i < expected.length; i++ ) {
+        assertEquals( expectedIds[i], output.get( i )[0] );
+        assertEquals( expected[i], output.get( i )[1] );
+      }
+    } finally {
+      smh.cleanUp();
+    }
+  }
+
+  @Test
+  public void testBatchIsPaddedToAPowerOf2() throws Exception {
+    StepMockHelper<DatabaseJoinMeta, DatabaseJoinData> smh =
+      new StepMockHelper<DatabaseJoinMeta, DatabaseJoinData>( "databaseJoin", DatabaseJoinMeta.class,
+        DatabaseJoinData.class );
+    try {
+      when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+        smh.logChannelInterface );
+      when( smh.trans.isRunning() ).thenReturn( true );
+
+      DatabaseJoinMeta meta = smh.processRowsStepMetaInterface;
+      mockJoinMeta( meta, "SELECT name FROM t WHERE id = ?" );
+      doReturn( 5 ).when( meta ).getBatchSize();
+
+      Database db = mock( Database.class );
+      PreparedStatement batchStatement = mock( PreparedStatement.class );
+      ResultSet rs = mock( ResultSet.class );
+      doReturn( batchStatement ).when( db ).prepareSQL( anyString() );
+      doReturn( rs ).when( db ).openQuery( eq( batchStatement ), any( RowMetaInterface.class ), any( Object[].class ) );
+      RowMeta resultMeta = new RowMeta();
+      resultMeta.addValueMeta( new ValueMetaInteger( DatabaseJoin.BATCH_NR_FIELD ) );
+      resultMeta.addValueMeta( new ValueMetaString( "name" ) );
+      doReturn( resultMeta ).when( db ).getReturnRowMeta();
+      // The padding part repeats key 3 and finds its row again
+      //
+      when( db.getRow( rs ) ).thenReturn( new Object[] { 0L, "a" }, new Object[] { 2L, "c" },
+        new Object[] { 3L, "c" }, null );
+
+      DatabaseJoinData data = smh.processRowsStepDataInterface;
+      data.db = db;
+      DatabaseJoin step = createJoinStep( smh, data, new Object[] { 1L }, new Object[] { 2L }, new Object[] { 3L } );
+      List<Object[]> output = processRows( step, meta, data );
+
+      ArgumentCaptor<String> sql = ArgumentCaptor.forClass( String.class );
+      verify( db, times( 2 ) ).prepareSQL( sql.capture() );
+      assertEquals( 5, countBatchParts( sql.getAllValues().get( 0 ) ) );
+      assertEquals( 4, countBatchParts( sql.getAllValues().get( 1 ) ) );
+      ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass( Object[].class );
+      verify( db ).openQuery( eq( batchStatement ), any( RowMetaInterface.class ), params.capture() );
+      assertArrayEquals( new Object[] { 1L, 2L, 3L, 3L }, params.getValue() );
+      assertEquals( 2, step.getLinesInput() );
+
+      String[] expected = { "a", null, "c" };
+      assertEquals( expected.length, output.size() );
+      for ( int i = 0; i < expected.length; i++ ) {
+        assertEquals( expected[i], output.get( i )[1] );
+      }
+    } finally {
+      smh.cleanUp();
+    }
+  }
+
+  @Test
+  public void testQueryWithOrderByIsNotBatched() throws Exception {
+    StepMockHelper<DatabaseJoinMeta, DatabaseJoinData> smh =
+      new StepMockHelper<DatabaseJoinMeta, DatabaseJoinData>( "databaseJoin", DatabaseJoinMeta.class,
+        DatabaseJoinData.class );
+    try {
+      when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+        smh.logChannelInterface );
+      when( smh.trans.isRunning() ).thenReturn( true );
+
+      DatabaseJoinMeta meta = smh.processRowsStepMetaInterface;
+      mockJoinMeta( meta, "SELECT name FROM t WHERE id = ? ORDER BY name" );
+
+      Database db = mock( Database.class );
+      ResultSet rs = mock( ResultSet.class );
+      DatabaseJoinData data = smh.processRowsStepDataInterface;
+      data.db = db;
+      data.pstmt = mock( PreparedStatement.class );
+      doReturn( rs ).when( db ).openQuery( eq( data.pstmt ), any( RowMetaInterface.class ), any( Object[].class ) );
+      when( db.getRow( rs ) ).thenReturn( new Object[] { "a" }, null, new Object[] { "b" }, null, null );
+
+      DatabaseJoin step = createJoinStep( smh, data );
+      List<Object[]> output = processRows( step, meta, data );
+
+      // The rows are joined one by one with the prepared query, key 1 and 2 come from the cache the second time
+      //
+      verify( db, never() ).prepareSQL( anyString() );
+      verify( db, times( 3 ) ).openQuery( eq( data.pstmt ), any( RowMetaInterface.class ), any( Object[].class ) );
+      assertEquals( 5, output.size() );
+      assertEquals( "a", output.get( 0 )[1] );
+      assertEquals( "b", output.get( 1 )[1] );
+      assertEquals( null, output.get( 4 )[1] );
+    } finally {
+      smh.cleanUp();
+    }
+  }
+
+  private void mockJoinMeta( DatabaseJoinMeta meta, String sql ) {
+    DatabaseInterface databaseInterface = mock( DatabaseInterface.class );
+    doReturn( new SqlScriptParser( true ) ).when( databaseInterface ).createSqlScriptParser();
+    DatabaseMeta dbMeta = mock( DatabaseMeta.class );
+    doReturn( databaseInterface ).when( dbMeta ).getDatabaseInterface();
+    doReturn( 1000 ).when( dbMeta ).getMaxQueryBatchRows( anyInt() );
+
+    doReturn( dbMeta ).when( meta ).getDatabaseMeta();
+    doReturn( sql ).when( meta ).getSql();
+    doReturn( new String[] { "id" } ).when( meta ).getParameterField();
+    doReturn( 3 ).when( meta ).getBatchSize();
+    doReturn( true ).when( meta ).isCached();
+    doReturn( true ).when( meta ).isOuterJoin();
+    doAnswer( invocation -> {
+      ( (RowMetaInterface) invocation.getArguments()[0] ).addValueMeta( new ValueMetaString( "name" ) );
+      return null;
+    } ).when( meta ).getFields( any( RowMetaInterface.class ), anyString(), any( RowMetaInterface[].class ),
+      any( StepMeta.class ), any( VariableSpace.class ), any( Repository.class ), any( IMetaStore.class ) );
+  }
+
+  private DatabaseJoin createJoinStep( StepMockHelper<DatabaseJoinMeta, DatabaseJoinData> smh,
+    DatabaseJoinData data ) {
+    return createJoinStep( smh, data, new Object[] { 1L }, new Object[] { 2L }, new Object[] { 1L },
+      new Object[] { 2L }, new Object[] { 4L } );
+  }
+
+  private DatabaseJoin createJoinStep( StepMockHelper<DatabaseJoinMeta, DatabaseJoinData> smh,
+    DatabaseJoinData data, Object[]... rows ) {
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    DatabaseJoin step = new DatabaseJoin( smh.stepMeta, data, 0, smh.transMeta, smh.trans );
+    step.setInputRowMeta( inputRowMeta );
+    step.addRowSetToInputRowSets( smh.getMockInputRowSet( rows ) );
+    return step;
+  }
+
+  private List<Object[]> processRows( DatabaseJoin step, DatabaseJoinMeta meta, DatabaseJoinData data )
+    throws KettleException {
+    final List<Object[]> output = new ArrayList<Object[]>();
+    step.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        output.add( row );
+      }
+    } );
+
+    while ( step.processRow( meta, data ) ) {
+      // process all rows
+    }
+    return output;
+  }
+
+  private int countBatchParts( String sql ) {
+    return sql.split( "UNION ALL" ).length;
+  }
 }
@@ -42,6 +42,7 @@ import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -63,12 +64,14 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.internal.util.reflection.Whitebox;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.ProgressMonitorListener;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -634,6 +637,87 @@ public class DatabaseLookupUTest {
     return rowMetaOutput;
   }
 
+  @Test
+  public void batchedLookupQueriesDistinctKeysOnceAndKeepsRowOrder() throws Exception {
+    MySQLDatabaseMeta mysql = new MySQLDatabaseMeta();
+    mysql.setName( "MySQL" );
+    DatabaseMeta dbMeta = new DatabaseMeta();
+    dbMeta.setDatabaseInterface( mysql );
+
+    DatabaseLookupMeta meta = new DatabaseLookupMeta();
+    meta.setDefault();
+    meta.setDatabaseMeta( dbMeta );
+    meta.setTablename( "customers" );
+    meta.allocate( 1, 1 );
+    meta.setStreamKeyField1( new String[] { ID_FIELD } );
+    meta.setStreamKeyField2( new String[] { null } );
+    meta.setTableKeyField( new String[] { ID_FIELD } );
+    meta.setKeyCondition( new String[] { "=" } );
+    meta.setReturnValueField( new String[] { "name" } );
+    meta.setReturnValueNewName( new String[] { "name" } );
+    meta.setReturnValueDefault( new String[] { null } );
+    meta.setReturnValueDefaultType( new int[] { ValueMetaInterface.TYPE_STRING } );
+    meta.setLookupBatchSize( 3 );
+
+    RowMeta tableRowMeta = new RowMeta();
+    tableRowMeta.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    tableRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    RowMeta resultRowMeta = new RowMeta();
+    resultRowMeta.addValueMeta( new ValueMetaInteger( DatabaseLookup.BATCH_NR_FIELD ) );
+    resultRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    Database db = mock( Database.class );
+    when( db.getTableFields( anyString() ) ).thenReturn( tableRowMeta );
+    when( db.getReturnRowMeta() ).thenReturn( resultRowMeta );
+    when( db.prepareSQL( anyString() ) ).thenReturn( mock( PreparedStatement.class ) );
+    when( db.openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ), any( Object[].class ) ) )
+      .thenReturn( mock( ResultSet.class ) );
+    when( db.getRows( any( ResultSet.class ), anyInt(), any( ProgressMonitorListener.class ) ) )
+      .thenReturn( Arrays.asList( new Object[] { 1L, "two" }, new Object[] { 0L, "one" } ) )
+      .thenReturn( new ArrayList<Object[]>() );
+
+    DatabaseLookupData data = new DatabaseLookupData();
+    DatabaseLookup step = spyLookup( mockHelper, db, dbMeta );
+    RowMeta input = new RowMeta();
+    input.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    step.setInputRowMeta( input );
+    doReturn( new Object[] { 1L } ).doReturn( new Object[] { 2L } ).doReturn( new Object[] { 1L } )
+      .doReturn( new Object[] { 3L } ).doReturn( null ).when( step ).getRow();
+    doNothing().when( step ).putRow( any( RowMetaInterface.class ), any( Object[].class ) );
+
+    assertTrue( step.init( meta, data ) );
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+
+    // A statement for 2 keys and one for a single key
+    //
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass( String.class );
+    verify( db, times( 2 ) ).prepareSQL( sql.capture() );
+    String batchSql = sql.getAllValues().get( 0 );
+    assertTrue( batchSql, batchSql.contains( "SELECT 0 AS " + DatabaseLookup.BATCH_NR_FIELD ) );
+    assertTrue( batchSql, batchSql.contains( "UNION ALL" ) );
+    assertTrue( batchSql, batchSql.contains( "SELECT 1 AS " + DatabaseLookup.BATCH_NR_FIELD ) );
+    assertFalse( batchSql, batchSql.contains( "SELECT 2 AS" ) );
+
+    // One query for the first 3 rows (2 distinct keys), one for the last row
+    //
+    ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass( Object[].class );
+    verify( db, times( 2 ) ).openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ),
+      params.capture() );
+    assertArrayEquals( new Object[] { 1L, 2L }, params.getAllValues().get( 0 ) );
+    assertArrayEquals( new Object[] { 3L }, params.getAllValues().get( 1 ) );
+    verify( db, never() ).getLookup( anyBoolean() );
+
+    ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass( Object[].class );
+    verify( step, times( 4 ) ).putRow( any( RowMetaInterface.class ), rows.capture() );
+    assertEquals( "one", rows.getAllValues().get( 0 )[ 1 ] );
+    assertEquals( "two", rows.getAllValues().get( 1 )[ 1 ] );
+    assertEquals( "one", rows.getAllValues().get( 2 )[ 1 ] );
+    assertEquals( 3L, rows.getAllValues().get( 3 )[ 0 ] );
+    assertEquals( null, rows.getAllValues().get( 3 )[ 1 ] );
+  }
+
   public class MockDatabaseLookup extends DatabaseLookup {
     public MockDatabaseLookup( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta, Trans trans ) {
       super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
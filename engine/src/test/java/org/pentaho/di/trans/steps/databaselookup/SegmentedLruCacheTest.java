@@ -0,0 +1,213 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.databaselookup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.step.StepMetrics;
+
+public class SegmentedLruCacheTest {
+
+  private final DatabaseLookupMeta meta = mock( DatabaseLookupMeta.class );
+
+  private static RowMetaInterface integerKeyMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void storesAndCountsHitsAndMisses() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 0, 0L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "one" } );
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "uno" } );
+
+    assertArrayEquals( new Object[] { "one" }, cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+    assertArrayEquals( new Object[] { "one" }, cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+    assertNull( cache.getRowFromCache( keyMeta, new Object[] { 2L } ) );
+
+    assertEquals( 1, cache.size() );
+    assertEquals( 2L, cache.getHits() );
+    assertEquals( 1L, cache.getMisses() );
+    assertEquals( 0L, cache.getEvictions() );
+    assertTrue( cache.getEstimatedSize() > 0L );
+  }
+
+  @Test
+  public void countsInTheStepMetrics() throws Exception {
+    StepMetrics metrics = new StepMetrics();
+    SegmentedLruCache cache = new SegmentedLruCache( 1, 0L, 0L, metrics );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "one" } );
+    cache.getRowFromCache( keyMeta, new Object[] { 1L } );
+    cache.getRowFromCache( keyMeta, new Object[] { 2L } );
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 2L }, new Object[] { "two" } );
+
+    assertEquals( 1L, metrics.getCacheHits() );
+    assertEquals( 1L, metrics.getCacheMisses() );
+    assertEquals( 1L, metrics.getCacheEvictions() );
+    assertEquals( 0L, metrics.getLinesRead() );
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 3, 0L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    for ( long i = 1; i <= 5; i++ ) {
+      cache.storeRowInCache( meta, keyMeta, new Object[] { i }, new Object[] { i * 100 } );
+    }
+
+    assertEquals( 3, cache.size() );
+    assertEquals( 2L, cache.getEvictions() );
+    assertNull( cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+    assertNull( cache.getRowFromCache( keyMeta, new Object[] { 2L } ) );
+    assertNotNull( cache.getRowFromCache( keyMeta, new Object[] { 5L } ) );
+  }
+
+  @Test
+  public void containsKeyDoesNotChangeTheEvictionOrder() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 3, 0L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    for ( long i = 1; i <= 3; i++ ) {
+      cache.storeRowInCache( meta, keyMeta, new Object[] { i }, new Object[] { i * 100 } );
+    }
+    assertTrue( cache.containsKey( keyMeta, new Object[] { 1L } ) );
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 4L }, new Object[] { 400L } );
+
+    assertEquals( 0L, cache.getHits() );
+    assertFalse( cache.containsKey( keyMeta, new Object[] { 1L } ) );
+    assertTrue( cache.containsKey( keyMeta, new Object[] { 2L } ) );
+  }
+
+  @Test
+  public void keysFoundAgainSurviveAScan() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 5, 0L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "one" } );
+    cache.getRowFromCache( keyMeta, new Object[] { 1L } );
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 2L }, new Object[] { "two" } );
+    cache.getRowFromCache( keyMeta, new Object[] { 2L } );
+
+    // A lot of keys that are only used once
+    //
+    for ( long i = 10; i < 100; i++ ) {
+      cache.storeRowInCache( meta, keyMeta, new Object[] { i }, new Object[] { "other" } );
+    }
+
+    assertEquals( 5, cache.size() );
+    assertArrayEquals( new Object[] { "one" }, cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+    assertArrayEquals( new Object[] { "two" }, cache.getRowFromCache( keyMeta, new Object[] { 2L } ) );
+  }
+
+  @Test
+  public void isBoundedByEstimatedSize() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 0, 10000L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+    String value = new String( new char[ 1000 ] );
+
+    for ( long i = 0; i < 100; i++ ) {
+      cache.storeRowInCache( meta, keyMeta, new Object[] { i }, new Object[] { value } );
+    }
+
+    assertTrue( cache.size() < 10 );
+    assertTrue( cache.getEstimatedSize() <= 10000L );
+    assertEquals( 100L - cache.size(), cache.getEvictions() );
+    assertNotNull( cache.getRowFromCache( keyMeta, new Object[] { 99L } ) );
+  }
+
+  @Test
+  public void entriesExpire() throws Exception {
+    final long[] now = new long[] { 1000L };
+    SegmentedLruCache cache = new SegmentedLruCache( 0, 0L, 60000L ) {
+      @Override
+      long currentTimeMillis() {
+        return now[ 0 ];
+      }
+    };
+    RowMetaInterface keyMeta = integerKeyMeta();
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "one" } );
+
+    now[ 0 ] += 59999L;
+    assertTrue( cache.containsKey( keyMeta, new Object[] { 1L } ) );
+    assertNotNull( cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+
+    now[ 0 ] += 1L;
+    assertFalse( cache.containsKey( keyMeta, new Object[] { 1L } ) );
+    assertNull( cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+    assertEquals( 0, cache.size() );
+
+    // An expired key can be stored again
+    //
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, new Object[] { "uno" } );
+    assertArrayEquals( new Object[] { "uno" }, cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+  }
+
+  @Test
+  public void cachesNotFound() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 10, 0L, 0L );
+    RowMetaInterface keyMeta = integerKeyMeta();
+
+    cache.storeRowInCache( meta, keyMeta, new Object[] { 1L }, DatabaseLookupData.Cache.NOT_FOUND );
+
+    assertSame( DatabaseLookupData.Cache.NOT_FOUND, cache.getRowFromCache( keyMeta, new Object[] { 1L } ) );
+  }
+
+  @Test
+  public void keysThatCantBeEncodedAreComparedByValue() throws Exception {
+    SegmentedLruCache cache = new SegmentedLruCache( 10, 0L, 0L );
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaBigNumber( "amount" ) );
+    keyMeta.addValueMeta( new ValueMetaString( "code" ) );
+
+    cache.storeRowInCache( meta, keyMeta, new Object[] { new BigDecimal( "1.50" ), "A" }, new Object[] { 1L } );
+
+    assertArrayEquals( new Object[] { 1L },
+      cache.getRowFromCache( keyMeta, new Object[] { new BigDecimal( "1.5" ), "A" } ) );
+    assertNull( cache.getRowFromCache( keyMeta, new Object[] { new BigDecimal( "1.5" ), "B" } ) );
+    assertFalse( cache.containsKey( keyMeta, new Object[] { BigDecimal.ONE, "A" } ) );
+    assertEquals( 1L, cache.getHits() );
+    assertEquals( 1L, cache.getMisses() );
+  }
+}
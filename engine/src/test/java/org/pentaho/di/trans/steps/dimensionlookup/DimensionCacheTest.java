@@ -23,14 +23,24 @@
 package org.pentaho.di.trans.steps.dimensionlookup;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Test;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.row.value.ValueMetaTimestamp;
 import org.pentaho.di.core.util.Assert;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class DimensionCacheTest {
 
   @Test
@@ -86,4 +96,91 @@ public class DimensionCacheTest {
         expectedValue, actualValue, from1, to1, from2, to2 );
   }
 
+  @Test
+  public void testIndexedLookup() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "TK" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "CUSTOMER" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_FROM" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_TO" ) );
+    DimensionCache dc = new DimensionCache( rowMeta, new int[] { 1 }, 2, 3 );
+
+    final Date d1 = new Date( 1000L );
+    final Date d2 = new Date( 2000L );
+    final Date d3 = new Date( 3000L );
+
+    // Three versions for every customer, added in reverse order
+    //
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( long i = 0; i < 100; i++ ) {
+      String customer = "customer" + i;
+      rows.add( new Object[] { i * 3 + 2, customer, d2, null } );
+      rows.add( new Object[] { i * 3 + 1, customer, d1, d2 } );
+      rows.add( new Object[] { i * 3, customer, null, d1 } );
+    }
+    dc.setRowCache( rows );
+    dc.sortRows();
+    assertFalse( dc.isIndexed() );
+    assertTrue( dc.buildIndex() );
+    assertTrue( dc.isIndexed() );
+
+    for ( long i = 0; i < 100; i++ ) {
+      String customer = "customer" + i;
+      assertEquals( i * 3, lookupTechnicalKey( dc, customer, new Date( 500L ) ) );
+      assertEquals( i * 3 + 1, lookupTechnicalKey( dc, customer, d1 ) );
+      assertEquals( i * 3 + 1, lookupTechnicalKey( dc, customer, new Date( 1999L ) ) );
+      assertEquals( i * 3 + 2, lookupTechnicalKey( dc, customer, d2 ) );
+      assertEquals( i * 3 + 2, lookupTechnicalKey( dc, customer, d3 ) );
+    }
+    assertEquals( -1, dc.lookupRow( new Object[] { null, "unknown", null, null } ) );
+    assertEquals( -1, dc.lookupRow( new Object[] { null, "unknown", d1, null } ) );
+
+    // Adding a row drops the index
+    //
+    dc.addRow( new Object[] { 300L, "customer100", null, null } );
+    assertFalse( dc.isIndexed() );
+  }
+
+  @Test
+  public void testIndexedLookupWithGaps() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "KEY" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_FROM" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_TO" ) );
+    DimensionCache dc = new DimensionCache( rowMeta, new int[] { 0 }, 1, 2 );
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    rows.add( new Object[] { 1L, new Date( 1000L ), new Date( 2000L ) } );
+    rows.add( new Object[] { 1L, new Date( 3000L ), new Date( 4000L ) } );
+    dc.setRowCache( rows );
+    dc.sortRows();
+    assertTrue( dc.buildIndex() );
+
+    assertEquals( -1, dc.lookupRow( new Object[] { 1L, new Date( 500L ), null } ) );
+    assertEquals( 0, dc.lookupRow( new Object[] { 1L, new Date( 1500L ), null } ) );
+    assertEquals( -1, dc.lookupRow( new Object[] { 1L, new Date( 2500L ), null } ) );
+    assertEquals( 1, dc.lookupRow( new Object[] { 1L, new Date( 3000L ), null } ) );
+    assertEquals( -1, dc.lookupRow( new Object[] { 1L, new Date( 4000L ), null } ) );
+    assertEquals( -1, dc.lookupRow( new Object[] { 2L, new Date( 1500L ), null } ) );
+  }
+
+  @Test
+  public void testNoIndexForUnsupportedKeys() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "KEY" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_FROM" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "DATE_TO" ) );
+    DimensionCache dc = new DimensionCache( rowMeta, new int[] { 0 }, 1, 2 );
+    dc.setRowCache( new ArrayList<Object[]>() );
+    dc.sortRows();
+
+    assertFalse( dc.buildIndex() );
+    assertFalse( dc.isIndexed() );
+  }
+
+  private static long lookupTechnicalKey( DimensionCache dc, String customer, Date date ) throws Exception {
+    int index = dc.lookupRow( new Object[] { null, customer, date, null } );
+    return index < 0 ? index : (Long) dc.getRow( index )[ 0 ];
+  }
+
 }
@@ -0,0 +1,153 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.pentaho.di.core.util.Utils;
+
+public class FuzzyMatchIndexTest {
+
+  private static final String[] WORDS = {
+    "main", "street", "road", "avenue", "church", "lane", "high", "station", "park", "green", "mill", "north", "south",
+    "Main", "Strete", "chruch", "hihg", "", "a", "x y" };
+
+  @Test
+  public void testLevenshteinCandidates() {
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN, false, 2, 0.0 );
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN, false, 1, 0.0 );
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN, true, 0, 0.0 );
+  }
+
+  @Test
+  public void testDamerauLevenshteinCandidates() {
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN, false, 3, 0.0 );
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN, true, 1, 0.0 );
+  }
+
+  @Test
+  public void testPairSimilarityCandidates() {
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY, false, 0, 0.5 );
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY, false, 0, 0.9 );
+  }
+
+  @Test
+  public void testPhoneticCandidates() {
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX, false, 0, 0.0 );
+    checkCandidates( FuzzyMatchMeta.OPERATION_TYPE_METAPHONE, false, 0, 0.0 );
+  }
+
+  @Test
+  public void testEverythingIsACandidateWithoutThreshold() {
+    FuzzyMatchIndex index =
+      new FuzzyMatchIndex( FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY, false, lookupRows(), 0, 0.0 );
+    assertNull( index.getCandidates( "main street" ) );
+    index = new FuzzyMatchIndex( FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH, false, lookupRows(), 5, 0.0 );
+    assertNull( index.getCandidates( "main street" ) );
+  }
+
+  /**
+   * Every lookup value that matches has to be a candidate, in the order of the lookup rows.
+   */
+  private void checkCandidates( int algorithm, boolean caseSensitive, int maximalDistance,
+    double minimalSimilarity ) {
+    List<Object[]> lookupRows = lookupRows();
+    FuzzyMatchIndex index =
+      new FuzzyMatchIndex( algorithm, caseSensitive, lookupRows, maximalDistance, minimalSimilarity );
+    assertEquals( lookupRows.size(), index.size() );
+
+    Random random = new Random( 42 );
+    int nrMatches = 0;
+    int nrCandidates = 0;
+    for ( int q = 0; q < 300; q++ ) {
+      String value = randomValue( random );
+      String key = FuzzyMatchIndex.getKey( algorithm, caseSensitive, value );
+      int[] candidates = index.getCandidates( key );
+      assertTrue( candidates != null );
+      for ( int i = 1; i < candidates.length; i++ ) {
+        assertTrue( candidates[i - 1] < candidates[i] );
+      }
+      nrCandidates += candidates.length;
+
+      for ( int rowNr = 0; rowNr < index.size(); rowNr++ ) {
+        String cacheValue = (String) index.getRow( rowNr )[0];
+        String cacheKey = index.getKey( rowNr );
+        assertEquals( FuzzyMatchIndex.getKey( algorithm, caseSensitive, cacheValue ), cacheKey );
+        boolean matches;
+        switch ( algorithm ) {
+          case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
+            matches = StringUtils.getLevenshteinDistance( cacheKey, key ) <= maximalDistance;
+            break;
+          case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+            matches = Utils.getDamerauLevenshteinDistance( cacheKey, key ) <= maximalDistance;
+            break;
+          case FuzzyMatchMeta.OPERATION_TYPE_PAIR_SIMILARITY:
+            matches = LetterPairSimilarity.getSimiliarity( cacheValue, value ) >= minimalSimilarity;
+            break;
+          default:
+            matches = cacheKey.equals( key );
+            break;
+        }
+        if ( matches ) {
+          nrMatches++;
+          assertTrue( cacheValue + " should be a candidate for " + value,
+            Arrays.binarySearch( candidates, rowNr ) >= 0 );
+        }
+      }
+    }
+    assertTrue( nrMatches > 0 );
+    // The index has to prune something
+    //
+    assertTrue( nrCandidates < 300 * index.size() );
+  }
+
+  private static List<Object[]> lookupRows() {
+    Random random = new Random( 1 );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < 2000; i++ ) {
+      rows.add( new Object[] { randomValue( random ), i } );
+    }
+    return rows;
+  }
+
+  private static String randomValue( Random random ) {
+    int nrWords = random.nextInt( 3 );
+    StringBuilder value = new StringBuilder();
+    for ( int w = 0; w < nrWords; w++ ) {
+      if ( w > 0 ) {
+        value.append( ' ' );
+      }
+      value.append( WORDS[random.nextInt( WORDS.length )] );
+    }
+    return value.toString();
+  }
+}
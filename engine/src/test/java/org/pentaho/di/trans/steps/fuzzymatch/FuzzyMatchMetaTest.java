@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -47,7 +47,7 @@ public class FuzzyMatchMetaTest {
     List<String> attributes =
         Arrays.asList( "value", "valueName", "algorithm", "lookupfield", "mainstreamfield",
             "outputmatchfield", "outputvaluefield", "caseSensitive", "minimalValue",
-            "maximalValue", "separator", "closervalue" );
+            "maximalValue", "separator", "closervalue", "scoringThreads" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -63,6 +63,7 @@ public class FuzzyMatchMetaTest {
         put( "maximalValue", "getMaximalValue" );
         put( "separator", "getSeparator" );
         put( "closervalue", "isGetCloserValue" );
+        put( "scoringThreads", "getScoringThreads" );
       }
     };
 
@@ -80,6 +81,7 @@ public class FuzzyMatchMetaTest {
         put( "maximalValue", "setMaximalValue" );
         put( "separator", "setSeparator" );
         put( "closervalue", "setGetCloserValue" );
+        put( "scoringThreads", "setScoringThreads" );
       }
     };
     FieldLoadSaveValidator<String[]> stringArrayLoadSaveValidator =
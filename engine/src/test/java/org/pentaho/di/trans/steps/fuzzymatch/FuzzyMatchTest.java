@@ -29,7 +29,6 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
 
 import org.junit.After;
@@ -43,6 +42,7 @@ import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -81,6 +81,7 @@ public class FuzzyMatchTest {
 
   private class FuzzyMatchHandler extends FuzzyMatch {
     private Object[] resultRow = null;
+    private List<Object[]> resultRows = new ArrayList<Object[]>();
     private RowSet rowset = null;
 
     public FuzzyMatchHandler( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
@@ -91,6 +92,7 @@ public class FuzzyMatchTest {
     @Override
     public void putRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
       resultRow = row;
+      resultRows.add( row );
     }
 
     /**
@@ -122,7 +124,6 @@ public class FuzzyMatchTest {
     mockHelper.cleanUp();
   }
 
-  @SuppressWarnings( "unchecked" )
   @Test
   public void testProcessRow() throws Exception {
     fuzzyMatch =
@@ -133,8 +134,7 @@ public class FuzzyMatchTest {
     fuzzyMatch.addRowSetToInputRowSets( mockHelper.getMockInputRowSet( lookupRows ) );
 
     when( mockHelper.processRowsStepMetaInterface.getAlgorithmType() ).thenReturn( 8 );
-    mockHelper.processRowsStepDataInterface.look = mock( HashSet.class );
-    when( mockHelper.processRowsStepDataInterface.look.iterator() ).thenReturn( lookupRows.iterator() );
+    mockHelper.processRowsStepDataInterface.index = new FuzzyMatchIndex( 8, false, lookupRows, 0, 0.0 );
 
     fuzzyMatch.processRow( mockHelper.processRowsStepMetaInterface, mockHelper.processRowsStepDataInterface );
     Assert.assertEquals( fuzzyMatch.resultRow[0], row3[0] );
@@ -215,4 +215,82 @@ public class FuzzyMatchTest {
     Assert.assertNull( fuzzyMatch.resultRow[1] );
     Assert.assertTrue( Arrays.stream( fuzzyMatch.resultRow, 3, fuzzyMatch.resultRow.length ).allMatch( val ->  val == null ) );
   }
+
+  /**
+   * The lookup values of a row are scored in chunks by several threads when there are enough of them, the outcome of
+   * the chunks has to be merged into the same match as a single thread finds.
+   */
+  @Test
+  public void testScoringThreadsFindTheSameMatches() throws Exception {
+    String[] names = { "Catrine", "Katrina", "Catriny" };
+    List<Object[]> lookup = new ArrayList<Object[]>();
+    for ( int i = 0; i < 6000; i++ ) {
+      lookup.add( new Object[] { names[i % names.length] + ( i / names.length ), (long) i } );
+    }
+    List<Object[]> main = new ArrayList<Object[]>();
+    for ( String name : new String[] { "Catrine", "Katrine12", "catriny7", "Caterina1999", "John", "" } ) {
+      main.add( new Object[] { name } );
+    }
+
+    for ( int algorithm = 0; algorithm < FuzzyMatchMeta.algorithmCode.length; algorithm++ ) {
+      for ( boolean closerValue : new boolean[] { true, false } ) {
+        List<Object[]> expected = runFuzzyMatch( algorithm, closerValue, "1", lookup, main );
+        List<Object[]> actual = runFuzzyMatch( algorithm, closerValue, "4", lookup, main );
+        Assert.assertEquals( main.size(), expected.size() );
+        Assert.assertEquals( main.size(), actual.size() );
+        String message = FuzzyMatchMeta.algorithmCode[algorithm] + " " + closerValue;
+        for ( int i = 0; i < main.size(); i++ ) {
+          Assert.assertArrayEquals( message + " " + main.get( i )[0], expected.get( i ), actual.get( i ) );
+        }
+        Assert.assertTrue( FuzzyMatchMeta.algorithmCode[algorithm] + " finds no match", expected.get( 0 )[1] != null );
+      }
+    }
+  }
+
+  private List<Object[]> runFuzzyMatch( int algorithm, boolean closerValue, String scoringThreads,
+      List<Object[]> lookup, List<Object[]> main ) throws Exception {
+    FuzzyMatchMeta meta = new FuzzyMatchMeta();
+    meta.setDefault();
+    meta.setAlgorithmType( algorithm );
+    meta.setMainStreamField( "name" );
+    meta.setLookupField( "name" );
+    meta.setOutputMatchField( "match" );
+    meta.setOutputValueField( "measure" );
+    meta.setGetCloserValue( closerValue );
+    meta.setValue( new String[] { "id" } );
+    meta.setValueName( new String[] { "id" } );
+    meta.setScoringThreads( scoringThreads );
+    switch ( algorithm ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
+      case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
+      case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
+        meta.setMaximalValue( "20" );
+        break;
+      default:
+        break;
+    }
+
+    FuzzyMatchData data = new FuzzyMatchData();
+    fuzzyMatch = new FuzzyMatchHandler( mockHelper.stepMeta, data, 0, mockHelper.transMeta, mockHelper.trans );
+    Assert.assertTrue( fuzzyMatch.init( meta, data ) );
+
+    RowMetaInterface lookupRowMeta = new RowMeta();
+    lookupRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    lookupRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    data.infoMeta = lookupRowMeta;
+    data.readLookupValues = false;
+    data.index =
+      new FuzzyMatchIndex( algorithm, meta.isCaseSensitive(), lookup, data.maximalDistance, data.minimalSimilarity );
+
+    RowMetaInterface mainRowMeta = new RowMeta();
+    mainRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    RowSet mainRowSet = mockHelper.getMockInputRowSet( main );
+    when( mainRowSet.getRowMeta() ).thenReturn( mainRowMeta );
+    fuzzyMatch.addRowSetToInputRowSets( mainRowSet );
+
+    while ( fuzzyMatch.processRow( meta, data ) ) {
+      // process all the rows
+    }
+    return fuzzyMatch.resultRows;
+  }
 }
@@ -0,0 +1,136 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.junit.rules.RestorePDIEngineEnvironment;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+import org.pentaho.di.trans.steps.loadsave.LoadSaveTester;
+import org.pentaho.di.trans.steps.loadsave.validator.FieldLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.FieldLoadSaveValidatorFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class HashJoinMetaTest {
+  @ClassRule public static RestorePDIEngineEnvironment env = new RestorePDIEngineEnvironment();
+
+  LoadSaveTester loadSaveTester;
+
+  public HashJoinMetaTest() {
+    List<String> attributes = Arrays.asList( "joinType", "keyFields1", "keyFields2", "maxMemory", "directory" );
+
+    Map<String, FieldLoadSaveValidator<?>> attrValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
+
+    Map<String, FieldLoadSaveValidator<?>> typeValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
+
+    Map<String, String> getterMap = new HashMap<String, String>();
+    getterMap.put( "joinType", "getJoinType" );
+    getterMap.put( "keyFields1", "getKeyFields1" );
+    getterMap.put( "keyFields2", "getKeyFields2" );
+    getterMap.put( "maxMemory", "getMaxMemory" );
+    getterMap.put( "directory", "getDirectory" );
+
+    Map<String, String> setterMap = new HashMap<String, String>();
+    setterMap.put( "joinType", "setJoinType" );
+    setterMap.put( "keyFields1", "setKeyFields1" );
+    setterMap.put( "keyFields2", "setKeyFields2" );
+    setterMap.put( "maxMemory", "setMaxMemory" );
+    setterMap.put( "directory", "setDirectory" );
+
+    this.loadSaveTester = new LoadSaveTester( HashJoinMeta.class,
+      attributes,
+      getterMap, setterMap,
+      attrValidatorMap, typeValidatorMap );
+
+    FieldLoadSaveValidatorFactory validatorFactory = loadSaveTester.getFieldLoadSaveValidatorFactory();
+
+    FieldLoadSaveValidator<HashJoinMeta> targetValidator = new FieldLoadSaveValidator<HashJoinMeta>() {
+
+      @Override
+      public HashJoinMeta getTestObject() {
+        return new HashJoinMeta() {
+          {
+            setJoinType( join_types[0] );
+            setKeyFields1( new String[]{ "field1", "field2" } );
+            setKeyFields2( new String[]{ "field1", "field3" } );
+          }
+        };
+      }
+
+      @Override
+      public boolean validateTestObject( HashJoinMeta testObject, Object actual ) {
+        return testObject.getJoinType().equals( ( (HashJoinMeta) actual ).getJoinType() )
+          && Arrays.equals( testObject.getKeyFields1(), ( (HashJoinMeta) actual ).getKeyFields1() )
+          && Arrays.equals( testObject.getKeyFields2(), ( (HashJoinMeta) actual ).getKeyFields2() );
+      }
+    };
+
+    validatorFactory.registerValidator( validatorFactory.getName( HashJoinMeta.class ), targetValidator );
+  }
+
+  @Test
+  public void testSerialization() throws KettleException {
+    loadSaveTester.testSerialization();
+  }
+
+  @Test
+  public void cloneTest() throws Exception {
+    HashJoinMeta meta = new HashJoinMeta();
+    meta.allocate( 2, 3 );
+    meta.setKeyFields1( new String[] { "kf1-1", "kf1-2" } );
+    meta.setKeyFields2( new String[] { "kf2-1", "kf2-2", "kf2-3" } );
+    // scalars should be cloned using super.clone() - makes sure they're calling super.clone()
+    meta.setJoinType( "INNER" );
+    meta.setMaxMemory( "100" );
+    meta.setDirectory( "/tmp/hashjoin" );
+    HashJoinMeta aClone = (HashJoinMeta) meta.clone();
+    assertFalse( aClone == meta ); // Not same object returned by clone
+    assertTrue( Arrays.equals( meta.getKeyFields1(), aClone.getKeyFields1() ) );
+    assertTrue( Arrays.equals( meta.getKeyFields2(), aClone.getKeyFields2() ) );
+    assertEquals( meta.getJoinType(), aClone.getJoinType() );
+    assertEquals( meta.getMaxMemory(), aClone.getMaxMemory() );
+    assertEquals( meta.getDirectory(), aClone.getDirectory() );
+
+    assertNotNull( aClone.getStepIOMeta() );
+    assertFalse( meta.getStepIOMeta() == aClone.getStepIOMeta() );
+    List<StreamInterface> infoStreams = meta.getStepIOMeta().getInfoStreams();
+    List<StreamInterface> cloneInfoStreams = aClone.getStepIOMeta().getInfoStreams();
+    assertFalse( infoStreams == cloneInfoStreams );
+    int streamSize = infoStreams.size();
+    assertTrue( streamSize == cloneInfoStreams.size() );
+    for ( int i = 0; i < streamSize; i++ ) {
+      assertFalse( infoStreams.get( i ) == cloneInfoStreams.get( i ) );
+    }
+  }
+}
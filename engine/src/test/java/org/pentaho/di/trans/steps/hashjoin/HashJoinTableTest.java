@@ -0,0 +1,154 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class HashJoinTableTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private RowMetaInterface keyMeta;
+  private RowMetaInterface buildRowMeta;
+  private RowMetaInterface probeRowMeta;
+
+  private int nrJoined;
+  private Set<Long> unmatchedProbeRows;
+  private int nrUnmatchedBuildRows;
+
+  @Before
+  public void setUp() {
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    buildRowMeta = new RowMeta();
+    buildRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    buildRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    probeRowMeta = new RowMeta();
+    probeRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    probeRowMeta.addValueMeta( new ValueMetaString( "info" ) );
+
+    nrJoined = 0;
+    unmatchedProbeRows = new HashSet<Long>();
+    nrUnmatchedBuildRows = 0;
+  }
+
+  @Test
+  public void testInnerJoinInMemory() throws KettleException {
+    join( false, false, 0L, RowSpillCompression.NONE );
+    assertEquals( 0, unmatchedProbeRows.size() );
+    assertEquals( 0, nrUnmatchedBuildRows );
+  }
+
+  @Test
+  public void testFullOuterJoinInMemory() throws KettleException {
+    join( true, true, 0L, RowSpillCompression.NONE );
+    checkUnmatchedRows();
+  }
+
+  @Test
+  public void testLeftOuterJoinWithSpilledPartitions() throws KettleException {
+    assertTrue( join( true, false, 32L * 1024L, RowSpillCompression.NONE ) > 0 );
+    assertEquals( 1000, unmatchedProbeRows.size() );
+    assertEquals( 0, nrUnmatchedBuildRows );
+  }
+
+  @Test
+  public void testFullOuterJoinWithPartitionsSpilledAgain() throws KettleException {
+    // The spilled partitions don't fit either, they are partitioned again
+    //
+    assertTrue( join( true, true, 8L * 1024L, RowSpillCompression.LZ4 ) > 0 );
+    checkUnmatchedRows();
+  }
+
+  /**
+   * Joins the build rows 0-1999 with the probe rows 1000-2999, the build rows with a multiple of 100 as key are there
+   * twice.
+   *
+   * @return the number of spills
+   */
+  private int join( boolean probeOuter, boolean buildOuter, long maxMemory, RowSpillCompression compression )
+    throws KettleException {
+    HashJoinTable table = new HashJoinTable( buildRowMeta, probeOuter, buildOuter, maxMemory, tempFolder.getRoot(),
+      compression, new HashJoinTable.JoinHandler() {
+        @Override
+        public void joinRows( Object[] probeRow, Object[] buildRow ) {
+          if ( buildRow == null ) {
+            assertTrue( unmatchedProbeRows.add( (Long) probeRow[0] ) );
+          } else if ( probeRow == null ) {
+            nrUnmatchedBuildRows++;
+          } else {
+            assertEquals( probeRow[0], buildRow[0] );
+            assertEquals( "info" + probeRow[0], probeRow[1] );
+            assertEquals( "name" + buildRow[0], buildRow[1] );
+            nrJoined++;
+          }
+        }
+      } );
+    try {
+      for ( long id = 0; id < 2000; id++ ) {
+        table.addBuildRow( getKey( id ), new Object[] { id, "name" + id } );
+        if ( id % 100 == 0 ) {
+          table.addBuildRow( getKey( id ), new Object[] { id, "name" + id } );
+        }
+      }
+      for ( long id = 1000; id < 3000; id++ ) {
+        table.probe( getKey( id ), probeRowMeta, new Object[] { id, "info" + id } );
+      }
+      table.finish();
+
+      assertEquals( 1010, nrJoined );
+      assertEquals( 0, tempFolder.getRoot().list().length );
+      return table.getNrSpills();
+    } finally {
+      table.clear();
+    }
+  }
+
+  private void checkUnmatchedRows() {
+    assertEquals( 1000, unmatchedProbeRows.size() );
+    for ( long id = 2000; id < 3000; id++ ) {
+      assertTrue( unmatchedProbeRows.contains( id ) );
+    }
+    assertEquals( 1010, nrUnmatchedBuildRows );
+  }
+
+  private byte[] getKey( long id ) {
+    return RowMeta.extractData( keyMeta, new Object[] { id } );
+  }
+}
@@ -0,0 +1,77 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.hashjoin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class HashJoinTest {
+
+  @Test
+  public void testBigNumbersWithDifferentScaleHaveTheSameKey() throws KettleValueException {
+    ValueMetaInterface keyMeta = new ValueMetaBigNumber( "amount" );
+    assertArrayEquals( getKey( keyMeta, new BigDecimal( "1.0" ) ), getKey( keyMeta, new BigDecimal( "1.00" ) ) );
+    assertArrayEquals( getKey( keyMeta, new BigDecimal( "100" ) ), getKey( keyMeta, new BigDecimal( "1E+2" ) ) );
+    assertArrayEquals( getKey( keyMeta, BigDecimal.ZERO ), getKey( keyMeta, new BigDecimal( "0.000" ) ) );
+    assertFalse(
+      Arrays.equals( getKey( keyMeta, new BigDecimal( "1.0" ) ), getKey( keyMeta, new BigDecimal( "1.01" ) ) ) );
+  }
+
+  @Test
+  public void testStringKeysFollowTheComparisonSettings() throws KettleValueException {
+    ValueMetaInterface keyMeta = new ValueMetaString( "name" );
+    assertFalse( Arrays.equals( getKey( keyMeta, "abc" ), getKey( keyMeta, "ABC" ) ) );
+    assertFalse( Arrays.equals( getKey( keyMeta, "abc" ), getKey( keyMeta, " abc " ) ) );
+
+    keyMeta.setCaseInsensitive( true );
+    keyMeta.setIgnoreWhitespace( true );
+    assertArrayEquals( getKey( keyMeta, "abc" ), getKey( keyMeta, " ABC " ) );
+  }
+
+  @Test
+  public void testOtherValuesAreKept() {
+    Long value = 42L;
+    assertSame( value, HashJoin.normalizeKeyValue( new ValueMetaInteger( "id" ), value ) );
+    assertNull( HashJoin.normalizeKeyValue( new ValueMetaBigNumber( "amount" ), null ) );
+  }
+
+  private byte[] getKey( ValueMetaInterface keyMeta, Object value ) throws KettleValueException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( keyMeta );
+    return RowMeta.extractData( rowMeta, new Object[] { HashJoin.normalizeKeyValue( keyMeta, value ) } );
+  }
+}
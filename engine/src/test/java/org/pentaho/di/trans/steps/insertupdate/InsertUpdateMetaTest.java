@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -153,7 +153,8 @@ public class InsertUpdateMetaTest {
   public void setUpLoadSave() throws Exception {
     List<String> attributes =
         Arrays.asList( "schemaName", "tableName", "databaseMeta", "keyStream", "keyLookup", "keyCondition",
-            "keyStream2", "updateLookup", "updateStream", "update", "commitSize", "updateBypassed" );
+            "keyStream2", "updateLookup", "updateStream", "update", "commitSize", "updateBypassed",
+            "useMerge" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -169,6 +170,7 @@ public class InsertUpdateMetaTest {
         put( "update", "getUpdate" );
         put( "commitSize", "getCommitSizeVar" );
         put( "updateBypassed", "isUpdateBypassed" );
+        put( "useMerge", "isUseMerge" );
       }
     };
 
@@ -186,6 +188,7 @@ public class InsertUpdateMetaTest {
         put( "update", "setUpdate" );
         put( "commitSize", "setCommitSize" );
         put( "updateBypassed", "setUpdateBypassed" );
+        put( "useMerge", "setUseMerge" );
       }
     };
     FieldLoadSaveValidator<String[]> stringArrayLoadSaveValidator =
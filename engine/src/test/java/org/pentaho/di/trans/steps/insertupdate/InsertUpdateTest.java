@@ -0,0 +1,313 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.insertupdate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.pentaho.di.core.ProgressMonitorListener;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+
+public class InsertUpdateTest {
+  private StepMockHelper<InsertUpdateMeta, InsertUpdateData> smh;
+  private DatabaseMeta databaseMeta;
+  private RowMeta inputRowMeta;
+
+  @Before
+  public void setUp() {
+    smh =
+      new StepMockHelper<InsertUpdateMeta, InsertUpdateData>( "insertUpdate", InsertUpdateMeta.class,
+        InsertUpdateData.class );
+    when( smh.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      smh.logChannelInterface );
+    when( smh.trans.isRunning() ).thenReturn( true );
+
+    databaseMeta = mock( DatabaseMeta.class );
+    when( databaseMeta.quoteField( anyString() ) ).thenAnswer( invocation -> invocation.getArguments()[0] );
+
+    inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    inputRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    InsertUpdateMeta meta = smh.processRowsStepMetaInterface;
+    doReturn( databaseMeta ).when( meta ).getDatabaseMeta();
+    doReturn( new String[] { "id" } ).when( meta ).getKeyStream();
+    doReturn( new String[] { "ID" } ).when( meta ).getKeyLookup();
+    doReturn( new String[] { "=" } ).when( meta ).getKeyCondition();
+    doReturn( new String[] { "ID", "NAME" } ).when( meta ).getUpdateLookup();
+    doReturn( new String[] { "id", "name" } ).when( meta ).getUpdateStream();
+    doReturn( new Boolean[] { false, true } ).when( meta ).getUpdate();
+  }
+
+  @After
+  public void cleanUp() {
+    smh.cleanUp();
+  }
+
+  private InsertUpdate createStep( Object[]... rows ) {
+    InsertUpdate step = new InsertUpdate( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    step.setInputRowMeta( inputRowMeta );
+    step.addRowSetToInputRowSets( smh.getMockInputRowSet( rows ) );
+    step.init( smh.initStepMetaInterface, smh.initStepDataInterface );
+    step.first = false;
+    return step;
+  }
+
+  private void prepareData( InsertUpdateData data ) {
+    data.schemaTable = "FOO";
+    data.outputRowMeta = inputRowMeta;
+    data.valuenrs = new int[] { 0, 1 };
+    data.insertRowMeta = new RowMeta();
+    data.insertRowMeta.addValueMeta( new ValueMetaInteger( "ID" ) );
+    data.insertRowMeta.addValueMeta( new ValueMetaString( "NAME" ) );
+    data.mergeRows = new ArrayList<Object[]>();
+    data.mergeKeys = new HashSet<RowMetaAndData>();
+    data.mergeLookupStatements = new HashMap<Integer, PreparedStatement>();
+  }
+
+  private void prepareMergeData( InsertUpdateData data, Database db ) {
+    prepareData( data );
+    data.db = db;
+    data.mergeSize = 2;
+    data.mergeKeyNrs = new int[] { 0 };
+    data.mergeValueNrs = new int[] { 0, 1 };
+    data.mergeRowMeta = data.insertRowMeta;
+    data.mergeLookupSize = 2;
+    data.mergeLookupQuery = ", ID, NAME FROM FOO WHERE ID = ?";
+    data.mergeLookupParameterRowMeta = new RowMeta();
+    data.mergeLookupParameterRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+  }
+
+  private static RowMetaInterface lookupReturnRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( InsertUpdate.BATCH_NR_FIELD ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "ID" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "NAME" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testPrepareMerge() throws Exception {
+    doReturn( 3000 ).when( databaseMeta ).getMaxMultiRowMergeRows( 2 );
+    doReturn( "merge" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), anyInt() );
+    doReturn( 500 ).when( smh.processRowsStepMetaInterface ).getCommitSize( any( VariableSpace.class ) );
+    doReturn( 300 ).when( databaseMeta ).getMaxQueryBatchRows( 1 );
+
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareData( data );
+    InsertUpdate step = createStep();
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    step.prepareMerge( inputRowMeta );
+
+    // The key is inserted but never updated, the size is limited by the commit size
+    //
+    assertEquals( 500, data.mergeSize );
+    assertEquals( 2, data.mergeColumns.length );
+    assertEquals( "ID", data.mergeKeyColumns[0] );
+    assertEquals( 1, data.mergeUpdateColumns.length );
+    assertEquals( "NAME", data.mergeUpdateColumns[0] );
+    assertEquals( 0, data.mergeKeyNrs[0] );
+    assertEquals( 1, data.mergeValueNrs[1] );
+
+    // The rows are looked up in batches first
+    //
+    assertEquals( 300, data.mergeLookupSize );
+    assertEquals( ", ID, NAME FROM FOO WHERE ID = ?", data.mergeLookupQuery );
+  }
+
+  @Test
+  public void testPrepareMergeNeedsTheKeysInTheInsertFields() throws Exception {
+    doReturn( 3000 ).when( databaseMeta ).getMaxMultiRowMergeRows( 1 );
+    doReturn( "merge" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), anyInt() );
+    doReturn( new String[] { "NAME" } ).when( smh.processRowsStepMetaInterface ).getUpdateLookup();
+    doReturn( new String[] { "name" } ).when( smh.processRowsStepMetaInterface ).getUpdateStream();
+    doReturn( new Boolean[] { true } ).when( smh.processRowsStepMetaInterface ).getUpdate();
+
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareData( data );
+    data.valuenrs = new int[] { 1 };
+    InsertUpdate step = createStep();
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    step.prepareMerge( inputRowMeta );
+
+    // The row by row insert wouldn't insert the key either
+    //
+    assertEquals( 0, data.mergeSize );
+  }
+
+  @Test
+  public void testPrepareMergeNotPossible() throws Exception {
+    doReturn( 3000 ).when( databaseMeta ).getMaxMultiRowMergeRows( 2 );
+    doReturn( "merge" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), anyInt() );
+    doReturn( new String[] { "<=" } ).when( smh.processRowsStepMetaInterface ).getKeyCondition();
+
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareData( data );
+    InsertUpdate step = createStep();
+    step.processRow( smh.processRowsStepMetaInterface, data );
+    step.prepareMerge( inputRowMeta );
+
+    assertEquals( 0, data.mergeSize );
+  }
+
+  @Test
+  public void testMergeRows() throws Exception {
+    Database db = mock( Database.class );
+    PreparedStatement lookupStatement = mock( PreparedStatement.class );
+    PreparedStatement fullStatement = mock( PreparedStatement.class );
+    PreparedStatement lastStatement = mock( PreparedStatement.class );
+    doReturn( "full" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), eq( 2 ) );
+    doReturn( "last" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), eq( 1 ) );
+    doReturn( lookupStatement ).when( db ).prepareSQL( startsWith( "SELECT 0 AS " + InsertUpdate.BATCH_NR_FIELD ) );
+    doReturn( fullStatement ).when( db ).prepareSQL( "full" );
+    doReturn( lastStatement ).when( db ).prepareSQL( "last" );
+    doReturn( lookupReturnRowMeta() ).when( db ).getReturnRowMeta();
+
+    // Key 1 exists with name "a", the other keys are new
+    //
+    List<Object[]> firstLookup = new ArrayList<Object[]>();
+    firstLookup.add( new Object[] { 0L, 1L, "a" } );
+    List<Object[]> secondLookup = new ArrayList<Object[]>();
+    secondLookup.add( new Object[] { 0L, 1L, "a" } );
+    when( db.getRows( any( ResultSet.class ), anyInt(), any( ProgressMonitorListener.class ) ) ).thenReturn(
+      firstLookup, secondLookup, new ArrayList<Object[]>() );
+
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareMergeData( data, db );
+
+    InsertUpdate step = createStep( new Object[] { 1L, "a" }, new Object[] { 1L, "b" }, new Object[] { 2L, "c" },
+      new Object[] { 3L, "d" } );
+    while ( step.processRow( smh.processRowsStepMetaInterface, data ) ) {
+      // process all rows
+    }
+
+    // Key 1 can't be merged twice with the same statement: the first row is looked up on its own and didn't change.
+    // The second row is updated, the others are inserted.
+    //
+    verify( db, times( 3 ) ).openQuery( any( PreparedStatement.class ), any( RowMetaInterface.class ),
+      any( Object[].class ) );
+    verify( fullStatement, times( 1 ) ).executeUpdate();
+    verify( lastStatement, times( 1 ) ).executeUpdate();
+    verify( db, times( 1 ) ).closePreparedStatement( lastStatement );
+    verify( db, times( 2 ) ).setValues( any( RowMetaInterface.class ), anyListOf( Object[].class ),
+      any( PreparedStatement.class ) );
+    verify( db, never() ).getLookup( any( PreparedStatement.class ) );
+    assertEquals( 4, step.getLinesInput() );
+    assertEquals( 2, step.getLinesOutput() );
+    assertEquals( 1, step.getLinesUpdated() );
+    assertEquals( 1, step.getLinesSkipped() );
+    assertTrue( data.mergeRows.isEmpty() );
+    assertTrue( data.mergeKeys.isEmpty() );
+  }
+
+  @Test
+  public void testBinaryStringKeysAreMergedOnce() throws Exception {
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareMergeData( data, mock( Database.class ) );
+    data.mergeSize = 10;
+    ValueMetaInterface keyMeta = new ValueMetaString( "id" );
+    keyMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    keyMeta.setStorageMetadata( new ValueMetaString( "id" ) );
+    data.mergeLookupParameterRowMeta = new RowMeta();
+    data.mergeLookupParameterRowMeta.addValueMeta( keyMeta );
+
+    InsertUpdate step = spy( createStep() );
+    doNothing().when( step ).flushMerge();
+
+    // The same key in different byte arrays
+    //
+    step.addToMerge( new Object[] { "1".getBytes(), "a" } );
+    step.addToMerge( new Object[] { "2".getBytes(), "b" } );
+    verify( step, never() ).flushMerge();
+    step.addToMerge( new Object[] { "1".getBytes(), "c" } );
+    verify( step, times( 1 ) ).flushMerge();
+  }
+
+  @Test
+  public void testDisposeMergesBufferedRows() throws Exception {
+    Database db = mock( Database.class );
+    PreparedStatement lookupStatement = mock( PreparedStatement.class );
+    PreparedStatement lastStatement = mock( PreparedStatement.class );
+    doReturn( "last" ).when( databaseMeta ).getMultiRowMergeStatement( eq( "FOO" ), any( String[].class ),
+      any( String[].class ), any( String[].class ), eq( 1 ) );
+    doReturn( lookupStatement ).when( db ).prepareSQL( startsWith( "SELECT 0 AS " + InsertUpdate.BATCH_NR_FIELD ) );
+    doReturn( lastStatement ).when( db ).prepareSQL( "last" );
+    doReturn( lookupReturnRowMeta() ).when( db ).getReturnRowMeta();
+    when( db.getRows( any( ResultSet.class ), anyInt(), any( ProgressMonitorListener.class ) ) ).thenReturn(
+      new ArrayList<Object[]>() );
+
+    InsertUpdateData data = smh.processRowsStepDataInterface;
+    prepareMergeData( data, db );
+    InsertUpdate step = createStep();
+    data.mergeRows.add( new Object[] { 1L, "a" } );
+
+    step.dispose( smh.processRowsStepMetaInterface, data );
+
+    InOrder inOrder = inOrder( lastStatement, db );
+    inOrder.verify( lastStatement ).executeUpdate();
+    inOrder.verify( db ).commit();
+    verify( db ).closePreparedStatement( lookupStatement );
+    assertEquals( 1, step.getLinesOutput() );
+  }
+}
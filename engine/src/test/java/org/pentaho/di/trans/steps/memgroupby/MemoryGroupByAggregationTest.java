@@ -35,6 +35,7 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -323,7 +324,74 @@ public class MemoryGroupByAggregationTest {
     assertThat( output.getInteger( "value_count_distinct" ), is( 3L ) );
   }
 
+  @Test
+  public void testBatchesGiveSameResultAsRows() throws Exception {
+    addColumn( new ValueMetaInteger( "intg" ), 0L, 1L, null, 10L, -3L, null, 7L );
+    addColumn( new ValueMetaNumber( "num" ), 0.1, null, 0.2, 0.3, -1.5, 1e17, 3.0 );
+
+    aggregates = Maps.toMap( ImmutableList.of( "sum", "ave", "count", "count_any" ),
+      Functions.forMap( default_aggregates ) );
+
+    RowMetaAndData expected = runStep();
+    assertThat( expected.getInteger( "intg_sum" ), is( 15L ) );
+    assertThat( expected.getInteger( "intg_count" ), is( 5L ) );
+
+    for ( int batchSize : new int[] { 1, 2, 3, 100 } ) {
+      RowMetaAndData output = runStep( batchSize );
+      assertEquals( expected.size(), output.size() );
+      for ( int i = 0; i < expected.size(); i++ ) {
+        assertEquals( expected.getValueMeta( i ).getType(), output.getValueMeta( i ).getType() );
+        assertEquals( expected.getData()[i], output.getData()[i] );
+      }
+    }
+  }
+
+  @Test
+  public void testBatchedCounts() throws Exception {
+    addColumn( new ValueMetaString( "str" ), "A", null, "B", null, "C", "D", null );
+
+    aggregates = Maps.toMap( ImmutableList.of( "count", "count_any" ), Functions.forMap( default_aggregates ) );
+
+    RowMetaAndData output = runStep( 3 );
+
+    assertThat( output.getInteger( "str_count" ), is( 4L ) );
+    assertThat( output.getInteger( "str_count_any" ), is( 7L ) );
+  }
+
+  @Test
+  public void testOffHeapGivesSameResultAsHeap() throws Exception {
+    addColumn( new ValueMetaInteger( "intg" ), 0L, 1L, null, 10L, -3L, null, 7L );
+    addColumn( new ValueMetaNumber( "num" ), 0.1, null, 0.2, 0.3, -1.5, 1e17, 3.0 );
+
+    aggregates = Maps.toMap( ImmutableList.of( "min", "max", "sum", "ave", "count", "count_any" ),
+      Functions.forMap( default_aggregates ) );
+
+    for ( String minNullIsValued : new String[] { "N", "Y" } ) {
+      variables.setVariable( Const.KETTLE_AGGREGATION_MIN_NULL_IS_VALUED, minNullIsValued );
+      variables.setVariable( Const.KETTLE_MEMORY_GROUP_BY_MAX_MEMORY, "" );
+      RowMetaAndData expected = runStep();
+
+      variables.setVariable( Const.KETTLE_MEMORY_GROUP_BY_MAX_MEMORY, "1" );
+      for ( int batchSize : new int[] { 0, 3 } ) {
+        RowMetaAndData output = runStep( batchSize );
+        assertEquals( expected.size(), output.size() );
+        for ( int i = 0; i < expected.size(); i++ ) {
+          assertEquals( expected.getValueMeta( i ).getType(), output.getValueMeta( i ).getType() );
+          assertEquals( expected.getData()[i], output.getData()[i] );
+        }
+      }
+    }
+  }
+
   private RowMetaAndData runStep() throws KettleException {
+    return runStep( 0 );
+  }
+
+  /**
+   * @param batchSize
+   *          the number of rows to pass to processRows() at a time, 0 to use processRow()
+   */
+  private RowMetaAndData runStep( int batchSize ) throws KettleException {
     // Allocate meta
     List<String> aggKeys = ImmutableList.copyOf( aggregates.keySet() );
     MemoryGroupByMeta meta = new MemoryGroupByMeta();
@@ -356,15 +424,31 @@ public class MemoryGroupByAggregationTest {
 
     // Process rows
     doReturn( rowMeta ).when( step ).getInputRowMeta();
-    for ( Object[] row : getRows() ) {
-      doReturn( row ).when( step ).getRow();
-      assertThat( step.processRow( meta, data ), is( true ) );
+    if ( batchSize > 0 ) {
+      List<Object[]> rows = ImmutableList.copyOf( getRows() );
+      doReturn( batchSize ).when( step ).getRowBatchSize();
+      doReturn( rows.get( 0 ) ).when( step ).getRow();
+      assertThat( step.processRows( meta, data ), is( true ) );
+      for ( int i = 1; i < rows.size(); i += batchSize ) {
+        doReturn( rows.subList( i, Math.min( i + batchSize, rows.size() ) ) ).when( step ).getRows( batchSize );
+        assertThat( step.processRows( meta, data ), is( true ) );
+      }
+    } else {
+      for ( Object[] row : getRows() ) {
+        doReturn( row ).when( step ).getRow();
+        assertThat( step.processRow( meta, data ), is( true ) );
+      }
     }
     verify( step, never() ).putRow( (RowMetaInterface) any(), (Object[]) any() );
 
     // Mark stop
-    doReturn( null ).when( step ).getRow();
-    assertThat( step.processRow( meta, data ), is( false ) );
+    if ( batchSize > 0 ) {
+      doReturn( Collections.emptyList() ).when( step ).getRows( batchSize );
+      assertThat( step.processRows( meta, data ), is( false ) );
+    } else {
+      doReturn( null ).when( step ).getRow();
+      assertThat( step.processRow( meta, data ), is( false ) );
+    }
     verify( step ).setOutputDone();
 
     // Collect output
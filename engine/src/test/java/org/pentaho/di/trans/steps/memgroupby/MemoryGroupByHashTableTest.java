@@ -0,0 +1,204 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class MemoryGroupByHashTableTest {
+
+  private static final int[] GROUPNRS = new int[] { 0, 1 };
+  private static final int[] SUBJECTNRS = new int[] { 2, 2, 2, 2, 3, 2 };
+  private static final int[] AGGREGATE_TYPES = new int[] {
+    MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_AVERAGE, MemoryGroupByMeta.TYPE_GROUP_MIN,
+    MemoryGroupByMeta.TYPE_GROUP_MAX, MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY };
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private RowMetaInterface rowMeta;
+
+  @Before
+  public void setUp() {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "value" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+  }
+
+  @Test
+  public void testIsSupported() {
+    RowMetaInterface aggMeta = new RowMeta();
+    aggMeta.addValueMeta( new ValueMetaInteger( "sum" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "average" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "min" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "max" ) );
+    aggMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "count" ) );
+    assertTrue( MemoryGroupByHashTable.isSupported( rowMeta, GROUPNRS, SUBJECTNRS, AGGREGATE_TYPES, aggMeta ) );
+
+    // Concatenation can't be kept in a primitive
+    //
+    assertFalse( MemoryGroupByHashTable.isSupported( rowMeta, GROUPNRS, new int[] { 0 },
+      new int[] { MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA }, aggMeta ) );
+
+    // Neither can the minimum of a String
+    //
+    assertFalse( MemoryGroupByHashTable.isSupported( rowMeta, GROUPNRS, new int[] { 0 },
+      new int[] { MemoryGroupByMeta.TYPE_GROUP_MIN }, aggMeta ) );
+
+    // Case insensitive keys can't be compared as bytes
+    //
+    rowMeta.getValueMeta( 0 ).setCaseInsensitive( true );
+    assertFalse( MemoryGroupByHashTable.isSupported( rowMeta, GROUPNRS, SUBJECTNRS, AGGREGATE_TYPES, aggMeta ) );
+  }
+
+  @Test
+  public void testAggregation() throws KettleException {
+    MemoryGroupByHashTable table = createAndFill( Long.MAX_VALUE );
+    try {
+      assertEquals( 0, table.getNrSpills() );
+      verify( table );
+    } finally {
+      table.clear();
+    }
+  }
+
+  @Test
+  public void testAggregationWithSpills() throws KettleException {
+    // Every group that is added makes the table go over budget
+    //
+    MemoryGroupByHashTable table = createAndFill( 1L );
+    try {
+      assertTrue( table.getNrSpills() > 0 );
+      assertTrue( tempFolder.getRoot().list().length > 0 );
+      verify( table );
+      assertEquals( 0, tempFolder.getRoot().list().length );
+    } finally {
+      table.clear();
+    }
+  }
+
+  @Test
+  public void testClear() throws KettleException {
+    MemoryGroupByHashTable table = createAndFill( 1L );
+    assertFalse( table.isEmpty() );
+
+    table.clear();
+
+    assertTrue( table.isEmpty() );
+    assertEquals( 0, table.getNrSpills() );
+    table.add( new Object[] { "a", 1L, 5L, 1.5 } );
+    final int[] nrGroups = new int[] { 0 };
+    table.forEachGroup( new MemoryGroupByHashTable.GroupHandler() {
+      @Override
+      public void handleGroup( Object[] groupData, Aggregate aggregate ) {
+        nrGroups[0]++;
+        assertEquals( 5L, aggregate.agg[0] );
+      }
+    } );
+    assertEquals( 1, nrGroups[0] );
+    table.clear();
+  }
+
+  private MemoryGroupByHashTable createAndFill( long maxMemory ) throws KettleException {
+    MemoryGroupByHashTable table =
+      new MemoryGroupByHashTable( rowMeta, GROUPNRS, SUBJECTNRS, AGGREGATE_TYPES, false, maxMemory,
+        tempFolder.getRoot(), RowSpillCompression.LZ4 );
+    for ( long i = 0; i < 1000; i++ ) {
+      String name = i % 5 == 0 ? null : "name" + ( i % 4 );
+      Long value = i % 3 == 0 ? null : Long.valueOf( i );
+      table.add( new Object[] { name, i % 10, value, 0.5 } );
+    }
+    return table;
+  }
+
+  /**
+   * The 1000 rows end up in 18 groups: ids 0 and 5 only have a null name, the other ids have two names each
+   */
+  private void verify( MemoryGroupByHashTable table ) throws KettleException {
+    final Map<List<Object>, Aggregate> groups = new HashMap<List<Object>, Aggregate>();
+    table.forEachGroup( new MemoryGroupByHashTable.GroupHandler() {
+      @Override
+      public void handleGroup( Object[] groupData, Aggregate aggregate ) {
+        groups.put( Arrays.asList( groupData ), aggregate );
+      }
+    } );
+    assertEquals( 18, groups.size() );
+
+    for ( Map.Entry<List<Object>, Aggregate> group : groups.entrySet() ) {
+      String name = (String) group.getKey().get( 0 );
+      long id = (Long) group.getKey().get( 1 );
+
+      long sum = 0L;
+      long count = 0L;
+      Long min = null;
+      Long max = null;
+      long rows = 0L;
+      for ( long i = 0; i < 1000; i++ ) {
+        String rowName = i % 5 == 0 ? null : "name" + ( i % 4 );
+        if ( i % 10 != id || ( rowName == null ? name != null : !rowName.equals( name ) ) ) {
+          continue;
+        }
+        rows++;
+        if ( i % 3 != 0 ) {
+          sum += i;
+          count++;
+          min = min == null ? i : Math.min( min, i );
+          max = max == null ? i : Math.max( max, i );
+        }
+      }
+
+      Aggregate aggregate = group.getValue();
+      assertEquals( sum, aggregate.agg[0] );
+      assertEquals( sum, aggregate.agg[1] );
+      assertEquals( count, aggregate.counts[1] );
+      assertEquals( min, aggregate.agg[2] );
+      assertEquals( max, aggregate.agg[3] );
+      assertEquals( rows * 0.5, (Double) aggregate.agg[4], 0.0 );
+      assertEquals( rows, aggregate.counts[5] );
+    }
+    assertNull( groups.get( Arrays.asList( (Object) "name9", 1L ) ) );
+  }
+}
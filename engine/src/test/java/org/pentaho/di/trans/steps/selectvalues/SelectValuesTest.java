@@ -29,6 +29,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleEnvironment;
@@ -53,8 +54,11 @@ import org.pentaho.di.trans.steps.mock.StepMockHelper;
 import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta.SelectField;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.eq;
@@ -63,6 +67,9 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Andrey Khayrutdinov
@@ -332,6 +339,67 @@ public class SelectValuesTest {
     assertTrue( properException );
   }
 
+  @Test
+  public void errorRowKeepsItsPlaceInABatch() throws Exception {
+    List<String> events = processBatchWithError();
+    assertEquals( Arrays.asList( "row 1", "error x", "row 2" ), events );
+  }
+
+  @Test
+  public void rowsBeforeAnErrorArePassedOnWithoutErrorHandling() throws Exception {
+    when( helper.stepMeta.isDoingErrorHandling() ).thenReturn( false );
+    List<String> events = new ArrayList<String>();
+    try {
+      processBatchWithError( events );
+      fail( "the conversion error has to stop the step" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertEquals( Arrays.asList( "row 1" ), events );
+  }
+
+  private List<String> processBatchWithError() throws Exception {
+    List<String> events = new ArrayList<String>();
+    processBatchWithError( events );
+    return events;
+  }
+
+  /**
+   * Converts a batch of 3 strings to integers, the second one fails. Records the rows passed on and the error rows.
+   */
+  @SuppressWarnings( "unchecked" )
+  private void processBatchWithError( final List<String> events ) throws Exception {
+    SelectValuesMeta stepMeta = new SelectValuesMeta();
+    stepMeta.allocate( 1, 0, 1 );
+    stepMeta.getSelectFields()[0] = new SelectField();
+    stepMeta.getSelectFields()[0].setName( SELECTED_FIELD );
+    stepMeta.getMeta()[ 0 ] =
+      new SelectMetadataChange( stepMeta, SELECTED_FIELD, null, ValueMetaInterface.TYPE_INTEGER, -2, -2,
+        ValueMetaInterface.STORAGE_TYPE_NORMAL, null, false, null, null, null, false, null, null, null );
+
+    SelectValuesData stepData = new SelectValuesData();
+    stepData.select = true;
+    stepData.metadata = true;
+    stepData.firstselect = true;
+    stepData.firstmetadata = true;
+
+    doReturn( Arrays.asList( new Object[] { "1" }, new Object[] { "x" }, new Object[] { "2" } ) ).when( step )
+      .getRows( anyInt() );
+    doAnswer( invocation -> {
+      for ( Object[] row : (List<Object[]>) invocation.getArguments()[1] ) {
+        events.add( "row " + row[0] );
+      }
+      return null;
+    } ).when( step ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+    doAnswer( invocation -> {
+      events.add( "error " + ( (Object[]) invocation.getArguments()[1] )[0] );
+      return null;
+    } ).when( step ).putError( any( RowMetaInterface.class ), any( Object[].class ), anyLong(), anyString(),
+      anyString(), anyString() );
+
+    step.processRows( stepMeta, stepData );
+  }
+
   @Test
   public void alterDateGregorianChange() throws KettleException {
     SelectValuesHandler  step2 = null;
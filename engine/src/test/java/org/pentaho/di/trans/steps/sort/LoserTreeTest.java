@@ -0,0 +1,123 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LoserTreeTest {
+
+  private static final Comparator<RowTempFile> COMPARATOR = new Comparator<RowTempFile>() {
+    @Override
+    public int compare( RowTempFile o1, RowTempFile o2 ) {
+      return ( (Long) o1.row[0] ).compareTo( (Long) o2.row[0] );
+    }
+  };
+
+  private static final Comparator<Object[]> ROW_COMPARATOR = new Comparator<Object[]>() {
+    @Override
+    public int compare( Object[] o1, Object[] o2 ) {
+      return ( (Long) o1[0] ).compareTo( (Long) o2[0] );
+    }
+  };
+
+  @Test
+  public void testNoRuns() {
+    LoserTree tree = new LoserTree( new ArrayList<RowTempFile>(), COMPARATOR );
+
+    assertTrue( tree.isEmpty() );
+    assertNull( tree.peek() );
+  }
+
+  @Test
+  public void testMergeIsSortedAndStable() {
+    Random random = new Random( 123 );
+    for ( int nrRuns = 1; nrRuns <= 33; nrRuns++ ) {
+      List<List<Object[]>> runs = new ArrayList<List<Object[]>>();
+      List<Object[]> expected = new ArrayList<Object[]>();
+      for ( int r = 0; r < nrRuns; r++ ) {
+        List<Object[]> run = new ArrayList<Object[]>();
+        int nrRows = random.nextInt( 50 );
+        for ( int i = 0; i < nrRows; i++ ) {
+          run.add( new Object[] { (long) random.nextInt( 20 ), r } );
+        }
+        Collections.sort( run, ROW_COMPARATOR );
+        runs.add( run );
+        expected.addAll( run );
+      }
+      // Collections.sort() is stable: equal rows stay in the order of the runs
+      Collections.sort( expected, ROW_COMPARATOR );
+
+      assertEquals( expected, merge( runs ) );
+    }
+  }
+
+  @Test
+  public void testEmptyRuns() {
+    List<List<Object[]>> runs = new ArrayList<List<Object[]>>();
+    runs.add( new ArrayList<Object[]>() );
+    List<Object[]> run = new ArrayList<Object[]>();
+    Object[] row = new Object[] { 1L };
+    run.add( row );
+    runs.add( run );
+    runs.add( new ArrayList<Object[]>() );
+
+    List<Object[]> merged = merge( runs );
+
+    assertEquals( 1, merged.size() );
+    assertSame( row, merged.get( 0 ) );
+  }
+
+  private List<Object[]> merge( List<List<Object[]>> runs ) {
+    int[] positions = new int[runs.size()];
+    List<RowTempFile> rows = new ArrayList<RowTempFile>();
+    for ( int r = 0; r < runs.size(); r++ ) {
+      rows.add( new RowTempFile( next( runs, positions, r ), r ) );
+    }
+
+    List<Object[]> merged = new ArrayList<Object[]>();
+    LoserTree tree = new LoserTree( rows, COMPARATOR );
+    while ( !tree.isEmpty() ) {
+      RowTempFile winner = tree.peek();
+      merged.add( winner.row );
+      tree.replaceWinner( next( runs, positions, winner.fileNumber ) );
+    }
+    return merged;
+  }
+
+  private Object[] next( List<List<Object[]>> runs, int[] positions, int run ) {
+    List<Object[]> rows = runs.get( run );
+    return positions[run] < rows.size() ? rows.get( positions[run]++ ) : null;
+  }
+}
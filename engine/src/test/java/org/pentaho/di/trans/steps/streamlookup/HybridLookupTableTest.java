@@ -0,0 +1,155 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class HybridLookupTableTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private RowMetaInterface keyMeta;
+  private RowMetaInterface valueMeta;
+  private RowMetaInterface rowMeta;
+
+  @Before
+  public void setUp() {
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    valueMeta = new RowMeta();
+    valueMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "info" ) );
+  }
+
+  @Test
+  public void testEverythingInMemory() throws KettleException {
+    HybridLookupTable table = new HybridLookupTable( keyMeta, valueMeta, 1024L * 1024L, tempFolder.getRoot(),
+      RowSpillCompression.NONE );
+    for ( long id = 0; id < 100; id++ ) {
+      table.put( new Object[] { id }, new Object[] { "name" + id } );
+    }
+    table.put( new Object[] { 5L }, new Object[] { "replaced" } );
+
+    assertEquals( 0, table.getNrSpills() );
+    assertFalse( table.isSpilled( new Object[] { 5L } ) );
+    assertEquals( "replaced", table.get( new Object[] { 5L } )[0] );
+    assertEquals( "name99", table.get( new Object[] { 99L } )[0] );
+    assertNull( table.get( new Object[] { 100L } ) );
+    assertTrue( table.getUsedMemory() > 0 );
+
+    table.forEachSpilledRow( new HybridLookupTable.ProbeHandler() {
+      @Override
+      public void handleRow( Object[] row, Object[] value ) {
+        throw new IllegalStateException( "Nothing was spilled" );
+      }
+    } );
+    table.clear();
+    assertEquals( 0L, table.getUsedMemory() );
+  }
+
+  @Test
+  public void testSpilledPartitionsAreLookedUpAtTheEnd() throws KettleException {
+    checkLookups( 32L * 1024L, RowSpillCompression.NONE );
+  }
+
+  @Test
+  public void testSpilledPartitionsAreSpilledAgain() throws KettleException {
+    // The spilled partitions don't fit either, they are partitioned again
+    //
+    checkLookups( 8L * 1024L, RowSpillCompression.LZ4 );
+  }
+
+  private void checkLookups( long maxMemory, RowSpillCompression compression ) throws KettleException {
+    HybridLookupTable table = new HybridLookupTable( keyMeta, valueMeta, maxMemory, tempFolder.getRoot(), compression );
+    try {
+      for ( long id = 0; id < 2000; id++ ) {
+        table.put( new Object[] { id }, new Object[] { "name" + id } );
+      }
+      // The last value of a key wins, also if it's on disk
+      //
+      for ( long id = 0; id < 2000; id += 100 ) {
+        table.put( new Object[] { id }, new Object[] { "replaced" + id } );
+      }
+      assertTrue( table.getNrSpills() > 0 );
+      assertTrue( tempFolder.getRoot().list().length > 0 );
+
+      final Map<Long, Object> found = new HashMap<Long, Object>();
+      int nrSpilled = 0;
+      for ( long id = 0; id < 3000; id++ ) {
+        Object[] key = new Object[] { id };
+        Object[] row = new Object[] { id, "info" + id };
+        if ( table.isSpilled( key ) ) {
+          table.spillProbeRow( key, rowMeta, row );
+          nrSpilled++;
+        } else {
+          Object[] value = table.get( key );
+          found.put( id, value == null ? null : value[0] );
+        }
+      }
+      assertTrue( nrSpilled > 0 );
+
+      table.forEachSpilledRow( new HybridLookupTable.ProbeHandler() {
+        @Override
+        public void handleRow( Object[] row, Object[] value ) {
+          assertEquals( "info" + row[0], row[1] );
+          assertFalse( found.containsKey( row[0] ) );
+          found.put( (Long) row[0], value == null ? null : value[0] );
+        }
+      } );
+
+      assertEquals( 3000, found.size() );
+      for ( long id = 0; id < 3000; id++ ) {
+        if ( id >= 2000 ) {
+          assertNull( found.get( id ) );
+        } else if ( id % 100 == 0 ) {
+          assertEquals( "replaced" + id, found.get( id ) );
+        } else {
+          assertEquals( "name" + id, found.get( id ) );
+        }
+      }
+      assertEquals( 0, tempFolder.getRoot().list().length );
+    } finally {
+      table.clear();
+    }
+  }
+}
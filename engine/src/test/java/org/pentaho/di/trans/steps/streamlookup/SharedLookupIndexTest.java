@@ -0,0 +1,143 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class SharedLookupIndexTest {
+
+  private RowMetaInterface keyMeta;
+  private RowMetaInterface valueMeta;
+
+  @Before
+  public void setUp() {
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    valueMeta = new RowMeta();
+    valueMeta.addValueMeta( new ValueMetaString( "name" ) );
+  }
+
+  @Test
+  public void testBuildInMemory() throws KettleException {
+    checkLookups( false );
+  }
+
+  @Test
+  public void testBuildPreservingMemory() throws KettleException {
+    checkLookups( true );
+  }
+
+  private void checkLookups( boolean preserveMemory ) throws KettleException {
+    SharedLookupIndex index = SharedLookupIndex.acquire( "test" );
+    try {
+      assertTrue( index.startBuilding() );
+      assertFalse( index.startBuilding() );
+      assertFalse( index.awaitIndex( 1, TimeUnit.MILLISECONDS ) );
+
+      List<Object[]> keys = new ArrayList<Object[]>();
+      List<Object[]> values = new ArrayList<Object[]>();
+      for ( long id = 0; id < 10000; id++ ) {
+        keys.add( new Object[] { id } );
+        values.add( new Object[] { "name" + id } );
+      }
+      // The last value of a key wins
+      //
+      keys.add( new Object[] { 5L } );
+      values.add( new Object[] { "replaced" } );
+      index.build( keyMeta, valueMeta, keys, values, preserveMemory );
+
+      assertTrue( index.awaitIndex( 1, TimeUnit.MILLISECONDS ) );
+      assertEquals( 10001, index.size() );
+      assertEquals( "replaced", index.get( new Object[] { 5L } )[0] );
+      for ( long id = 6; id < 10000; id++ ) {
+        assertEquals( "name" + id, index.get( new Object[] { id } )[0] );
+      }
+      assertNull( index.get( new Object[] { 10000L } ) );
+    } finally {
+      index.release();
+    }
+  }
+
+  @Test
+  public void testEmptyIndex() throws KettleException {
+    SharedLookupIndex index = SharedLookupIndex.acquire( "empty" );
+    try {
+      index.build( null, null, new ArrayList<Object[]>(), new ArrayList<Object[]>(), false );
+      assertTrue( index.awaitIndex( 1, TimeUnit.MILLISECONDS ) );
+      assertNull( index.get( new Object[] { 1L } ) );
+    } finally {
+      index.release();
+    }
+  }
+
+  @Test
+  public void testIndexIsSharedByName() {
+    SharedLookupIndex first = SharedLookupIndex.acquire( "shared" );
+    SharedLookupIndex second = SharedLookupIndex.acquire( "shared" );
+    assertSame( first, second );
+
+    // Still in use by the second step
+    //
+    first.release();
+    SharedLookupIndex third = SharedLookupIndex.acquire( "shared" );
+    assertSame( second, third );
+    third.release();
+    second.release();
+
+    SharedLookupIndex fourth = SharedLookupIndex.acquire( "shared" );
+    assertNotSame( first, fourth );
+    fourth.release();
+  }
+
+  @Test
+  public void testFailureIsPassedOn() {
+    SharedLookupIndex index = SharedLookupIndex.acquire( "failure" );
+    try {
+      index.fail( new KettleException( "stopped" ) );
+      index.awaitIndex( 1, TimeUnit.SECONDS );
+      fail( "The failure should be passed on to the steps waiting for the index" );
+    } catch ( KettleException e ) {
+      assertEquals( "stopped", e.getCause().getMessage().trim() );
+    } finally {
+      index.release();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class SharedSliceRangeTest {
+
+  private static class CountingReader implements SharedSliceRange.RangeReader {
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public RowMetaAndData readRange() {
+      RowMetaAndData range = new RowMetaAndData();
+      range.addValue( new ValueMetaInteger( "min" ), 1L );
+      range.addValue( new ValueMetaInteger( "max" ), 100L + reads.incrementAndGet() );
+      return range;
+    }
+  }
+
+  @Test
+  public void testRangeIsReadOncePerQuery() throws KettleDatabaseException {
+    SharedSliceRange first = SharedSliceRange.acquire( "testRangeIsReadOncePerQuery" );
+    SharedSliceRange second = SharedSliceRange.acquire( "testRangeIsReadOncePerQuery" );
+    assertSame( first, second );
+
+    CountingReader reader = new CountingReader();
+    RowMetaAndData range = first.getRange( "SELECT 1", reader );
+    assertSame( range, second.getRange( "SELECT 1", reader ) );
+    assertEquals( 1, reader.reads.get() );
+
+    // Every copy got the range: the query is read again the next time
+    //
+    assertNotSame( range, first.getRange( "SELECT 1", reader ) );
+    assertEquals( 2, reader.reads.get() );
+
+    first.release();
+    second.release();
+    SharedSliceRange next = SharedSliceRange.acquire( "testRangeIsReadOncePerQuery" );
+    assertNotSame( first, next );
+    next.release();
+  }
+
+  @Test
+  public void testFailedReadIsRetriedByTheNextCopy() throws KettleDatabaseException {
+    SharedSliceRange first = SharedSliceRange.acquire( "testFailedReadIsRetriedByTheNextCopy" );
+    SharedSliceRange second = SharedSliceRange.acquire( "testFailedReadIsRetriedByTheNextCopy" );
+    try {
+      first.getRange( "SELECT 1", new SharedSliceRange.RangeReader() {
+        @Override
+        public RowMetaAndData readRange() throws KettleDatabaseException {
+          throw new KettleDatabaseException( "Connection lost" );
+        }
+      } );
+      fail( "The read error should be passed on" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+
+    CountingReader reader = new CountingReader();
+    second.getRange( "SELECT 1", reader );
+    assertEquals( 1, reader.reads.get() );
+    first.release();
+    second.release();
+  }
+}
@@ -68,6 +68,16 @@ public class TableInputMetaInjectionTest extends BaseMetadataInjectionTest<Table
         return meta.isCachedRowMetaActive();
       }
     } );
+    check( "FETCH_SIZE", new StringGetter() {
+      public String get() {
+        return meta.getFetchSize();
+      }
+    } );
+    check( "PARTITION_COLUMN", new StringGetter() {
+      public String get() {
+        return meta.getPartitionColumn();
+      }
+    } );
     skipPropertyTest( "CONNECTIONNAME" );
   }
 }
@@ -25,7 +25,11 @@ package org.pentaho.di.trans.steps.tableinput;
 import org.junit.Before;
 import org.junit.Test;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.row.value.ValueMetaTimestamp;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
@@ -34,8 +38,11 @@ import org.pentaho.di.trans.step.StepPartitioningMeta;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 
+import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
@@ -122,4 +129,41 @@ public class TableInputTest {
     verify( mockStepDataInterface.db, times( 0 ) ).cancelStatement( any( PreparedStatement.class ) );
     assertFalse( mockStepDataInterface.isCanceled );
   }
+
+  @Test
+  public void testSliceBoundsSplitTheRangeInEqualParts() throws Exception {
+    ValueMetaInteger valueMeta = new ValueMetaInteger( "id" );
+
+    Object[] first = TableInput.getSliceBounds( valueMeta, 1L, 100L, 4, 0 );
+    assertNull( first[ 0 ] );
+    assertEquals( 25L, first[ 1 ] );
+
+    Object[] second = TableInput.getSliceBounds( valueMeta, 1L, 100L, 4, 1 );
+    assertEquals( 25L, second[ 0 ] );
+    assertEquals( 50L, second[ 1 ] );
+
+    Object[] last = TableInput.getSliceBounds( valueMeta, 1L, 100L, 4, 3 );
+    assertEquals( 75L, last[ 0 ] );
+    assertNull( last[ 1 ] );
+
+    // More slices than values: some slices will simply be empty
+    //
+    Object[] narrow = TableInput.getSliceBounds( valueMeta, 5L, 6L, 4, 2 );
+    assertEquals( 5L, narrow[ 0 ] );
+    assertEquals( 5L, narrow[ 1 ] );
+  }
+
+  @Test
+  public void testSliceBoundsOfDates() throws Exception {
+    ValueMetaTimestamp valueMeta = new ValueMetaTimestamp( "updated" );
+
+    Object[] bounds = TableInput.getSliceBounds( valueMeta, new Timestamp( 1000L ), new Timestamp( 3000L ), 2, 1 );
+    assertEquals( new Timestamp( 2000L ), bounds[ 0 ] );
+    assertNull( bounds[ 1 ] );
+  }
+
+  @Test( expected = KettleDatabaseException.class )
+  public void testSliceBoundsOfStringsAreNotSupported() throws Exception {
+    TableInput.getSliceBounds( new ValueMetaString( "name" ), "a", "z", 2, 0 );
+  }
 }
@@ -52,7 +52,7 @@ public class TableOutputMetaLoadSaveTest implements InitializerInterface<StepMet
     PluginRegistry.init( false );
     List<String> attributes =
         Arrays.asList( "databaseMeta", "schemaName", "tableName", "commitSize", "truncateTable", "ignoreErrors", "useBatchUpdate",
-            "partitioningEnabled", "partitioningField", "partitioningDaily", "partitioningMonthly", "tableNameInField", "tableNameField",
+            "useMultiRowInsert", "partitioningEnabled", "partitioningField", "partitioningDaily", "partitioningMonthly", "tableNameInField", "tableNameField",
             "tableNameInTable", "returningGeneratedKeys", "generatedKeyField", "specifyFields", "fieldStream", "fieldDatabase" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
@@ -60,6 +60,7 @@ public class TableOutputMetaLoadSaveTest implements InitializerInterface<StepMet
         put( "truncateTable", "truncateTable" );
         put( "ignoreErrors", "ignoreErrors" );
         put( "useBatchUpdate", "useBatchUpdate" );
+        put( "useMultiRowInsert", "useMultiRowInsert" );
         put( "specifyFields", "specifyFields" );
       }
     };
@@ -154,6 +154,7 @@ public class TableOutputMetaTest {
     assertFalse( tableOutputMeta.ignoreErrors() );
     assertFalse( tableOutputMeta.isPartitioningEnabled() );
     assertTrue( tableOutputMeta.useBatchUpdate() );
+    assertFalse( tableOutputMeta.useMultiRowInsert() );
     assertFalse( tableOutputMeta.isTableNameInField() );
     assertTrue( tableOutputMeta.isTableNameInTable() );
     assertFalse( tableOutputMeta.isReturningGeneratedKeys() );
@@ -165,6 +166,7 @@ public class TableOutputMetaTest {
       + "    <truncate>Y</truncate>\n"
       + "    <ignore_errors>N</ignore_errors>\n"
       + "    <use_batch>Y</use_batch>\n"
+      + "    <use_multi_row_insert>N</use_multi_row_insert>\n"
       + "    <specify_fields>Y</specify_fields>\n"
       + "    <partitioning_enabled>N</partitioning_enabled>\n"
       + "    <partitioning_field/>\n"
@@ -208,6 +210,7 @@ public class TableOutputMetaTest {
     verify( rep ).saveStepAttribute( id_transformation, id_step, "truncate", true );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "ignore_errors", false );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "use_batch", true );
+    verify( rep ).saveStepAttribute( id_transformation, id_step, "use_multi_row_insert", false );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "specify_fields", true );
 
     verify( rep ).saveStepAttribute( id_transformation, id_step, "partitioning_enabled", false );
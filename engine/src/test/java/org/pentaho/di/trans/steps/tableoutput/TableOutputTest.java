@@ -24,9 +24,12 @@ package org.pentaho.di.trans.steps.tableoutput;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.Trans;
@@ -34,15 +37,33 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -204,4 +225,249 @@ public class TableOutputTest {
     KettleException ke = new KettleException( unsupportedTableOutputMessage );
     verify( tableOutputSpy, times( 1 ) ).logError( "An error occurred intialising this step: " + ke.getMessage() );
   }
+
+  @Test
+  public void testFlushMultiRowInsert() throws Exception {
+    RowMetaInterface insertRowMeta = mock( RowMetaInterface.class );
+    PreparedStatement fullStatement = mock( PreparedStatement.class );
+    PreparedStatement lastStatement = mock( PreparedStatement.class );
+    doReturn( "full" ).when( db ).getMultiRowInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ), eq( 2 ) );
+    doReturn( "last" ).when( db ).getMultiRowInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ), eq( 1 ) );
+    doReturn( fullStatement ).when( db ).prepareSQL( "full" );
+    doReturn( lastStatement ).when( db ).prepareSQL( "last" );
+    doNothing().when( tableOutputSpy ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+
+    tableOutputData.insertRowMeta = insertRowMeta;
+    tableOutputData.multiRowInsertSize = 2;
+    tableOutputData.multiRowInsertRows = new ArrayList<Object[]>();
+    tableOutputData.batchBuffer = new ArrayList<Object[]>();
+    tableOutputData.commitCounterMap = new HashMap<String, Integer>();
+    tableOutputData.commitSize = 4;
+
+    List<Object[]> rows = Arrays.asList( new Object[] { 1L }, new Object[] { 2L }, new Object[] { 3L },
+      new Object[] { 4L }, new Object[] { 5L } );
+    for ( Object[] row : rows ) {
+      tableOutputData.multiRowInsertRows.add( row );
+      tableOutputData.batchBuffer.add( row );
+      if ( tableOutputData.multiRowInsertRows.size() == 2 ) {
+        tableOutputSpy.flushMultiRowInsert();
+      }
+    }
+
+    // Two full statements: the commit size is reached and the rows are passed on
+    //
+    verify( fullStatement, times( 2 ) ).executeUpdate();
+    verify( db, times( 1 ) ).prepareSQL( "full" );
+    verify( db, times( 1 ) ).commit();
+    verify( tableOutputSpy, times( 1 ) ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+    assertEquals( 1, tableOutputData.batchBuffer.size() );
+
+    // The last row is inserted with a separate statement, it is committed when the step is disposed
+    //
+    tableOutputSpy.flushMultiRowInsert();
+    verify( lastStatement ).executeUpdate();
+    verify( db ).closePreparedStatement( lastStatement );
+    verify( db, times( 1 ) ).commit();
+    assertEquals( Integer.valueOf( 1 ), tableOutputData.commitCounterMap.get( "sas" ) );
+    assertTrue( tableOutputData.multiRowInsertRows.isEmpty() );
+  }
+
+  @Test
+  public void testFlushMultiRowInsertPipelined() throws Exception {
+    RowMetaInterface insertRowMeta = mock( RowMetaInterface.class );
+    PreparedStatement fullStatement = mock( PreparedStatement.class );
+    doReturn( "full" ).when( db ).getMultiRowInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ), eq( 2 ) );
+    doReturn( fullStatement ).when( db ).prepareSQL( "full" );
+    doNothing().when( tableOutputSpy ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+
+    tableOutputData.insertRowMeta = insertRowMeta;
+    tableOutputData.multiRowInsertSize = 2;
+    tableOutputData.multiRowInsertRows = new ArrayList<Object[]>();
+    tableOutputData.batchBuffer = new ArrayList<Object[]>();
+    tableOutputData.commitCounterMap = new HashMap<String, Integer>();
+    tableOutputData.commitSize = 2;
+    tableOutputData.insertPipelineSize = 2;
+    tableOutputData.pendingInserts = new ArrayDeque<TableOutputData.PendingInsert>();
+    tableOutputData.insertExecutor = Executors.newSingleThreadExecutor();
+
+    try {
+      for ( long i = 0; i < 6; i++ ) {
+        Object[] row = new Object[] { i };
+        tableOutputData.multiRowInsertRows.add( row );
+        tableOutputData.batchBuffer.add( row );
+        if ( tableOutputData.multiRowInsertRows.size() == 2 ) {
+          tableOutputSpy.flushMultiRowInsert();
+          assertTrue( tableOutputData.pendingInserts.size() <= 2 );
+        }
+      }
+      tableOutputSpy.finishPendingInserts();
+    } finally {
+      tableOutputData.insertExecutor.shutdown();
+    }
+
+    // Every statement commits, all the rows are passed on in the order they were inserted
+    //
+    verify( fullStatement, times( 3 ) ).executeUpdate();
+    verify( db, times( 3 ) ).commit();
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass( List.class );
+    verify( tableOutputSpy, times( 3 ) ).putRows( any( RowMetaInterface.class ), captor.capture() );
+    long expected = 0;
+    for ( List<Object[]> committedRows : captor.getAllValues() ) {
+      for ( Object[] row : committedRows ) {
+        assertEquals( expected++, row[ 0 ] );
+      }
+    }
+    assertEquals( 6L, expected );
+    assertTrue( tableOutputData.pendingInserts.isEmpty() );
+    assertTrue( tableOutputData.batchBuffer.isEmpty() );
+  }
+
+  @Test
+  public void testFlushMultiRowInsertPipelinedError() throws Exception {
+    RowMetaInterface insertRowMeta = mock( RowMetaInterface.class );
+    PreparedStatement fullStatement = mock( PreparedStatement.class );
+    doReturn( "full" ).when( db ).getMultiRowInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ), eq( 2 ) );
+    doReturn( fullStatement ).when( db ).prepareSQL( "full" );
+    when( fullStatement.executeUpdate() ).thenThrow( new SQLException( "duplicate key" ) );
+
+    tableOutputData.insertRowMeta = insertRowMeta;
+    tableOutputData.multiRowInsertSize = 2;
+    tableOutputData.multiRowInsertRows = new ArrayList<Object[]>();
+    tableOutputData.batchBuffer = new ArrayList<Object[]>();
+    tableOutputData.commitCounterMap = new HashMap<String, Integer>();
+    tableOutputData.commitSize = 4;
+    tableOutputData.insertPipelineSize = 4;
+    tableOutputData.pendingInserts = new ArrayDeque<TableOutputData.PendingInsert>();
+    tableOutputData.insertExecutor = Executors.newSingleThreadExecutor();
+
+    try {
+      for ( long i = 0; i < 4; i++ ) {
+        Object[] row = new Object[] { i };
+        tableOutputData.multiRowInsertRows.add( row );
+        tableOutputData.batchBuffer.add( row );
+        if ( tableOutputData.multiRowInsertRows.size() == 2 ) {
+          tableOutputSpy.flushMultiRowInsert();
+        }
+      }
+      tableOutputSpy.finishPendingInserts();
+      fail( "The insert error should be thrown" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    } finally {
+      tableOutputData.insertExecutor.shutdown();
+    }
+
+    // The second statement is skipped, nothing is committed or passed on
+    //
+    verify( fullStatement, times( 1 ) ).executeUpdate();
+    verify( db, never() ).commit();
+    verify( tableOutputSpy, never() ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+    assertTrue( tableOutputData.insertFailed );
+    assertTrue( tableOutputData.pendingInserts.isEmpty() );
+    assertTrue( tableOutputData.batchBuffer.isEmpty() );
+  }
+
+  @Test
+  public void testFlushBatchPipelined() throws Exception {
+    RowMetaInterface insertRowMeta = mock( RowMetaInterface.class );
+    PreparedStatement insertStatement = mock( PreparedStatement.class );
+    doReturn( "insert" ).when( db ).getInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ) );
+    doReturn( insertStatement ).when( db ).prepareSQL( "insert", false );
+    doReturn( true ).when( db ).getUseBatchInsert( true );
+    doNothing().when( tableOutputSpy ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+
+    tableOutputData.insertRowMeta = insertRowMeta;
+    tableOutputData.preparedStatements = new Hashtable<String, PreparedStatement>();
+    tableOutputData.batchBuffer = new ArrayList<Object[]>();
+    tableOutputData.insertPipelineSize = 2;
+    tableOutputData.pendingInserts = new ArrayDeque<TableOutputData.PendingInsert>();
+    tableOutputData.insertExecutor = Executors.newSingleThreadExecutor();
+
+    try {
+      for ( long i = 0; i < 5; i++ ) {
+        tableOutputData.batchBuffer.add( new Object[] { i } );
+        if ( tableOutputData.batchBuffer.size() == 2 ) {
+          tableOutputSpy.flushBatch();
+          assertTrue( tableOutputData.batchBuffer.isEmpty() );
+          assertTrue( tableOutputData.pendingInserts.size() <= 2 );
+        }
+      }
+      tableOutputSpy.flushBatch();
+      tableOutputSpy.finishPendingInserts();
+    } finally {
+      tableOutputData.insertExecutor.shutdown();
+    }
+
+    // Every batch is executed and committed in the background, all the rows are passed on in the order they came in
+    //
+    verify( db, times( 1 ) ).prepareSQL( "insert", false );
+    verify( db, times( 5 ) ).insertRow( insertStatement, true, false );
+    verify( insertStatement, times( 3 ) ).executeBatch();
+    verify( db, times( 3 ) ).commit();
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass( List.class );
+    verify( tableOutputSpy, times( 3 ) ).putRows( any( RowMetaInterface.class ), captor.capture() );
+    long expected = 0;
+    for ( List<Object[]> committedRows : captor.getAllValues() ) {
+      for ( Object[] row : committedRows ) {
+        assertEquals( expected++, row[ 0 ] );
+      }
+    }
+    assertEquals( 5L, expected );
+    assertTrue( tableOutputData.pendingInserts.isEmpty() );
+  }
+
+  @Test
+  public void testFlushBatchPipelinedErrorHandling() throws Exception {
+    RowMetaInterface insertRowMeta = mock( RowMetaInterface.class );
+    RowMetaInterface outputRowMeta = mock( RowMetaInterface.class );
+    PreparedStatement insertStatement = mock( PreparedStatement.class );
+    doReturn( "insert" ).when( db ).getInsertStatement( anyString(), eq( "sas" ), eq( insertRowMeta ) );
+    doReturn( insertStatement ).when( db ).prepareSQL( "insert", false );
+    doReturn( true ).when( db ).getUseBatchInsert( true );
+    doReturn( true ).when( stepMeta ).isDoingErrorHandling();
+    doNothing().when( tableOutputSpy ).putRows( any( RowMetaInterface.class ), anyListOf( Object[].class ) );
+    doNothing().when( tableOutputSpy ).putError( any( RowMetaInterface.class ), any( Object[].class ), eq( 1L ),
+      anyString(), anyString(), anyString() );
+
+    // The first row can't be added to the batch, the third one fails when the batch is executed
+    //
+    doThrow( new KettleDatabaseException( "conversion error" ) ).doReturn( false )
+      .when( db ).insertRow( insertStatement, true, false );
+    BatchUpdateException batchException =
+      new BatchUpdateException( "batch failed", new int[] { 1, Statement.EXECUTE_FAILED, 1 } );
+    batchException.setNextException( new SQLException( "duplicate key" ) );
+    doThrow( batchException ).when( insertStatement ).executeBatch();
+
+    tableOutputData.insertRowMeta = insertRowMeta;
+    tableOutputData.outputRowMeta = outputRowMeta;
+    tableOutputData.preparedStatements = new Hashtable<String, PreparedStatement>();
+    tableOutputData.batchBuffer = new ArrayList<Object[]>();
+    tableOutputData.insertPipelineSize = 2;
+    tableOutputData.pendingInserts = new ArrayDeque<TableOutputData.PendingInsert>();
+    tableOutputData.insertExecutor = Executors.newSingleThreadExecutor();
+
+    List<Object[]> rows = Arrays.asList( new Object[] { 0L }, new Object[] { 1L }, new Object[] { 2L },
+      new Object[] { 3L } );
+    try {
+      tableOutputData.batchBuffer.addAll( rows );
+      tableOutputSpy.flushBatch();
+      tableOutputSpy.finishPendingInserts();
+    } finally {
+      tableOutputData.insertExecutor.shutdown();
+    }
+
+    // The inserted rows are committed, the failed ones go to the error hop in between them
+    //
+    verify( db ).clearBatch( insertStatement );
+    verify( db ).commit( true );
+    InOrder inOrder = inOrder( tableOutputSpy );
+    inOrder.verify( tableOutputSpy ).putError( outputRowMeta, rows.get( 0 ), 1L,
+      new KettleDatabaseException( "conversion error" ).toString(), null, "TOP001" );
+    inOrder.verify( tableOutputSpy ).putRows( outputRowMeta, Collections.singletonList( rows.get( 1 ) ) );
+    inOrder.verify( tableOutputSpy ).putError( outputRowMeta, rows.get( 2 ), 1L,
+      new SQLException( "duplicate key" ).toString(), null, "TOP0002" );
+    inOrder.verify( tableOutputSpy ).putRows( outputRowMeta, Collections.singletonList( rows.get( 3 ) ) );
+    assertFalse( tableOutputData.insertFailed );
+    assertTrue( tableOutputData.pendingInserts.isEmpty() );
+  }
 }
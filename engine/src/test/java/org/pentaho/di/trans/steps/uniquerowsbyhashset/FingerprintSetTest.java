@@ -0,0 +1,148 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2020 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.uniquerowsbyhashset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowSpillCompression;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class FingerprintSetTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private RowMetaInterface rowMeta;
+  private RowMetaInterface keyMeta;
+
+  @Before
+  public void setUp() {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "info" ) );
+    keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+  }
+
+  @Test
+  public void testEverythingInMemory() throws KettleException {
+    FingerprintSet set = new FingerprintSet( rowMeta, 0L, tempFolder.getRoot(), RowSpillCompression.NONE );
+    for ( long id = 0; id < 5000; id++ ) {
+      assertEquals( FingerprintSet.Result.UNIQUE, set.add( key( id ), new Object[] { id, "info" + id } ) );
+    }
+    for ( long id = 0; id < 5000; id += 7 ) {
+      assertEquals( FingerprintSet.Result.DUPLICATE, set.add( key( id ), new Object[] { id, "again" } ) );
+    }
+    assertEquals( 5000L, set.size() );
+    assertEquals( 0, set.getNrSpills() );
+    assertTrue( set.getUsedMemory() > 0 );
+
+    set.finish( new FingerprintSet.RowHandler() {
+      @Override
+      public void handleRow( Object[] row, boolean unique ) {
+        throw new IllegalStateException( "Nothing was spilled" );
+      }
+    } );
+    set.clear();
+    assertEquals( 0L, set.getUsedMemory() );
+  }
+
+  @Test
+  public void testSpilledPartitionsAreCheckedAtTheEnd() throws KettleException {
+    checkDuplicates( 128L * 1024L, RowSpillCompression.NONE );
+  }
+
+  @Test
+  public void testSpilledPartitionsAreSpilledAgain() throws KettleException {
+    // The spilled partitions don't fit either, they are partitioned again
+    //
+    checkDuplicates( 32L * 1024L, RowSpillCompression.LZ4 );
+  }
+
+  private void checkDuplicates( long maxMemory, RowSpillCompression compression ) throws KettleException {
+    FingerprintSet set = new FingerprintSet( rowMeta, maxMemory, tempFolder.getRoot(), compression );
+    try {
+      final Map<Long, Integer> unique = new HashMap<Long, Integer>();
+      final int[] duplicates = new int[ 1 ];
+      FingerprintSet.RowHandler handler = new FingerprintSet.RowHandler() {
+        @Override
+        public void handleRow( Object[] row, boolean isUnique ) {
+          if ( isUnique ) {
+            Integer count = unique.get( row[0] );
+            unique.put( (Long) row[0], count == null ? 1 : count + 1 );
+            // The first row of a key is the one that's kept
+            //
+            assertEquals( "first" + row[0], row[1] );
+          } else {
+            duplicates[0]++;
+          }
+        }
+      };
+
+      // Every key shows up 3 times, spread over the whole stream
+      //
+      int nrSpilled = 0;
+      for ( String prefix : new String[] { "first", "second", "third" } ) {
+        for ( long id = 0; id < 20000; id++ ) {
+          Object[] row = new Object[] { id, prefix + id };
+          FingerprintSet.Result result = set.add( key( id ), row );
+          if ( result == FingerprintSet.Result.SPILLED ) {
+            nrSpilled++;
+          } else {
+            handler.handleRow( row, result == FingerprintSet.Result.UNIQUE );
+          }
+        }
+      }
+      assertTrue( set.getNrSpills() > 0 );
+      assertTrue( nrSpilled > 0 );
+      assertTrue( tempFolder.getRoot().list().length > 0 );
+
+      set.finish( handler );
+      assertEquals( 0, tempFolder.getRoot().list().length );
+
+      assertEquals( 20000, unique.size() );
+      for ( Integer count : unique.values() ) {
+        assertEquals( Integer.valueOf( 1 ), count );
+      }
+      assertEquals( 40000, duplicates[0] );
+    } finally {
+      set.clear();
+    }
+  }
+
+  private byte[] key( long id ) throws KettleException {
+    return RowMeta.extractData( keyMeta, new Object[] { id } );
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -42,19 +42,30 @@ public class UniqueRowsByHashSetMetaTest {
   @Test
   public void testRoundTrip() throws KettleException {
     List<String> attributes =
-      Arrays.asList( "store_values", "reject_duplicate_row", "error_description", "name" );
+      Arrays.asList( "store_values", "reject_duplicate_row", "error_description", "name", "dedupe_mode", "max_memory",
+        "directory", "expected_rows", "false_positive_rate" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "store_values", "getStoreValues" );
     getterMap.put( "reject_duplicate_row", "isRejectDuplicateRow" );
     getterMap.put( "error_description", "getErrorDescription" );
     getterMap.put( "name", "getCompareFields" );
+    getterMap.put( "dedupe_mode", "getDedupeMode" );
+    getterMap.put( "max_memory", "getMaxMemory" );
+    getterMap.put( "directory", "getDirectory" );
+    getterMap.put( "expected_rows", "getExpectedRows" );
+    getterMap.put( "false_positive_rate", "getFalsePositiveRate" );
 
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "store_values", "setStoreValues" );
     setterMap.put( "reject_duplicate_row", "setRejectDuplicateRow" );
     setterMap.put( "error_description", "setErrorDescription" );
     setterMap.put( "name", "setCompareFields" );
+    setterMap.put( "dedupe_mode", "setDedupeMode" );
+    setterMap.put( "max_memory", "setMaxMemory" );
+    setterMap.put( "directory", "setDirectory" );
+    setterMap.put( "expected_rows", "setExpectedRows" );
+    setterMap.put( "false_positive_rate", "setFalsePositiveRate" );
 
     Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
       new HashMap<String, FieldLoadSaveValidator<?>>();
@@ -141,7 +141,7 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
             outputRow[ outputIndex++ ] = dbfData[ d ];
           }
 
-          linesInput++;
+          incrementLinesInput();
 
           // Put it out to the rest of the world...
           try {
@@ -205,7 +205,7 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
           for ( int d = 0; d < dbfMeta.size(); d++ ) {
             outputRow[ outputIndex++ ] = dbfData[ d ];
           }
-          linesInput++;
+          incrementLinesInput();
 
           // Put it out to the rest of the world...
           try {
@@ -270,7 +270,7 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
           for ( int d = 0; d < dbfMeta.size(); d++ ) {
             outputRow[ outputIndex++ ] = dbfData[ d ];
           }
-          linesInput++;
+          incrementLinesInput();
 
           // Put it out to the rest of the world...
           try {
@@ -327,7 +327,7 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
           outputRow[ outputIndex++ ] = dbfData[ d ];
         }
 
-        linesInput++;
+        incrementLinesInput();
 
         // Put it out to the rest of the world...
         try {
@@ -346,8 +346,8 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
     // Next shape please!
     data.shapeNr++;
 
-    if ( ( linesInput % Const.ROWS_UPDATE ) == 0 ) {
-      logBasic( "linenr " + linesInput );
+    if ( ( getLinesInput() % Const.ROWS_UPDATE ) == 0 ) {
+      logBasic( "linenr " + getLinesInput() );
     }
 
     return retval;
@@ -420,7 +420,7 @@ public class ShapeFileReader extends BaseStep implements StepInterface {
       stopAll();
     } finally {
       dispose( meta, data );
-      logBasic( "Finished, processed " + linesInput + " rows, written " + linesWritten + " lines." );
+      logBasic( "Finished, processed " + getLinesInput() + " rows, written " + getLinesWritten() + " lines." );
       markStop();
     }
   }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -98,6 +98,18 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
   private Button wuseVars;
   private FormData fdluseVars, fduseVars;
 
+  private Label wlCache;
+  private Button wCache;
+  private FormData fdlCache, fdCache;
+
+  private Label wlCacheSize;
+  private Text wCacheSize;
+  private FormData fdlCacheSize, fdCacheSize;
+
+  private Label wlBatchSize;
+  private Text wBatchSize;
+  private FormData fdlBatchSize, fdBatchSize;
+
   private Button wGet;
   private Listener lsGet;
 
@@ -301,6 +313,68 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
       }
     } );
 
+    // Cache the rows found?
+    wlCache = new Label( shell, SWT.RIGHT );
+    wlCache.setText( BaseMessages.getString( PKG, "DatabaseJoinDialog.Cache.Label" ) );
+    wlCache.setToolTipText( BaseMessages.getString( PKG, "DatabaseJoinDialog.Cache.Tooltip" ) );
+    props.setLook( wlCache );
+    fdlCache = new FormData();
+    fdlCache.left = new FormAttachment( 0, 0 );
+    fdlCache.right = new FormAttachment( middle, -margin );
+    fdlCache.top = new FormAttachment( wuseVars, margin );
+    wlCache.setLayoutData( fdlCache );
+    wCache = new Button( shell, SWT.CHECK );
+    props.setLook( wCache );
+    wCache.setToolTipText( wlCache.getToolTipText() );
+    fdCache = new FormData();
+    fdCache.left = new FormAttachment( middle, 0 );
+    fdCache.top = new FormAttachment( wuseVars, margin );
+    wCache.setLayoutData( fdCache );
+    wCache.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        enableFields();
+      }
+    } );
+
+    // The maximum number of cached parameter values
+    wlCacheSize = new Label( shell, SWT.RIGHT );
+    wlCacheSize.setText( BaseMessages.getString( PKG, "DatabaseJoinDialog.CacheSize.Label" ) );
+    props.setLook( wlCacheSize );
+    fdlCacheSize = new FormData();
+    fdlCacheSize.left = new FormAttachment( 0, 0 );
+    fdlCacheSize.right = new FormAttachment( middle, -margin );
+    fdlCacheSize.top = new FormAttachment( wCache, margin );
+    wlCacheSize.setLayoutData( fdlCacheSize );
+    wCacheSize = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCacheSize );
+    wCacheSize.addModifyListener( lsMod );
+    fdCacheSize = new FormData();
+    fdCacheSize.left = new FormAttachment( middle, 0 );
+    fdCacheSize.right = new FormAttachment( 100, 0 );
+    fdCacheSize.top = new FormAttachment( wCache, margin );
+    wCacheSize.setLayoutData( fdCacheSize );
+
+    // The number of rows to join with one query
+    wlBatchSize = new Label( shell, SWT.RIGHT );
+    wlBatchSize.setText( BaseMessages.getString( PKG, "DatabaseJoinDialog.BatchSize.Label" ) );
+    wlBatchSize.setToolTipText( BaseMessages.getString( PKG, "DatabaseJoinDialog.BatchSize.Tooltip" ) );
+    props.setLook( wlBatchSize );
+    fdlBatchSize = new FormData();
+    fdlBatchSize.left = new FormAttachment( 0, 0 );
+    fdlBatchSize.right = new FormAttachment( middle, -margin );
+    fdlBatchSize.top = new FormAttachment( wCacheSize, margin );
+    wlBatchSize.setLayoutData( fdlBatchSize );
+    wBatchSize = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchSize );
+    wBatchSize.setToolTipText( wlBatchSize.getToolTipText() );
+    wBatchSize.addModifyListener( lsMod );
+    fdBatchSize = new FormData();
+    fdBatchSize.left = new FormAttachment( middle, 0 );
+    fdBatchSize.right = new FormAttachment( 100, 0 );
+    fdBatchSize.top = new FormAttachment( wCacheSize, margin );
+    wBatchSize.setLayoutData( fdBatchSize );
+
     // THE BUTTONS
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
@@ -317,7 +391,7 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
     props.setLook( wlParam );
     fdlParam = new FormData();
     fdlParam.left = new FormAttachment( 0, 0 );
-    fdlParam.top = new FormAttachment( wuseVars, margin );
+    fdlParam.top = new FormAttachment( wBatchSize, margin );
     wlParam.setLayoutData( fdlParam );
 
     int nrKeyCols = 2;
@@ -465,6 +539,9 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
     wLimit.setText( "" + input.getRowLimit() );
     wOuter.setSelection( input.isOuterJoin() );
     wuseVars.setSelection( input.isVariableReplace() );
+    wCache.setSelection( input.isCached() );
+    wCacheSize.setText( "" + input.getCacheSize() );
+    wBatchSize.setText( "" + input.getBatchSize() );
     if ( input.getParameterField() != null ) {
       for ( int i = 0; i < input.getParameterField().length; i++ ) {
         TableItem item = wParam.table.getItem( i );
@@ -486,10 +563,17 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
     wParam.setRowNums();
     wParam.optWidth( true );
 
+    enableFields();
+
     wStepname.selectAll();
     wStepname.setFocus();
   }
 
+  private void enableFields() {
+    wlCacheSize.setEnabled( wCache.getSelection() );
+    wCacheSize.setEnabled( wCache.getSelection() );
+  }
+
   private void cancel() {
     stepname = null;
     input.setChanged( backupChanged );
@@ -510,6 +594,9 @@ public class DatabaseJoinDialog extends BaseStepDialog implements StepDialogInte
 
     input.setOuterJoin( wOuter.getSelection() );
     input.setVariableReplace( wuseVars.getSelection() );
+    input.setCached( wCache.getSelection() );
+    input.setCacheSize( Const.toInt( wCacheSize.getText(), 0 ) );
+    input.setBatchSize( Const.toInt( wBatchSize.getText(), 0 ) );
     logDebug( BaseMessages.getString( PKG, "DatabaseJoinDialog.Log.ParametersFound" ) + nrparam + " parameters" );
     //CHECKSTYLE:Indentation:OFF
     for ( int i = 0; i < nrparam; i++ ) {
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -122,6 +122,10 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
   private FormData fdlvalueField;
   private FormData fdvalueField;
 
+  private Label wlscoringThreads;
+  private TextVar wscoringThreads;
+  private FormData fdlscoringThreads, fdscoringThreads;
+
   private Label wlcaseSensitive;
   private Button wcaseSensitive;
   private FormData fdlcaseSensitive, fdcaseSensitive;
@@ -501,6 +505,24 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     fdseparator.right = new FormAttachment( 100, 0 );
     wseparator.setLayoutData( fdseparator );
 
+    wlscoringThreads = new Label( wSettingsGroup, SWT.RIGHT );
+    wlscoringThreads.setText( BaseMessages.getString( PKG, "FuzzyMatchDialog.scoringThreads.Label" ) );
+    props.setLook( wlscoringThreads );
+    fdlscoringThreads = new FormData();
+    fdlscoringThreads.left = new FormAttachment( 0, 0 );
+    fdlscoringThreads.top = new FormAttachment( wseparator, margin );
+    fdlscoringThreads.right = new FormAttachment( middle, -margin );
+    wlscoringThreads.setLayoutData( fdlscoringThreads );
+    wscoringThreads = new TextVar( transMeta, wSettingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wscoringThreads );
+    wscoringThreads.setToolTipText( BaseMessages.getString( PKG, "FuzzyMatchDialog.scoringThreads.Tooltip" ) );
+    wscoringThreads.addModifyListener( lsMod );
+    fdscoringThreads = new FormData();
+    fdscoringThreads.left = new FormAttachment( middle, 0 );
+    fdscoringThreads.top = new FormAttachment( wseparator, margin );
+    fdscoringThreads.right = new FormAttachment( 100, 0 );
+    wscoringThreads.setLayoutData( fdscoringThreads );
+
     fdSettingsGroup = new FormData();
     fdSettingsGroup.left = new FormAttachment( 0, margin );
     fdSettingsGroup.top = new FormAttachment( wMainStreamGroup, margin );
@@ -752,6 +774,9 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     if ( input.getSeparator() != null ) {
       wseparator.setText( input.getSeparator() );
     }
+    if ( input.getScoringThreads() != null ) {
+      wscoringThreads.setText( input.getScoringThreads() );
+    }
 
     if ( input.getValue() != null ) {
       for ( int i = 0; i < input.getValue().length; i++ ) {
@@ -798,6 +823,7 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     input.setOutputMatchField( wmatchField.getText() );
     input.setOutputValueField( wvalueField.getText() );
     input.setSeparator( wseparator.getText() );
+    input.setScoringThreads( wscoringThreads.getText() );
 
     int nrvalues = wReturn.nrNonEmpty();
     input.allocate( nrvalues );
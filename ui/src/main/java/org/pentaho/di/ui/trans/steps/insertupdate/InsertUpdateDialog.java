@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -111,6 +111,10 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
   private Button wUpdateBypassed;
   private FormData fdlUpdateBypassed, fdUpdateBypassed;
 
+  private Label wlUseMerge;
+  private Button wUseMerge;
+  private FormData fdlUseMerge, fdUseMerge;
+
   private Button wGetLU;
   private FormData fdGetLU;
   private Listener lsGetLU;
@@ -291,12 +295,32 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
     wUpdateBypassed.setLayoutData( fdUpdateBypassed );
     wUpdateBypassed.addSelectionListener( new ComponentSelectionListener( input ) );
 
+    // UseMerge line
+    wlUseMerge = new Label( shell, SWT.RIGHT );
+    wlUseMerge.setText( BaseMessages.getString( PKG, "InsertUpdateDialog.UseMerge.Label" ) );
+    wlUseMerge.setToolTipText( BaseMessages.getString( PKG, "InsertUpdateDialog.UseMerge.Tooltip" ) );
+    props.setLook( wlUseMerge );
+    fdlUseMerge = new FormData();
+    fdlUseMerge.left = new FormAttachment( 0, 0 );
+    fdlUseMerge.top = new FormAttachment( wUpdateBypassed, margin );
+    fdlUseMerge.right = new FormAttachment( middle, -margin );
+    wlUseMerge.setLayoutData( fdlUseMerge );
+    wUseMerge = new Button( shell, SWT.CHECK );
+    wUseMerge.setToolTipText( BaseMessages.getString( PKG, "InsertUpdateDialog.UseMerge.Tooltip" ) );
+    props.setLook( wUseMerge );
+    fdUseMerge = new FormData();
+    fdUseMerge.left = new FormAttachment( middle, 0 );
+    fdUseMerge.top = new FormAttachment( wUpdateBypassed, margin );
+    fdUseMerge.right = new FormAttachment( 100, 0 );
+    wUseMerge.setLayoutData( fdUseMerge );
+    wUseMerge.addSelectionListener( new ComponentSelectionListener( input ) );
+
     wlKey = new Label( shell, SWT.NONE );
     wlKey.setText( BaseMessages.getString( PKG, "InsertUpdateDialog.Keys.Label" ) );
     props.setLook( wlKey );
     fdlKey = new FormData();
     fdlKey.left = new FormAttachment( 0, 0 );
-    fdlKey.top = new FormAttachment( wUpdateBypassed, margin );
+    fdlKey.top = new FormAttachment( wUseMerge, margin );
     wlKey.setLayoutData( fdlKey );
 
     int nrKeyCols = 4;
@@ -665,6 +689,7 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
     wCommit.setText( input.getCommitSizeVar() );
     wUpdateBypassed.setSelection( input.isUpdateBypassed() );
+    wUseMerge.setSelection( input.isUseMerge() );
 
     if ( input.getKeyStream() != null ) {
       for ( int i = 0; i < input.getKeyStream().length; i++ ) {
@@ -737,6 +762,7 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
     inf.setCommitSize( wCommit.getText() );
     inf.setUpdateBypassed( wUpdateBypassed.getSelection() );
+    inf.setUseMerge( wUseMerge.getSelection() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "InsertUpdateDialog.Log.FoundKeys", nrkeys + "" ) );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -64,6 +64,7 @@ import org.pentaho.di.trans.steps.streamlookup.StreamLookupMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 public class StreamLookupDialog extends BaseStepDialog implements StepDialogInterface {
@@ -93,6 +94,14 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
   private Button wIntegerPair;
   private FormData fdlIntegerPair, fdIntegerPair;
 
+  private Label wlSharedIndex;
+  private Button wSharedIndex;
+  private FormData fdlSharedIndex, fdSharedIndex;
+
+  private Label wlSharedIndexName;
+  private TextVar wSharedIndexName;
+  private FormData fdlSharedIndexName, fdSharedIndexName;
+
   private StreamLookupMeta input;
 
   private Button wGetLU;
@@ -258,7 +267,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     fdReturn.left = new FormAttachment( 0, 0 );
     fdReturn.top = new FormAttachment( wlReturn, margin );
     fdReturn.right = new FormAttachment( 100, 0 );
-    fdReturn.bottom = new FormAttachment( 100, -125 );
+    fdReturn.bottom = new FormAttachment( 100, -175 );
     wReturn.setLayoutData( fdReturn );
 
     wlPreserveMemory = new Label( shell, SWT.RIGHT );
@@ -337,6 +346,47 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
 
     // END MEMORY PRESERVE
 
+    wlSharedIndex = new Label( shell, SWT.RIGHT );
+    wlSharedIndex.setText( BaseMessages.getString( PKG, "StreamLookupDialog.SharedIndex.Label" ) );
+    wlSharedIndex.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.SharedIndex.Tooltip" ) );
+    props.setLook( wlSharedIndex );
+    fdlSharedIndex = new FormData();
+    fdlSharedIndex.left = new FormAttachment( 0, 0 );
+    fdlSharedIndex.top = new FormAttachment( wSortedList, margin );
+    fdlSharedIndex.right = new FormAttachment( middle, -margin );
+    wlSharedIndex.setLayoutData( fdlSharedIndex );
+    wSharedIndex = new Button( shell, SWT.CHECK );
+    props.setLook( wSharedIndex );
+    fdSharedIndex = new FormData();
+    fdSharedIndex.left = new FormAttachment( middle, 0 );
+    fdSharedIndex.top = new FormAttachment( wSortedList, margin );
+    fdSharedIndex.right = new FormAttachment( 100, 0 );
+    wSharedIndex.setLayoutData( fdSharedIndex );
+    wSharedIndex.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        wSharedIndexName.setEnabled( wSharedIndex.getSelection() );
+      }
+    } );
+
+    wlSharedIndexName = new Label( shell, SWT.RIGHT );
+    wlSharedIndexName.setText( BaseMessages.getString( PKG, "StreamLookupDialog.SharedIndexName.Label" ) );
+    wlSharedIndexName.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.SharedIndexName.Tooltip" ) );
+    props.setLook( wlSharedIndexName );
+    fdlSharedIndexName = new FormData();
+    fdlSharedIndexName.left = new FormAttachment( 0, 0 );
+    fdlSharedIndexName.top = new FormAttachment( wSharedIndex, margin );
+    fdlSharedIndexName.right = new FormAttachment( middle, -margin );
+    wlSharedIndexName.setLayoutData( fdlSharedIndexName );
+    wSharedIndexName = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wSharedIndexName );
+    wSharedIndexName.addModifyListener( lsMod );
+    fdSharedIndexName = new FormData();
+    fdSharedIndexName.left = new FormAttachment( middle, 0 );
+    fdSharedIndexName.top = new FormAttachment( wSharedIndex, margin );
+    fdSharedIndexName.right = new FormAttachment( 100, 0 );
+    wSharedIndexName.setLayoutData( fdSharedIndexName );
+
     // THE BUTTONS
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
@@ -538,6 +588,10 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     wSortedList.setSelection( input.isUsingSortedList() );
     wIntegerPair.setSelection( input.isUsingIntegerPair() );
 
+    wSharedIndex.setSelection( input.isSharedIndex() );
+    wSharedIndexName.setText( Const.NVL( input.getSharedIndexName(), "" ) );
+    wSharedIndexName.setEnabled( input.isSharedIndex() );
+
     wKey.setRowNums();
     wKey.optWidth( true );
     wReturn.setRowNums();
@@ -564,6 +618,8 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     input.setMemoryPreservationActive( wPreserveMemory.getSelection() );
     input.setUsingSortedList( wSortedList.getSelection() );
     input.setUsingIntegerPair( wIntegerPair.getSelection() );
+    input.setSharedIndex( wSharedIndex.getSelection() );
+    input.setSharedIndexName( wSharedIndexName.getText() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "StreamLookupDialog.Log.FoundKeys", nrkeys + "" ) );
@@ -135,6 +135,10 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
   private Button wBatch;
   private FormData fdlBatch, fdBatch;
 
+  private Label wlMultiRowInsert;
+  private Button wMultiRowInsert;
+  private FormData fdlMultiRowInsert, fdMultiRowInsert;
+
   private Label wlUsePart;
   private Button wUsePart;
   private FormData fdlUsePart, fdUsePart;
@@ -566,20 +570,40 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
       }
     } );
 
+    // Multi-row insert
+    wlMultiRowInsert = new Label( wMainComp, SWT.RIGHT );
+    wlMultiRowInsert.setText( BaseMessages.getString( PKG, "TableOutputDialog.MultiRowInsert.Label" ) );
+    wlMultiRowInsert.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.MultiRowInsert.Tooltip" ) );
+    props.setLook( wlMultiRowInsert );
+    fdlMultiRowInsert = new FormData();
+    fdlMultiRowInsert.left = new FormAttachment( 0, 0 );
+    fdlMultiRowInsert.top = new FormAttachment( wBatch, margin );
+    fdlMultiRowInsert.right = new FormAttachment( middle, -margin );
+    wlMultiRowInsert.setLayoutData( fdlMultiRowInsert );
+    wMultiRowInsert = new Button( wMainComp, SWT.CHECK );
+    wMultiRowInsert.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.MultiRowInsert.Tooltip" ) );
+    props.setLook( wMultiRowInsert );
+    fdMultiRowInsert = new FormData();
+    fdMultiRowInsert.left = new FormAttachment( middle, 0 );
+    fdMultiRowInsert.top = new FormAttachment( wBatch, margin );
+    fdMultiRowInsert.right = new FormAttachment( 100, 0 );
+    wMultiRowInsert.setLayoutData( fdMultiRowInsert );
+    wMultiRowInsert.addSelectionListener( lsSelMod );
+
     // NameInField
     wlNameInField = new Label( wMainComp, SWT.RIGHT );
     wlNameInField.setText( BaseMessages.getString( PKG, "TableOutputDialog.NameInField.Label" ) );
     props.setLook( wlNameInField );
     fdlNameInField = new FormData();
     fdlNameInField.left = new FormAttachment( 0, 0 );
-    fdlNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdlNameInField.top = new FormAttachment( wMultiRowInsert, margin * 5 );
     fdlNameInField.right = new FormAttachment( middle, -margin );
     wlNameInField.setLayoutData( fdlNameInField );
     wNameInField = new Button( wMainComp, SWT.CHECK );
     props.setLook( wNameInField );
     fdNameInField = new FormData();
     fdNameInField.left = new FormAttachment( middle, 0 );
-    fdNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdNameInField.top = new FormAttachment( wMultiRowInsert, margin * 5 );
     fdNameInField.right = new FormAttachment( 100, 0 );
     wNameInField.setLayoutData( fdNameInField );
     wNameInField.addSelectionListener( new SelectionAdapter() {
@@ -1228,6 +1252,11 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wlBatch.setEnabled( enableBatch );
     wBatch.setEnabled( enableBatch );
 
+    // Multi-row inserts need a single table and can't tell which row failed
+    boolean enableMultiRowInsert = enableBatch && !isTableNameInField && !usePartitioning;
+    wlMultiRowInsert.setEnabled( enableMultiRowInsert );
+    wMultiRowInsert.setEnabled( enableMultiRowInsert );
+
     boolean specifyFields = wSpecifyFields.getSelection();
     wFields.setEnabled( specifyFields );
     wGetFields.setEnabled( specifyFields );
@@ -1273,6 +1302,7 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wTruncate.setSelection( input.truncateTable() );
     wIgnore.setSelection( input.ignoreErrors() );
     wBatch.setSelection( input.useBatchUpdate() );
+    wMultiRowInsert.setSelection( input.useMultiRowInsert() );
 
     wCommit.setText( input.getCommitSize() );
 
@@ -1326,6 +1356,7 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     info.setTruncateTable( wTruncate.getSelection() );
     info.setIgnoreErrors( wIgnore.getSelection() );
     info.setUseBatchUpdate( wBatch.getSelection() );
+    info.setUseMultiRowInsert( wMultiRowInsert.getSelection() );
     info.setPartitioningEnabled( wUsePart.getSelection() );
     info.setPartitioningField( wPartField.getText() );
     info.setPartitioningDaily( wPartDaily.getSelection() );
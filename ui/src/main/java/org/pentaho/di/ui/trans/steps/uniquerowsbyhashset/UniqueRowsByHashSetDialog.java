@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2020 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -39,6 +40,7 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Group;
@@ -88,6 +90,27 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
   private TextVar wErrorDesc;
   private FormData fdlErrorDesc, fdErrorDesc;
 
+  private Label wlDedupeMode;
+  private CCombo wDedupeMode;
+  private FormData fdlDedupeMode, fdDedupeMode;
+
+  private Label wlMaxMemory;
+  private TextVar wMaxMemory;
+  private FormData fdlMaxMemory, fdMaxMemory;
+
+  private Label wlTempDir;
+  private TextVar wTempDir;
+  private Button wbTempDir;
+  private FormData fdlTempDir, fdTempDir, fdbTempDir;
+
+  private Label wlExpectedRows;
+  private TextVar wExpectedRows;
+  private FormData fdlExpectedRows, fdExpectedRows;
+
+  private Label wlFalsePositiveRate;
+  private TextVar wFalsePositiveRate;
+  private FormData fdlFalsePositiveRate, fdFalsePositiveRate;
+
   private Group wSettings;
   private FormData fdSettings;
 
@@ -218,6 +241,118 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
     fdErrorDesc.right = new FormAttachment( 100, 0 );
     wErrorDesc.setLayoutData( fdErrorDesc );
 
+    wlDedupeMode = new Label( wSettings, SWT.RIGHT );
+    wlDedupeMode.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.DedupeMode.Label" ) );
+    props.setLook( wlDedupeMode );
+    fdlDedupeMode = new FormData();
+    fdlDedupeMode.left = new FormAttachment( 0, 0 );
+    fdlDedupeMode.top = new FormAttachment( wErrorDesc, margin );
+    fdlDedupeMode.right = new FormAttachment( middle, -margin );
+    wlDedupeMode.setLayoutData( fdlDedupeMode );
+    wDedupeMode = new CCombo( wSettings, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER );
+    wDedupeMode.setItems( new String[] {
+      BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.DedupeMode.Rows" ),
+      BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.DedupeMode.Fingerprints" ),
+      BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.DedupeMode.Approximate" ), } );
+    wDedupeMode.setToolTipText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.DedupeMode.ToolTip" ) );
+    props.setLook( wDedupeMode );
+    fdDedupeMode = new FormData();
+    fdDedupeMode.left = new FormAttachment( middle, 0 );
+    fdDedupeMode.top = new FormAttachment( wErrorDesc, margin );
+    fdDedupeMode.right = new FormAttachment( 100, 0 );
+    wDedupeMode.setLayoutData( fdDedupeMode );
+    wDedupeMode.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        setDedupeMode();
+      }
+    } );
+
+    wlMaxMemory = new Label( wSettings, SWT.RIGHT );
+    wlMaxMemory.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.MaxMemory.Label" ) );
+    props.setLook( wlMaxMemory );
+    fdlMaxMemory = new FormData();
+    fdlMaxMemory.left = new FormAttachment( 0, 0 );
+    fdlMaxMemory.top = new FormAttachment( wDedupeMode, margin );
+    fdlMaxMemory.right = new FormAttachment( middle, -margin );
+    wlMaxMemory.setLayoutData( fdlMaxMemory );
+    wMaxMemory = new TextVar( transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxMemory );
+    wMaxMemory.addModifyListener( lsMod );
+    fdMaxMemory = new FormData();
+    fdMaxMemory.left = new FormAttachment( middle, 0 );
+    fdMaxMemory.top = new FormAttachment( wDedupeMode, margin );
+    fdMaxMemory.right = new FormAttachment( 100, 0 );
+    wMaxMemory.setLayoutData( fdMaxMemory );
+
+    wlTempDir = new Label( wSettings, SWT.RIGHT );
+    wlTempDir.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.TempDir.Label" ) );
+    props.setLook( wlTempDir );
+    fdlTempDir = new FormData();
+    fdlTempDir.left = new FormAttachment( 0, 0 );
+    fdlTempDir.top = new FormAttachment( wMaxMemory, margin );
+    fdlTempDir.right = new FormAttachment( middle, -margin );
+    wlTempDir.setLayoutData( fdlTempDir );
+    wbTempDir = new Button( wSettings, SWT.PUSH | SWT.CENTER );
+    props.setLook( wbTempDir );
+    wbTempDir.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.Browse.Button" ) );
+    fdbTempDir = new FormData();
+    fdbTempDir.top = new FormAttachment( wMaxMemory, margin );
+    fdbTempDir.right = new FormAttachment( 100, 0 );
+    wbTempDir.setLayoutData( fdbTempDir );
+    wTempDir = new TextVar( transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wTempDir );
+    wTempDir.addModifyListener( lsMod );
+    fdTempDir = new FormData();
+    fdTempDir.left = new FormAttachment( middle, 0 );
+    fdTempDir.top = new FormAttachment( wMaxMemory, margin );
+    fdTempDir.right = new FormAttachment( wbTempDir, -margin );
+    wTempDir.setLayoutData( fdTempDir );
+    wbTempDir.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        DirectoryDialog dd = new DirectoryDialog( shell, SWT.NONE );
+        dd.setFilterPath( wTempDir.getText() );
+        String dir = dd.open();
+        if ( dir != null ) {
+          wTempDir.setText( dir );
+        }
+      }
+    } );
+
+    wlExpectedRows = new Label( wSettings, SWT.RIGHT );
+    wlExpectedRows.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.ExpectedRows.Label" ) );
+    props.setLook( wlExpectedRows );
+    fdlExpectedRows = new FormData();
+    fdlExpectedRows.left = new FormAttachment( 0, 0 );
+    fdlExpectedRows.top = new FormAttachment( wbTempDir, margin );
+    fdlExpectedRows.right = new FormAttachment( middle, -margin );
+    wlExpectedRows.setLayoutData( fdlExpectedRows );
+    wExpectedRows = new TextVar( transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wExpectedRows );
+    wExpectedRows.addModifyListener( lsMod );
+    fdExpectedRows = new FormData();
+    fdExpectedRows.left = new FormAttachment( middle, 0 );
+    fdExpectedRows.top = new FormAttachment( wbTempDir, margin );
+    fdExpectedRows.right = new FormAttachment( 100, 0 );
+    wExpectedRows.setLayoutData( fdExpectedRows );
+
+    wlFalsePositiveRate = new Label( wSettings, SWT.RIGHT );
+    wlFalsePositiveRate.setText( BaseMessages.getString( PKG, "UniqueRowsByHashSetDialog.FalsePositiveRate.Label" ) );
+    props.setLook( wlFalsePositiveRate );
+    fdlFalsePositiveRate = new FormData();
+    fdlFalsePositiveRate.left = new FormAttachment( 0, 0 );
+    fdlFalsePositiveRate.top = new FormAttachment( wExpectedRows, margin );
+    fdlFalsePositiveRate.right = new FormAttachment( middle, -margin );
+    wlFalsePositiveRate.setLayoutData( fdlFalsePositiveRate );
+    wFalsePositiveRate = new TextVar( transMeta, wSettings, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wFalsePositiveRate );
+    wFalsePositiveRate.addModifyListener( lsMod );
+    fdFalsePositiveRate = new FormData();
+    fdFalsePositiveRate.left = new FormAttachment( middle, 0 );
+    fdFalsePositiveRate.top = new FormAttachment( wExpectedRows, margin );
+    fdFalsePositiveRate.right = new FormAttachment( 100, 0 );
+    wFalsePositiveRate.setLayoutData( fdFalsePositiveRate );
+
     fdSettings = new FormData();
     fdSettings.left = new FormAttachment( 0, margin );
     fdSettings.top = new FormAttachment( wStepname, margin );
@@ -329,6 +464,7 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
 
     getData();
     setErrorDesc();
+    setDedupeMode();
     input.setChanged( changed );
 
     shell.open();
@@ -345,6 +481,29 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
     wErrorDesc.setEnabled( wRejectDuplicateRow.getSelection() );
   }
 
+  private void setDedupeMode() {
+    String dedupeMode = getDedupeMode();
+    boolean rows = UniqueRowsByHashSetMeta.DEDUPE_MODE_ROWS.equals( dedupeMode );
+    boolean fingerprints = UniqueRowsByHashSetMeta.DEDUPE_MODE_FINGERPRINTS.equals( dedupeMode );
+    boolean approximate = UniqueRowsByHashSetMeta.DEDUPE_MODE_APPROXIMATE.equals( dedupeMode );
+    wlStoreValues.setEnabled( rows );
+    wStoreValues.setEnabled( rows );
+    wlMaxMemory.setEnabled( fingerprints );
+    wMaxMemory.setEnabled( fingerprints );
+    wlTempDir.setEnabled( fingerprints );
+    wTempDir.setEnabled( fingerprints );
+    wbTempDir.setEnabled( fingerprints );
+    wlExpectedRows.setEnabled( approximate );
+    wExpectedRows.setEnabled( approximate );
+    wlFalsePositiveRate.setEnabled( approximate );
+    wFalsePositiveRate.setEnabled( approximate );
+  }
+
+  private String getDedupeMode() {
+    int index = wDedupeMode.getSelectionIndex();
+    return index < 0 ? UniqueRowsByHashSetMeta.DEDUPE_MODE_ROWS : UniqueRowsByHashSetMeta.DEDUPE_MODES[index];
+  }
+
   protected void setComboBoxes() {
     // Something was changed in the row.
     //
@@ -371,6 +530,12 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
     if ( input.getErrorDescription() != null ) {
       wErrorDesc.setText( input.getErrorDescription() );
     }
+    int dedupeMode = Const.indexOfString( input.getDedupeMode(), UniqueRowsByHashSetMeta.DEDUPE_MODES );
+    wDedupeMode.select( dedupeMode < 0 ? 0 : dedupeMode );
+    wMaxMemory.setText( Const.NVL( input.getMaxMemory(), "" ) );
+    wTempDir.setText( Const.NVL( input.getDirectory(), "" ) );
+    wExpectedRows.setText( Const.NVL( input.getExpectedRows(), "" ) );
+    wFalsePositiveRate.setText( Const.NVL( input.getFalsePositiveRate(), "" ) );
     for ( int i = 0; i < input.getCompareFields().length; i++ ) {
       TableItem item = wFields.table.getItem( i );
       if ( input.getCompareFields()[i] != null ) {
@@ -408,6 +573,11 @@ public class UniqueRowsByHashSetDialog extends BaseStepDialog implements StepDia
     input.setStoreValues( wStoreValues.getSelection() );
     input.setRejectDuplicateRow( wRejectDuplicateRow.getSelection() );
     input.setErrorDescription( wErrorDesc.getText() );
+    input.setDedupeMode( getDedupeMode() );
+    input.setMaxMemory( wMaxMemory.getText() );
+    input.setDirectory( wTempDir.getText() );
+    input.setExpectedRows( wExpectedRows.getText() );
+    input.setFalsePositiveRate( wFalsePositiveRate.getText() );
     dispose();
   }
 